@@ -15,7 +15,8 @@ CREATE TABLE room (
     current_temp DECIMAL(5, 2) NOT NULL COMMENT '当前温度',
     occupied BOOLEAN DEFAULT FALSE COMMENT '是否被占用',
     check_in_time DATETIME NULL COMMENT '入住时间',
-    check_out_time DATETIME NULL COMMENT '退房时间'
+    check_out_time DATETIME NULL COMMENT '退房时间',
+    version BIGINT DEFAULT 0 COMMENT '乐观锁版本号'
 ) ENGINE = InnoDB COMMENT = '房间信息表';
 
 -- 2. 客人表
@@ -56,7 +57,8 @@ CREATE TABLE air_conditioner (
     service_duration INT DEFAULT 0 COMMENT '服务时长(分钟)',
     cost DECIMAL(10, 2) DEFAULT 0.00 COMMENT '当前费用',
     priority INT DEFAULT 0 COMMENT '优先级',
-    service_time INT DEFAULT 0 COMMENT '已服务时间(分钟)'
+    service_time INT DEFAULT 0 COMMENT '已服务时间(分钟)',
+    version BIGINT DEFAULT 0 COMMENT '乐观锁版本号'
 ) ENGINE = InnoDB COMMENT = '空调设备表';
 
 -- 5. 空调请求表
@@ -70,7 +72,8 @@ CREATE TABLE air_conditioner_request (
     request_time DATETIME NOT NULL COMMENT '请求时间',
     assigned_ac_id INT NULL COMMENT '分配的空调ID',
     priority INT NOT NULL COMMENT '优先级',
-    active BOOLEAN DEFAULT TRUE COMMENT '请求是否激活'
+    active BOOLEAN DEFAULT TRUE COMMENT '请求是否激活',
+    version BIGINT DEFAULT 0 COMMENT '乐观锁版本号'
 ) ENGINE = InnoDB COMMENT = '空调请求表';
 
 -- 6. 账单详单表
@@ -93,6 +96,35 @@ CREATE TABLE bill_detail (
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间'
 ) ENGINE = InnoDB COMMENT = '账单详单表';
 
+-- 7. 房间费用汇总表（随详单增量维护）
+CREATE TABLE room_cost_summary (
+    room_id INT PRIMARY KEY COMMENT '房间号',
+    total_cost DOUBLE DEFAULT 0 COMMENT '累计费用',
+    total_energy DOUBLE DEFAULT 0 COMMENT '累计能耗(度)',
+    detail_count BIGINT DEFAULT 0 COMMENT '详单条数',
+    updated_at DATETIME NULL COMMENT '最后更新时间'
+) ENGINE = InnoDB COMMENT = '房间费用汇总表';
+
+-- 8. 账单费用汇总表（随详单增量维护）
+CREATE TABLE bill_cost_summary (
+    bill_id BIGINT PRIMARY KEY COMMENT '账单ID',
+    total_cost DOUBLE DEFAULT 0 COMMENT '累计费用',
+    total_energy DOUBLE DEFAULT 0 COMMENT '累计能耗(度)',
+    detail_count BIGINT DEFAULT 0 COMMENT '详单条数',
+    updated_at DATETIME NULL COMMENT '最后更新时间'
+) ENGINE = InnoDB COMMENT = '账单费用汇总表';
+
+-- 9. 房间能耗小时汇总表（按服务开始时间所在整点归桶）
+CREATE TABLE energy_hourly_rollup (
+    rollup_id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '汇总ID',
+    room_id INT NOT NULL COMMENT '房间号',
+    bucket_start DATETIME NOT NULL COMMENT '桶起始整点',
+    energy_consumed DOUBLE DEFAULT 0 COMMENT '能耗(度)',
+    cost DOUBLE DEFAULT 0 COMMENT '费用',
+    detail_count BIGINT DEFAULT 0 COMMENT '详单条数',
+    UNIQUE KEY uk_rollup_room_bucket (room_id, bucket_start)
+) ENGINE = InnoDB COMMENT = '房间能耗小时汇总表';
+
 -- 添加外键约束
 ALTER TABLE bill
 ADD CONSTRAINT fk_bill_room FOREIGN KEY (room_id) REFERENCES room (room_id),
@@ -0,0 +1,43 @@
+package com.example.hotel.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * WebFlux + R2DBC 节点：以事件循环提供与主工程相同的 /api/ac/** 和 /api/rooms/** 接口
+ * 调度器、计费和房间缓存沿用主工程的服务（同一进程内，与 MVC 节点一样是调度的唯一持有者，两者不能连接同一个库同时运行）；
+ * Servlet 控制器、安全配置、限流过滤器和 SseEmitter 推送不加载，由本模块的 WebFlux 实现代替。
+ * 读路径中 MVC 节点通过 JPA 查询的部分（活跃请求、调度队列条目）改用 R2DBC 仓库，其余读内存缓存；
+ * 开启、调整、关闭指令交给指令分发器，控制器只订阅它返回的 CompletableFuture。
+ * 只读查询不需要事务，不注册 R2DBC 事务管理器，主工程的 @Transactional 仍只对应 JPA 事务管理器。
+ * <p>
+ * 构建运行：在上级目录执行 mvn install -DskipTests，再在本目录执行 mvn spring-boot:run（默认端口 8081）
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration(exclude = R2dbcTransactionManagerAutoConfiguration.class)
+@EnableScheduling
+@ComponentScan(basePackages = "com.example.hotel", excludeFilters = @ComponentScan.Filter(
+        type = FilterType.REGEX, pattern = {
+                "com\\.example\\.hotel\\.HotelApplication",
+                "com\\.example\\.hotel\\.controller\\..*",
+                "com\\.example\\.hotel\\.config\\.SecurityConfig",
+                "com\\.example\\.hotel\\.config\\.AcRateLimitFilter",
+                "com\\.example\\.hotel\\.service\\.QueueStatusBroadcaster"}))
+@EntityScan("com.example.hotel.entity")
+@EnableJpaRepositories("com.example.hotel.repository")
+@EnableR2dbcRepositories("com.example.hotel.reactive.repository")
+public class ReactiveHotelApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(ReactiveHotelApplication.class, args);
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.example.hotel.reactive.config;
+
+import com.example.hotel.service.AcRateLimiter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 空调开启、调整、关闭接口的限流，与 MVC 节点的 AcRateLimitFilter 规则相同
+ * 按来源地址和房间号向 AcRateLimiter 取令牌，取不到时返回429并带上 Retry-After
+ */
+@Component
+public class AcRateLimitWebFilter implements WebFilter {
+
+    private static final Pattern COMMAND_PATH = Pattern.compile("^/api/ac/room/(\\d+)/(start|adjust|cancel)$");
+
+    private final AcRateLimiter rateLimiter;
+
+    public AcRateLimitWebFilter(AcRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!rateLimiter.isEnabled() || HttpMethod.GET.equals(exchange.getRequest().getMethod())) {
+            return chain.filter(exchange);
+        }
+        Matcher matcher = COMMAND_PATH.matcher(exchange.getRequest().getPath().pathWithinApplication().value());
+        if (!matcher.matches()) {
+            return chain.filter(exchange);
+        }
+        Integer roomId;
+        try {
+            roomId = Integer.valueOf(matcher.group(1));
+        } catch (NumberFormatException e) {
+            return chain.filter(exchange);
+        }
+
+        InetSocketAddress remote = exchange.getRequest().getRemoteAddress();
+        String client = remote != null && remote.getAddress() != null
+                ? remote.getAddress().getHostAddress() : "unknown";
+        long wait = rateLimiter.tryAcquire(client, roomId);
+        if (wait > 0) {
+            return reject(exchange.getResponse(), wait);
+        }
+        return chain.filter(exchange);
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response, long waitNanos) {
+        // Retry-After 以秒为单位，向上取整
+        long retryAfter = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        response.getHeaders().setContentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8));
+        DataBuffer body = response.bufferFactory().wrap("请求过于频繁，请稍后重试".getBytes(StandardCharsets.UTF_8));
+        return response.writeWith(Mono.just(body));
+    }
+}
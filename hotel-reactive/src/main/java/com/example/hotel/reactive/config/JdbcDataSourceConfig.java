@@ -0,0 +1,29 @@
+package com.example.hotel.reactive.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * JDBC 数据源配置
+ * 存在 R2DBC ConnectionFactory 时 Spring Boot 不再自动配置 DataSource，
+ * 调度、计费等沿用 JPA 的写路径需要在这里按 spring.datasource.* 显式声明；
+ * 开启读写分离时由主工程的 ReadReplicaConfig 提供数据源
+ */
+@Configuration
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class JdbcDataSourceConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "hotel.datasource.replica", name = "enabled", havingValue = "false", matchIfMissing = true)
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+    }
+}
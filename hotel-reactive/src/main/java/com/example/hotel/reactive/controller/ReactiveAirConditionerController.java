@@ -0,0 +1,264 @@
+package com.example.hotel.reactive.controller;
+
+import com.example.hotel.dto.AirConditionerStartResponse;
+import com.example.hotel.dto.BulkAcCommand;
+import com.example.hotel.dto.BulkAcCommandResult;
+import com.example.hotel.dto.RoomAssignmentView;
+import com.example.hotel.entity.AirConditioner;
+import com.example.hotel.entity.AirConditionerRequest;
+import com.example.hotel.reactive.service.ReactiveMonitorViewService;
+import com.example.hotel.reactive.service.ReactiveQueueStatusStream;
+import com.example.hotel.service.AcCommandDispatcher;
+import com.example.hotel.service.AirConditionerSchedulerService;
+import com.example.hotel.service.AirConditionerService;
+import com.example.hotel.service.MonitorViewService;
+import com.example.hotel.service.RoomService;
+import com.example.hotel.service.SnapshotCache;
+import com.example.hotel.util.EncodedSnapshot;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * /api/ac/** 的 WebFlux 版本，请求参数、状态码和响应体与 MVC 节点的 AirConditionerController 相同
+ * 事件循环上只做内存读取和序列化：活跃请求和调度队列条目通过 R2DBC 查询，
+ * 开启、调整、关闭交给指令分发器后订阅其结果，批量指令和队列同步这类整段阻塞的操作放到 boundedElastic 上执行
+ */
+@RestController
+@RequestMapping("/api/ac")
+public class ReactiveAirConditionerController {
+
+    // 单次批量指令的房间数上限
+    private static final int MAX_BULK_COMMANDS = 1000;
+
+    private final AirConditionerService acService;
+    private final AirConditionerSchedulerService schedulerService;
+    private final MonitorViewService monitorViewService;
+    private final ReactiveMonitorViewService reactiveViewService;
+    private final ReactiveQueueStatusStream queueStatusStream;
+    private final SnapshotCache snapshotCache;
+    private final AcCommandDispatcher commandDispatcher;
+    private final RoomService roomService;
+
+    public ReactiveAirConditionerController(AirConditionerService acService,
+                                            AirConditionerSchedulerService schedulerService,
+                                            MonitorViewService monitorViewService,
+                                            ReactiveMonitorViewService reactiveViewService,
+                                            ReactiveQueueStatusStream queueStatusStream,
+                                            SnapshotCache snapshotCache,
+                                            AcCommandDispatcher commandDispatcher,
+                                            RoomService roomService) {
+        this.acService = acService;
+        this.schedulerService = schedulerService;
+        this.monitorViewService = monitorViewService;
+        this.reactiveViewService = reactiveViewService;
+        this.queueStatusStream = queueStatusStream;
+        this.snapshotCache = snapshotCache;
+        this.commandDispatcher = commandDispatcher;
+        this.roomService = roomService;
+    }
+
+    // 获取所有空调状态
+    // 监控接口都带与 MVC 节点相同的弱ETag，状态未变化时直接返回304；需要返回内容时使用按版本缓存的JSON/gzip字节
+    @GetMapping("/all")
+    public Mono<ResponseEntity<byte[]>> getAllAirConditioners(
+            ServerWebExchange exchange,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        String etag = monitorViewService.airConditionersEtag();
+        if (exchange.checkNotModified(etag)) {
+            return Mono.empty();
+        }
+        return Mono.just(snapshotCache.get("ac-all", etag, monitorViewService::getAirConditionerViews)
+                .toResponse(acceptEncoding));
+    }
+
+    // 获取单个空调状态
+    @GetMapping("/{acId}")
+    public ResponseEntity<AirConditioner> getAirConditioner(@PathVariable Integer acId) {
+        AirConditioner ac = acService.getAirConditioner(acId);
+        if (ac != null) {
+            return ResponseEntity.ok(ac);
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // 获取房间的空调请求状态，没有活跃请求时返回200和空响应体
+    @GetMapping("/room/{roomId}")
+    public Mono<ResponseEntity<AirConditionerRequest>> getRoomRequest(@PathVariable Integer roomId) {
+        return reactiveViewService.getRoomRequest(roomId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.ok().build());
+    }
+
+    // 开启空调（使用固定默认参数：制冷模式，中风，25度）
+    @PostMapping("/room/{roomId}/start")
+    public Mono<ResponseEntity<AirConditionerStartResponse>> startAirConditioner(@PathVariable Integer roomId) {
+        if (roomService.getRoomById(roomId).isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest()
+                    .body(AirConditionerStartResponse.failure("开启空调失败：房间不存在")));
+        }
+
+        // 固定的默认参数
+        AirConditioner.Mode mode = AirConditioner.Mode.COOLING;
+        AirConditioner.FanSpeed fanSpeed = AirConditioner.FanSpeed.MEDIUM;
+        Double targetTemp = 25.0;
+
+        return dispatch(() -> commandDispatcher.submit(roomId, () -> acService.createRequest(roomId, mode, fanSpeed, targetTemp))
+                .thenApply(assignedAcId -> {
+                    if (assignedAcId == null) {
+                        return ResponseEntity.badRequest()
+                                .body(AirConditionerStartResponse.failure("开启空调失败：房间不存在"));
+                    }
+                    return ResponseEntity.ok(AirConditionerStartResponse.success(
+                            assignedAcId,
+                            mode.toString(),
+                            fanSpeed.toString(),
+                            targetTemp
+                    ));
+                }));
+    }
+
+    // 调整空调设置（模式、温度、风速都是可选参数），合并窗口与 MVC 节点共用同一个指令分发器
+    @PutMapping("/room/{roomId}/adjust")
+    public Mono<ResponseEntity<String>> adjustAirConditioner(
+            @PathVariable Integer roomId,
+            @RequestParam(required = false) AirConditioner.Mode mode,
+            @RequestParam(required = false) AirConditioner.FanSpeed fanSpeed,
+            @RequestParam(required = false) Double targetTemp) {
+
+        // 至少需要提供一个参数
+        if (mode == null && fanSpeed == null && targetTemp == null) {
+            return Mono.just(ResponseEntity.badRequest().body("调整失败：至少需要提供一个参数（mode、fanSpeed或targetTemp）"));
+        }
+        if (roomService.getRoomById(roomId).isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest().body("调整失败：房间没有活跃的空调请求，请先开启空调"));
+        }
+
+        AcCommandDispatcher.AdjustSettings settings = new AcCommandDispatcher.AdjustSettings(mode, fanSpeed, targetTemp);
+        return dispatch(() -> commandDispatcher.submitAdjust(roomId, settings, merged -> acService.adjustActiveRequest(roomId, merged))
+                .thenApply(result -> switch (result) {
+                    case APPLIED -> ResponseEntity.ok("空调设置已调整");
+                    case NO_ACTIVE_REQUEST -> ResponseEntity.badRequest().body("调整失败：房间没有活跃的空调请求，请先开启空调");
+                    case FAILED -> ResponseEntity.badRequest().body("调整空调设置失败");
+                }));
+    }
+
+    // 关闭房间空调（不管是正在服务还是等待中的请求）
+    @PostMapping("/room/{roomId}/cancel")
+    public Mono<ResponseEntity<String>> cancelRequest(@PathVariable Integer roomId) {
+        if (roomService.getRoomById(roomId).isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest().body("关闭空调失败：房间没有正在运行的空调"));
+        }
+        return dispatch(() -> commandDispatcher.submit(roomId, () -> acService.cancelRequest(roomId))
+                .thenApply(success -> {
+                    if (success) {
+                        return ResponseEntity.ok("空调已关闭");
+                    } else {
+                        return ResponseEntity.badRequest().body("关闭空调失败：房间没有正在运行的空调");
+                    }
+                }));
+    }
+
+    // 批量开启、调整、关闭多个房间的空调，整批在一个事务里写入，放到 boundedElastic 上执行
+    @PostMapping("/bulk")
+    public Mono<ResponseEntity<BulkAcCommandResult>> applyBulkCommands(@RequestBody List<BulkAcCommand> commands) {
+        if (commands == null || commands.isEmpty() || commands.size() > MAX_BULK_COMMANDS) {
+            BulkAcCommandResult result = new BulkAcCommandResult();
+            result.setTotal(commands != null ? commands.size() : 0);
+            result.setError("批量指令数量必须在1到" + MAX_BULK_COMMANDS + "之间");
+            return Mono.just(ResponseEntity.badRequest().body(result));
+        }
+        return Mono.fromCallable(() -> ResponseEntity.ok(acService.applyBulkCommands(commands)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // 获取当前等待队列
+    @GetMapping("/queue/waiting")
+    public ResponseEntity<List<Integer>> getWaitingQueue() {
+        return ResponseEntity.ok(schedulerService.getWaitingRooms());
+    }
+
+    // 获取当前服务集合：需要等调度锁，调度周期持锁期间不占用事件循环
+    @GetMapping("/queue/service")
+    public Mono<ResponseEntity<List<Integer>>> getServiceSet() {
+        return Mono.fromCallable(() -> ResponseEntity.ok(schedulerService.getServiceRooms()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // 获取所有房间的空调分配情况
+    @GetMapping("/rooms/assignment")
+    public Mono<ResponseEntity<byte[]>> getRoomsAcAssignment(
+            ServerWebExchange exchange,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        String etag = monitorViewService.roomAssignmentEtag();
+        if (exchange.checkNotModified(etag)) {
+            return Mono.empty();
+        }
+        return Mono.just(snapshotCache.get("rooms-assignment", etag, () -> {
+            List<RoomAssignmentView> rooms = monitorViewService.getRoomAssignmentViews();
+            Map<String, Object> result = new HashMap<>();
+            result.put("rooms", rooms);
+            result.put("total", rooms.size());
+            return result;
+        }).toResponse(acceptEncoding));
+    }
+
+    // 调度队列状态：同一版本已有缓存时直接返回，否则通过 R2DBC 查询后组装并缓存
+    @GetMapping("/queue/status")
+    public Mono<ResponseEntity<byte[]>> getQueueStatus(
+            ServerWebExchange exchange,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        String etag = monitorViewService.queueStatusEtag();
+        if (exchange.checkNotModified(etag)) {
+            return Mono.empty();
+        }
+        EncodedSnapshot cached = snapshotCache.getIfCurrent("queue-status", etag);
+        if (cached != null) {
+            return Mono.just(cached.toResponse(acceptEncoding));
+        }
+        return reactiveViewService.getQueueStatus()
+                .map(view -> snapshotCache.get("queue-status", etag, () -> view).toResponse(acceptEncoding));
+    }
+
+    // 调度队列状态推送（SSE）：连接时发送快照，之后只在状态变化时推送差异
+    @GetMapping(value = "/queue/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamQueueStatus(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return queueStatusStream.subscribe(lastEventId);
+    }
+
+    // 调试接口：手动触发队列同步和调度
+    @PostMapping("/debug/resync")
+    public Mono<ResponseEntity<String>> resyncQueues() {
+        return Mono.fromCallable(() -> {
+                    schedulerService.resyncWaitingQueue();
+                    return ResponseEntity.ok("队列同步完成，等待队列已重新处理");
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> Mono.just(ResponseEntity.badRequest().body("队列同步失败：" + e.getMessage())));
+    }
+
+    // 指令交给分发器按房间排队执行，事件循环只订阅执行结果；同一房间排队过多时返回503
+    private static <T> Mono<ResponseEntity<T>> dispatch(Supplier<CompletableFuture<ResponseEntity<T>>> command) {
+        try {
+            return Mono.fromFuture(command.get());
+        } catch (RejectedExecutionException e) {
+            return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+    }
+}
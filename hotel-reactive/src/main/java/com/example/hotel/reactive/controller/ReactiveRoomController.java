@@ -0,0 +1,77 @@
+package com.example.hotel.reactive.controller;
+
+import com.example.hotel.dto.RoomPanelView;
+import com.example.hotel.entity.Room;
+import com.example.hotel.reactive.service.ReactiveMonitorViewService;
+import com.example.hotel.service.MonitorViewService;
+import com.example.hotel.service.RoomChangeTracker;
+import com.example.hotel.service.RoomService;
+import com.example.hotel.service.SnapshotCache;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * /api/rooms/** 的 WebFlux 版本，与 MVC 节点的 RoomController 相同
+ * 面板长轮询不占用线程：等待房间版本号变化的 future 完成后，通过 R2DBC 查询活跃请求并组装面板状态
+ */
+@RestController
+@RequestMapping("/api/rooms")
+public class ReactiveRoomController {
+
+    private final RoomService roomService;
+    private final RoomChangeTracker changeTracker;
+    private final MonitorViewService monitorViewService;
+    private final ReactiveMonitorViewService reactiveViewService;
+    private final SnapshotCache snapshotCache;
+
+    public ReactiveRoomController(RoomService roomService, RoomChangeTracker changeTracker,
+                                  MonitorViewService monitorViewService,
+                                  ReactiveMonitorViewService reactiveViewService,
+                                  SnapshotCache snapshotCache) {
+        this.roomService = roomService;
+        this.changeTracker = changeTracker;
+        this.monitorViewService = monitorViewService;
+        this.reactiveViewService = reactiveViewService;
+        this.snapshotCache = snapshotCache;
+    }
+
+    // 房间总版本号作为弱ETag，房间未变化时返回304；同一版本的响应字节只序列化一次
+    @GetMapping
+    public Mono<ResponseEntity<byte[]>> getAllRooms(
+            ServerWebExchange exchange,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        String etag = monitorViewService.roomAssignmentEtag();
+        if (exchange.checkNotModified(etag)) {
+            return Mono.empty();
+        }
+        return Mono.just(snapshotCache.get("rooms", etag, roomService::getAllRooms).toResponse(acceptEncoding));
+    }
+
+    @GetMapping("/{roomId}")
+    public ResponseEntity<Room> getRoomById(@PathVariable Integer roomId) {
+        return roomService.getRoomById(roomId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // 房间控制面板长轮询：房间版本号超过 since 时立即返回最新状态，否则最多等待 timeout 毫秒后返回当前状态
+    // 不带 since 时直接返回当前状态
+    @GetMapping("/{roomId}/changes")
+    public Mono<ResponseEntity<RoomPanelView>> awaitRoomChange(@PathVariable Integer roomId,
+                                                               @RequestParam(required = false) Long since,
+                                                               @RequestParam(defaultValue = "25000") long timeout) {
+        if (roomService.getRoomById(roomId).isEmpty()) {
+            return Mono.just(ResponseEntity.notFound().build());
+        }
+        Mono<Long> change = since == null
+                ? Mono.just(changeTracker.version(roomId))
+                : Mono.fromFuture(changeTracker.awaitChange(roomId, since,
+                        Math.max(0, Math.min(timeout, RoomChangeTracker.MAX_WAIT_MILLIS))));
+        return change.flatMap(version -> reactiveViewService.getRoomPanel(roomId, version))
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+}
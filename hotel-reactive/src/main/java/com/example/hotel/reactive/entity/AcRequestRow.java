@@ -0,0 +1,50 @@
+package com.example.hotel.reactive.entity;
+
+import com.example.hotel.dto.QueueEntryView;
+import com.example.hotel.entity.AirConditioner;
+import com.example.hotel.entity.AirConditionerRequest;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * 空调请求表的 R2DBC 只读映射，列与 JPA 实体 AirConditionerRequest 相同
+ */
+@Table("air_conditioner_request")
+public record AcRequestRow(
+        @Id @Column("request_id") Long id,
+        Integer roomId,
+        AirConditioner.Mode mode,
+        AirConditioner.FanSpeed fanSpeed,
+        double targetTemp,
+        double currentRoomTemp,
+        LocalDateTime requestTime,
+        Integer assignedAcId,
+        int priority,
+        boolean active,
+        Long version) {
+
+    // 转为 JPA 实体，/api/ac/room/{roomId} 与 MVC 节点返回相同的JSON
+    public AirConditionerRequest toRequest() {
+        return AirConditionerRequest.builder()
+                .id(id)
+                .roomId(roomId)
+                .mode(mode)
+                .fanSpeed(fanSpeed)
+                .targetTemp(targetTemp)
+                .currentRoomTemp(currentRoomTemp)
+                .requestTime(requestTime)
+                .assignedAcId(assignedAcId)
+                .priority(priority)
+                .active(active)
+                .version(version)
+                .build();
+    }
+
+    public QueueEntryView toQueueEntry() {
+        return new QueueEntryView(roomId, mode, fanSpeed, targetTemp, currentRoomTemp, priority,
+                requestTime, assignedAcId);
+    }
+}
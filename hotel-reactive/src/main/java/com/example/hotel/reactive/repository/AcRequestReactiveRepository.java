@@ -0,0 +1,22 @@
+package com.example.hotel.reactive.repository;
+
+import com.example.hotel.reactive.entity.AcRequestRow;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 空调请求的 R2DBC 仓库，对应 AirConditionerRequestRepository 中监控和面板使用的查询
+ */
+public interface AcRequestReactiveRepository extends ReactiveCrudRepository<AcRequestRow, Long> {
+
+    /**
+     * 房间的活跃请求（同一房间至多一条）
+     */
+    Mono<AcRequestRow> findFirstByRoomIdAndActiveTrue(Integer roomId);
+
+    /**
+     * 所有活跃请求，按请求时间升序
+     */
+    Flux<AcRequestRow> findByActiveTrueOrderByRequestTimeAsc();
+}
@@ -0,0 +1,51 @@
+package com.example.hotel.reactive.service;
+
+import com.example.hotel.dto.QueueStatusView;
+import com.example.hotel.dto.RoomPanelView;
+import com.example.hotel.entity.AirConditionerRequest;
+import com.example.hotel.reactive.entity.AcRequestRow;
+import com.example.hotel.reactive.repository.AcRequestReactiveRepository;
+import com.example.hotel.service.MonitorViewService;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * 监控和面板读模型的响应式版本
+ * 活跃请求通过 R2DBC 查询，查询结果交给 MonitorViewService 按与 MVC 节点相同的规则组装；
+ * 组装只读取内存中的房间、空调和计费状态，不阻塞事件循环
+ */
+@Service
+public class ReactiveMonitorViewService {
+
+    private final AcRequestReactiveRepository requestRepository;
+    private final MonitorViewService monitorViewService;
+
+    public ReactiveMonitorViewService(AcRequestReactiveRepository requestRepository,
+                                      MonitorViewService monitorViewService) {
+        this.requestRepository = requestRepository;
+        this.monitorViewService = monitorViewService;
+    }
+
+    // 房间的活跃请求，没有时为空
+    public Mono<AirConditionerRequest> getRoomRequest(Integer roomId) {
+        return requestRepository.findFirstByRoomIdAndActiveTrue(roomId).map(AcRequestRow::toRequest);
+    }
+
+    // 调度队列状态
+    public Mono<QueueStatusView> getQueueStatus() {
+        return requestRepository.findByActiveTrueOrderByRequestTimeAsc()
+                .map(AcRequestRow::toQueueEntry)
+                .collectList()
+                .map(monitorViewService::getQueueStatus);
+    }
+
+    // 房间控制面板状态，房间不存在时为空
+    public Mono<RoomPanelView> getRoomPanel(Integer roomId, long version) {
+        return getRoomRequest(roomId)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .mapNotNull(request -> monitorViewService.getRoomPanel(roomId, version, request.orElse(null)));
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.hotel.reactive.service;
+
+import com.example.hotel.dto.QueueStatusDiff;
+import com.example.hotel.dto.QueueStatusView;
+import com.example.hotel.event.AirConditionerEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 调度队列状态推送（SSE）的响应式版本，事件格式与 MVC 节点的 QueueStatusBroadcaster 相同
+ * 所有连接共享一个版本流：有连接时按推送周期检查，空调事件标记状态变化后才通过 R2DBC 查询一次，
+ * 与上一版本比较后差异只序列化一次；没有连接时不查询。
+ * 新连接先收到最新版本的完整快照，之后收到差异；事件ID为“启动纪元-版本号”，断线重连时 Last-Event-ID
+ * 与本次启动的最新版本相同则不重发快照，否则重新发送快照（不保留历史差异）。每个连接在事件循环上按背压写出，积压过多的连接被断开
+ */
+@Service
+public class ReactiveQueueStatusStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveQueueStatusStream.class);
+
+    // 单个连接排队未写出的事件上限，超过时断开，浏览器重连后从快照重新开始
+    private static final int MAX_QUEUED_EVENTS = 64;
+
+    private final ReactiveMonitorViewService monitorViewService;
+    private final ObjectMapper objectMapper;
+    private final Duration heartbeat;
+    // 本次启动的纪元，作为事件ID的前缀，重启后旧ID不会与新版本号混淆
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Counter dropped;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+    private final AtomicLong lastVersion = new AtomicLong();
+    private final Flux<Snapshot> snapshots;
+    // 版本流的当前版本，只在版本流内顺序读写
+    private Snapshot latest;
+
+    // 一个版本：view 为完整状态，diffJson 为相对上一版本的差异（版本流重新开始后的第一个版本没有差异）
+    private final class Snapshot {
+        private final long version;
+        private final QueueStatusView view;
+        private final String diffJson;
+        private volatile String snapshotJson;
+
+        Snapshot(long version, QueueStatusView view, String diffJson) {
+            this.version = version;
+            this.view = view;
+            this.diffJson = diffJson;
+        }
+
+        String snapshotJson() {
+            String json = snapshotJson;
+            if (json == null) {
+                json = toJson(QueueStatusDiff.full(version, view));
+                snapshotJson = json;
+            }
+            return json;
+        }
+
+        // 应用新查询到的状态，没有差异时仍为当前版本
+        Snapshot next(QueueStatusView next) {
+            QueueStatusDiff diff = QueueStatusDiff.between(version + 1, view, next);
+            return diff == null ? this : new Snapshot(lastVersion.incrementAndGet(), next, toJson(diff));
+        }
+    }
+
+    public ReactiveQueueStatusStream(ReactiveMonitorViewService monitorViewService, ObjectMapper objectMapper,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${hotel.monitor.push.interval-ms:500}") long intervalMillis,
+                                     @Value("${hotel.monitor.push.heartbeat-ms:15000}") long heartbeatMillis) {
+        this.monitorViewService = monitorViewService;
+        this.objectMapper = objectMapper;
+        this.heartbeat = Duration.ofMillis(heartbeatMillis);
+        Gauge.builder("hotel.monitor.push.subscribers", subscribers, AtomicInteger::get)
+                .description("队列监控推送的订阅连接数")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("hotel.monitor.push.dropped")
+                .description("因积压或写出停滞被断开的推送连接数")
+                .register(meterRegistry);
+        // 版本流在第一个连接到来时开始、最后一个连接断开时停止；重新开始时先查询一次
+        this.snapshots = Flux.defer(() -> {
+                    dirty.set(true);
+                    latest = null;
+                    return Flux.interval(Duration.ZERO, Duration.ofMillis(intervalMillis));
+                })
+                .onBackpressureDrop()
+                .concatMap(tick -> dirty.getAndSet(false) ? query() : Mono.<QueueStatusView>empty(), 1)
+                .mapNotNull(this::apply)
+                .replay(1)
+                .refCount();
+    }
+
+    /**
+     * 空调状态变化（请求、分配、释放、调整、调度周期）
+     */
+    @EventListener
+    public void onAirConditionerEvent(AirConditionerEvent event) {
+        dirty.set(true);
+    }
+
+    /**
+     * 订阅推送，lastEventId 为浏览器重连时带上的最后一个事件ID
+     */
+    public Flux<ServerSentEvent<String>> subscribe(String lastEventId) {
+        return Flux.defer(() -> {
+            AtomicBoolean caughtUp = new AtomicBoolean();
+            Flux<ServerSentEvent<String>> events = snapshots.concatMap(snapshot -> {
+                if (caughtUp.compareAndSet(false, true)) {
+                    // 连接的第一个事件：浏览器已有该版本时不重发快照
+                    return lastEventId != null && lastEventId.trim().equals(eventId(snapshot.version))
+                            ? Flux.empty()
+                            : Flux.just(event(snapshot.version, "snapshot", snapshot.snapshotJson()));
+                }
+                return Flux.just(event(snapshot.version, "diff", snapshot.diffJson));
+            });
+            Flux<ServerSentEvent<String>> heartbeats = Flux.interval(heartbeat, heartbeat)
+                    .onBackpressureDrop()
+                    .map(tick -> ServerSentEvent.<String>builder().comment("heartbeat").build());
+            return Flux.merge(events, heartbeats)
+                    .onBackpressureBuffer(MAX_QUEUED_EVENTS, event -> {
+                        dropped.increment();
+                        logger.debug("队列监控推送连接已断开: 推送积压");
+                    })
+                    .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                    .doFinally(signal -> subscribers.decrementAndGet());
+        });
+    }
+
+    // 应用新查询到的状态，产生新版本时返回它，没有差异时返回null
+    private Snapshot apply(QueueStatusView view) {
+        Snapshot current = latest;
+        Snapshot next = current == null ? new Snapshot(lastVersion.incrementAndGet(), view, null) : current.next(view);
+        latest = next;
+        return next != current ? next : null;
+    }
+
+    // 查询失败时保留变化标记，下一个推送周期重试，不结束共享的版本流
+    private Mono<QueueStatusView> query() {
+        return monitorViewService.getQueueStatus()
+                .onErrorResume(e -> {
+                    logger.warn("查询调度队列状态失败", e);
+                    dirty.set(true);
+                    return Mono.empty();
+                });
+    }
+
+    private String eventId(long version) {
+        return epoch + "-" + version;
+    }
+
+    private ServerSentEvent<String> event(long version, String name, String json) {
+        return ServerSentEvent.<String>builder()
+                .id(eventId(version))
+                .event(name)
+                .data(json)
+                .build();
+    }
+
+    private String toJson(QueueStatusDiff diff) {
+        try {
+            return objectMapper.writeValueAsString(diff);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
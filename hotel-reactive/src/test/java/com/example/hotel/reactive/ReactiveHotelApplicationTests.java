@@ -0,0 +1,99 @@
+package com.example.hotel.reactive;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * WebFlux 节点的接口测试：开启、查询、关闭走与 MVC 节点相同的契约，活跃请求和队列状态通过 R2DBC 读取
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactive;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.username=sa",
+        "spring.r2dbc.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.sql.init.mode=never",
+        "hotel.ac.rate-limit.enabled=false",
+        "hotel.ac.command.adjust-window-ms=0"
+})
+class ReactiveHotelApplicationTests {
+
+    @Autowired
+    private WebTestClient webClient;
+
+    @Test
+    void commandsAndReadsKeepTheMvcContract() {
+        WebTestClient client = webClient.mutate().responseTimeout(Duration.ofSeconds(10)).build();
+
+        client.post().uri("/api/ac/room/1/start").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.assignedAcId").isNotEmpty();
+
+        client.get().uri("/api/ac/room/1").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.roomId").isEqualTo(1)
+                .jsonPath("$.active").isEqualTo(true);
+
+        client.put().uri("/api/ac/room/1/adjust?targetTemp=22").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("空调设置已调整");
+
+        String etag = client.get().uri("/api/ac/queue/status").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.serviceCount").isEqualTo(1)
+                .jsonPath("$.waitingCount").isEqualTo(0)
+                .returnResult()
+                .getResponseHeaders().getETag();
+        assertNotNull(etag);
+        client.get().uri("/api/ac/queue/status").header(HttpHeaders.IF_NONE_MATCH, etag).exchange()
+                .expectStatus().isNotModified();
+
+        // 推送连接的第一个事件是完整快照
+        ServerSentEvent<String> first = client.get().uri("/api/ac/queue/stream").exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() { })
+                .getResponseBody()
+                .blockFirst(Duration.ofSeconds(10));
+        assertNotNull(first);
+        assertEquals("snapshot", first.event());
+        // 事件ID带启动纪元前缀
+        assertTrue(first.id().matches("[0-9a-z]+-\\d+"), first.id());
+        assertTrue(first.data().contains("\"serviceCount\":1"), first.data());
+
+        client.get().uri("/api/rooms/1/changes").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.roomId").isEqualTo(1)
+                .jsonPath("$.version").isNumber()
+                .jsonPath("$.targetTemp").isEqualTo(22.0);
+        client.get().uri("/api/rooms/99/changes").exchange()
+                .expectStatus().isNotFound();
+
+        client.post().uri("/api/ac/room/1/cancel").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("空调已关闭");
+        client.get().uri("/api/ac/room/1").exchange()
+                .expectStatus().isOk()
+                .expectBody().isEmpty();
+        client.post().uri("/api/ac/room/1/cancel").exchange()
+                .expectStatus().isBadRequest();
+    }
+}
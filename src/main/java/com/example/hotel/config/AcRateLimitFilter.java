@@ -0,0 +1,73 @@
+package com.example.hotel.config;
+
+import com.example.hotel.service.AcRateLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 空调开启、调整、关闭接口的限流
+ * 按来源地址和房间号向 AcRateLimiter 取令牌，取不到时返回429并带上 Retry-After
+ */
+@Component
+public class AcRateLimitFilter extends OncePerRequestFilter {
+
+    private static final Pattern COMMAND_PATH = Pattern.compile("^/api/ac/room/(\\d+)/(start|adjust|cancel)$");
+
+    private final AcRateLimiter rateLimiter;
+
+    public AcRateLimitFilter(AcRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !rateLimiter.isEnabled() || "GET".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Matcher matcher = COMMAND_PATH.matcher(request.getRequestURI().substring(request.getContextPath().length()));
+        if (!matcher.matches()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        Integer roomId;
+        try {
+            roomId = Integer.valueOf(matcher.group(1));
+        } catch (NumberFormatException e) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long wait = rateLimiter.tryAcquire(request.getRemoteAddr(), roomId);
+        if (wait > 0) {
+            reject(response, wait);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    private void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        // Retry-After 以秒为单位，向上取整
+        long retryAfter = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write("请求过于频繁，请稍后重试");
+    }
+}
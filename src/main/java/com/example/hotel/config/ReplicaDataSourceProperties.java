@@ -0,0 +1,31 @@
+package com.example.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 只读副本数据源配置
+ * 对应 application.properties 中 hotel.datasource.replica.* 配置项
+ */
+@Data
+@ConfigurationProperties(prefix = "hotel.datasource.replica")
+public class ReplicaDataSourceProperties {
+
+    private boolean enabled = false;           // 是否启用读写分离
+
+    private String url;                        // 副本JDBC地址
+    private String username;                   // 副本用户名
+    private String password;                   // 副本密码
+    private String driverClassName;            // 驱动类名，为空时按URL推断
+
+    private int maximumPoolSize = 10;          // 副本连接池大小
+
+    /**
+     * 查询副本延迟（秒）的SQL，结果取第一行第一列
+     * 为空时只做连通性检查（SELECT 1），认为延迟为0
+     */
+    private String lagQuery;
+
+    private long maxLagSeconds = 5;            // 允许的最大延迟，超过则回退到主库
+    private long lagCheckIntervalMs = 5000;    // 延迟检查间隔（毫秒）
+}
@@ -0,0 +1,71 @@
+package com.example.hotel.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+
+/**
+ * 副本延迟监控
+ * 定期检查副本连通性和复制延迟，延迟超限或检查失败时让只读流量回退到主库
+ */
+public class ReplicaLagMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final ReplicaRoutingDataSource routingDataSource;
+    private final String lagQuery;
+    private final long maxLagSeconds;
+
+    // 最近一次观测到的延迟（秒），-1表示检查失败
+    private volatile long lastLagSeconds = 0;
+
+    public ReplicaLagMonitor(DataSource replica, ReplicaRoutingDataSource routingDataSource,
+                             String lagQuery, long maxLagSeconds) {
+        this.replicaJdbcTemplate = new JdbcTemplate(replica);
+        this.routingDataSource = routingDataSource;
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLagSeconds;
+    }
+
+    /**
+     * 执行一次延迟检查并更新路由状态
+     */
+    @Scheduled(fixedDelayString = "${hotel.datasource.replica.lag-check-interval-ms:5000}")
+    public void checkLag() {
+        boolean wasAvailable = routingDataSource.isReplicaAvailable();
+        boolean available;
+        try {
+            if (lagQuery == null || lagQuery.isBlank()) {
+                replicaJdbcTemplate.queryForObject("SELECT 1", Integer.class);
+                lastLagSeconds = 0;
+            } else {
+                Number lag = replicaJdbcTemplate.queryForObject(lagQuery, Number.class);
+                // 复制线程停止时MySQL返回NULL，视为不可用
+                lastLagSeconds = lag != null ? lag.longValue() : -1;
+            }
+            available = lastLagSeconds >= 0 && lastLagSeconds <= maxLagSeconds;
+        } catch (Exception e) {
+            lastLagSeconds = -1;
+            available = false;
+            logger.warn("副本延迟检查失败: {}", e.getMessage());
+        }
+
+        routingDataSource.setReplicaAvailable(available);
+        if (wasAvailable != available) {
+            if (available) {
+                logger.info("副本恢复可用，只读查询重新路由到副本，延迟: {}秒", lastLagSeconds);
+            } else {
+                logger.warn("副本不可用或延迟超限，只读查询回退到主库，延迟: {}秒，上限: {}秒",
+                        lastLagSeconds, maxLagSeconds);
+            }
+        }
+    }
+
+    public long getLastLagSeconds() {
+        return lastLagSeconds;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.hotel.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 读写分离路由数据源
+ * 只读事务（@Transactional(readOnly = true)）路由到副本，其余一律走主库；
+ * 副本不可用或延迟超限时，只读事务也回退到主库
+ *
+ * 目标数据源按 Route 设置（见 ReadReplicaConfig），由 Spring 调用 afterPropertiesSet 完成初始化
+ *
+ * 注意：必须包在 LazyConnectionDataSourceProxy 里使用，
+ * 否则JPA在事务只读标记生效之前就已经拿到了物理连接
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        PRIMARY, REPLICA
+    }
+
+    // 副本是否可读，由 ReplicaLagMonitor 维护
+    private volatile boolean replicaAvailable = true;
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return currentRoute();
+    }
+
+    // 当前线程的连接应该路由到哪里
+    public Route currentRoute() {
+        if (replicaAvailable && TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return Route.REPLICA;
+        }
+        return Route.PRIMARY;
+    }
+
+    public boolean isReplicaAvailable() {
+        return replicaAvailable;
+    }
+
+    public void setReplicaAvailable(boolean replicaAvailable) {
+        this.replicaAvailable = replicaAvailable;
+    }
+}
@@ -2,36 +2,75 @@ package com.example.hotel.controller;
 
 import com.example.hotel.entity.AirConditioner;
 import com.example.hotel.entity.AirConditionerRequest;
+import com.example.hotel.service.AcCommandDispatcher;
 import com.example.hotel.service.AirConditionerService;
 import com.example.hotel.service.AirConditionerSchedulerService;
+import com.example.hotel.service.MonitorViewService;
+import com.example.hotel.service.QueueStatusBroadcaster;
+import com.example.hotel.service.RoomService;
+import com.example.hotel.service.SnapshotCache;
 import com.example.hotel.dto.AirConditionerStartResponse;
+import com.example.hotel.dto.BulkAcCommand;
+import com.example.hotel.dto.BulkAcCommandResult;
+import com.example.hotel.dto.RoomAssignmentView;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.ArrayList;
-import java.time.Duration;
-import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/ac")
 public class AirConditionerController {
     
+    // 单次批量指令的房间数上限
+    private static final int MAX_BULK_COMMANDS = 1000;
+    
     private final AirConditionerService acService;
     private final AirConditionerSchedulerService schedulerService;
+    private final MonitorViewService monitorViewService;
+    private final QueueStatusBroadcaster queueStatusBroadcaster;
+    private final SnapshotCache snapshotCache;
+    private final AcCommandDispatcher commandDispatcher;
+    private final RoomService roomService;
     
     public AirConditionerController(AirConditionerService acService, 
-                                  AirConditionerSchedulerService schedulerService) {
+                                  AirConditionerSchedulerService schedulerService,
+                                  MonitorViewService monitorViewService,
+                                  QueueStatusBroadcaster queueStatusBroadcaster,
+                                  SnapshotCache snapshotCache,
+                                  AcCommandDispatcher commandDispatcher,
+                                  RoomService roomService) {
         this.acService = acService;
         this.schedulerService = schedulerService;
+        this.monitorViewService = monitorViewService;
+        this.queueStatusBroadcaster = queueStatusBroadcaster;
+        this.snapshotCache = snapshotCache;
+        this.commandDispatcher = commandDispatcher;
+        this.roomService = roomService;
     }
     
     // 获取所有空调状态
+    // 以下监控接口都带弱ETag，状态未变化时直接返回304，不组装也不查询；
+    // 需要返回内容时使用按版本缓存的JSON/gzip字节，同一版本只序列化一次
     @GetMapping("/all")
-    public ResponseEntity<List<AirConditioner>> getAllAirConditioners() {
-        return ResponseEntity.ok(acService.getAllAirConditioners());
+    public ResponseEntity<byte[]> getAllAirConditioners(
+            WebRequest webRequest,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        String etag = monitorViewService.airConditionersEtag();
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return snapshotCache.get("ac-all", etag, monitorViewService::getAirConditionerViews)
+                .toResponse(acceptEncoding);
     }
     
     // 获取单个空调状态
@@ -67,67 +106,107 @@ public class AirConditionerController {
         */
     }
     
+    // 开启、调整、关闭指令交给指令分发器按房间排队执行，请求线程不等待数据库写入和调度计算；
+    // 同一房间的指令按到达顺序执行，排队过多时返回503
+    
     // 开启空调（使用固定默认参数：制冷模式，中风，25度）
     @PostMapping("/room/{roomId}/start")
-    public ResponseEntity<AirConditionerStartResponse> startAirConditioner(@PathVariable Integer roomId) {
+    public CompletableFuture<ResponseEntity<AirConditionerStartResponse>> startAirConditioner(@PathVariable Integer roomId) {
+        if (roomService.getRoomById(roomId).isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest()
+                    .body(AirConditionerStartResponse.failure("开启空调失败：房间不存在")));
+        }
         
         // 固定的默认参数
         AirConditioner.Mode mode = AirConditioner.Mode.COOLING;
         AirConditioner.FanSpeed fanSpeed = AirConditioner.FanSpeed.MEDIUM;
         Double targetTemp = 25.0;
         
-        Integer assignedAcId = acService.createRequest(roomId, mode, fanSpeed, targetTemp);
-        if (assignedAcId == null) {
-            return ResponseEntity.badRequest()
-                    .body(AirConditionerStartResponse.failure("开启空调失败：房间不存在"));
-        } else {
-            return ResponseEntity.ok(AirConditionerStartResponse.success(
-                    assignedAcId, 
-                    mode.toString(), 
-                    fanSpeed.toString(), 
-                    targetTemp
-            ));
+        try {
+            return commandDispatcher.submit(roomId, () -> acService.createRequest(roomId, mode, fanSpeed, targetTemp))
+                    .thenApply(assignedAcId -> {
+                        if (assignedAcId == null) {
+                            return ResponseEntity.badRequest()
+                                    .body(AirConditionerStartResponse.failure("开启空调失败：房间不存在"));
+                        }
+                        return ResponseEntity.ok(AirConditionerStartResponse.success(
+                                assignedAcId, 
+                                mode.toString(), 
+                                fanSpeed.toString(), 
+                                targetTemp
+                        ));
+                    });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
         }
     }
     
     // 调整空调设置（模式、温度、风速都是可选参数）
     @PutMapping("/room/{roomId}/adjust")
-    public ResponseEntity<String> adjustAirConditioner(
+    public CompletableFuture<ResponseEntity<String>> adjustAirConditioner(
             @PathVariable Integer roomId,
             @RequestParam(required = false) AirConditioner.Mode mode,
             @RequestParam(required = false) AirConditioner.FanSpeed fanSpeed,
             @RequestParam(required = false) Double targetTemp) {
         
-        // 检查房间是否有活跃的空调请求
-        AirConditionerRequest currentRequest = acService.getRoomRequest(roomId);
-        if (currentRequest == null || !currentRequest.isActive()) {
-            return ResponseEntity.badRequest().body("调整失败：房间没有活跃的空调请求，请先开启空调");
-        }
-        
         // 至少需要提供一个参数
         if (mode == null && fanSpeed == null && targetTemp == null) {
-            return ResponseEntity.badRequest().body("调整失败：至少需要提供一个参数（mode、fanSpeed或targetTemp）");
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body("调整失败：至少需要提供一个参数（mode、fanSpeed或targetTemp）"));
+        }
+        if (roomService.getRoomById(roomId).isEmpty()) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body("调整失败：房间没有活跃的空调请求，请先开启空调"));
         }
         
-        boolean success = acService.adjustAirConditionerSettings(roomId, mode, fanSpeed, targetTemp);
-        if (success) {
-            return ResponseEntity.ok("空调设置已调整");
-        } else {
-            return ResponseEntity.badRequest().body("调整空调设置失败");
+        // 连续点击产生的调整在合并窗口内合并为一条，按合并后的参数执行一次，所有请求返回同一结果
+        AcCommandDispatcher.AdjustSettings settings = new AcCommandDispatcher.AdjustSettings(mode, fanSpeed, targetTemp);
+        try {
+            return commandDispatcher.submitAdjust(roomId, settings, merged -> acService.adjustActiveRequest(roomId, merged))
+                    .thenApply(result -> switch (result) {
+                        case APPLIED -> ResponseEntity.ok("空调设置已调整");
+                        case NO_ACTIVE_REQUEST -> ResponseEntity.badRequest().body("调整失败：房间没有活跃的空调请求，请先开启空调");
+                        case FAILED -> ResponseEntity.badRequest().body("调整空调设置失败");
+                    });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
         }
     }
     
     // 关闭房间空调（不管是正在服务还是等待中的请求）
     @PostMapping("/room/{roomId}/cancel")
-    public ResponseEntity<String> cancelRequest(@PathVariable Integer roomId) {
-        boolean success = acService.cancelRequest(roomId);
-        if (success) {
-            return ResponseEntity.ok("空调已关闭");
-        } else {
-            return ResponseEntity.badRequest().body("关闭空调失败：房间没有正在运行的空调");
+    public CompletableFuture<ResponseEntity<String>> cancelRequest(@PathVariable Integer roomId) {
+        if (roomService.getRoomById(roomId).isEmpty()) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body("关闭空调失败：房间没有正在运行的空调"));
+        }
+        try {
+            return commandDispatcher.submit(roomId, () -> acService.cancelRequest(roomId))
+                    .thenApply(success -> {
+                        if (success) {
+                            return ResponseEntity.ok("空调已关闭");
+                        } else {
+                            return ResponseEntity.badRequest().body("关闭空调失败：房间没有正在运行的空调");
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
         }
     }
     
+    // 批量开启、调整、关闭多个房间的空调（夜间调温、整层关机等）
+    // 整批指令一次写入、调度器只做一次调度，返回每个房间的结果；单条指令失败不影响同批其他房间
+    @PostMapping("/bulk")
+    public ResponseEntity<BulkAcCommandResult> applyBulkCommands(@RequestBody List<BulkAcCommand> commands) {
+        if (commands == null || commands.isEmpty() || commands.size() > MAX_BULK_COMMANDS) {
+            BulkAcCommandResult result = new BulkAcCommandResult();
+            result.setTotal(commands != null ? commands.size() : 0);
+            result.setError("批量指令数量必须在1到" + MAX_BULK_COMMANDS + "之间");
+            return ResponseEntity.badRequest().body(result);
+        }
+        return ResponseEntity.ok(acService.applyBulkCommands(commands));
+    }
+    
     // 获取当前等待队列
     @GetMapping("/queue/waiting")
     public ResponseEntity<List<Integer>> getWaitingQueue() {
@@ -144,92 +223,38 @@ public class AirConditionerController {
     
     // 获取所有房间的空调分配情况
     @GetMapping("/rooms/assignment")
-    public ResponseEntity<Map<String, Object>> getRoomsAcAssignment() {
-        List<com.example.hotel.entity.Room> rooms = acService.getAllRoomsWithAcAssignment();
-        Map<String, Object> result = new HashMap<>();
-        result.put("rooms", rooms);
-        result.put("total", rooms.size());
-        return ResponseEntity.ok(result);
+    public ResponseEntity<byte[]> getRoomsAcAssignment(
+            WebRequest webRequest,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        String etag = monitorViewService.roomAssignmentEtag();
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return snapshotCache.get("rooms-assignment", etag, () -> {
+            List<RoomAssignmentView> rooms = monitorViewService.getRoomAssignmentViews();
+            Map<String, Object> result = new HashMap<>();
+            result.put("rooms", rooms);
+            result.put("total", rooms.size());
+            return result;
+        }).toResponse(acceptEncoding);
     }
     
     @GetMapping("/queue/status")
-    public ResponseEntity<Map<String, Object>> getQueueStatus() {
-        Map<String, Object> response = new HashMap<>();
-        
-        // 获取所有活跃请求
-        List<AirConditionerRequest> activeRequests = acService.getAllActiveRequests();
-        
-        // 分类为服务队列和等待队列
-        List<Map<String, Object>> serviceQueue = new ArrayList<>();
-        List<Map<String, Object>> waitingQueue = new ArrayList<>();
-        
-        for (AirConditionerRequest request : activeRequests) {
-            Map<String, Object> requestInfo = new HashMap<>();
-            requestInfo.put("roomId", request.getRoomId());
-            requestInfo.put("mode", request.getMode());
-            requestInfo.put("fanSpeed", request.getFanSpeed());
-            requestInfo.put("targetTemp", request.getTargetTemp());
-            requestInfo.put("currentRoomTemp", request.getCurrentRoomTemp());
-            requestInfo.put("priority", request.getPriority());
-            requestInfo.put("requestTime", request.getRequestTime());
-            
-            if (request.getAssignedAcId() != null) {
-                // 在服务队列中
-                requestInfo.put("assignedAcId", request.getAssignedAcId());
-                requestInfo.put("status", "服务中");
-                
-                // 获取服务时长（使用调度器的计数器）
-                Integer serviceTime = schedulerService.getServiceTime(request.getRoomId());
-                requestInfo.put("serviceTime", serviceTime != null ? serviceTime : 0);
-                
-                serviceQueue.add(requestInfo);
-            } else {
-                // 在等待队列中
-                requestInfo.put("status", "等待中");
-                Integer waitingTime = schedulerService.getWaitingTime(request.getRoomId());
-                requestInfo.put("waitingTime", waitingTime != null ? waitingTime : 0);
-                waitingQueue.add(requestInfo);
-            }
+    public ResponseEntity<byte[]> getQueueStatus(
+            WebRequest webRequest,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        String etag = monitorViewService.queueStatusEtag();
+        if (webRequest.checkNotModified(etag)) {
+            return null;
         }
-        
-        // 按优先级和请求时间排序等待队列
-        waitingQueue.sort((a, b) -> {
-            int priorityCompare = Integer.compare((Integer) b.get("priority"), (Integer) a.get("priority"));
-            if (priorityCompare != 0) return priorityCompare;
-            return ((LocalDateTime) a.get("requestTime")).compareTo((LocalDateTime) b.get("requestTime"));
-        });
-        
-        // 获取空调状态
-        List<Map<String, Object>> airConditioners = new ArrayList<>();
-        for (AirConditioner ac : acService.getAllAirConditioners()) {
-            Map<String, Object> acInfo = new HashMap<>();
-            acInfo.put("acId", ac.getAcId());
-            acInfo.put("isOn", ac.getOn() != null && ac.getOn());
-            acInfo.put("servingRoomId", ac.getServingRoomId());
-            acInfo.put("mode", ac.getMode());
-            acInfo.put("fanSpeed", ac.getFanSpeed());
-            acInfo.put("targetTemp", ac.getTargetTemp());
-            acInfo.put("currentTemp", ac.getCurrentTemp());
-            
-            if (ac.getServiceStartTime() != null) {
-                long serviceMinutes = Duration.between(ac.getServiceStartTime(), LocalDateTime.now()).toMinutes();
-                acInfo.put("serviceTime", serviceMinutes);
-            } else {
-                acInfo.put("serviceTime", 0);
-            }
-            
-            airConditioners.add(acInfo);
-        }
-        
-        response.put("serviceQueue", serviceQueue);
-        response.put("waitingQueue", waitingQueue);
-        response.put("airConditioners", airConditioners);
-        response.put("totalRequests", activeRequests.size());
-        response.put("serviceCount", serviceQueue.size());
-        response.put("waitingCount", waitingQueue.size());
-        response.put("timestamp", LocalDateTime.now());
-        
-        return ResponseEntity.ok(response);
+        return snapshotCache.get("queue-status", etag, monitorViewService::getQueueStatus)
+                .toResponse(acceptEncoding);
+    }
+    
+    // 调度队列状态推送（SSE）：连接时发送快照，之后只在状态变化时推送差异
+    @GetMapping(value = "/queue/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamQueueStatus(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return queueStatusBroadcaster.subscribe(lastEventId);
     }
     
     // 调试接口：手动触发队列同步和调度
@@ -1,12 +1,17 @@
 package com.example.hotel.controller;
 
+import com.example.hotel.dto.BillDetailImportResult;
 import com.example.hotel.entity.BillDetail;
+import com.example.hotel.service.BillDetailImportService;
 import com.example.hotel.service.BillingService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -16,10 +21,12 @@ import java.util.List;
 public class BillDetailController {
 
     private final BillingService billingService;
+    private final BillDetailImportService importService;
 
     @Autowired
-    public BillDetailController(BillingService billingService) {
+    public BillDetailController(BillingService billingService, BillDetailImportService importService) {
         this.billingService = billingService;
+        this.importService = importService;
     }
 
     /**
@@ -97,8 +104,18 @@ public class BillDetailController {
         return ResponseEntity.ok(totalCost);
     }
 
+    /**
+     * 获取账单的总费用
+     */
+    @GetMapping("/bill/{billId}/total-cost")
+    public ResponseEntity<Double> getTotalCostByBillId(@PathVariable Long billId) {
+        Double totalCost = billingService.getTotalCostByBillId(billId);
+        return ResponseEntity.ok(totalCost);
+    }
+
     /**
      * 获取房间在指定时间范围的能耗统计
+     * 按服务开始时间所在整点归桶统计：整小时内开始、在 endTime 之后才结束的服务也会计入
      */
     @GetMapping("/room/{roomId}/energy-consumed")
     public ResponseEntity<Double> getEnergyConsumed(@PathVariable Integer roomId,
@@ -126,6 +143,21 @@ public class BillDetailController {
         return ResponseEntity.ok(savedDetails);
     }
 
+    /**
+     * 流式批量导入详单（用于历史数据迁移）
+     * 请求体为详单JSON数组，边解析边按分块提交，返回每个分块的结果和吞吐
+     */
+    @PostMapping(value = "/batch/stream", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BillDetailImportResult> importBillDetails(HttpServletRequest request,
+                                                                    @RequestParam(required = false) Integer chunkSize) throws IOException {
+        BillDetailImportResult result = importService.importDetails(request.getInputStream(), chunkSize);
+        // 请求体无法解析且没有任何分块提交时返回400；部分提交时返回200，由 error 字段说明中断位置
+        if (result.getError() != null && result.getCommittedRows() == 0) {
+            return ResponseEntity.badRequest().body(result);
+        }
+        return ResponseEntity.ok(result);
+    }
+
     // DTO类
     public static class CreateBillDetailRequest {
         private Long billId;
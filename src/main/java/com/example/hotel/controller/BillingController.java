@@ -1,30 +1,46 @@
 package com.example.hotel.controller;
 
+import com.example.hotel.dto.ExportJob;
+import com.example.hotel.dto.LiveChargeView;
 import com.example.hotel.entity.Bill;
 import com.example.hotel.entity.BillDetail;
 import com.example.hotel.service.BillingService;
+import com.example.hotel.service.ExportJobService;
+import com.example.hotel.service.NightAuditService;
+import com.example.hotel.util.FileDownloadWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/billing")
 public class BillingController {
     
     private final BillingService billingService;
+    private final NightAuditService nightAuditService;
+    private final ExportJobService exportJobService;
+    private final DateTimeFormatter auditFileFormatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmm");
     
     @Autowired
-    public BillingController(BillingService billingService) {
+    public BillingController(BillingService billingService, NightAuditService nightAuditService,
+                             ExportJobService exportJobService) {
         this.billingService = billingService;
+        this.nightAuditService = nightAuditService;
+        this.exportJobService = exportJobService;
     }
     
     @GetMapping("/{roomId}")
@@ -37,40 +53,104 @@ public class BillingController {
         }
     }
     
-    @GetMapping("/{roomId}/details")
-    public ResponseEntity<Resource> downloadDetails(@PathVariable Integer roomId) {
-        try {
-            String fileName = billingService.exportDetailsToExcel(roomId);
-            Path path = Paths.get("bills").resolve(fileName);
-            Resource resource = new UrlResource(path.toUri());
-            
-            return ResponseEntity.ok()
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
-                    .body(resource);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
+    // 正在服务的房间本次已累计的费用，供前端每分钟轮询
+    @GetMapping("/{roomId}/live")
+    public ResponseEntity<LiveChargeView> getLiveCharge(@PathVariable Integer roomId) {
+        LiveChargeView view = billingService.getLiveCharge(roomId);
+        if (view == null) {
+            return ResponseEntity.notFound().build();
         }
+        return ResponseEntity.ok(view);
+    }
+    
+    // 明细和账单都以流式工作簿直接写入响应输出流，不经过bills目录
+    @GetMapping("/{roomId}/details")
+    public ResponseEntity<StreamingResponseBody> downloadDetails(@PathVariable Integer roomId) {
+        StreamingResponseBody body = out -> billingService.writeDetailsExcel(roomId, out);
+        return attachment(billingService.detailsFileName(roomId), body);
     }
     
     @GetMapping("/{roomId}/bill")
-    public ResponseEntity<Resource> downloadBill(@PathVariable Integer roomId) {
+    public ResponseEntity<StreamingResponseBody> downloadBill(@PathVariable Integer roomId) {
+        Bill bill = billingService.generateBill(roomId);
+        if (bill == null) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = out -> billingService.writeBillExcel(bill, out);
+        return attachment(billingService.billFileName(roomId), body);
+    }
+    
+    // 夜审：所有入住房间的账单和明细打包为一个ZIP；夜审编号放在响应头中，用于查询本次的进度
+    @GetMapping("/night-audit")
+    public ResponseEntity<StreamingResponseBody> downloadNightAudit() {
+        String fileName = "night_audit_" + LocalDateTime.now().format(auditFileFormatter) + ".zip";
+        long runId = nightAuditService.nextRunId();
+        StreamingResponseBody body = out -> nightAuditService.exportAll(runId, out);
+        return attachmentBuilder(fileName)
+                .header("X-Night-Audit-Run", String.valueOf(runId))
+                .body(body);
+    }
+    
+    // 不指定 runId 时返回最近开始的一次夜审
+    @GetMapping("/night-audit/progress")
+    public ResponseEntity<NightAuditService.Progress> getNightAuditProgress(@RequestParam(required = false) Long runId) {
+        NightAuditService.Progress progress = runId != null
+                ? nightAuditService.getProgress(runId) : nightAuditService.getProgress();
+        if (progress == null) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok(progress);
+    }
+    
+    // 创建异步导出任务，type 为 BILL 或 DETAILS
+    @PostMapping("/{roomId}/export-jobs")
+    public ResponseEntity<ExportJob> createExportJob(@PathVariable Integer roomId,
+                                                     @RequestParam(defaultValue = "DETAILS") ExportJob.Type type) {
         try {
-            Bill bill = billingService.generateBill(roomId);
-            if (bill == null) {
-                return ResponseEntity.notFound().build();
-            }
-            
-            String fileName = billingService.exportBillToExcel(bill);
-            Path path = Paths.get("bills").resolve(fileName);
-            Resource resource = new UrlResource(path.toUri());
-            
-            return ResponseEntity.ok()
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
-                    .body(resource);
-        } catch (IOException e) {
-            return ResponseEntity.internalServerError().build();
+            return exportJobService.submit(roomId, type)
+                    .map(job -> ResponseEntity.accepted()
+                            .location(URI.create("/api/billing/export-jobs/" + job.getJobId()))
+                            .body(job))
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (RejectedExecutionException e) {
+            // 导出队列已满
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         }
     }
-} 
\ No newline at end of file
+    
+    @GetMapping("/export-jobs/{jobId}")
+    public ResponseEntity<ExportJob> getExportJob(@PathVariable String jobId) {
+        return exportJobService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
+    // 导出文件支持 ETag/If-None-Match 和断点续传（Range），由文件通道直接发送
+    @GetMapping("/export-jobs/{jobId}/file")
+    public void downloadExportJob(@PathVariable String jobId, HttpServletRequest request,
+                                  HttpServletResponse response) throws IOException {
+        ExportJob job = exportJobService.getJob(jobId).orElse(null);
+        if (job == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Path file = exportJobService.getResult(job).orElse(null);
+        if (file == null) {
+            // 任务未完成或失败；结果已被淘汰时任务已重新开始生成，客户端轮询任务状态后再下载
+            response.setStatus(HttpServletResponse.SC_CONFLICT);
+            return;
+        }
+        FileDownloadWriter.write(request, response, file, job.getContentKey(), job.getFileName(),
+                MediaType.APPLICATION_OCTET_STREAM_VALUE);
+    }
+    
+    private ResponseEntity<StreamingResponseBody> attachment(String fileName, StreamingResponseBody body) {
+        return attachmentBuilder(fileName).body(body);
+    }
+
+    private ResponseEntity.BodyBuilder attachmentBuilder(String fileName) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+    }
+}
@@ -1,27 +1,47 @@
 package com.example.hotel.controller;
 
+import com.example.hotel.dto.RoomPanelView;
 import com.example.hotel.entity.Room;
+import com.example.hotel.service.MonitorViewService;
+import com.example.hotel.service.RoomChangeTracker;
 import com.example.hotel.service.RoomService;
+import com.example.hotel.service.SnapshotCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/rooms")
 public class RoomController {
     
     private final RoomService roomService;
+    private final RoomChangeTracker changeTracker;
+    private final MonitorViewService monitorViewService;
+    private final SnapshotCache snapshotCache;
     
     @Autowired
-    public RoomController(RoomService roomService) {
+    public RoomController(RoomService roomService, RoomChangeTracker changeTracker,
+                          MonitorViewService monitorViewService, SnapshotCache snapshotCache) {
         this.roomService = roomService;
+        this.changeTracker = changeTracker;
+        this.monitorViewService = monitorViewService;
+        this.snapshotCache = snapshotCache;
     }
     
+    // 房间总版本号作为弱ETag，房间未变化时返回304；同一版本的响应字节只序列化一次
     @GetMapping
-    public ResponseEntity<List<Room>> getAllRooms() {
-        return ResponseEntity.ok(roomService.getAllRooms());
+    public ResponseEntity<byte[]> getAllRooms(
+            WebRequest webRequest,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        String etag = monitorViewService.roomAssignmentEtag();
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return snapshotCache.get("rooms", etag, roomService::getAllRooms).toResponse(acceptEncoding);
     }
     
     @GetMapping("/{roomId}")
@@ -30,4 +50,19 @@ public class RoomController {
                 .map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
-} 
\ No newline at end of file
+    
+    // 房间控制面板长轮询：房间版本号超过 since 时立即返回最新状态，否则最多等待 timeout 毫秒后返回当前状态
+    // 不带 since 时直接返回当前状态
+    @GetMapping("/{roomId}/changes")
+    public CompletableFuture<ResponseEntity<RoomPanelView>> awaitRoomChange(@PathVariable Integer roomId,
+                                                                           @RequestParam(required = false) Long since,
+                                                                           @RequestParam(defaultValue = "25000") long timeout) {
+        if (roomService.getRoomById(roomId).isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
+        }
+        CompletableFuture<Long> change = since == null
+                ? CompletableFuture.completedFuture(changeTracker.version(roomId))
+                : changeTracker.awaitChange(roomId, since, Math.max(0, Math.min(timeout, RoomChangeTracker.MAX_WAIT_MILLIS)));
+        return change.thenApply(version -> ResponseEntity.ok(monitorViewService.getRoomPanel(roomId, version)));
+    }
+}
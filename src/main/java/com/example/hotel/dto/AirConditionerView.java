@@ -0,0 +1,43 @@
+package com.example.hotel.dto;
+
+import com.example.hotel.entity.AirConditioner;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * 空调状态读模型（监控页面只展示这些字段）
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AirConditionerView {
+    private Integer acId;                    // 空调ID
+    @JsonProperty("isOn")
+    private boolean on;                      // 是否运行中
+    private Integer servingRoomId;           // 服务的房间ID
+    private AirConditioner.Mode mode;        // 模式
+    private AirConditioner.FanSpeed fanSpeed; // 风速
+    private Double targetTemp;               // 目标温度
+    private Double currentTemp;              // 当前温度
+    private long serviceTime;                // 本次已服务时长（分钟）
+
+    public static AirConditionerView from(AirConditioner ac, LocalDateTime now) {
+        long serviceMinutes = ac.getServiceStartTime() != null
+                ? Duration.between(ac.getServiceStartTime(), now).toMinutes() : 0;
+        return new AirConditionerView(
+                ac.getAcId(),
+                ac.getOn() != null && ac.getOn(),
+                ac.getServingRoomId(),
+                ac.getMode(),
+                ac.getFanSpeed(),
+                ac.getTargetTemp(),
+                ac.getCurrentTemp(),
+                serviceMinutes
+        );
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.hotel.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 详单流式导入结果：每个分块的提交情况和整体吞吐
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BillDetailImportResult {
+
+    /**
+     * 单个分块的结果，每个分块在独立事务中提交
+     */
+    @Data
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ChunkResult {
+        private int index;                   // 分块序号，从0开始
+        private long firstRow;               // 分块第一行在请求数组中的位置
+        private int rows;                    // 行数
+        private boolean committed;           // 是否已提交
+        private long elapsedMillis;          // 写入耗时
+        private String error;                // 失败原因
+    }
+
+    private int chunkSize;                   // 分块大小
+    private long totalRows;                  // 解析出的总行数
+    private long committedRows;              // 已提交行数
+    private long failedRows;                 // 失败行数（所在分块回滚）
+    private long elapsedMillis;              // 总耗时
+    private double rowsPerSecond;            // 吞吐（已提交行数/秒）
+    private String error;                    // 请求体解析失败的原因，之前的分块仍然有效
+    private List<ChunkResult> chunks = new ArrayList<>();
+}
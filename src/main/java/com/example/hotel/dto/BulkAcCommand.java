@@ -0,0 +1,27 @@
+package com.example.hotel.dto;
+
+import com.example.hotel.entity.AirConditioner;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量空调指令中的单个房间指令
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkAcCommand {
+
+    public enum Action {
+        START,      // 开机
+        ADJUST,     // 调整设置
+        CANCEL      // 关机
+    }
+
+    private Integer roomId;                      // 房间ID
+    private Action action;                       // 指令类型
+    private AirConditioner.Mode mode;            // 模式，开机时为空使用制冷
+    private AirConditioner.FanSpeed fanSpeed;    // 风速，开机时为空使用中风
+    private Double targetTemp;                   // 目标温度，开机时为空使用模式的默认温度
+}
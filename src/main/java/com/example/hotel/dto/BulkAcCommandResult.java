@@ -0,0 +1,37 @@
+package com.example.hotel.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量空调指令结果：按请求顺序给出每个房间的执行结果
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkAcCommandResult {
+
+    /**
+     * 单个房间的结果
+     */
+    @Data
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class RoomResult {
+        private Integer roomId;                  // 房间ID
+        private BulkAcCommand.Action action;     // 指令类型
+        private boolean success;                 // 是否成功
+        private Integer assignedAcId;            // 调度后分配的空调ID，0表示在等待队列；关机或失败时为空
+        private String message;                  // 状态消息
+    }
+
+    private int total;                           // 指令数
+    private int succeeded;                       // 成功数
+    private int failed;                          // 失败数
+    private long elapsedMillis;                  // 总耗时
+    private String error;                        // 整批被拒绝的原因
+    private List<RoomResult> results = new ArrayList<>();
+}
@@ -0,0 +1,33 @@
+package com.example.hotel.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 异步导出任务
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ExportJob {
+
+    public enum Type { BILL, DETAILS }
+
+    public enum Status { PENDING, RUNNING, DONE, FAILED }
+
+    private String jobId;                    // 任务ID
+    private Integer roomId;                  // 房间号
+    private Type type;                       // 导出类型
+    private volatile Status status;          // 任务状态
+    private String fileName;                 // 下载文件名
+    private String downloadUrl;              // 完成后的下载地址
+    private boolean cacheHit;                // 是否直接命中结果缓存
+    private LocalDateTime createdAt;         // 创建时间
+    private volatile LocalDateTime finishedAt; // 完成时间
+    private volatile String error;           // 失败原因
+
+    @JsonIgnore
+    private volatile String contentKey;      // 结果缓存键（账单版本摘要）
+}
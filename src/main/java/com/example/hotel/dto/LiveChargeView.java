@@ -0,0 +1,37 @@
+package com.example.hotel.dto;
+
+import com.example.hotel.entity.AirConditioner;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 房间实时计费读模型：正在服务的空调本次已累计的能耗和费用
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LiveChargeView {
+    private Integer roomId;                  // 房间号
+    private boolean inService;               // 是否正在服务
+    private Integer acId;                    // 服务的空调ID
+    private AirConditioner.Mode mode;        // 模式
+    private AirConditioner.FanSpeed fanSpeed; // 风速
+    private double targetTemp;               // 目标温度
+    private double currentTemp;              // 房间当前温度
+    private LocalDateTime serviceStartTime;  // 本次服务开始时间
+    private int serviceMinutes;              // 本次已服务时长（调度周期数，1个周期即1分钟）
+    private double tempChange;               // 本次累计温度变化量
+    private double energyConsumed;           // 本次累计能耗(度)
+    private double cost;                     // 本次累计费用(元)
+    private double rate;                     // 费率(元/度)
+    private LocalDateTime updatedAt;         // 最近一次累计时间
+
+    public static LiveChargeView idle(Integer roomId, double rate) {
+        return LiveChargeView.builder().roomId(roomId).rate(rate).build();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.hotel.dto;
+
+import com.example.hotel.entity.AirConditioner;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 调度队列条目读模型
+ * 由JPQL构造表达式直接生成，只查询监控页面需要的列，不加载请求实体
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class QueueEntryView {
+    private Integer roomId;                   // 房间ID
+    private AirConditioner.Mode mode;         // 模式
+    private AirConditioner.FanSpeed fanSpeed; // 风速
+    private double targetTemp;                // 目标温度
+    private double currentRoomTemp;           // 房间当前温度
+    private int priority;                     // 优先级
+    private LocalDateTime requestTime;        // 请求时间
+    private Integer assignedAcId;             // 分配的空调ID，null表示等待中
+    private String status;                    // 服务中/等待中
+    private Integer serviceTime;              // 已服务时长（分钟），仅服务队列
+    private Integer waitingTime;              // 已等待时长（分钟），仅等待队列
+
+    // JPQL构造表达式使用
+    public QueueEntryView(Integer roomId, AirConditioner.Mode mode, AirConditioner.FanSpeed fanSpeed,
+                          double targetTemp, double currentRoomTemp, int priority,
+                          LocalDateTime requestTime, Integer assignedAcId) {
+        this.roomId = roomId;
+        this.mode = mode;
+        this.fanSpeed = fanSpeed;
+        this.targetTemp = targetTemp;
+        this.currentRoomTemp = currentRoomTemp;
+        this.priority = priority;
+        this.requestTime = requestTime;
+        this.assignedAcId = assignedAcId;
+    }
+
+    @JsonIgnore
+    public boolean isServing() {
+        return assignedAcId != null;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.hotel.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 调度队列推送消息，对应 /api/ac/queue/stream
+ * snapshot 事件携带全部字段；diff 事件只携带与上一版本相比发生变化的部分，未变化的字段不出现
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class QueueStatusDiff {
+    private long version;                             // 版本号，同时作为SSE事件ID
+    private List<QueueEntryView> serviceQueue;        // 服务队列
+    private List<QueueEntryView> waitingQueue;        // 等待队列
+    private List<AirConditionerView> airConditioners; // 空调状态
+    private Integer totalRequests;                    // 活跃请求总数
+    private Integer serviceCount;                     // 服务中数量
+    private Integer waitingCount;                     // 等待中数量
+    private LocalDateTime timestamp;                  // 快照时间
+
+    public static QueueStatusDiff full(long version, QueueStatusView view) {
+        QueueStatusDiff diff = new QueueStatusDiff();
+        diff.setVersion(version);
+        diff.setServiceQueue(view.getServiceQueue());
+        diff.setWaitingQueue(view.getWaitingQueue());
+        diff.setAirConditioners(view.getAirConditioners());
+        diff.setTotalRequests(view.getTotalRequests());
+        diff.setServiceCount(view.getServiceCount());
+        diff.setWaitingCount(view.getWaitingCount());
+        diff.setTimestamp(view.getTimestamp());
+        return diff;
+    }
+
+    /**
+     * 两个快照之间的差异，除快照时间外没有任何变化时返回null
+     */
+    public static QueueStatusDiff between(long version, QueueStatusView previous, QueueStatusView current) {
+        QueueStatusDiff diff = new QueueStatusDiff();
+        diff.setVersion(version);
+        boolean changed = false;
+        if (!Objects.equals(previous.getServiceQueue(), current.getServiceQueue())) {
+            diff.setServiceQueue(current.getServiceQueue());
+            changed = true;
+        }
+        if (!Objects.equals(previous.getWaitingQueue(), current.getWaitingQueue())) {
+            diff.setWaitingQueue(current.getWaitingQueue());
+            changed = true;
+        }
+        if (!Objects.equals(previous.getAirConditioners(), current.getAirConditioners())) {
+            diff.setAirConditioners(current.getAirConditioners());
+            changed = true;
+        }
+        if (previous.getTotalRequests() != current.getTotalRequests()
+                || previous.getServiceCount() != current.getServiceCount()
+                || previous.getWaitingCount() != current.getWaitingCount()) {
+            diff.setTotalRequests(current.getTotalRequests());
+            diff.setServiceCount(current.getServiceCount());
+            diff.setWaitingCount(current.getWaitingCount());
+            changed = true;
+        }
+        if (!changed) {
+            return null;
+        }
+        diff.setTimestamp(current.getTimestamp());
+        return diff;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.hotel.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 调度队列状态读模型，对应 /api/ac/queue/status
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class QueueStatusView {
+    private List<QueueEntryView> serviceQueue;        // 服务队列
+    private List<QueueEntryView> waitingQueue;        // 等待队列（按优先级、请求时间排序）
+    private List<AirConditionerView> airConditioners; // 空调状态
+    private int totalRequests;                        // 活跃请求总数
+    private int serviceCount;                         // 服务中数量
+    private int waitingCount;                         // 等待中数量
+    private LocalDateTime timestamp;                  // 快照时间
+}
@@ -0,0 +1,24 @@
+package com.example.hotel.dto;
+
+import com.example.hotel.entity.Room;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 房间空调分配读模型（不包含客人信息等监控无关字段）
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RoomAssignmentView {
+    private Integer roomId;          // 房间号
+    private boolean occupied;        // 是否入住
+    private double currentTemp;      // 当前温度
+    private Integer assignedAcId;    // 分配的空调ID，null表示未分配
+
+    public static RoomAssignmentView from(Room room) {
+        return new RoomAssignmentView(room.getRoomId(), room.isOccupied(),
+                room.getCurrentTemp(), room.getAssignedAcId());
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.hotel.dto;
+
+import com.example.hotel.entity.AirConditioner;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 房间控制面板读模型，对应 /api/rooms/{roomId}/changes
+ * 面板需要的房间温度、空调请求、分配状态和费用一次返回，附带版本号供下一次等待使用
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RoomPanelView {
+    private Integer roomId;                  // 房间号
+    private long version;                    // 房间版本号
+    private boolean occupied;                // 是否入住
+    private double currentTemp;              // 当前温度
+    private String status;                   // 服务中/等待中/关机
+    private Integer assignedAcId;            // 分配的空调ID
+    private AirConditioner.Mode mode;        // 模式（有活跃请求时）
+    private AirConditioner.FanSpeed fanSpeed; // 风速（有活跃请求时）
+    private Double targetTemp;               // 目标温度（有活跃请求时）
+    private double serviceCost;              // 本次服务已累计费用
+    private double acCost;                   // 已结束服务的空调费用合计（入住期间）
+}
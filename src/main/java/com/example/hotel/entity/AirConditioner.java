@@ -56,6 +56,10 @@ public class AirConditioner {
     @Column(name = "service_time")
     private Integer serviceTime;         // 当前已服务时间（分钟）
     
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0")
+    private Long version;                // 乐观锁版本号，多实例部署时防止重复分配
+    
     public enum Mode {
         COOLING, HEATING
     }
@@ -44,4 +44,8 @@ public class AirConditionerRequest {
     
     @Column(name = "active")
     private boolean active;                // 请求是否激活
+    
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0")
+    private Long version;                  // 乐观锁版本号
 }
@@ -0,0 +1,36 @@
+package com.example.hotel.entity;
+
+import lombok.Data;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 账单费用汇总：随详单写入增量维护
+ */
+@Entity
+@Table(name = "bill_cost_summary")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BillCostSummary {
+    @Id
+    @Column(name = "bill_id")
+    private Long billId;                     // 账单ID
+
+    @Column(name = "total_cost")
+    private double totalCost;                // 累计费用(元)
+
+    @Column(name = "total_energy")
+    private double totalEnergy;              // 累计能耗(度)
+
+    @Column(name = "detail_count")
+    private long detailCount;                // 详单条数
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;         // 最后更新时间
+}
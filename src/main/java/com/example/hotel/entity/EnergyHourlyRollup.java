@@ -0,0 +1,42 @@
+package com.example.hotel.entity;
+
+import lombok.Data;
+import lombok.Builder;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 房间能耗小时汇总桶
+ * 已结束的服务详单按服务开始时间所在的整点归入对应的桶
+ */
+@Entity
+@Table(name = "energy_hourly_rollup",
+       uniqueConstraints = @UniqueConstraint(name = "uk_rollup_room_bucket", columnNames = {"room_id", "bucket_start"}))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EnergyHourlyRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "rollup_id")
+    private Long id;
+
+    @Column(name = "room_id")
+    private Integer roomId;                  // 房间号
+
+    @Column(name = "bucket_start")
+    private LocalDateTime bucketStart;       // 桶起始整点
+
+    @Column(name = "energy_consumed")
+    private double energyConsumed;           // 能耗(度)
+
+    @Column(name = "cost")
+    private double cost;                     // 费用(元)
+
+    @Column(name = "detail_count")
+    private long detailCount;                // 详单条数
+}
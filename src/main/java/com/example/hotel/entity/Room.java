@@ -28,6 +28,10 @@ public class Room {
     @Column(name = "assigned_ac_id")
     private Integer assignedAcId;     // 分配的空调ID，null表示未分配空调
     
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0")
+    private Long version;             // 乐观锁版本号
+    
     @Transient  // 不保存到数据库
     private Guest guest;              // 入住客人信息
 } 
\ No newline at end of file
@@ -23,6 +23,8 @@ public class AirConditionerEvent {
         TARGET_TEMP_REACHED,    // 达到目标温度
         AC_ASSIGNED,           // 空调分配
         AC_RELEASED,           // 空调释放
-        EVICTED_FROM_SERVICE   // 被抢占
+        EVICTED_FROM_SERVICE,  // 被抢占
+        SETTINGS_CHANGED,      // 模式/风速/目标温度调整
+        SCHEDULER_TICK         // 调度周期结束（时长计数和房间温度已更新）
     }
 } 
\ No newline at end of file
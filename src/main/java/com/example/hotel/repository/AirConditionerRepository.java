@@ -2,9 +2,13 @@ package com.example.hotel.repository;
 
 import com.example.hotel.entity.AirConditioner;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,4 +42,41 @@ public interface AirConditionerRepository extends JpaRepository<AirConditioner,
      */
     @Query("SELECT COUNT(a) FROM AirConditioner a WHERE a.servingRoomId IS NULL")
     long countAvailableAirConditioners();
-} 
\ No newline at end of file
+    
+    /**
+     * 条件分配空调：仅当空调空闲且版本号未变化时才分配给房间
+     * 返回受影响行数，0表示空调已被其他实例抢先分配或版本已过期
+     */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("UPDATE AirConditioner a SET a.servingRoomId = :roomId, a.on = true, a.mode = :mode, " +
+           "a.fanSpeed = :fanSpeed, a.targetTemp = :targetTemp, a.currentTemp = :currentTemp, " +
+           "a.requestTime = :requestTime, a.serviceStartTime = :serviceStartTime, a.priority = :priority, " +
+           "a.version = a.version + 1 " +
+           "WHERE a.acId = :acId AND a.servingRoomId IS NULL AND a.version = :version")
+    int claimAirConditioner(@Param("acId") Integer acId,
+                            @Param("version") Long version,
+                            @Param("roomId") Integer roomId,
+                            @Param("mode") AirConditioner.Mode mode,
+                            @Param("fanSpeed") AirConditioner.FanSpeed fanSpeed,
+                            @Param("targetTemp") Double targetTemp,
+                            @Param("currentTemp") Double currentTemp,
+                            @Param("requestTime") LocalDateTime requestTime,
+                            @Param("serviceStartTime") LocalDateTime serviceStartTime,
+                            @Param("priority") Integer priority);
+    
+    /**
+     * 条件释放空调：仅当空调仍在为指定房间服务时才释放
+     * 返回受影响行数，0表示空调已被释放或已转去服务其他房间
+     */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("UPDATE AirConditioner a SET a.servingRoomId = NULL, a.on = false, a.serviceEndTime = :endTime, " +
+           "a.serviceDuration = :serviceDuration, a.cost = :cost, a.version = a.version + 1 " +
+           "WHERE a.acId = :acId AND a.servingRoomId = :roomId")
+    int releaseAirConditioner(@Param("acId") Integer acId,
+                              @Param("roomId") Integer roomId,
+                              @Param("endTime") LocalDateTime endTime,
+                              @Param("serviceDuration") Integer serviceDuration,
+                              @Param("cost") Double cost);
+}
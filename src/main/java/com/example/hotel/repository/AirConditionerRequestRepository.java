@@ -1,5 +1,6 @@
 package com.example.hotel.repository;
 
+import com.example.hotel.dto.QueueEntryView;
 import com.example.hotel.entity.AirConditionerRequest;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -7,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +20,11 @@ public interface AirConditionerRequestRepository extends JpaRepository<AirCondit
      */
     Optional<AirConditionerRequest> findByRoomIdAndActiveTrue(Integer roomId);
     
+    /**
+     * 批量查询多个房间的活跃请求
+     */
+    List<AirConditionerRequest> findByRoomIdInAndActiveTrue(Collection<Integer> roomIds);
+
     /**
      * 查询所有活跃的请求
      */
@@ -56,4 +63,12 @@ public interface AirConditionerRequestRepository extends JpaRepository<AirCondit
      */
     @Query("SELECT r FROM AirConditionerRequest r WHERE r.active = true AND r.assignedAcId IS NOT NULL ORDER BY r.requestTime ASC")
     List<AirConditionerRequest> findActiveAssignedRequests();
-} 
\ No newline at end of file
+    
+    /**
+     * 查询活跃请求的队列视图（构造表达式，只取监控需要的列）
+     */
+    @Query("SELECT new com.example.hotel.dto.QueueEntryView(r.roomId, r.mode, r.fanSpeed, r.targetTemp, " +
+           "r.currentRoomTemp, r.priority, r.requestTime, r.assignedAcId) " +
+           "FROM AirConditionerRequest r WHERE r.active = true ORDER BY r.requestTime ASC")
+    List<QueueEntryView> findActiveQueueEntries();
+}
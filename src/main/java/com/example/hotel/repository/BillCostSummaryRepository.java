@@ -0,0 +1,31 @@
+package com.example.hotel.repository;
+
+import com.example.hotel.entity.BillCostSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface BillCostSummaryRepository extends JpaRepository<BillCostSummary, Long> {
+
+    /**
+     * 原子累加账单汇总，汇总行不存在时以增量作为初值插入
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO bill_cost_summary (bill_id, total_cost, total_energy, detail_count, updated_at) " +
+                   "VALUES (:billId, :cost, :energy, :count, :updatedAt) " +
+                   "ON DUPLICATE KEY UPDATE total_cost = total_cost + :cost, total_energy = total_energy + :energy, " +
+                   "detail_count = detail_count + :count, updated_at = :updatedAt",
+           nativeQuery = true)
+    int upsert(@Param("billId") Long billId,
+               @Param("cost") double cost,
+               @Param("energy") double energy,
+               @Param("count") long count,
+               @Param("updatedAt") LocalDateTime updatedAt);
+}
@@ -83,4 +83,49 @@ public interface BillDetailRepository extends JpaRepository<BillDetail, Long> {
      */
     @Query("SELECT bd FROM BillDetail bd WHERE bd.roomId = :roomId AND bd.serviceEndTime IS NULL")
     List<BillDetail> findActiveServicesByRoomId(@Param("roomId") Integer roomId);
-} 
\ No newline at end of file
+    
+    /**
+     * 统计房间在服务开始时间 [from, to) 内、且在 endTime 前结束的详单能耗
+     * 用于小时汇总桶无法覆盖的区间首尾零头
+     */
+    @Query("SELECT COALESCE(SUM(bd.energyConsumed), 0) FROM BillDetail bd " +
+           "WHERE bd.roomId = :roomId AND bd.serviceStartTime >= :from AND bd.serviceStartTime < :to " +
+           "AND bd.serviceEndTime IS NOT NULL AND bd.serviceEndTime <= :endTime")
+    Double sumClosedEnergyByRoomAndStartRange(@Param("roomId") Integer roomId,
+                                              @Param("from") LocalDateTime from,
+                                              @Param("to") LocalDateTime to,
+                                              @Param("endTime") LocalDateTime endTime);
+    
+    /**
+     * 统计房间在服务开始时间 [from, to) 内、但在 endTime 之后才结束的详单能耗
+     * 这些详单已计入开始时间所在的小时桶，查询区间内的整小时桶需要扣除它们
+     */
+    @Query("SELECT COALESCE(SUM(bd.energyConsumed), 0) FROM BillDetail bd " +
+           "WHERE bd.roomId = :roomId AND bd.serviceStartTime >= :from AND bd.serviceStartTime < :to " +
+           "AND bd.serviceEndTime > :endTime")
+    Double sumEnergyByRoomAndStartRangeEndingAfter(@Param("roomId") Integer roomId,
+                                                   @Param("from") LocalDateTime from,
+                                                   @Param("to") LocalDateTime to,
+                                                   @Param("endTime") LocalDateTime endTime);
+    
+    /**
+     * 按房间分组汇总（重建汇总表使用）：房间号、费用、能耗、条数
+     */
+    @Query("SELECT bd.roomId, COALESCE(SUM(bd.cost), 0), COALESCE(SUM(bd.energyConsumed), 0), COUNT(bd) " +
+           "FROM BillDetail bd WHERE bd.roomId IS NOT NULL GROUP BY bd.roomId")
+    List<Object[]> aggregateByRoom();
+    
+    /**
+     * 按账单分组汇总（重建汇总表使用）：账单ID、费用、能耗、条数
+     */
+    @Query("SELECT bd.billId, COALESCE(SUM(bd.cost), 0), COALESCE(SUM(bd.energyConsumed), 0), COUNT(bd) " +
+           "FROM BillDetail bd WHERE bd.billId IS NOT NULL GROUP BY bd.billId")
+    List<Object[]> aggregateByBill();
+    
+    /**
+     * 查询已结束详单的小时桶归属字段（重建小时汇总使用）：房间号、服务开始时间、能耗、费用
+     */
+    @Query("SELECT bd.roomId, bd.serviceStartTime, bd.energyConsumed, bd.cost FROM BillDetail bd " +
+           "WHERE bd.roomId IS NOT NULL AND bd.serviceStartTime IS NOT NULL AND bd.serviceEndTime IS NOT NULL")
+    List<Object[]> findClosedDetailBuckets();
+}
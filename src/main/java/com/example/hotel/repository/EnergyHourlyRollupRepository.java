@@ -0,0 +1,40 @@
+package com.example.hotel.repository;
+
+import com.example.hotel.entity.EnergyHourlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface EnergyHourlyRollupRepository extends JpaRepository<EnergyHourlyRollup, Long> {
+
+    /**
+     * 原子累加小时桶，桶不存在时插入；依赖 (room_id, bucket_start) 唯一约束判断是否已存在
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO energy_hourly_rollup (room_id, bucket_start, energy_consumed, cost, detail_count) " +
+                   "VALUES (:roomId, :bucketStart, :energy, :cost, :count) " +
+                   "ON DUPLICATE KEY UPDATE energy_consumed = energy_consumed + :energy, cost = cost + :cost, " +
+                   "detail_count = detail_count + :count",
+           nativeQuery = true)
+    int upsert(@Param("roomId") Integer roomId,
+               @Param("bucketStart") LocalDateTime bucketStart,
+               @Param("energy") double energy,
+               @Param("cost") double cost,
+               @Param("count") long count);
+
+    /**
+     * 统计房间在 [from, to) 整点区间内各小时桶的能耗
+     */
+    @Query("SELECT COALESCE(SUM(r.energyConsumed), 0) FROM EnergyHourlyRollup r " +
+           "WHERE r.roomId = :roomId AND r.bucketStart >= :from AND r.bucketStart < :to")
+    Double sumEnergyByRoomAndBuckets(@Param("roomId") Integer roomId,
+                                     @Param("from") LocalDateTime from,
+                                     @Param("to") LocalDateTime to);
+}
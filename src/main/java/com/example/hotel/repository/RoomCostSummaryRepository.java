@@ -0,0 +1,32 @@
+package com.example.hotel.repository;
+
+import com.example.hotel.entity.RoomCostSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface RoomCostSummaryRepository extends JpaRepository<RoomCostSummary, Integer> {
+
+    /**
+     * 原子累加房间汇总，汇总行不存在时以增量作为初值插入
+     * 插入和累加在一条语句内完成，并发写入同一房间的首条详单时不会重复插入或覆盖
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO room_cost_summary (room_id, total_cost, total_energy, detail_count, updated_at) " +
+                   "VALUES (:roomId, :cost, :energy, :count, :updatedAt) " +
+                   "ON DUPLICATE KEY UPDATE total_cost = total_cost + :cost, total_energy = total_energy + :energy, " +
+                   "detail_count = detail_count + :count, updated_at = :updatedAt",
+           nativeQuery = true)
+    int upsert(@Param("roomId") Integer roomId,
+               @Param("cost") double cost,
+               @Param("energy") double energy,
+               @Param("count") long count,
+               @Param("updatedAt") LocalDateTime updatedAt);
+}
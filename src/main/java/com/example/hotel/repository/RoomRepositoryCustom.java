@@ -0,0 +1,14 @@
+package com.example.hotel.repository;
+
+import java.util.Map;
+
+/**
+ * 房间表的自定义批量操作
+ */
+public interface RoomRepositoryCustom {
+
+    /**
+     * 用一条多行UPDATE批量写入房间当前温度，返回更新的行数
+     */
+    int batchUpdateCurrentTemp(Map<Integer, Double> temperatures);
+}
@@ -0,0 +1,56 @@
+package com.example.hotel.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RoomRepositoryCustom 的实现
+ */
+public class RoomRepositoryImpl implements RoomRepositoryCustom {
+
+    // 单条语句最多携带的房间数，避免语句过长
+    private static final int MAX_ROOMS_PER_STATEMENT = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int batchUpdateCurrentTemp(Map<Integer, Double> temperatures) {
+        List<Map.Entry<Integer, Double>> entries = new ArrayList<>(temperatures.entrySet());
+        int updated = 0;
+        for (int from = 0; from < entries.size(); from += MAX_ROOMS_PER_STATEMENT) {
+            updated += updateChunk(entries.subList(from, Math.min(from + MAX_ROOMS_PER_STATEMENT, entries.size())));
+        }
+        return updated;
+    }
+
+    // UPDATE room SET current_temp = CASE room_id WHEN ? THEN ? ... END WHERE room_id IN (?, ...)
+    // 只改温度列，不递增乐观锁版本号，避免和缓存中的房间对象版本冲突
+    private int updateChunk(List<Map.Entry<Integer, Double>> chunk) {
+        StringBuilder sql = new StringBuilder("UPDATE room SET current_temp = CASE room_id");
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(" WHEN ?").append(2 * i + 1).append(" THEN ?").append(2 * i + 2);
+        }
+        sql.append(" ELSE current_temp END WHERE room_id IN (");
+        int base = 2 * chunk.size();
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?").append(base + i + 1);
+        }
+        sql.append(')');
+
+        Query query = entityManager.createNativeQuery(sql.toString());
+        for (int i = 0; i < chunk.size(); i++) {
+            query.setParameter(2 * i + 1, chunk.get(i).getKey());
+            query.setParameter(2 * i + 2, chunk.get(i).getValue());
+            query.setParameter(base + i + 1, chunk.get(i).getKey());
+        }
+        return query.executeUpdate();
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.AirConditioner;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 空调指令分发
+ * 开机、调整、关机指令按房间排队，由工作线程逐条执行；请求线程提交后立即拿到 CompletableFuture 返回，
+ * 不在数据库写入和调度计算上等待。同一房间的指令严格按提交顺序执行，不同房间的指令并行执行。
+ * 调整指令先在合并窗口内等待，窗口内同一房间的后续调整合并为一条，只写一次、只按净变化调度一次，
+ * 所有被合并的请求得到同一个结果；窗口内到达开机或关机指令时，待合并的调整立即入队，保持提交顺序
+ */
+@Service
+public class AcCommandDispatcher {
+
+    // 每次连续执行同一房间的指令条数上限，超过后让出工作线程，避免单个房间占满线程
+    private static final int DRAIN_BATCH = 16;
+
+    /**
+     * 调整参数，为空的字段表示不调整
+     */
+    public record AdjustSettings(AirConditioner.Mode mode, AirConditioner.FanSpeed fanSpeed, Double targetTemp) {
+
+        // 合并后到达的调整：后到的非空字段覆盖先到的；后到的请求切换了模式而没有给温度时，
+        // 丢弃先到的温度，按新模式的默认温度处理（与逐条执行时切换模式重置温度一致）
+        AdjustSettings mergedWith(AdjustSettings later) {
+            Double target = later.targetTemp != null ? later.targetTemp
+                    : later.mode != null ? null : targetTemp;
+            return new AdjustSettings(later.mode != null ? later.mode : mode,
+                    later.fanSpeed != null ? later.fanSpeed : fanSpeed, target);
+        }
+    }
+
+    /**
+     * 调整指令的执行结果，与调用方无关；HTTP 接口和面板 TCP 接入各自把它转换为响应
+     */
+    public enum AdjustResult {
+        APPLIED,            // 已按合并后的参数调整
+        NO_ACTIVE_REQUEST,  // 房间没有活跃的空调请求
+        FAILED              // 调整失败
+    }
+
+    private final ExecutorService executor;
+    // 合并窗口到期后把调整指令放入房间队列，只做入队
+    private final ScheduledExecutorService timer;
+    private final int maxPendingPerRoom;
+    private final long adjustWindowMillis;
+    private final Map<Integer, RoomQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger totalPending = new AtomicInteger();
+    private final Counter rejected;
+    private final Counter coalesced;
+
+    public AcCommandDispatcher(MeterRegistry meterRegistry,
+                               @Value("${hotel.ac.command.threads:4}") int threads,
+                               @Value("${hotel.ac.command.max-pending-per-room:32}") int maxPendingPerRoom,
+                               @Value("${hotel.ac.command.adjust-window-ms:300}") long adjustWindowMillis,
+                               @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.maxPendingPerRoom = maxPendingPerRoom;
+        this.adjustWindowMillis = adjustWindowMillis;
+        // 待执行的任务数不超过房间数（每个房间最多一个排队中的执行任务），队列无需设上限
+        this.executor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ac-command-", 1).factory())
+                : new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                        Thread.ofPlatform().name("ac-command-", 1).daemon(true).factory());
+        this.timer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("ac-command-timer").daemon(true).factory());
+        Gauge.builder("hotel.ac.command.pending", totalPending, AtomicInteger::get)
+                .description("排队中的空调指令数")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("hotel.ac.command.rejected")
+                .description("因房间排队过多被拒绝的空调指令数")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("hotel.ac.command.coalesced")
+                .description("合并到待执行调整指令中的请求数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 提交房间指令，返回指令执行结果
+     * 该房间排队的指令已达上限时抛出 RejectedExecutionException
+     */
+    public <T> CompletableFuture<T> submit(Integer roomId, Supplier<T> command) {
+        RoomQueue queue = queues.computeIfAbsent(roomId, id -> new RoomQueue());
+        CompletableFuture<T> future = new CompletableFuture<>();
+        queue.lock.lock();
+        try {
+            admit(roomId, queue);
+            // 合并窗口内的调整先于本指令提交，先放入队列
+            queue.flushAdjust();
+            queue.enqueue(() -> complete(future, command));
+        } finally {
+            queue.lock.unlock();
+        }
+        return future;
+    }
+
+    /**
+     * 提交房间调整指令，窗口内同一房间的调整合并后由 command 以合并后的参数执行一次
+     * 被合并的请求共享同一个结果，窗口内只执行最先到达的请求给出的 command，各调用方给出的 command 应当等价；
+     * 窗口为0时不合并。该房间排队的指令已达上限时抛出 RejectedExecutionException
+     */
+    public CompletableFuture<AdjustResult> submitAdjust(Integer roomId, AdjustSettings settings,
+                                                        Function<AdjustSettings, AdjustResult> command) {
+        if (adjustWindowMillis <= 0) {
+            return submit(roomId, () -> command.apply(settings));
+        }
+        RoomQueue queue = queues.computeIfAbsent(roomId, id -> new RoomQueue());
+        queue.lock.lock();
+        try {
+            PendingAdjust pending = queue.pendingAdjust;
+            if (pending != null) {
+                // 合并到窗口内等待的调整中，不占用排队名额
+                pending.settings = pending.settings.mergedWith(settings);
+                coalesced.increment();
+                return pending.future;
+            }
+            admit(roomId, queue);
+            PendingAdjust adjust = new PendingAdjust(settings, command);
+            queue.pendingAdjust = adjust;
+            adjust.timeout = timer.schedule(() -> {
+                queue.lock.lock();
+                try {
+                    if (queue.pendingAdjust == adjust) {
+                        queue.flushAdjust();
+                    }
+                } finally {
+                    queue.lock.unlock();
+                }
+            }, adjustWindowMillis, TimeUnit.MILLISECONDS);
+            return adjust.future;
+        } finally {
+            queue.lock.unlock();
+        }
+    }
+
+    // 占用房间的一个排队名额，超过上限时拒绝
+    private void admit(Integer roomId, RoomQueue queue) {
+        if (queue.pending.incrementAndGet() > maxPendingPerRoom) {
+            queue.pending.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("房间 " + roomId + " 的空调指令排队过多");
+        }
+        totalPending.incrementAndGet();
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, Supplier<T> command) {
+        try {
+            future.complete(command.get());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    // 合并窗口内等待的调整指令，settings 只在房间队列的锁内读写
+    private static final class PendingAdjust {
+        private AdjustSettings settings;
+        private final Function<AdjustSettings, AdjustResult> command;
+        private final CompletableFuture<AdjustResult> future = new CompletableFuture<>();
+        private ScheduledFuture<?> timeout;
+
+        PendingAdjust(AdjustSettings settings, Function<AdjustSettings, AdjustResult> command) {
+            this.settings = settings;
+            this.command = command;
+        }
+    }
+
+    // 单个房间的指令队列；scheduled 保证同一时刻最多一个线程在执行该房间的指令
+    // 入队和合并窗口在 lock 内进行，保证调整与其后提交的指令之间的顺序
+    private final class RoomQueue {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final ReentrantLock lock = new ReentrantLock();
+        private PendingAdjust pendingAdjust;
+
+        // 已占用排队名额的指令放入队列
+        void enqueue(Runnable task) {
+            tasks.add(task);
+            schedule();
+        }
+
+        // 结束合并窗口，把等待中的调整放入队列（调用方持有 lock）
+        void flushAdjust() {
+            PendingAdjust adjust = pendingAdjust;
+            if (adjust == null) {
+                return;
+            }
+            pendingAdjust = null;
+            adjust.timeout.cancel(false);
+            enqueue(() -> run(adjust));
+        }
+
+        private void run(PendingAdjust adjust) {
+            // 开始执行时窗口已关闭，settings 不再变化
+            complete(adjust.future, () -> adjust.command.apply(adjust.settings));
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                pending.decrementAndGet();
+                totalPending.decrementAndGet();
+                task.run();
+            }
+            scheduled.set(false);
+            // 释放标记后再检查一次，避免与刚入队的指令互相错过
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 合并窗口内的调整直接入队执行，不丢弃
+        for (RoomQueue queue : queues.values()) {
+            queue.lock.lock();
+            try {
+                queue.flushAdjust();
+            } finally {
+                queue.lock.unlock();
+            }
+        }
+        timer.shutdownNow();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.hotel.service;
+
+import com.example.hotel.util.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 空调开启、调整、关闭指令的限流
+ * 每个客户端和每个房间各有一个令牌桶，两个桶都取到令牌才放行。
+ * 单个异常面板或客户端只会耗尽自己的令牌，不会占满指令队列、调度器和数据库；HTTP 和面板 TCP 接入共用
+ */
+@Service
+public class AcRateLimiter {
+
+    private final boolean enabled;
+    private final int roomBurst;
+    private final double roomRate;
+    private final int clientBurst;
+    private final double clientRate;
+
+    private final Map<Integer, TokenBucket> roomBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final Counter roomRejected;
+    private final Counter clientRejected;
+
+    public AcRateLimiter(MeterRegistry meterRegistry,
+                         @Value("${hotel.ac.rate-limit.enabled:true}") boolean enabled,
+                         @Value("${hotel.ac.rate-limit.room.burst:10}") int roomBurst,
+                         @Value("${hotel.ac.rate-limit.room.per-second:2}") double roomRate,
+                         @Value("${hotel.ac.rate-limit.client.burst:50}") int clientBurst,
+                         @Value("${hotel.ac.rate-limit.client.per-second:20}") double clientRate) {
+        this.enabled = enabled;
+        this.roomBurst = roomBurst;
+        this.roomRate = roomRate;
+        this.clientBurst = clientBurst;
+        this.clientRate = clientRate;
+        this.roomRejected = Counter.builder("hotel.ac.rate-limit.rejected")
+                .tag("scope", "room")
+                .description("因房间请求过于频繁被拒绝的空调指令数")
+                .register(meterRegistry);
+        this.clientRejected = Counter.builder("hotel.ac.rate-limit.rejected")
+                .tag("scope", "client")
+                .description("因客户端请求过于频繁被拒绝的空调指令数")
+                .register(meterRegistry);
+        Gauge.builder("hotel.ac.rate-limit.clients", clientBuckets, Map::size)
+                .description("限流中跟踪的客户端数")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 为客户端对房间的一条指令取令牌：放行返回0，否则返回建议等待的纳秒数
+     */
+    public long tryAcquire(String client, Integer roomId) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        // 先查客户端再查房间：被客户端限流的请求不消耗房间令牌，不影响该房间的正常面板
+        long wait = clientBuckets
+                .computeIfAbsent(client, key -> new TokenBucket(clientBurst, clientRate, now))
+                .tryAcquire(now);
+        if (wait > 0) {
+            clientRejected.increment();
+            return wait;
+        }
+        wait = roomBuckets
+                .computeIfAbsent(roomId, key -> new TokenBucket(roomBurst, roomRate, now))
+                .tryAcquire(now);
+        if (wait > 0) {
+            roomRejected.increment();
+        }
+        return wait;
+    }
+
+    /**
+     * 回收已补满的令牌桶，避免来源地址不断变化时桶的数量无限增长
+     */
+    @Scheduled(fixedDelayString = "${hotel.ac.rate-limit.sweep-interval-ms:60000}")
+    public void sweepIdleBuckets() {
+        long now = System.nanoTime();
+        clientBuckets.values().removeIf(bucket -> bucket.isIdle(now));
+        roomBuckets.values().removeIf(bucket -> bucket.isIdle(now));
+    }
+}
@@ -3,8 +3,13 @@ package com.example.hotel.service;
 import com.example.hotel.entity.AirConditioner;
 import com.example.hotel.entity.AirConditionerRequest;
 import com.example.hotel.entity.Room;
+import com.example.hotel.event.AirConditionerEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.time.Duration;
@@ -12,6 +17,9 @@ import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * 空调调度服务
@@ -26,8 +34,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @Service
 public class AirConditionerSchedulerService {
     
+    private static final Logger logger = LoggerFactory.getLogger(AirConditionerSchedulerService.class);
+    
     private final AirConditionerService acService;
     private final RoomService roomService;
+    private final ApplicationEventPublisher eventPublisher;
+    // 调度周期计数，时长计数和服务房间温度每个周期更新一次，用于监控接口的ETag
+    private final AtomicLong tickVersion = new AtomicLong();
     
     // 等待队列（按优先级和等待时间排序）
     private final Queue<Integer> waitingQueue = new ConcurrentLinkedQueue<>();
@@ -59,7 +72,15 @@ public class AirConditionerSchedulerService {
     private final Map<Integer, LocalDateTime> serviceStartTime = new ConcurrentHashMap<>();
     
     private final AtomicBoolean running = new AtomicBoolean(false);
+    
+    // 调度锁：服务队列、等待队列和时长计数的读写都在锁内进行，调度周期与开关机、调风指令互斥
+    // 加锁顺序为先房间锁后调度锁，持有调度锁时不能再获取房间锁
+    private final ReentrantLock schedulingLock = new ReentrantLock();
+    // 调度过程中进入等待的房间，释放调度锁之后再启动回温（回温会获取房间锁），只在调度锁内读写
+    private final Set<Integer> pendingRecovery = new LinkedHashSet<>();
     private Thread schedulerThread;
+    // 调度线程是否使用虚拟线程
+    private final boolean virtualThreads;
     
     /**
      * 服务队列项，用于优先队列排序
@@ -96,9 +117,13 @@ public class AirConditionerSchedulerService {
         }
     }
 
-    public AirConditionerSchedulerService(AirConditionerService acService, RoomService roomService) {
+    public AirConditionerSchedulerService(AirConditionerService acService, RoomService roomService,
+                                          ApplicationEventPublisher eventPublisher,
+                                          @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
         this.acService = acService;
         this.roomService = roomService;
+        this.eventPublisher = eventPublisher;
+        this.virtualThreads = virtualThreads;
     }
     
     @PostConstruct
@@ -113,18 +138,23 @@ public class AirConditionerSchedulerService {
     
     // 新请求到达时的调度处理
     public Integer handleNewRequest(Integer roomId) {
-        AirConditionerRequest newRequest = acService.getRoomRequest(roomId);
-        if (newRequest == null || !newRequest.isActive()) {
-            return null;
-        }
+        schedulingLock.lock();
+        try {
+            AirConditionerRequest newRequest = acService.getRoomRequest(roomId);
+            if (newRequest == null || !newRequest.isActive()) {
+                return null;
+            }
         
-        // 1. 当服务对象数 < 上限：直接分配服务对象
-        if (serviceQueue.size() < 3) {
-            return assignToService(roomId);
-        }
+            // 1. 当服务对象数 < 上限：直接分配服务对象
+            if (serviceQueue.size() < 3) {
+                return assignToService(roomId);
+            }
         
-        // 2. 当服务对象数 = 上限：启动调度策略
-        return handleFullServiceQueue(newRequest);
+            // 2. 当服务对象数 = 上限：启动调度策略
+            return handleFullServiceQueue(newRequest);
+        } finally {
+            unlockScheduling();
+        }
     }
     
     // 处理服务队列已满的情况
@@ -175,18 +205,13 @@ public class AirConditionerSchedulerService {
         if (request != null && request.getAssignedAcId() != null) {
             AirConditioner ac = acService.getAirConditioner(request.getAssignedAcId());
             if (ac != null) {
-                ac.setOn(false);
-                ac.setServingRoomId(null);
-                ac.setServiceEndTime(LocalDateTime.now());
+                acService.releaseAirConditioner(ac, roomId);
             }
             request.setAssignedAcId(null);
+            acService.saveRequest(request);
             
             // 更新Room表的assignedAcId字段
-            Room room = roomService.getRoomById(roomId).orElse(null);
-            if (room != null) {
-                room.setAssignedAcId(null);
-                roomService.saveRoom(room);
-            }
+            roomService.updateAssignedAc(roomId, null);
         }
         
         // 加入等待队列
@@ -220,18 +245,16 @@ public class AirConditionerSchedulerService {
                 serviceStartTime.put(roomId, LocalDateTime.now());
                 
                 // 停止回温过程（房间已分配空调服务）
+                pendingRecovery.remove(roomId);
                 acService.cancelRoomTemperatureRecovery(roomId);
                 
                 return acId;
             }
         }
         
-        // 分配失败，加入等待队列
+        // 分配失败，加入等待队列（释放调度锁后开始回温）
         addToWaitingQueue(roomId);
         
-        // 启动回温过程（房间没有被分配空调服务且温度不是室温时启动回温）
-        acService.startRoomTemperatureRecovery(roomId);
-        
         return 0;
     }
     
@@ -242,46 +265,58 @@ public class AirConditionerSchedulerService {
         waitingTimeCounter.put(roomId, 0); // 等待时长从0开始
         waitingStartTime.put(roomId, LocalDateTime.now());
         
-        // 启动回温过程（房间没有被分配空调服务且温度不是室温时启动回温）
-        acService.startRoomTemperatureRecovery(roomId);
+        // 释放调度锁后启动回温过程（房间没有被分配空调服务且温度不是室温时启动回温）
+        pendingRecovery.add(roomId);
+    }
+    
+    // 释放调度锁；最外层释放时为调度过程中进入等待的房间启动回温
+    private void unlockScheduling() {
+        List<Integer> recovering = List.of();
+        if (schedulingLock.getHoldCount() == 1 && !pendingRecovery.isEmpty()) {
+            recovering = new ArrayList<>(pendingRecovery);
+            pendingRecovery.clear();
+        }
+        schedulingLock.unlock();
+        for (Integer roomId : recovering) {
+            acService.startRoomTemperatureRecovery(roomId);
+        }
     }
     
     // 从队列中移除请求
     public void removeRequest(Integer roomId) {
-        // 从等待队列移除
-        waitingQueue.remove(roomId);
-        waitingTimeCounter.remove(roomId);
-        waitingStartTime.remove(roomId);
-        
-        // 从服务队列移除
-        ServiceQueueItem item = serviceMap.remove(roomId);
-        if (item != null) {
-            serviceQueue.remove(item);
-        }
-        serviceTimeCounter.remove(roomId);
-        serviceStartTime.remove(roomId);
-        
-        // 如果房间已分配空调，需要释放空调
-        AirConditionerRequest request = acService.getRoomRequest(roomId);
-        if (request != null && request.getAssignedAcId() != null) {
-            // 直接释放空调，避免重复调用cancelRequest
-            AirConditioner ac = acService.getAirConditioner(request.getAssignedAcId());
-            if (ac != null) {
-                ac.setOn(false);
-                ac.setServingRoomId(null);
-                ac.setServiceEndTime(LocalDateTime.now());
+        schedulingLock.lock();
+        try {
+            // 从等待队列移除
+            waitingQueue.remove(roomId);
+            waitingTimeCounter.remove(roomId);
+            waitingStartTime.remove(roomId);
+        
+            // 从服务队列移除
+            ServiceQueueItem item = serviceMap.remove(roomId);
+            if (item != null) {
+                serviceQueue.remove(item);
             }
+            serviceTimeCounter.remove(roomId);
+            serviceStartTime.remove(roomId);
+        
+            // 如果房间已分配空调，需要释放空调
+            AirConditionerRequest request = acService.getRoomRequest(roomId);
+            if (request != null && request.getAssignedAcId() != null) {
+                // 直接释放空调，避免重复调用cancelRequest
+                AirConditioner ac = acService.getAirConditioner(request.getAssignedAcId());
+                if (ac != null) {
+                    acService.releaseAirConditioner(ac, roomId);
+                }
             
-            // 清空Room表的assignedAcId字段
-            Room room = roomService.getRoomById(roomId).orElse(null);
-            if (room != null) {
-                room.setAssignedAcId(null);
-                roomService.saveRoom(room);
-        }
-        }
+                // 清空Room表的assignedAcId字段
+                roomService.updateAssignedAc(roomId, null);
+            }
         
-        // 尝试为等待队列分配空调
-        processWaitingQueue();
+            // 尝试为等待队列分配空调
+            processWaitingQueue();
+        } finally {
+            unlockScheduling();
+        }
     }
     
     // 调度循环
@@ -291,18 +326,39 @@ public class AirConditionerSchedulerService {
                 // 每10秒执行一次调度（系统中10秒等同于1分钟）
                 Thread.sleep(10000);
                 
-                // 更新时间计数器
-                updateTimeCounters();
+                List<Integer> reachedTarget;
+                schedulingLock.lock();
+                try {
+                    // 更新时间计数器
+                    updateTimeCounters();
+                    
+                    // 执行完整的调度检查（包含时间片调度和等待队列处理）
+                    performFullSchedulingCheck();
+                    
+                    // 更新服务中的房间温度（可能触发目标温度到达）
+                    reachedTarget = updateTemperatures();
+                } finally {
+                    unlockScheduling();
+                }
                 
-                // 执行完整的调度检查（包含时间片调度和等待队列处理）
-                performFullSchedulingCheck();
+                // 到达目标温度的房间在调度锁外关机：关机先取房间锁再进入调度，与开关机指令的加锁顺序一致
+                for (Integer roomId : reachedTarget) {
+                    checkTargetTemperatureReached(roomId);
+                }
                 
-                // 更新服务中的房间温度（可能触发目标温度到达）
-                updateTemperatures();
+                // 通知监控推送：时长计数和房间温度已更新
+                tickVersion.incrementAndGet();
+                eventPublisher.publishEvent(AirConditionerEvent.builder()
+                        .eventType(AirConditionerEvent.EventType.SCHEDULER_TICK)
+                        .timestamp(LocalDateTime.now())
+                        .build());
                 
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
+            } catch (RuntimeException e) {
+                // 单个周期失败（如数据库乐观锁冲突）不应终止调度线程
+                logger.error("调度周期执行失败", e);
             }
         }
     }
@@ -334,10 +390,15 @@ public class AirConditionerSchedulerService {
     
     // 当房间调整风速时更新优先级
     public void updateRoomPriority(Integer roomId, int newPriority) {
-        ServiceQueueItem item = serviceMap.get(roomId);
-        if (item != null) {
-            item.setPriority(newPriority);
-            rebuildServiceQueue();
+        schedulingLock.lock();
+        try {
+            ServiceQueueItem item = serviceMap.get(roomId);
+            if (item != null) {
+                item.setPriority(newPriority);
+                rebuildServiceQueue();
+            }
+        } finally {
+            unlockScheduling();
         }
     }
     
@@ -374,88 +435,80 @@ public class AirConditionerSchedulerService {
     
     // 检查优先级降低触发的立即调度
     public void checkPriorityReduction(Integer roomId, int oldPriority, int newPriority) {
-        // 更新服务队列中的优先级
-        updateRoomPriority(roomId, newPriority);
-        
-        // 按等待时长降序排序等待队列
-        List<Integer> sortedWaitingRooms = waitingQueue.stream()
-                .sorted((r1, r2) -> Integer.compare(
-                        waitingTimeCounter.getOrDefault(r2, 0),
-                        waitingTimeCounter.getOrDefault(r1, 0)
-                ))
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        schedulingLock.lock();
+        try {
+            // 更新服务队列中的优先级
+            updateRoomPriority(roomId, newPriority);
+        
+            // 按等待时长降序排序等待队列
+            List<Integer> sortedWaitingRooms = waitingQueue.stream()
+                    .sorted((r1, r2) -> Integer.compare(
+                            waitingTimeCounter.getOrDefault(r2, 0),
+                            waitingTimeCounter.getOrDefault(r1, 0)
+                    ))
+                    .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
         
-        // 检查是否有房间可以立即抢占
-        for (Integer waitingRoomId : sortedWaitingRooms) {
-            AirConditionerRequest waitingRequest = acService.getRoomRequest(waitingRoomId);
-            if (waitingRequest == null || !waitingRequest.isActive()) continue;
+            // 检查是否有房间可以立即抢占
+            for (Integer waitingRoomId : sortedWaitingRooms) {
+                AirConditionerRequest waitingRequest = acService.getRoomRequest(waitingRoomId);
+                if (waitingRequest == null || !waitingRequest.isActive()) continue;
             
-            // 检查优先级条件
-            if (waitingRequest.getPriority() > newPriority) {
-                // 高优先级立即抢占
-                evictFromService(roomId);
-                assignToService(waitingRoomId);
-                return;
-            } else if (waitingRequest.getPriority() == newPriority) {
-                // 相同优先级，检查等待时长是否达到2分钟
-                int waitingTime = waitingTimeCounter.getOrDefault(waitingRoomId, 0);
-                if (waitingTime >= 2) {
-                    // 时间片调度：等待时长最长的房间抢占
+                // 检查优先级条件
+                if (waitingRequest.getPriority() > newPriority) {
+                    // 高优先级立即抢占
                     evictFromService(roomId);
                     assignToService(waitingRoomId);
                     return;
+                } else if (waitingRequest.getPriority() == newPriority) {
+                    // 相同优先级，检查等待时长是否达到2分钟
+                    int waitingTime = waitingTimeCounter.getOrDefault(waitingRoomId, 0);
+                    if (waitingTime >= 2) {
+                        // 时间片调度：等待时长最长的房间抢占
+                        evictFromService(roomId);
+                        assignToService(waitingRoomId);
+                        return;
+                        }
                     }
-                }
-            // 如果优先级更低，不能抢占，继续检查下一个
+                // 如果优先级更低，不能抢占，继续检查下一个
+            }
+        } finally {
+            unlockScheduling();
         }
     }
     
     // 检查优先级提升触发的立即调度
     public void checkPriorityIncrease(Integer roomId, int oldPriority, int newPriority) {
-        // 如果房间在等待队列中，检查是否可以抢占服务队列中的房间
-        if (!waitingQueue.contains(roomId)) {
-            return; // 房间不在等待队列中，无需处理
-        }
+        schedulingLock.lock();
+        try {
+            // 如果房间在等待队列中，检查是否可以抢占服务队列中的房间
+            if (!waitingQueue.contains(roomId)) {
+                return; // 房间不在等待队列中，无需处理
+            }
         
-        // 使用优先队列的优势：直接peek()获取最容易被抢占的房间
-        ServiceQueueItem mostEvictable = serviceQueue.peek();
-        if (mostEvictable != null && newPriority > mostEvictable.getPriority()) {
-            // 执行抢占
-            evictFromService(mostEvictable.getRoomId());
-            assignToService(roomId);
+            // 使用优先队列的优势：直接peek()获取最容易被抢占的房间
+            ServiceQueueItem mostEvictable = serviceQueue.peek();
+            if (mostEvictable != null && newPriority > mostEvictable.getPriority()) {
+                // 执行抢占
+                evictFromService(mostEvictable.getRoomId());
+                assignToService(roomId);
+            }
+        } finally {
+            unlockScheduling();
         }
     }
     
     // 处理等待队列（为空闲空调分配请求）
     private void processWaitingQueue() {
         List<Integer> availableAcIds = acService.getAvailableAirConditioners();
+        // 活跃请求只查询一次，排序时不再逐次比较查询数据库
+        Map<Integer, AirConditionerRequest> requests = activeRequestsByRoom();
         
         while (!waitingQueue.isEmpty() && !availableAcIds.isEmpty()) {
             // 按优先级、等待时长和房间号排序等待队列
-            List<Integer> sortedWaiting = waitingQueue.stream()
-                    .sorted((r1, r2) -> {
-                        AirConditionerRequest req1 = acService.getRoomRequest(r1);
-                        AirConditionerRequest req2 = acService.getRoomRequest(r2);
-                        if (req1 == null || req2 == null) return 0;
-                        
-                        // 先按优先级降序
-                        int priorityCompare = Integer.compare(req2.getPriority(), req1.getPriority());
-                        if (priorityCompare != 0) return priorityCompare;
-                        
-                        // 优先级相同按等待时长降序（等待时间长的优先）
-                        int waitingTimeCompare = Integer.compare(
-                                waitingTimeCounter.getOrDefault(r2, 0),
-                                waitingTimeCounter.getOrDefault(r1, 0)
-                        );
-                        if (waitingTimeCompare != 0) return waitingTimeCompare;
-                        
-                        // 等待时长也相同，按房间号升序
-                        return Integer.compare(r1, r2);
-                    })
-                    .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
-            
-            Integer roomId = sortedWaiting.get(0);
-            AirConditionerRequest request = acService.getRoomRequest(roomId);
+            Integer roomId = waitingQueue.stream()
+                    .min(waitingOrder(requests))
+                    .orElseThrow();
+            AirConditionerRequest request = requests.get(roomId);
             
             if (request != null && request.isActive() && request.getAssignedAcId() == null) {
                 Integer acId = availableAcIds.remove(0);
@@ -480,8 +533,41 @@ public class AirConditionerSchedulerService {
         }
     }
     
-    // 更新房间温度
-    private void updateTemperatures() {
+    // 所有活跃请求，按房间ID索引
+    private Map<Integer, AirConditionerRequest> activeRequestsByRoom() {
+        Map<Integer, AirConditionerRequest> requests = new HashMap<>();
+        for (AirConditionerRequest request : acService.getAllActiveRequests()) {
+            requests.put(request.getRoomId(), request);
+        }
+        return requests;
+    }
+    
+    // 等待队列的服务顺序：优先级降序，相同时等待时长降序，再相同按房间号升序
+    private Comparator<Integer> waitingOrder(Map<Integer, AirConditionerRequest> requests) {
+        return (r1, r2) -> {
+            AirConditionerRequest req1 = requests.get(r1);
+            AirConditionerRequest req2 = requests.get(r2);
+            if (req1 == null || req2 == null) return 0;
+            
+            // 先按优先级降序
+            int priorityCompare = Integer.compare(req2.getPriority(), req1.getPriority());
+            if (priorityCompare != 0) return priorityCompare;
+            
+            // 优先级相同按等待时长降序（等待时间长的优先）
+            int waitingTimeCompare = Integer.compare(
+                    waitingTimeCounter.getOrDefault(r2, 0),
+                    waitingTimeCounter.getOrDefault(r1, 0)
+            );
+            if (waitingTimeCompare != 0) return waitingTimeCompare;
+            
+            // 等待时长也相同，按房间号升序
+            return Integer.compare(r1, r2);
+        };
+    }
+    
+    // 更新房间温度，返回到达目标温度的房间
+    private List<Integer> updateTemperatures() {
+        List<Integer> reachedTarget = new ArrayList<>();
         for (ServiceQueueItem item : serviceQueue) {
             Integer roomId = item.getRoomId();
             AirConditionerRequest request = acService.getRoomRequest(roomId);
@@ -507,6 +593,9 @@ public class AirConditionerSchedulerService {
                             }
                         }
                         
+                        // 按本周期实际温度变化累计能耗和费用
+                        acService.accrueUsage(roomId, room.getCurrentTemp(), currentTemp);
+                        
                         // 更新房间温度
                         room.setCurrentTemp(currentTemp);
                         roomService.updateRoomTemperature(roomId, currentTemp);
@@ -514,20 +603,23 @@ public class AirConditionerSchedulerService {
                         
                         // 检查是否达到目标温度
                         if (Math.abs(currentTemp - targetTemp) < 0.1) {
-                            // 达到目标温度，自动关闭空调并触发调度（触发情况4：到达目标温度）
-                            checkTargetTemperatureReached(roomId);
+                            // 达到目标温度，遍历结束后自动关闭空调并触发调度（触发情况4：到达目标温度）
+                            reachedTarget.add(roomId);
                         }
                     }
                 }
             }
         }
+        return reachedTarget;
     }
     
     // 启动调度器
     private void startScheduler() {
         if (running.compareAndSet(false, true)) {
-            schedulerThread = new Thread(this::schedulingLoop);
-            schedulerThread.setDaemon(true);
+            // 调度循环每个周期大部分时间在休眠，虚拟线程模式下不单独占用平台线程
+            schedulerThread = virtualThreads
+                    ? Thread.ofVirtual().name("ac-scheduler").unstarted(this::schedulingLoop)
+                    : Thread.ofPlatform().name("ac-scheduler").daemon(true).unstarted(this::schedulingLoop);
             schedulerThread.start();
         }
     }
@@ -539,6 +631,11 @@ public class AirConditionerSchedulerService {
         }
     }
 
+    // 已完成的调度周期数
+    public long getTickVersion() {
+        return tickVersion.get();
+    }
+
     // 获取等待队列中的房间ID列表
     public List<Integer> getWaitingRooms() {
         return new ArrayList<>(waitingQueue);
@@ -546,9 +643,14 @@ public class AirConditionerSchedulerService {
 
     // 获取正在服务队列中的房间ID列表
     public List<Integer> getServiceRooms() {
-        return serviceQueue.stream()
-                .map(ServiceQueueItem::getRoomId)
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        schedulingLock.lock();
+        try {
+            return serviceQueue.stream()
+                    .map(ServiceQueueItem::getRoomId)
+                    .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        } finally {
+            unlockScheduling();
+        }
     }
     
     // 获取房间的服务时长（分钟）
@@ -563,39 +665,138 @@ public class AirConditionerSchedulerService {
     
     // 通用调度检查：当有空调释放时调用
     public void checkSchedulingOnAcRelease() {
-        // 处理等待队列，为新释放的空调分配请求
-        processWaitingQueue();
+        schedulingLock.lock();
+        try {
+            // 处理等待队列，为新释放的空调分配请求
+            processWaitingQueue();
+        } finally {
+            unlockScheduling();
+        }
     }
     
     // 统一的调度检查方法：涵盖所有四种触发情况
     public void performFullSchedulingCheck() {
-        // 触发情况2：检查时间片调度（等待时长≥120秒的情况）
-        checkTimeSliceScheduling();
-        
-        // 处理等待队列（为空闲空调分配请求）
-        processWaitingQueue();
+        schedulingLock.lock();
+        try {
+            // 触发情况2：检查时间片调度（等待时长≥120秒的情况）
+            checkTimeSliceScheduling();
+        
+            // 处理等待队列（为空闲空调分配请求）
+            processWaitingQueue();
+        } finally {
+            unlockScheduling();
+        }
     }
     
     // 重新同步等待队列：从数据库重新加载活跃请求到等待队列
     public void resyncWaitingQueue() {
-        // 清空当前等待队列
-        waitingQueue.clear();
-        waitingTimeCounter.clear();
-        waitingStartTime.clear();
-        
-        // 从数据库获取所有活跃且未分配空调的请求
-        List<AirConditionerRequest> activeRequests = acService.getAllActiveRequests();
-        for (AirConditionerRequest request : activeRequests) {
-            if (request.getAssignedAcId() == null) {
-                // 添加到等待队列
-                waitingQueue.offer(request.getRoomId());
-                waitingTimeCounter.put(request.getRoomId(), 0);
-                waitingStartTime.put(request.getRoomId(), LocalDateTime.now());
+        schedulingLock.lock();
+        try {
+            // 清空当前等待队列
+            waitingQueue.clear();
+            waitingTimeCounter.clear();
+            waitingStartTime.clear();
+        
+            // 从数据库获取所有活跃且未分配空调的请求
+            List<AirConditionerRequest> activeRequests = acService.getAllActiveRequests();
+            for (AirConditionerRequest request : activeRequests) {
+                if (request.getAssignedAcId() == null) {
+                    // 添加到等待队列
+                    waitingQueue.offer(request.getRoomId());
+                    waitingTimeCounter.put(request.getRoomId(), 0);
+                    waitingStartTime.put(request.getRoomId(), LocalDateTime.now());
+                }
             }
-        }
         
-        // 立即处理等待队列
+            // 立即处理等待队列
+            processWaitingQueue();
+        } finally {
+            unlockScheduling();
+        }
+    }
+    
+    /**
+     * 批量指令引起的队列变化
+     * removed 为请求已结束（关机或重新开机）的房间，其空调已由调用方释放；added 为新开机的房间；
+     * priorities 为调风后优先级变化的房间
+     */
+    public record BulkChanges(Set<Integer> removed, Set<Integer> added, Map<Integer, Integer> priorities) {
+    }
+    
+    /**
+     * 批量指令的调度：在调度锁内执行 apply（写入请求记录、释放空调），
+     * 按返回的变化一次性更新队列，最后只做一次完整调度，而不是每条指令各触发一次
+     */
+    public BulkChanges applyBulkChanges(Supplier<BulkChanges> apply) {
+        schedulingLock.lock();
+        try {
+            BulkChanges changes = apply.get();
+            
+            for (Integer roomId : changes.removed()) {
+                waitingQueue.remove(roomId);
+                waitingTimeCounter.remove(roomId);
+                waitingStartTime.remove(roomId);
+                ServiceQueueItem item = serviceMap.remove(roomId);
+                if (item != null) {
+                    serviceQueue.remove(item);
+                }
+                serviceTimeCounter.remove(roomId);
+                serviceStartTime.remove(roomId);
+            }
+            
+            boolean priorityChanged = false;
+            for (Map.Entry<Integer, Integer> entry : changes.priorities().entrySet()) {
+                ServiceQueueItem item = serviceMap.get(entry.getKey());
+                if (item != null) {
+                    item.setPriority(entry.getValue());
+                    priorityChanged = true;
+                }
+            }
+            if (priorityChanged) {
+                rebuildServiceQueue();
+            }
+            
+            for (Integer roomId : changes.added()) {
+                waitingQueue.remove(roomId);
+                waitingQueue.add(roomId);
+                waitingTimeCounter.put(roomId, 0);
+                waitingStartTime.put(roomId, LocalDateTime.now());
+            }
+            
+            rebalance();
+            
+            // 调度后仍在等待的新开机房间在释放调度锁后开始回温
+            for (Integer roomId : changes.added()) {
+                if (waitingQueue.contains(roomId)) {
+                    pendingRecovery.add(roomId);
+                }
+            }
+            return changes;
+        } finally {
+            unlockScheduling();
+        }
+    }
+    
+    // 一次完整的优先级调度：先用空闲空调服务等待队列，
+    // 再让等待队列中优先级最高的房间依次抢占服务中优先级最低的房间，直到不再满足抢占条件
+    private void rebalance() {
         processWaitingQueue();
+        
+        Map<Integer, AirConditionerRequest> requests = activeRequestsByRoom();
+        while (!waitingQueue.isEmpty()) {
+            ServiceQueueItem mostEvictable = serviceQueue.peek();
+            Integer candidate = waitingQueue.stream()
+                    .min(waitingOrder(requests))
+                    .orElse(null);
+            AirConditionerRequest request = candidate != null ? requests.get(candidate) : null;
+            if (mostEvictable == null || request == null || request.getPriority() <= mostEvictable.getPriority()) {
+                break;
+            }
+            evictFromService(mostEvictable.getRoomId());
+            if (assignToService(candidate) == 0) {
+                break;
+            }
+        }
     }
     
     // 检查服务队列中某个房间是否达到目标温度
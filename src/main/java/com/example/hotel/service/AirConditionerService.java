@@ -1,13 +1,22 @@
 package com.example.hotel.service;
 
+import com.example.hotel.dto.BulkAcCommand;
+import com.example.hotel.dto.BulkAcCommandResult;
+import com.example.hotel.dto.LiveChargeView;
 import com.example.hotel.entity.AirConditioner;
 import com.example.hotel.entity.AirConditionerRequest;
 import com.example.hotel.entity.BillDetail;
 import com.example.hotel.entity.Room;
+import com.example.hotel.event.AirConditionerEvent;
 import com.example.hotel.repository.AirConditionerRequestRepository;
 import com.example.hotel.repository.AirConditionerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -15,40 +24,64 @@ import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class AirConditionerService {
     
+    private static final Logger logger = LoggerFactory.getLogger(AirConditionerService.class);
+    
     private final RoomService roomService;
     private final AirConditionerRequestRepository requestRepository;
     private final AirConditionerRepository airConditionerRepository;
     private final AirConditionerSchedulerService schedulerService;
+    private final TariffService tariffService;
+    private final ApplicationEventPublisher eventPublisher;
     private final Map<Integer, AirConditioner> airConditioners = new ConcurrentHashMap<>();
     private final Map<Integer, AirConditionerRequest> roomRequests = new ConcurrentHashMap<>();
-    private final Map<Integer, List<BillDetail>> billDetails = new ConcurrentHashMap<>();
+    private final Map<Integer, BillDetailTimeline> billDetails = new ConcurrentHashMap<>();
+    // 正在服务的房间的未结束详单，调度器每个周期按实际温度变化累计能耗和费用
+    private final Map<Integer, OpenUsage> openUsages = new ConcurrentHashMap<>();
+    // 空调和请求状态的版本号，每次发布空调事件时递增，用于监控接口的ETag
+    private final AtomicLong stateVersion = new AtomicLong();
     
     // 空调参数
     private final Map<AirConditioner.Mode, Double> defaultTargetTemp = new HashMap<>();
     private final Map<AirConditioner.Mode, double[]> tempRanges = new HashMap<>();
-    private final double priceRate = 1.0; // 1元/度
     
-    // 线程池管理
-    private final ExecutorService temperatureRecoveryExecutor;
+    // 条件更新抢占空调的最大尝试次数（版本冲突时重试）
+    private static final int MAX_ASSIGN_ATTEMPTS = 3;
+    
+    // 回温定时器：每个回温房间一个周期任务，每次只推进一步温度，不在任务内休眠
+    // 队列无界，提交永远不会在调用方线程上执行，调用方可以在持有房间锁或调度锁时启动回温
+    private final ScheduledThreadPoolExecutor temperatureRecoveryExecutor;
     
-    // 房间回温线程任务引用
-    private final Map<Integer, Future<?>> roomRecoveryTasks = new ConcurrentHashMap<>();
+    // 回温周期（10秒代表1分钟）和每个周期的温度变化
+    private static final long RECOVERY_TICK_MILLIS = 10_000;
+    private static final double RECOVERY_STEP = 0.5;
+    
+    // 房间回温任务引用
+    private final Map<Integer, ScheduledFuture<?>> roomRecoveryTasks = new ConcurrentHashMap<>();
     
     // 回温线程状态锁
-    private final Map<Integer, Object> roomTemperatureLocks = new ConcurrentHashMap<>();
+    private final RoomLocks roomLocks = new RoomLocks();
     
     public AirConditionerService(RoomService roomService, AirConditionerRequestRepository requestRepository, 
                                 AirConditionerRepository airConditionerRepository,
-                                @Lazy AirConditionerSchedulerService schedulerService) {
+                                @Lazy AirConditionerSchedulerService schedulerService,
+                                TariffService tariffService,
+                                ApplicationEventPublisher eventPublisher,
+                                @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
         this.roomService = roomService;
         this.requestRepository = requestRepository;
         this.airConditionerRepository = airConditionerRepository;
         this.schedulerService = schedulerService;
+        this.tariffService = tariffService;
+        this.eventPublisher = eventPublisher;
         
         // 初始化默认目标温度
         defaultTargetTemp.put(AirConditioner.Mode.COOLING, 25.0);
@@ -58,12 +91,17 @@ public class AirConditionerService {
         tempRanges.put(AirConditioner.Mode.COOLING, new double[]{18.0, 28.0});
         tempRanges.put(AirConditioner.Mode.HEATING, new double[]{18.0, 25.0});
         
-        // 初始化线程池
-        temperatureRecoveryExecutor = new ThreadPoolExecutor(
-            2, 5, 60, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>(10),
-            new ThreadPoolExecutor.CallerRunsPolicy()
-        );
+        // 初始化回温定时器：每次回温只是一个很短的温度更新，两个线程足够服务全部房间；虚拟线程模式下使用虚拟线程
+        ThreadFactory recoveryThreads = virtualThreads
+            ? Thread.ofVirtual().name("ac-recovery-", 1).factory()
+            : Thread.ofPlatform().name("ac-recovery-", 1).daemon(true).factory();
+        temperatureRecoveryExecutor = new ScheduledThreadPoolExecutor(2, recoveryThreads);
+        temperatureRecoveryExecutor.setRemoveOnCancelPolicy(true);
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        temperatureRecoveryExecutor.shutdownNow();
     }
     
     @PostConstruct
@@ -92,8 +130,7 @@ public class AirConditionerService {
         
         // 初始化房间相关数据
         for (Room room : roomService.getAllRooms()) {
-            billDetails.put(room.getRoomId(), new ArrayList<>());
-            roomTemperatureLocks.put(room.getRoomId(), new Object());
+            billDetails.put(room.getRoomId(), new BillDetailTimeline(room.getRoomId()));
         }
     }
     
@@ -114,7 +151,8 @@ public class AirConditionerService {
             return null; // 房间不存在，返回null表示失败
         }
         
-        synchronized (roomTemperatureLocks.getOrDefault(roomId, new Object())) {
+        ReentrantLock lock = roomLocks.lock(roomId);
+        try {
             // 如果房间正在回温，取消回温任务
             cancelRoomTemperatureRecovery(roomId);
             
@@ -149,57 +187,21 @@ public class AirConditionerService {
             
             // 同时更新内存缓存（为了兼容现有逻辑）
             roomRequests.put(roomId, request);
+            publishEvent(roomId, null, AirConditionerEvent.EventType.REQUEST_CREATED);
             
             // 使用新的调度逻辑处理请求（触发情况3：开机）
             Integer result = schedulerService.handleNewRequest(roomId);
             return result != null ? result : 0; // 0表示在等待队列
+        } finally {
+            lock.unlock();
         }
     }
     
     // 关闭房间空调（不管是否有活跃请求，只要有空调在服务就关闭）
     public boolean cancelRequest(Integer roomId) {
-        synchronized (roomTemperatureLocks.getOrDefault(roomId, new Object())) {
-            boolean hasAirConditioner = false;
-            
-            // 方法1：查找正在为该房间服务的空调
-            AirConditioner servingAc = null;
-            for (AirConditioner ac : airConditioners.values()) {
-                if (roomId.equals(ac.getServingRoomId())) {
-                    servingAc = ac;
-                    hasAirConditioner = true;
-                    break;
-                }
-            }
-            
-            // 方法2：从Room表查找分配的空调ID
-            Room room = roomService.getRoomById(roomId).orElse(null);
-            if (room != null && room.getAssignedAcId() != null) {
-                if (servingAc == null) {
-                    servingAc = airConditioners.get(room.getAssignedAcId());
-                }
-                hasAirConditioner = true;
-            }
-            
-            // 关闭正在服务的空调
-            if (servingAc != null) {
-                // 记录空调使用账单
-                recordAcUsage(servingAc, roomId);
-                
-                // 释放空调
-                servingAc.setOn(false);
-                servingAc.setServingRoomId(null);
-                servingAc.setServiceEndTime(LocalDateTime.now());
-                
-                // 保存空调状态到数据库
-                airConditionerRepository.save(servingAc);
-            }
-            
-            // 清空Room表的assignedAcId字段
-            if (room != null && room.getAssignedAcId() != null) {
-                room.setAssignedAcId(null);
-                roomService.saveRoom(room);
-                hasAirConditioner = true;
-            }
+        ReentrantLock lock = roomLocks.lock(roomId);
+        try {
+            boolean hasAirConditioner = releaseRoomAirConditioner(roomId);
             
             // 处理活跃请求（如果存在）
             AirConditionerRequest request = requestRepository.findByRoomIdAndActiveTrue(roomId).orElse(null);
@@ -222,17 +224,71 @@ public class AirConditionerService {
             
             // 如果有空调被关闭，启动回温过程
             if (hasAirConditioner) {
+                publishEvent(roomId, null, AirConditionerEvent.EventType.REQUEST_CANCELLED);
                 startRoomTemperatureRecovery(roomId);
                 return true;
             }
             
             // 如果没有找到任何空调或请求，返回false
             return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // 关闭正在为房间服务的空调并清空房间的分配记录，返回房间是否有空调在服务
+    private boolean releaseRoomAirConditioner(Integer roomId) {
+        boolean hasAirConditioner = false;
+        
+        // 方法1：查找正在为该房间服务的空调
+        AirConditioner servingAc = null;
+        for (AirConditioner ac : airConditioners.values()) {
+            if (roomId.equals(ac.getServingRoomId())) {
+                servingAc = ac;
+                hasAirConditioner = true;
+                break;
+            }
         }
+        
+        // 方法2：从Room表查找分配的空调ID
+        Room room = roomService.getRoomById(roomId).orElse(null);
+        if (room != null && room.getAssignedAcId() != null) {
+            if (servingAc == null) {
+                servingAc = airConditioners.get(room.getAssignedAcId());
+            }
+            hasAirConditioner = true;
+        }
+        
+        // 关闭正在服务的空调
+        if (servingAc != null) {
+            // 记录空调使用账单
+            recordAcUsage(servingAc, roomId);
+            
+            // 释放空调（条件更新，空调已转去服务其他房间时不会误释放）
+            releaseAirConditioner(servingAc, roomId);
+        }
+        
+        // 清空Room表的assignedAcId字段
+        if (room != null && room.getAssignedAcId() != null) {
+            roomService.updateAssignedAc(roomId, null);
+        }
+        return hasAirConditioner;
     }
     
     // 记录空调使用账单
+    // 优先使用调度周期累计的能耗和费用；没有累计记录时按原公式估算
     private void recordAcUsage(AirConditioner ac, Integer roomId) {
+        OpenUsage usage = openUsages.remove(roomId);
+        if (usage != null) {
+            LocalDateTime endTime = LocalDateTime.now();
+            BillDetail detail = usage.close(endTime);
+            // 空调记录本次服务的总时长和总费用，服务期间调整过设置时包含之前的详单
+            ac.setServiceDuration((int) Duration.between(usage.sessionStartTime, endTime).toMinutes());
+            ac.setCost(usage.sessionCost());
+            billDetails.computeIfAbsent(roomId, BillDetailTimeline::new).append(detail);
+            return;
+        }
+
         if (ac.getServiceStartTime() != null) {
             int duration = (int) Duration.between(ac.getServiceStartTime(), LocalDateTime.now()).toMinutes();
             ac.setServiceDuration(duration);
@@ -243,7 +299,10 @@ public class AirConditionerService {
                 double tempChange = Math.abs(ac.getTargetTemp() - room.getCurrentTemp());
                 int tempChangeTime = ac.getFanSpeed().getTempChangeTime();
                 double energyUsed = tempChange / tempChangeTime;
-                double cost = energyUsed * priceRate;
+                // 按服务时段的分时电价计费
+                LocalDateTime endTime = LocalDateTime.now();
+                double rate = tariffService.averageRate(ac.getServiceStartTime(), endTime);
+                double cost = energyUsed * rate;
                 ac.setCost(cost);
                 
                 // 创建账单明细
@@ -251,18 +310,144 @@ public class AirConditionerService {
                     .roomId(roomId)
                     .requestTime(ac.getRequestTime())
                     .serviceStartTime(ac.getServiceStartTime())
-                    .serviceEndTime(LocalDateTime.now())
+                    .serviceEndTime(endTime)
                     .serviceDuration(duration)
                     .fanSpeed(ac.getFanSpeed())
                     .cost(cost)
-                    .rate(priceRate)
+                    .rate(rate)
                     .build();
                 
-                billDetails.get(roomId).add(detail);
+                billDetails.computeIfAbsent(roomId, BillDetailTimeline::new).append(detail);
             }
         }
     }
     
+    /**
+     * 调度周期内为正在服务的房间累计能耗和费用
+     * 能耗按本周期房间温度的实际变化量计算（1度电对应1℃），费用 = 能耗 × 当前时刻的分时费率
+     */
+    public void accrueUsage(Integer roomId, double previousTemp, double currentTemp) {
+        LocalDateTime now = LocalDateTime.now();
+        double rate = tariffService.rateAt(now);
+        // 与调整设置时的详单切换按房间互斥，累计不会落在已结束的详单上
+        openUsages.computeIfPresent(roomId, (id, usage) -> {
+            usage.accrue(Math.abs(currentTemp - previousTemp), rate, now);
+            return usage;
+        });
+    }
+    
+    /**
+     * 房间本次服务的实时计费
+     */
+    public LiveChargeView getLiveCharge(Integer roomId) {
+        OpenUsage usage = openUsages.get(roomId);
+        return usage != null ? usage.view() : LiveChargeView.idle(roomId, tariffService.rateAt(LocalDateTime.now()));
+    }
+    
+    // 未结束的详单：由调度线程累计，查询线程读取
+    // 一条详单只对应一组模式、风速和目标温度；服务期间调整设置时结束当前详单，由 next 开始新的详单
+    private static final class OpenUsage {
+        private final Integer roomId;
+        private final Integer acId;
+        private final AirConditioner.Mode mode;
+        private final AirConditioner.FanSpeed fanSpeed;
+        private final double targetTemp;
+        private final LocalDateTime requestTime;
+        private final LocalDateTime serviceStartTime;
+        // 本次服务（空调分配给房间）的开始时间，以及本次服务中已结束详单的费用
+        private final LocalDateTime sessionStartTime;
+        private final double priorCost;
+        // 最近一个周期使用的费率
+        private double rate;
+        private int ticks;
+        private double tempChange;
+        private double energy;
+        private double cost;
+        private LocalDateTime updatedAt;
+
+        OpenUsage(Integer roomId, AirConditioner ac, AirConditionerRequest request, double rate) {
+            this(roomId, ac.getAcId(), request,
+                    ac.getServiceStartTime() != null ? ac.getServiceStartTime() : LocalDateTime.now(), null, 0, rate);
+        }
+
+        private OpenUsage(Integer roomId, Integer acId, AirConditionerRequest request, LocalDateTime serviceStartTime,
+                          LocalDateTime sessionStartTime, double priorCost, double rate) {
+            this.roomId = roomId;
+            this.acId = acId;
+            this.mode = request.getMode();
+            this.fanSpeed = request.getFanSpeed();
+            this.targetTemp = request.getTargetTemp();
+            this.requestTime = request.getRequestTime();
+            this.serviceStartTime = serviceStartTime;
+            this.sessionStartTime = sessionStartTime != null ? sessionStartTime : serviceStartTime;
+            this.priorCost = priorCost;
+            this.rate = rate;
+            this.updatedAt = serviceStartTime;
+        }
+
+        // 请求的设置与本详单不同
+        boolean settingsDiffer(AirConditionerRequest request) {
+            return request.getMode() != mode || request.getFanSpeed() != fanSpeed
+                    || Double.compare(request.getTargetTemp(), targetTemp) != 0;
+        }
+
+        // 按调整后的设置从 now 开始的新详单，属于同一次服务
+        synchronized OpenUsage next(AirConditionerRequest request, LocalDateTime now, double rate) {
+            return new OpenUsage(roomId, acId, request, now, sessionStartTime, priorCost + cost, rate);
+        }
+
+        // 本次服务至今的总费用
+        synchronized double sessionCost() {
+            return priorCost + cost;
+        }
+
+        synchronized void accrue(double delta, double rate, LocalDateTime now) {
+            ticks++;
+            tempChange += delta;
+            energy += delta;
+            cost += delta * rate;
+            this.rate = rate;
+            updatedAt = now;
+        }
+
+        synchronized LiveChargeView view() {
+            return LiveChargeView.builder()
+                    .roomId(roomId)
+                    .inService(true)
+                    .acId(acId)
+                    .mode(mode)
+                    .fanSpeed(fanSpeed)
+                    .targetTemp(targetTemp)
+                    .serviceStartTime(serviceStartTime)
+                    .serviceMinutes(ticks)
+                    .tempChange(tempChange)
+                    .energyConsumed(energy)
+                    .cost(cost)
+                    .rate(rate)
+                    .updatedAt(updatedAt)
+                    .build();
+        }
+
+        synchronized BillDetail close(LocalDateTime endTime) {
+            return BillDetail.builder()
+                    .roomId(roomId)
+                    .acId(acId)
+                    .requestTime(requestTime)
+                    .serviceStartTime(serviceStartTime)
+                    .serviceEndTime(endTime)
+                    .serviceDuration((int) Duration.between(serviceStartTime, endTime).toMinutes())
+                    .fanSpeed(fanSpeed)
+                    .mode(mode)
+                    .targetTemp(targetTemp)
+                    .tempChange(tempChange)
+                    .energyConsumed(energy)
+                    .cost(cost)
+                    // 跨越多个电价时段时记录平均费率
+                    .rate(energy > 0 ? cost / energy : rate)
+                    .build();
+        }
+    }
+    
     // 尝试分配空调给房间，返回分配的空调ID，null表示无可用空调
     private Integer tryAssignAirConditioner(Integer roomId) {
         // 查找可用的空调
@@ -280,45 +465,107 @@ public class AirConditionerService {
     }
     
     // 分配空调给房间
+    // 使用条件更新（servingRoomId IS NULL AND version = ?）抢占空调，多实例部署时同一台空调不会被重复分配
     public boolean assignAirConditioner(Integer roomId, Integer acId) {
         // 从数据库获取最新的活跃请求，而不是依赖内存缓存
         AirConditionerRequest request = requestRepository.findByRoomIdAndActiveTrue(roomId).orElse(null);
-        AirConditioner ac = airConditioners.get(acId);
-        
-        if (request == null || !request.isActive() || ac == null || ac.getServingRoomId() != null) {
+        if (request == null || !request.isActive()) {
             return false;
         }
         
-        // 配置空调
-        ac.setOn(true);
-        ac.setServingRoomId(roomId);
-        ac.setMode(request.getMode());
-        ac.setFanSpeed(request.getFanSpeed());
-        ac.setTargetTemp(request.getTargetTemp());
-        ac.setCurrentTemp(request.getCurrentRoomTemp());
-        ac.setRequestTime(request.getRequestTime());
-        ac.setServiceStartTime(LocalDateTime.now());
-        ac.setPriority(request.getPriority());
+        boolean claimed = false;
+        for (int attempt = 0; attempt < MAX_ASSIGN_ATTEMPTS && !claimed; attempt++) {
+            // 每次都读取数据库最新状态，其他实例可能刚刚修改过该空调
+            AirConditioner ac = airConditionerRepository.findById(acId).orElse(null);
+            if (ac == null) {
+                return false;
+            }
+            if (ac.getServingRoomId() != null) {
+                airConditioners.put(acId, ac);
+                return false; // 空调已被占用
+            }
+            
+            claimed = airConditionerRepository.claimAirConditioner(acId, ac.getVersion(), roomId,
+                    request.getMode(), request.getFanSpeed(), request.getTargetTemp(),
+                    request.getCurrentRoomTemp(), request.getRequestTime(), LocalDateTime.now(),
+                    request.getPriority()) == 1;
+        }
         
-        // 保存空调状态到数据库
-        airConditionerRepository.save(ac);
+        // 刷新内存缓存（无论成功与否，缓存都以数据库为准）
+        AirConditioner ac = refreshAirConditionerCache(acId);
+        if (!claimed) {
+            return false;
+        }
         
         // 更新请求
         request.setAssignedAcId(acId);
         
         // 保存请求到数据库
-        requestRepository.save(request);
+        try {
+            requestRepository.save(request);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            // 请求已被其他实例修改（取消或调整），归还刚抢到的空调
+            releaseAirConditioner(ac, roomId);
+            return false;
+        }
         
         // 更新Room表的assignedAcId字段
-        Room room = roomService.getRoomById(roomId).orElse(null);
-        if (room != null) {
-            room.setAssignedAcId(acId);
-            roomService.saveRoom(room);
-        }
+        roomService.updateAssignedAc(roomId, acId);
+        
+        // 开始累计本次服务的能耗和费用
+        openUsages.put(roomId, new OpenUsage(roomId, ac, request, tariffService.rateAt(LocalDateTime.now())));
+        publishEvent(roomId, acId, AirConditionerEvent.EventType.AC_ASSIGNED);
         
         return true;
     }
     
+    // 释放空调：仅当空调仍在为该房间服务时才释放，随后以数据库为准刷新内存缓存
+    public boolean releaseAirConditioner(AirConditioner ac, Integer roomId) {
+        // 调度器抢占等路径释放空调时，先把已累计的费用记入详单
+        if (openUsages.containsKey(roomId)) {
+            recordAcUsage(ac, roomId);
+        }
+        int released = airConditionerRepository.releaseAirConditioner(ac.getAcId(), roomId,
+                LocalDateTime.now(), ac.getServiceDuration(), ac.getCost());
+        refreshAirConditionerCache(ac.getAcId());
+        if (released == 1) {
+            publishEvent(roomId, ac.getAcId(), AirConditionerEvent.EventType.AC_RELEASED);
+        }
+        return released == 1;
+    }
+    
+    /**
+     * 空调和请求状态的版本号
+     */
+    public long getStateVersion() {
+        return stateVersion.get();
+    }
+    
+    // 发布空调状态变化事件（监控推送据此判断是否需要重新生成快照）
+    private void publishEvent(Integer roomId, Integer acId, AirConditionerEvent.EventType type) {
+        stateVersion.incrementAndGet();
+        eventPublisher.publishEvent(AirConditionerEvent.builder()
+                .roomId(roomId)
+                .acId(acId)
+                .eventType(type)
+                .timestamp(LocalDateTime.now())
+                .build());
+    }
+    
+    // 从数据库重新加载单台空调到内存缓存
+    private AirConditioner refreshAirConditionerCache(Integer acId) {
+        AirConditioner latest = airConditionerRepository.findById(acId).orElse(null);
+        if (latest != null) {
+            airConditioners.put(acId, latest);
+        }
+        return latest;
+    }
+    
+    // 保存请求（调度器抢占时清空分配记录使用）
+    public AirConditionerRequest saveRequest(AirConditionerRequest request) {
+        return requestRepository.save(request);
+    }
+    
     // 获取可用空调ID（直接从数据库查询，确保数据准确性）
     public List<Integer> getAvailableAirConditioners() {
         List<Integer> available = new ArrayList<>();
@@ -375,56 +622,24 @@ public class AirConditionerService {
             return false;
         }
         
-        synchronized (roomTemperatureLocks.getOrDefault(roomId, new Object())) {
-            boolean changed = false;
+        ReentrantLock lock = roomLocks.lock(roomId);
+        try {
+            int oldPriority = request.getPriority();
+            boolean changed = applySettings(request, mode, fanSpeed, targetTemp);
             
-            // 更新模式
-            if (mode != null && !mode.equals(request.getMode())) {
-                request.setMode(mode);
-                // 如果切换模式，可能需要调整默认目标温度
-                if (targetTemp == null) {
-                    request.setTargetTemp(defaultTargetTemp.get(mode));
-                }
-                changed = true;
-            }
-            
-            // 更新风速
-            if (fanSpeed != null && !fanSpeed.equals(request.getFanSpeed())) {
-                int oldPriority = request.getPriority();
-                request.setFanSpeed(fanSpeed);
-                request.setPriority(fanSpeed.getPriority());
-                
+            int newPriority = request.getPriority();
+            if (newPriority != oldPriority) {
                 // 如果优先级降低，立即触发调度检查（触发情况1：调风-降低）
-                if (fanSpeed.getPriority() < oldPriority) {
-                    schedulerService.checkPriorityReduction(roomId, oldPriority, fanSpeed.getPriority());
+                if (newPriority < oldPriority) {
+                    schedulerService.checkPriorityReduction(roomId, oldPriority, newPriority);
                 }
                 // 如果优先级提升，也立即触发调度检查（触发情况1：调风-提升）
-                else if (fanSpeed.getPriority() > oldPriority) {
-                    schedulerService.checkPriorityIncrease(roomId, oldPriority, fanSpeed.getPriority());
+                else {
+                    schedulerService.checkPriorityIncrease(roomId, oldPriority, newPriority);
                 }
                 
                 // 更新调度器中的优先级
-                schedulerService.updateRoomPriority(roomId, fanSpeed.getPriority());
-                
-                changed = true;
-            }
-            
-            // 更新目标温度
-            if (targetTemp != null) {
-                // 检查温度范围
-                double[] range = tempRanges.get(request.getMode());
-                if (targetTemp >= range[0] && targetTemp <= range[1]) {
-                    request.setTargetTemp(targetTemp);
-                    changed = true;
-                } else {
-                    // 温度超出范围，使用边界值
-                    if (targetTemp < range[0]) {
-                        request.setTargetTemp(range[0]);
-                    } else {
-                        request.setTargetTemp(range[1]);
-                    }
-                    changed = true;
-                }
+                schedulerService.updateRoomPriority(roomId, newPriority);
             }
             
             if (changed) {
@@ -434,32 +649,322 @@ public class AirConditionerService {
                 // 更新内存缓存
                 roomRequests.put(roomId, request);
                 
-                // 如果已分配空调，更新空调设置
-                if (request.getAssignedAcId() != null) {
-                    AirConditioner ac = airConditioners.get(request.getAssignedAcId());
-                    if (ac != null) {
-                        ac.setMode(request.getMode());
-                        ac.setFanSpeed(request.getFanSpeed());
-                        ac.setTargetTemp(request.getTargetTemp());
-                        ac.setPriority(request.getPriority());
+                settingsSaved(request);
+            }
+            
+            return changed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 按合并后的参数调整房间空调，由指令分发器在房间队列中执行；HTTP 接口和面板 TCP 接入共用
+    // 在队列中检查活跃请求：排在前面的开机指令此时已经执行
+    public AcCommandDispatcher.AdjustResult adjustActiveRequest(Integer roomId, AcCommandDispatcher.AdjustSettings settings) {
+        AirConditionerRequest currentRequest = getRoomRequest(roomId);
+        if (currentRequest == null || !currentRequest.isActive()) {
+            return AcCommandDispatcher.AdjustResult.NO_ACTIVE_REQUEST;
+        }
+        boolean success = adjustAirConditionerSettings(roomId,
+                settings.mode(), settings.fanSpeed(), settings.targetTemp());
+        return success ? AcCommandDispatcher.AdjustResult.APPLIED : AcCommandDispatcher.AdjustResult.FAILED;
+    }
+
+    // 按调整参数修改请求的模式、风速和目标温度，返回是否有变化
+    private boolean applySettings(AirConditionerRequest request, AirConditioner.Mode mode,
+                                  AirConditioner.FanSpeed fanSpeed, Double targetTemp) {
+        boolean changed = false;
+        
+        // 更新模式
+        if (mode != null && !mode.equals(request.getMode())) {
+            request.setMode(mode);
+            // 如果切换模式，可能需要调整默认目标温度
+            if (targetTemp == null) {
+                request.setTargetTemp(defaultTargetTemp.get(mode));
+            }
+            changed = true;
+        }
+        
+        // 更新风速
+        if (fanSpeed != null && !fanSpeed.equals(request.getFanSpeed())) {
+            request.setFanSpeed(fanSpeed);
+            request.setPriority(fanSpeed.getPriority());
+            changed = true;
+        }
+        
+        // 更新目标温度
+        if (targetTemp != null) {
+            // 检查温度范围，超出范围时使用边界值
+            double[] range = tempRanges.get(request.getMode());
+            request.setTargetTemp(Math.max(range[0], Math.min(range[1], targetTemp)));
+            changed = true;
+        }
+        return changed;
+    }
+    
+    // 调整后的设置已保存：结束按旧设置累计的详单，同步到正在服务的空调并发布事件
+    private void settingsSaved(AirConditionerRequest request) {
+        LocalDateTime now = LocalDateTime.now();
+        double rate = tariffService.rateAt(now);
+        List<BillDetail> closed = new ArrayList<>(1);
+        openUsages.computeIfPresent(request.getRoomId(), (roomId, usage) -> {
+            if (!usage.settingsDiffer(request)) {
+                return usage;
+            }
+            closed.add(usage.close(now));
+            return usage.next(request, now, rate);
+        });
+        closed.forEach(detail -> billDetails.computeIfAbsent(detail.getRoomId(), BillDetailTimeline::new).append(detail));
+        
+        // 如果已分配空调，更新空调设置
+        if (request.getAssignedAcId() != null) {
+            AirConditioner ac = airConditioners.get(request.getAssignedAcId());
+            if (ac != null) {
+                ac.setMode(request.getMode());
+                ac.setFanSpeed(request.getFanSpeed());
+                ac.setTargetTemp(request.getTargetTemp());
+                ac.setPriority(request.getPriority());
+            }
+        }
+        publishEvent(request.getRoomId(), request.getAssignedAcId(), AirConditionerEvent.EventType.SETTINGS_CHANGED);
+    }
+    
+    /**
+     * 批量执行多个房间的开机、调整、关机指令
+     * 按房间号顺序取得所有房间锁后进入调度锁，请求记录在一个事务中批量写入，调度器只做一次完整调度；
+     * 同一批次中每个房间只能出现一次。结果按请求顺序返回，开机和调整的房间附带调度后分配的空调
+     */
+    public BulkAcCommandResult applyBulkCommands(List<BulkAcCommand> commands) {
+        long start = System.nanoTime();
+        BulkAcCommandResult result = new BulkAcCommandResult();
+        result.setTotal(commands.size());
+        
+        // 先校验，通过校验的指令按房间号排序，保证多个批次并发时按相同顺序加锁
+        Map<Integer, BulkAcCommand> accepted = new TreeMap<>();
+        Map<Integer, BulkAcCommandResult.RoomResult> roomResults = new HashMap<>();
+        for (BulkAcCommand command : commands) {
+            BulkAcCommandResult.RoomResult roomResult = command == null
+                    ? new BulkAcCommandResult.RoomResult(null, null, false, null, null)
+                    : new BulkAcCommandResult.RoomResult(command.getRoomId(), command.getAction(), false, null, null);
+            result.getResults().add(roomResult);
+            String error = validateBulkCommand(command, accepted);
+            if (error != null) {
+                roomResult.setMessage(error);
+                continue;
+            }
+            accepted.put(command.getRoomId(), command);
+            roomResults.put(command.getRoomId(), roomResult);
+        }
+        
+        // 请求记录的批量写入已提交；提交之后的失败不会撤销本批次的指令
+        AtomicBoolean committed = new AtomicBoolean();
+        List<ReentrantLock> locks = new ArrayList<>(accepted.size());
+        // 关机的房间在释放本批次全部房间锁之后再开始回温
+        List<Integer> recovering = new ArrayList<>();
+        try {
+            for (Integer roomId : accepted.keySet()) {
+                locks.add(roomLocks.lock(roomId));
+            }
+            try {
+                schedulerService.applyBulkChanges(() -> writeBulkCommands(accepted, roomResults, committed));
+            } catch (RuntimeException e) {
+                if (!committed.get()) {
+                    // 请求记录写入失败时事务整体回滚，本批次的指令都没有生效
+                    logger.error("批量空调指令写入失败，本批次指令均未生效", e);
+                    for (BulkAcCommandResult.RoomResult roomResult : roomResults.values()) {
+                        if (roomResult.isSuccess()) {
+                            roomResult.setSuccess(false);
+                            roomResult.setMessage("批量执行失败：" + e.getMessage());
+                        }
                     }
+                    return finish(result, start);
                 }
+                // 写入之后的释放或调度失败时，指令已生效，未完成的分配由下一个调度周期补齐
+                logger.error("批量空调指令已写入，释放空调或调度失败", e);
             }
             
-            return changed;
+            // 调度完成后按空调的服务对象回填分配结果
+            Map<Integer, Integer> servingAcs = new HashMap<>();
+            for (AirConditioner ac : airConditioners.values()) {
+                if (ac.getServingRoomId() != null) {
+                    servingAcs.put(ac.getServingRoomId(), ac.getAcId());
+                }
+            }
+            for (Map.Entry<Integer, BulkAcCommand> entry : accepted.entrySet()) {
+                Integer roomId = entry.getKey();
+                BulkAcCommandResult.RoomResult roomResult = roomResults.get(roomId);
+                if (!roomResult.isSuccess()) {
+                    continue;
+                }
+                if (entry.getValue().getAction() == BulkAcCommand.Action.CANCEL) {
+                    recovering.add(roomId);
+                } else {
+                    roomResult.setAssignedAcId(servingAcs.getOrDefault(roomId, 0));
+                }
+            }
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
         }
+        for (Integer roomId : recovering) {
+            startRoomTemperatureRecovery(roomId);
+        }
+        return finish(result, start);
+    }
+    
+    // 汇总批量指令的成功数和耗时
+    private static BulkAcCommandResult finish(BulkAcCommandResult result, long start) {
+        int succeeded = (int) result.getResults().stream().filter(BulkAcCommandResult.RoomResult::isSuccess).count();
+        result.setSucceeded(succeeded);
+        result.setFailed(result.getTotal() - succeeded);
+        result.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+    
+    // 校验单条批量指令，返回失败原因，通过时返回null
+    private String validateBulkCommand(BulkAcCommand command, Map<Integer, BulkAcCommand> accepted) {
+        if (command == null || command.getRoomId() == null || command.getAction() == null) {
+            return "指令缺少房间号或指令类型";
+        }
+        if (roomService.getRoomById(command.getRoomId()).isEmpty()) {
+            return "房间不存在";
+        }
+        if (accepted.containsKey(command.getRoomId())) {
+            return "同一批次中房间重复";
+        }
+        if (command.getAction() == BulkAcCommand.Action.ADJUST && command.getMode() == null
+                && command.getFanSpeed() == null && command.getTargetTemp() == null) {
+            return "至少需要提供一个参数（mode、fanSpeed或targetTemp）";
+        }
+        return null;
+    }
+    
+    // 在调度锁内执行：修改请求记录并一次批量保存，随后释放结束请求的房间的空调，返回调度器需要处理的队列变化
+    private AirConditionerSchedulerService.BulkChanges writeBulkCommands(
+            Map<Integer, BulkAcCommand> accepted, Map<Integer, BulkAcCommandResult.RoomResult> roomResults,
+            AtomicBoolean committed) {
+        Map<Integer, AirConditionerRequest> activeRequests = new HashMap<>();
+        for (AirConditionerRequest request : requestRepository.findByRoomIdInAndActiveTrue(accepted.keySet())) {
+            activeRequests.put(request.getRoomId(), request);
+        }
+        
+        List<AirConditionerRequest> writes = new ArrayList<>();
+        Set<Integer> removed = new LinkedHashSet<>();
+        Set<Integer> added = new LinkedHashSet<>();
+        Map<Integer, Integer> priorities = new HashMap<>();
+        Set<Integer> adjusted = new LinkedHashSet<>();
+        LocalDateTime now = LocalDateTime.now();
+        
+        for (Map.Entry<Integer, BulkAcCommand> entry : accepted.entrySet()) {
+            Integer roomId = entry.getKey();
+            BulkAcCommand command = entry.getValue();
+            BulkAcCommandResult.RoomResult roomResult = roomResults.get(roomId);
+            AirConditionerRequest existing = activeRequests.get(roomId);
+            Room room = roomService.getRoomById(roomId).orElseThrow();
+            
+            switch (command.getAction()) {
+                case CANCEL -> {
+                    if (existing == null && room.getAssignedAcId() == null) {
+                        roomResult.setMessage("房间没有正在运行的空调");
+                        continue;
+                    }
+                    if (existing != null) {
+                        existing.setActive(false);
+                        existing.setAssignedAcId(null);
+                        writes.add(existing);
+                    }
+                    removed.add(roomId);
+                    roomResult.setMessage("空调已关闭");
+                }
+                case START -> {
+                    // 重新开机：结束原请求并归还原空调，与新请求一起参与本次调度
+                    if (existing != null) {
+                        existing.setActive(false);
+                        existing.setAssignedAcId(null);
+                        writes.add(existing);
+                        removed.add(roomId);
+                    }
+                    AirConditioner.Mode mode = command.getMode() != null ? command.getMode() : AirConditioner.Mode.COOLING;
+                    AirConditioner.FanSpeed fanSpeed = command.getFanSpeed() != null
+                            ? command.getFanSpeed() : AirConditioner.FanSpeed.MEDIUM;
+                    double[] range = tempRanges.get(mode);
+                    Double targetTemp = command.getTargetTemp();
+                    if (targetTemp == null || targetTemp < range[0] || targetTemp > range[1]) {
+                        targetTemp = defaultTargetTemp.get(mode);
+                    }
+                    writes.add(AirConditionerRequest.builder()
+                        .roomId(roomId)
+                        .mode(mode)
+                        .fanSpeed(fanSpeed)
+                        .targetTemp(targetTemp)
+                        .currentRoomTemp(room.getCurrentTemp())
+                        .requestTime(now)
+                        .assignedAcId(null)
+                        .priority(fanSpeed.getPriority())
+                        .active(true)
+                        .build());
+                    added.add(roomId);
+                    roomResult.setMessage("空调已开启");
+                }
+                case ADJUST -> {
+                    if (existing == null) {
+                        roomResult.setMessage("房间没有活跃的空调请求，请先开启空调");
+                        continue;
+                    }
+                    int oldPriority = existing.getPriority();
+                    if (applySettings(existing, command.getMode(), command.getFanSpeed(), command.getTargetTemp())) {
+                        if (existing.getPriority() != oldPriority) {
+                            priorities.put(roomId, existing.getPriority());
+                        }
+                        writes.add(existing);
+                        adjusted.add(roomId);
+                    }
+                    roomResult.setMessage("空调设置已调整");
+                }
+            }
+            roomResult.setSuccess(true);
+        }
+        
+        // 一个事务内批量保存（saveAll），写入失败时整体回滚，内存状态尚未改变
+        // 关机、调整是对已有请求的 UPDATE，按 JDBC 批量发送；新开机的请求主键为 IDENTITY，Hibernate 逐条 INSERT 取回主键，不参与批量
+        List<AirConditionerRequest> savedRequests = requestRepository.saveAll(writes);
+        committed.set(true);
+        for (AirConditionerRequest saved : savedRequests) {
+            if (saved.isActive()) {
+                roomRequests.put(saved.getRoomId(), saved);
+            } else if (!added.contains(saved.getRoomId())) {
+                roomRequests.remove(saved.getRoomId());
+            }
+            if (adjusted.contains(saved.getRoomId())) {
+                settingsSaved(saved);
+            }
+        }
+        
+        // 结束请求的房间归还空调（最多为空调台数），再发布事件
+        for (Integer roomId : removed) {
+            releaseRoomAirConditioner(roomId);
+            if (!added.contains(roomId)) {
+                publishEvent(roomId, null, AirConditionerEvent.EventType.REQUEST_CANCELLED);
+            }
+        }
+        // 新请求已写入，停止这些房间的回温
+        for (Integer roomId : added) {
+            cancelRoomTemperatureRecovery(roomId);
+            publishEvent(roomId, null, AirConditionerEvent.EventType.REQUEST_CREATED);
+        }
+        return new AirConditionerSchedulerService.BulkChanges(removed, added, priorities);
     }
     
     // 取消房间回温任务
     public void cancelRoomTemperatureRecovery(Integer roomId) {
-        Future<?> task = roomRecoveryTasks.get(roomId);
-        if (task != null && !task.isDone() && !task.isCancelled()) {
-            task.cancel(true);
-            roomRecoveryTasks.remove(roomId);
+        ScheduledFuture<?> task = roomRecoveryTasks.remove(roomId);
+        if (task != null) {
+            task.cancel(false);
         }
     }
     
-    // 启动房间回温过程
+    // 启动房间回温过程：只登记周期任务，不在调用方线程上执行回温
     public void startRoomTemperatureRecovery(Integer roomId) {
         Room room = roomService.getRoomById(roomId).orElse(null);
         if (room == null) {
@@ -480,45 +985,74 @@ public class AirConditionerService {
         // 先取消可能存在的回温任务
         cancelRoomTemperatureRecovery(roomId);
         
-        // 提交新的回温任务
-        Future<?> task = temperatureRecoveryExecutor.submit(() -> {
-            double tempChange = 0.5; // 每分钟0.5度
-            
-            // 决定温度变化方向
-            int direction = currentTemp < initialTemp ? 1 : -1;
-            double workingTemp = currentTemp;
-            
-            while (!Thread.currentThread().isInterrupted() && Math.abs(workingTemp - initialTemp) > 0.1) {
-                try {
-                    Thread.sleep(10000); // 10秒代表1分钟
-                    
-                    synchronized (roomTemperatureLocks.getOrDefault(roomId, new Object())) {
-                        // 检查房间是否被分配了空调服务，如果被分配则停止回温
-                        Room currentRoom = roomService.getRoomById(roomId).orElse(null);
-                        if (currentRoom != null && currentRoom.getAssignedAcId() != null) {
-                            break; // 房间被分配空调服务时停止回温
-                        }
-                        
-                        workingTemp += direction * tempChange;
-                        
-                        // 确保不会超过初始温度
-                        if ((direction > 0 && workingTemp > initialTemp) || 
-                            (direction < 0 && workingTemp < initialTemp)) {
-                            workingTemp = initialTemp;
-                        }
-                        
-                        // 更新房间温度
-                        roomService.updateRoomTemperature(roomId, workingTemp);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+        RoomRecovery recovery = new RoomRecovery(roomId, currentTemp, initialTemp);
+        ScheduledFuture<?> task = temperatureRecoveryExecutor.scheduleWithFixedDelay(
+            recovery, RECOVERY_TICK_MILLIS, RECOVERY_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        recovery.task = task;
+        roomRecoveryTasks.put(roomId, task);
+    }
+    
+    /**
+     * 单个房间的回温：每个周期向室温推进一步，到达室温或房间重新分配空调时结束
+     * 房间锁被指令占用时跳过本周期，不阻塞回温定时器的线程
+     */
+    private final class RoomRecovery implements Runnable {
+        private final Integer roomId;
+        private final double initialTemp;
+        private final int direction;
+        private double workingTemp;
+        private volatile ScheduledFuture<?> task;
+        
+        RoomRecovery(Integer roomId, double currentTemp, double initialTemp) {
+            this.roomId = roomId;
+            this.initialTemp = initialTemp;
+            this.direction = currentTemp < initialTemp ? 1 : -1;
+            this.workingTemp = currentTemp;
+        }
+        
+        @Override
+        public void run() {
+            ReentrantLock lock = roomLocks.tryLock(roomId);
+            if (lock == null) {
+                return;
+            }
+            try {
+                // 检查房间是否被分配了空调服务，如果被分配则停止回温
+                Room currentRoom = roomService.getRoomById(roomId).orElse(null);
+                if (currentRoom == null || currentRoom.getAssignedAcId() != null) {
+                    finish();
+                    return;
                 }
+                
+                workingTemp += direction * RECOVERY_STEP;
+                
+                // 确保不会超过初始温度
+                if ((direction > 0 && workingTemp > initialTemp) || 
+                    (direction < 0 && workingTemp < initialTemp)) {
+                    workingTemp = initialTemp;
+                }
+                
+                // 更新房间温度
+                roomService.updateRoomTemperature(roomId, workingTemp);
+                if (Math.abs(workingTemp - initialTemp) <= 0.1) {
+                    finish();
+                }
+            } catch (RuntimeException e) {
+                // 周期任务抛出异常后不会再执行，记录后留到下一个周期重试
+                logger.warn("房间{}回温失败", roomId, e);
+            } finally {
+                lock.unlock();
             }
-        });
+        }
         
-        // 存储任务引用
-        roomRecoveryTasks.put(roomId, task);
+        // 结束本房间的回温，只移除自己登记的任务，不影响之后重新启动的回温
+        private void finish() {
+            ScheduledFuture<?> self = task;
+            if (self != null) {
+                roomRecoveryTasks.remove(roomId, self);
+                self.cancel(false);
+            }
+        }
     }
     
     // 调整温度
@@ -557,14 +1091,55 @@ public class AirConditionerService {
     
     // 获取房间账单明细
     public List<BillDetail> getRoomBillDetails(Integer roomId) {
+        return getRoomBillDetailsSince(roomId, 0).details();
+    }
+
+    /**
+     * 房间明细片段：version 为取片段时的明细版本号；
+     * incremental 为 true 时 details 只包含 fromVersion 之后收录的明细，否则为入住期间的全部明细
+     */
+    public record BillDetailSlice(long version, List<BillDetail> details, boolean incremental) {
+    }
+
+    /**
+     * 获取房间明细的版本号（已收录的明细条数，单调递增）
+     */
+    public long getBillDetailVersion(Integer roomId) {
+        BillDetailTimeline timeline = billDetails.get(roomId);
+        return timeline != null ? timeline.version() : 0;
+    }
+
+    /**
+     * 获取版本 fromVersion 之后收录的入住期间明细，用于增量计算账单
+     * 无法增量时（fromVersion 为0或期间有乱序到达的明细）返回入住期间的全部明细
+     */
+    public BillDetailSlice getRoomBillDetailsSince(Integer roomId, long fromVersion) {
         // 获取房间信息
         Room room = roomService.getRoomById(roomId).orElse(null);
-        if (room == null || room.getCheckInTime() == null) {
-            return Collections.emptyList(); // 房间不存在或未入住，返回空列表
+        BillDetailTimeline timeline = billDetails.get(roomId);
+        if (room == null || room.getCheckInTime() == null || timeline == null) {
+            return new BillDetailSlice(getBillDetailVersion(roomId), Collections.emptyList(), false); // 房间不存在或未入住，返回空列表
         }
 
+        // 版本号和明细取自同一个快照，增量累加时不会重复或遗漏
+        return timeline.slice(fromVersion, room.getCheckInTime(), stayEnd(room));
+    }
+
+    /**
+     * 按块遍历房间入住期间的明细，每块至多几百条；导出等逐条消费的场景不必一次还原全部明细
+     */
+    public void forEachRoomBillDetailChunk(Integer roomId, Consumer<List<BillDetail>> action) {
+        Room room = roomService.getRoomById(roomId).orElse(null);
+        BillDetailTimeline timeline = billDetails.get(roomId);
+        if (room == null || room.getCheckInTime() == null || timeline == null) {
+            return; // 房间不存在或未入住，没有明细
+        }
+        timeline.forEachChunk(room.getCheckInTime(), stayEnd(room), action);
+    }
+
+    // 入住期间的结束时间
+    private static LocalDateTime stayEnd(Room room) {
         // 获取入住和退房时间
-        LocalDateTime checkInTime = room.getCheckInTime();
         LocalDateTime checkOutTime = null;
 
         // 如果退房时间为空（未退房），则使用当前时间作为结束时间
@@ -573,17 +1148,7 @@ public class AirConditionerService {
         } else {
             checkOutTime = room.getCheckOutTime();
         }
-
-        // 过滤符合条件的详单记录
-        LocalDateTime finalCheckOutTime = checkOutTime;
-        return billDetails.getOrDefault(roomId, new ArrayList<>())
-                .stream()
-                .filter(detail ->
-                        detail.getRequestTime() != null &&
-                                !detail.getRequestTime().isBefore(checkInTime) &&
-                                !detail.getRequestTime().isAfter(finalCheckOutTime)
-                )
-                .collect(Collectors.toList());
+        return checkOutTime;
     }
     // 设置服务开始时间
     public void setServiceStartTime(Integer roomId, LocalDateTime startTime) {
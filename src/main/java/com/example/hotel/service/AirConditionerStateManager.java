@@ -2,7 +2,6 @@ package com.example.hotel.service;
 
 import com.example.hotel.entity.AirConditioner;
 import com.example.hotel.entity.AirConditionerRequest;
-import com.example.hotel.entity.Room;
 import com.example.hotel.repository.AirConditionerRepository;
 import com.example.hotel.repository.AirConditionerRequestRepository;
 import org.springframework.stereotype.Service;
@@ -47,25 +46,23 @@ public class AirConditionerStateManager {
             return false;
         }
         
-        // 1. 更新空调状态
-        ac.setOn(true);
-        ac.setServingRoomId(roomId);
-        ac.setMode(request.getMode());
-        ac.setFanSpeed(request.getFanSpeed());
-        ac.setTargetTemp(request.getTargetTemp());
-        ac.setServiceStartTime(LocalDateTime.now());
-        airConditionerRepository.save(ac);
+        // 1. 更新空调状态（条件更新，版本已过期说明其他实例修改过该空调）
+        int claimed = airConditionerRepository.claimAirConditioner(acId, ac.getVersion(), roomId,
+                request.getMode(), request.getFanSpeed(), request.getTargetTemp(),
+                request.getCurrentRoomTemp(), request.getRequestTime(), LocalDateTime.now(),
+                request.getPriority());
+        if (claimed == 0) {
+            airConditionerCache.remove(acId);
+            return false;
+        }
+        ac = airConditionerRepository.findById(acId).orElse(ac);
         
         // 2. 更新请求状态
         request.setAssignedAcId(acId);
         requestRepository.save(request);
         
         // 3. 更新房间状态
-        Room room = roomService.getRoomById(roomId).orElse(null);
-        if (room != null) {
-            room.setAssignedAcId(acId);
-            roomService.saveRoom(room);
-        }
+        roomService.updateAssignedAc(roomId, acId);
         
         // 4. 同步缓存
         airConditionerCache.put(acId, ac);
@@ -87,13 +84,12 @@ public class AirConditionerStateManager {
         Integer acId = request.getAssignedAcId();
         AirConditioner ac = getAirConditioner(acId);
         
-        // 1. 更新空调状态
+        // 1. 更新空调状态（条件更新，只释放仍在为该房间服务的空调）
         if (ac != null) {
-            ac.setOn(false);
-            ac.setServingRoomId(null);
-            ac.setServiceEndTime(LocalDateTime.now());
-            airConditionerRepository.save(ac);
-            airConditionerCache.put(acId, ac);
+            airConditionerRepository.releaseAirConditioner(acId, roomId, LocalDateTime.now(),
+                    ac.getServiceDuration(), ac.getCost());
+            airConditionerRepository.findById(acId)
+                    .ifPresent(latest -> airConditionerCache.put(acId, latest));
         }
         
         // 2. 更新请求状态
@@ -102,11 +98,7 @@ public class AirConditionerStateManager {
         activeRequestCache.put(roomId, request);
         
         // 3. 更新房间状态
-        Room room = roomService.getRoomById(roomId).orElse(null);
-        if (room != null) {
-            room.setAssignedAcId(null);
-            roomService.saveRoom(room);
-        }
+        roomService.updateAssignedAc(roomId, null);
     }
     
     /**
@@ -0,0 +1,235 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.BillCostSummary;
+import com.example.hotel.entity.BillDetail;
+import com.example.hotel.entity.EnergyHourlyRollup;
+import com.example.hotel.entity.RoomCostSummary;
+import com.example.hotel.repository.BillCostSummaryRepository;
+import com.example.hotel.repository.BillDetailRepository;
+import com.example.hotel.repository.EnergyHourlyRollupRepository;
+import com.example.hotel.repository.RoomCostSummaryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 详单汇总服务
+ * 在详单新增、结束或修改时增量维护房间/账单费用汇总和房间能耗小时桶，
+ * 使费用查询变为按主键读取，时间范围能耗查询只扫描小时桶
+ */
+@Service
+public class BillDetailAggregateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BillDetailAggregateService.class);
+
+    private final BillDetailRepository billDetailRepository;
+    private final RoomCostSummaryRepository roomSummaryRepository;
+    private final BillCostSummaryRepository billSummaryRepository;
+    private final EnergyHourlyRollupRepository rollupRepository;
+
+    public BillDetailAggregateService(BillDetailRepository billDetailRepository,
+                                      RoomCostSummaryRepository roomSummaryRepository,
+                                      BillCostSummaryRepository billSummaryRepository,
+                                      EnergyHourlyRollupRepository rollupRepository) {
+        this.billDetailRepository = billDetailRepository;
+        this.roomSummaryRepository = roomSummaryRepository;
+        this.billSummaryRepository = billSummaryRepository;
+        this.rollupRepository = rollupRepository;
+    }
+
+    /**
+     * 一条详单对汇总的贡献
+     * 修改详单前先取一次快照，修改后再取一次，两者之差即为需要累加到汇总上的增量
+     */
+    public record Contribution(Integer roomId, Long billId, LocalDateTime bucketStart,
+                               double cost, double energy) {
+
+        public static Contribution of(BillDetail detail) {
+            // 只有已结束的服务才计入能耗小时桶，按服务开始时间所在整点归桶
+            LocalDateTime bucket = detail.getServiceStartTime() != null && detail.getServiceEndTime() != null
+                    ? detail.getServiceStartTime().truncatedTo(ChronoUnit.HOURS) : null;
+            return new Contribution(detail.getRoomId(), detail.getBillId(), bucket,
+                    detail.getCost(), detail.getEnergyConsumed());
+        }
+    }
+
+    /**
+     * 新增详单
+     */
+    @Transactional
+    public void onDetailsAdded(Collection<BillDetail> details) {
+        Delta delta = new Delta();
+        for (BillDetail detail : details) {
+            delta.add(Contribution.of(detail), 1);
+        }
+        apply(delta);
+    }
+
+    /**
+     * 已有详单被修改（例如服务结束时回填费用和能耗）
+     */
+    @Transactional
+    public void onDetailChanged(Contribution before, BillDetail after) {
+        Delta delta = new Delta();
+        delta.add(before, -1);
+        delta.add(Contribution.of(after), 1);
+        apply(delta);
+    }
+
+    /**
+     * 房间累计费用
+     */
+    @Transactional(readOnly = true)
+    public double getRoomTotalCost(Integer roomId) {
+        return roomSummaryRepository.findById(roomId).map(RoomCostSummary::getTotalCost).orElse(0.0);
+    }
+
+    /**
+     * 账单累计费用
+     */
+    @Transactional(readOnly = true)
+    public double getBillTotalCost(Long billId) {
+        return billSummaryRepository.findById(billId).map(BillCostSummary::getTotalCost).orElse(0.0);
+    }
+
+    /**
+     * 房间在 [startTime, endTime] 内的能耗
+     * 区间内的整小时直接累加小时桶；首尾不足一小时的零头按原口径
+     * （服务开始时间在区间内且服务结束时间不晚于 endTime）查询详单表。
+     * 小时桶按服务开始时间归桶，桶内晚于 endTime 结束的详单再从详单表查出扣除，与零头口径一致
+     */
+    @Transactional(readOnly = true)
+    public double getRoomEnergy(Integer roomId, LocalDateTime startTime, LocalDateTime endTime) {
+        LocalDateTime firstFullHour = startTime.truncatedTo(ChronoUnit.HOURS);
+        if (firstFullHour.isBefore(startTime)) {
+            firstFullHour = firstFullHour.plusHours(1);
+        }
+        LocalDateTime lastFullHourEnd = endTime.truncatedTo(ChronoUnit.HOURS);
+
+        // 区间不足一个整小时，直接查详单
+        if (!firstFullHour.isBefore(lastFullHourEnd)) {
+            return billDetailRepository.sumEnergyConsumedByRoomAndTimeRange(roomId, startTime, endTime);
+        }
+
+        double energy = rollupRepository.sumEnergyByRoomAndBuckets(roomId, firstFullHour, lastFullHourEnd)
+                - billDetailRepository.sumEnergyByRoomAndStartRangeEndingAfter(roomId, firstFullHour, lastFullHourEnd, endTime);
+        if (startTime.isBefore(firstFullHour)) {
+            energy += billDetailRepository.sumClosedEnergyByRoomAndStartRange(roomId, startTime, firstFullHour, endTime);
+        }
+        if (lastFullHourEnd.isBefore(endTime)) {
+            energy += billDetailRepository.sumClosedEnergyByRoomAndStartRange(roomId, lastFullHourEnd, endTime, endTime);
+        }
+        return energy;
+    }
+
+    /**
+     * 启动时如果汇总表为空而详单表有数据（首次上线或汇总表被清空），从详单表重建汇总
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void rebuildIfEmpty() {
+        if (roomSummaryRepository.count() == 0 && billSummaryRepository.count() == 0
+                && billDetailRepository.count() > 0) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 从详单表全量重建汇总
+     */
+    @Transactional
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+
+        roomSummaryRepository.deleteAllInBatch();
+        billSummaryRepository.deleteAllInBatch();
+        rollupRepository.deleteAllInBatch();
+
+        for (Object[] row : billDetailRepository.aggregateByRoom()) {
+            roomSummaryRepository.save(RoomCostSummary.builder()
+                    .roomId((Integer) row[0])
+                    .totalCost(((Number) row[1]).doubleValue())
+                    .totalEnergy(((Number) row[2]).doubleValue())
+                    .detailCount(((Number) row[3]).longValue())
+                    .updatedAt(now)
+                    .build());
+        }
+        for (Object[] row : billDetailRepository.aggregateByBill()) {
+            billSummaryRepository.save(BillCostSummary.builder()
+                    .billId((Long) row[0])
+                    .totalCost(((Number) row[1]).doubleValue())
+                    .totalEnergy(((Number) row[2]).doubleValue())
+                    .detailCount(((Number) row[3]).longValue())
+                    .updatedAt(now)
+                    .build());
+        }
+
+        Map<BucketKey, double[]> buckets = new HashMap<>();
+        for (Object[] row : billDetailRepository.findClosedDetailBuckets()) {
+            BucketKey key = new BucketKey((Integer) row[0], ((LocalDateTime) row[1]).truncatedTo(ChronoUnit.HOURS));
+            double[] sums = buckets.computeIfAbsent(key, k -> new double[3]);
+            sums[0] += ((Number) row[2]).doubleValue();
+            sums[1] += ((Number) row[3]).doubleValue();
+            sums[2] += 1;
+        }
+        buckets.forEach((key, sums) -> rollupRepository.save(EnergyHourlyRollup.builder()
+                .roomId(key.roomId())
+                .bucketStart(key.bucketStart())
+                .energyConsumed(sums[0])
+                .cost(sums[1])
+                .detailCount((long) sums[2])
+                .build()));
+
+        logger.info("详单汇总重建完成，小时桶: {}个，耗时: {}ms", buckets.size(), System.currentTimeMillis() - start);
+    }
+
+    // 把增量写入汇总表：每个汇总行一条 upsert，行不存在时插入、存在时原子累加
+    private void apply(Delta delta) {
+        LocalDateTime now = LocalDateTime.now();
+        delta.rooms.forEach((roomId, d) ->
+                roomSummaryRepository.upsert(roomId, d[0], d[1], (long) d[2], now));
+        delta.bills.forEach((billId, d) ->
+                billSummaryRepository.upsert(billId, d[0], d[1], (long) d[2], now));
+        delta.buckets.forEach((key, d) ->
+                rollupRepository.upsert(key.roomId(), key.bucketStart(), d[1], d[0], (long) d[2]));
+    }
+
+    private record BucketKey(Integer roomId, LocalDateTime bucketStart) {
+    }
+
+    // 按汇总键累积的增量：[费用, 能耗, 条数]
+    private static class Delta {
+        private final Map<Integer, double[]> rooms = new HashMap<>();
+        private final Map<Long, double[]> bills = new HashMap<>();
+        private final Map<BucketKey, double[]> buckets = new HashMap<>();
+
+        void add(Contribution c, int sign) {
+            if (c.roomId() != null) {
+                accumulate(rooms.computeIfAbsent(c.roomId(), k -> new double[3]), c, sign);
+            }
+            if (c.billId() != null) {
+                accumulate(bills.computeIfAbsent(c.billId(), k -> new double[3]), c, sign);
+            }
+            if (c.roomId() != null && c.bucketStart() != null) {
+                accumulate(buckets.computeIfAbsent(new BucketKey(c.roomId(), c.bucketStart()),
+                        k -> new double[3]), c, sign);
+            }
+        }
+
+        private static void accumulate(double[] sums, Contribution c, int sign) {
+            sums[0] += sign * c.cost();
+            sums[1] += sign * c.energy();
+            sums[2] += sign;
+        }
+    }
+}
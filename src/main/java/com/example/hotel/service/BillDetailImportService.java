@@ -0,0 +1,166 @@
+package com.example.hotel.service;
+
+import com.example.hotel.dto.BillDetailImportResult;
+import com.example.hotel.entity.BillDetail;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 详单流式导入
+ * 用 Jackson 流式解析请求体中的 JSON 数组，每解析满一个分块就用 JDBC 批量插入并在独立事务中提交，
+ * 内存中最多只保留一个分块。分块写完才继续读取请求体，数据库跟不上时由 TCP 流控让客户端放慢发送
+ */
+@Service
+public class BillDetailImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BillDetailImportService.class);
+
+    private static final String INSERT_SQL = "INSERT INTO bill_detail (bill_id, room_id, ac_id, request_time, "
+            + "service_start_time, service_end_time, service_duration, fan_speed, mode, target_temp, "
+            + "temp_change, energy_consumed, cost, rate, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // 单个分块的上限，防止请求参数把整个导入又变回一个大事务
+    private static final int MAX_CHUNK_SIZE = 10_000;
+
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BillDetailAggregateService aggregateService;
+    private final int defaultChunkSize;
+
+    public BillDetailImportService(ObjectMapper objectMapper, JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   BillDetailAggregateService aggregateService,
+                                   @Value("${hotel.billing.import.chunk-size:1000}") int defaultChunkSize) {
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.aggregateService = aggregateService;
+        this.defaultChunkSize = defaultChunkSize;
+    }
+
+    /**
+     * 从输入流导入详单数组，chunkSize 为空时使用配置的分块大小
+     * 导入的详单一律作为新记录插入，忽略请求中的 id；某个分块失败只回滚该分块，继续导入后续分块
+     */
+    public BillDetailImportResult importDetails(InputStream in, Integer chunkSize) {
+        int size = Math.min(MAX_CHUNK_SIZE, Math.max(1, chunkSize != null ? chunkSize : defaultChunkSize));
+        BillDetailImportResult result = new BillDetailImportResult();
+        result.setChunkSize(size);
+        long start = System.nanoTime();
+
+        List<BillDetail> buffer = new ArrayList<>(size);
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("请求体必须是JSON数组");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                buffer.add(objectMapper.readValue(parser, BillDetail.class));
+                result.setTotalRows(result.getTotalRows() + 1);
+                if (buffer.size() == size) {
+                    writeChunk(buffer, result);
+                    buffer.clear();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("数组元素必须是JSON对象");
+            }
+        } catch (IOException e) {
+            // 解析失败时，已解析但未满一块的行也不再写入，调用方可从 totalRows 处续传
+            logger.warn("详单导入请求体解析失败，已解析 {} 行", result.getTotalRows(), e);
+            result.setError(e.getMessage());
+            result.setTotalRows(result.getTotalRows() - buffer.size());
+            buffer.clear();
+        }
+        if (!buffer.isEmpty()) {
+            writeChunk(buffer, result);
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        result.setElapsedMillis(elapsedNanos / 1_000_000);
+        result.setRowsPerSecond(result.getCommittedRows() * 1_000_000_000.0 / Math.max(1, elapsedNanos));
+        logger.info("详单导入完成，提交: {} 行，失败: {} 行，分块: {}，吞吐: {} 行/秒",
+                result.getCommittedRows(), result.getFailedRows(), result.getChunks().size(),
+                String.format("%.0f", result.getRowsPerSecond()));
+        return result;
+    }
+
+    // 在独立事务中批量插入一个分块，并把它计入费用/能耗汇总
+    private void writeChunk(List<BillDetail> chunk, BillDetailImportResult result) {
+        int index = result.getChunks().size();
+        long firstRow = result.getCommittedRows() + result.getFailedRows();
+        long start = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_SQL, chunk, chunk.size(), (ps, detail) -> bind(ps, detail, now));
+                aggregateService.onDetailsAdded(chunk);
+            });
+            result.setCommittedRows(result.getCommittedRows() + chunk.size());
+            result.getChunks().add(new BillDetailImportResult.ChunkResult(index, firstRow, chunk.size(), true,
+                    (System.nanoTime() - start) / 1_000_000, null));
+        } catch (RuntimeException e) {
+            logger.error("详单导入分块 {} 写入失败，行 {} ~ {}", index, firstRow, firstRow + chunk.size() - 1, e);
+            result.setFailedRows(result.getFailedRows() + chunk.size());
+            result.getChunks().add(new BillDetailImportResult.ChunkResult(index, firstRow, chunk.size(), false,
+                    (System.nanoTime() - start) / 1_000_000, e.getMessage()));
+        }
+    }
+
+    private static void bind(PreparedStatement ps, BillDetail detail, LocalDateTime now) throws SQLException {
+        setLong(ps, 1, detail.getBillId());
+        setInt(ps, 2, detail.getRoomId());
+        setInt(ps, 3, detail.getAcId());
+        setTime(ps, 4, detail.getRequestTime());
+        setTime(ps, 5, detail.getServiceStartTime());
+        setTime(ps, 6, detail.getServiceEndTime());
+        ps.setInt(7, detail.getServiceDuration());
+        ps.setString(8, detail.getFanSpeed() != null ? detail.getFanSpeed().name() : null);
+        ps.setString(9, detail.getMode() != null ? detail.getMode().name() : null);
+        ps.setDouble(10, detail.getTargetTemp());
+        ps.setDouble(11, detail.getTempChange());
+        ps.setDouble(12, detail.getEnergyConsumed());
+        ps.setDouble(13, detail.getCost());
+        ps.setDouble(14, detail.getRate());
+        setTime(ps, 15, detail.getCreatedAt() != null ? detail.getCreatedAt() : now);
+    }
+
+    private static void setLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value != null) {
+            ps.setLong(index, value);
+        } else {
+            ps.setNull(index, Types.BIGINT);
+        }
+    }
+
+    private static void setInt(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value != null) {
+            ps.setInt(index, value);
+        } else {
+            ps.setNull(index, Types.INTEGER);
+        }
+    }
+
+    private static void setTime(PreparedStatement ps, int index, LocalDateTime value) throws SQLException {
+        ps.setTimestamp(index, value != null ? Timestamp.valueOf(value) : null);
+    }
+}
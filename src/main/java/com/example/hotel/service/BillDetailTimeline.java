@@ -0,0 +1,288 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.AirConditioner;
+import com.example.hotel.entity.BillDetail;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 单个房间的账单明细时间线
+ * 只追加、按请求时间有序，按块存储；读操作基于不可变快照进行，不加锁也不会出现
+ * ConcurrentModificationException。按请求时间的范围查询用二分查找定位，复杂度 O(log n + k)。
+ * 块内按列存储为基本类型数组（秒级时间戳、字节编码的风速和模式、float 温度/能耗/费用），
+ * 每条明细约占 42 字节，只在查询返回时才还原为 BillDetail 实体
+ */
+class BillDetailTimeline {
+
+    private static final int CHUNK_SIZE = 256;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // 时间戳以 2020-01-01 为基准的秒数存为 int，可表示到 2088 年
+    private static final long EPOCH_BASE = LocalDateTime.of(2020, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+    private static final int NULL_TIME = Integer.MIN_VALUE;
+    private static final byte NULL_ENUM = -1;
+    private static final int NULL_ID = -1;
+    private static final AirConditioner.FanSpeed[] FAN_SPEEDS = AirConditioner.FanSpeed.values();
+    private static final AirConditioner.Mode[] MODES = AirConditioner.Mode.values();
+
+    // 一块明细的列式存储，槽位只在发布新快照前写入，已发布的槽位不再修改
+    private static final class Chunk {
+        final int[] requestTime;
+        final int[] startTime;
+        final int[] endTime;
+        final int[] duration;
+        final int[] acId;
+        final byte[] fanSpeed;
+        final byte[] mode;
+        final float[] cost;
+        final float[] rate;
+        final float[] targetTemp;
+        final float[] tempChange;
+        final float[] energy;
+
+        Chunk(int capacity) {
+            requestTime = new int[capacity];
+            startTime = new int[capacity];
+            endTime = new int[capacity];
+            duration = new int[capacity];
+            acId = new int[capacity];
+            fanSpeed = new byte[capacity];
+            mode = new byte[capacity];
+            cost = new float[capacity];
+            rate = new float[capacity];
+            targetTemp = new float[capacity];
+            tempChange = new float[capacity];
+            energy = new float[capacity];
+        }
+
+        int capacity() {
+            return requestTime.length;
+        }
+
+        // 复制前 count 行到一块更大的新块
+        Chunk grow(int capacity, int count) {
+            Chunk copy = new Chunk(capacity);
+            for (int i = 0; i < count; i++) {
+                copy.copyRow(i, this, i);
+            }
+            return copy;
+        }
+
+        void copyRow(int to, Chunk src, int from) {
+            requestTime[to] = src.requestTime[from];
+            startTime[to] = src.startTime[from];
+            endTime[to] = src.endTime[from];
+            duration[to] = src.duration[from];
+            acId[to] = src.acId[from];
+            fanSpeed[to] = src.fanSpeed[from];
+            mode[to] = src.mode[from];
+            cost[to] = src.cost[from];
+            rate[to] = src.rate[from];
+            targetTemp[to] = src.targetTemp[from];
+            tempChange[to] = src.tempChange[from];
+            energy[to] = src.energy[from];
+        }
+
+        void encode(int i, BillDetail detail) {
+            requestTime[i] = encodeTime(detail.getRequestTime());
+            startTime[i] = encodeTime(detail.getServiceStartTime());
+            endTime[i] = encodeTime(detail.getServiceEndTime());
+            duration[i] = detail.getServiceDuration();
+            acId[i] = detail.getAcId() != null ? detail.getAcId() : NULL_ID;
+            fanSpeed[i] = detail.getFanSpeed() != null ? (byte) detail.getFanSpeed().ordinal() : NULL_ENUM;
+            mode[i] = detail.getMode() != null ? (byte) detail.getMode().ordinal() : NULL_ENUM;
+            cost[i] = (float) detail.getCost();
+            rate[i] = (float) detail.getRate();
+            targetTemp[i] = (float) detail.getTargetTemp();
+            tempChange[i] = (float) detail.getTempChange();
+            energy[i] = (float) detail.getEnergyConsumed();
+        }
+
+        BillDetail materialize(int i, Integer roomId) {
+            return BillDetail.builder()
+                    .roomId(roomId)
+                    .acId(acId[i] != NULL_ID ? acId[i] : null)
+                    .requestTime(decodeTime(requestTime[i]))
+                    .serviceStartTime(decodeTime(startTime[i]))
+                    .serviceEndTime(decodeTime(endTime[i]))
+                    .serviceDuration(duration[i])
+                    .fanSpeed(fanSpeed[i] != NULL_ENUM ? FAN_SPEEDS[fanSpeed[i]] : null)
+                    .mode(mode[i] != NULL_ENUM ? MODES[mode[i]] : null)
+                    .cost(cost[i])
+                    .rate(rate[i])
+                    .targetTemp(targetTemp[i])
+                    .tempChange(tempChange[i])
+                    .energyConsumed(energy[i])
+                    .build();
+        }
+    }
+
+    // 不可变快照：除最后一块外每块都是满的，整体按请求时间有序
+    // reorderedAt 为最近一次乱序插入后的条数，早于它的版本无法只取尾部做增量
+    private record Snapshot(Chunk[] chunks, int size, int reorderedAt) {
+
+        int requestTime(int index) {
+            return chunks[index / CHUNK_SIZE].requestTime[index % CHUNK_SIZE];
+        }
+    }
+
+    private final Integer roomId;
+    private volatile Snapshot snapshot = new Snapshot(new Chunk[0], 0, 0);
+
+    BillDetailTimeline(Integer roomId) {
+        this.roomId = roomId;
+    }
+
+    /**
+     * 追加一条明细（请求时间为空的明细不会出现在任何账单中，直接忽略）
+     */
+    synchronized void append(BillDetail detail) {
+        if (detail.getRequestTime() == null) {
+            return;
+        }
+        int time = encodeTime(detail.getRequestTime());
+        Snapshot current = snapshot;
+        if (current.size == 0 || time >= current.requestTime(current.size - 1)) {
+            snapshot = appendAtEnd(current, detail);
+        } else {
+            // 乱序到达（同一房间的服务结束顺序与请求顺序不一致），从插入位置所在的块开始重建
+            snapshot = insert(current, upperBound(current, time), detail);
+        }
+    }
+
+    /**
+     * 当前版本号：已收录的明细条数，单调递增
+     */
+    long version() {
+        return snapshot.size;
+    }
+
+    /**
+     * 在同一个快照上取版本号并查询请求时间在 [from, to] 内的明细（按秒比较）
+     * sinceVersion 大于0且之后没有乱序插入时，只返回该版本之后收录的明细（增量）；否则返回全部
+     */
+    AirConditionerService.BillDetailSlice slice(long sinceVersion, LocalDateTime from, LocalDateTime to) {
+        Snapshot s = snapshot;
+        int lo = lowerBound(s, encodeTime(from));
+        int hi = upperBound(s, encodeTime(to));
+        if (sinceVersion > 0 && sinceVersion >= s.reorderedAt && sinceVersion <= s.size) {
+            return new AirConditionerService.BillDetailSlice(s.size,
+                    materialize(s, Math.max((int) sinceVersion, lo), hi), true);
+        }
+        return new AirConditionerService.BillDetailSlice(s.size, materialize(s, lo, hi), false);
+    }
+
+    /**
+     * 在同一个快照上按块遍历请求时间在 [from, to] 内的明细，每次只还原一块（至多 CHUNK_SIZE 条）
+     */
+    void forEachChunk(LocalDateTime from, LocalDateTime to, Consumer<List<BillDetail>> action) {
+        Snapshot s = snapshot;
+        int lo = lowerBound(s, encodeTime(from));
+        int hi = upperBound(s, encodeTime(to));
+        for (int start = lo; start < hi; ) {
+            int end = Math.min(hi, (start / CHUNK_SIZE + 1) * CHUNK_SIZE);
+            action.accept(materialize(s, start, end));
+            start = end;
+        }
+    }
+
+    // 在尾块空闲槽位写入新行再发布快照；持有旧快照的读者看不到这个槽位
+    private static Snapshot appendAtEnd(Snapshot s, BillDetail detail) {
+        Chunk[] chunks = s.chunks;
+        int offset = s.size % CHUNK_SIZE;
+        if (offset == 0) {
+            // 尾块已满，新开一块；已有满块说明房间历史较长，直接按整块分配
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = new Chunk(chunks.length > 1 ? CHUNK_SIZE : INITIAL_CAPACITY);
+        } else if (offset == chunks[chunks.length - 1].capacity()) {
+            chunks = chunks.clone();
+            chunks[chunks.length - 1] = chunks[chunks.length - 1]
+                    .grow(Math.min(offset * 2, CHUNK_SIZE), offset);
+        }
+        chunks[chunks.length - 1].encode(offset, detail);
+        return new Snapshot(chunks, s.size + 1, s.reorderedAt);
+    }
+
+    // 乱序插入：从插入位置所在的块开始复制到新块，已发布的块不做修改
+    private static Snapshot insert(Snapshot s, int position, BillDetail detail) {
+        int firstChunk = position / CHUNK_SIZE;
+        int size = s.size + 1;
+        Chunk[] chunks = Arrays.copyOf(s.chunks, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        for (int c = firstChunk; c < chunks.length; c++) {
+            chunks[c] = new Chunk(CHUNK_SIZE);
+        }
+
+        int target = firstChunk * CHUNK_SIZE;
+        for (int source = firstChunk * CHUNK_SIZE; source < s.size; source++) {
+            if (target == position) {
+                chunks[target / CHUNK_SIZE].encode(target % CHUNK_SIZE, detail);
+                target++;
+            }
+            chunks[target / CHUNK_SIZE].copyRow(target % CHUNK_SIZE,
+                    s.chunks[source / CHUNK_SIZE], source % CHUNK_SIZE);
+            target++;
+        }
+        return new Snapshot(chunks, size, size);
+    }
+
+    // 第一个请求时间 >= time 的位置
+    private static int lowerBound(Snapshot s, int time) {
+        int lo = 0;
+        int hi = s.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (s.requestTime(mid) < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // 第一个请求时间 > time 的位置
+    private static int upperBound(Snapshot s, int time) {
+        int lo = 0;
+        int hi = s.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (s.requestTime(mid) > time) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    private List<BillDetail> materialize(Snapshot s, int from, int to) {
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        List<BillDetail> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(s.chunks[i / CHUNK_SIZE].materialize(i % CHUNK_SIZE, roomId));
+        }
+        return result;
+    }
+
+    private static int encodeTime(LocalDateTime time) {
+        if (time == null) {
+            return NULL_TIME;
+        }
+        return (int) (time.toEpochSecond(ZoneOffset.UTC) - EPOCH_BASE);
+    }
+
+    private static LocalDateTime decodeTime(int seconds) {
+        if (seconds == NULL_TIME) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(EPOCH_BASE + seconds, 0, ZoneOffset.UTC);
+    }
+}
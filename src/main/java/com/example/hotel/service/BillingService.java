@@ -1,58 +1,107 @@
 package com.example.hotel.service;
 
+import com.example.hotel.dto.LiveChargeView;
 import com.example.hotel.entity.Bill;
 import com.example.hotel.entity.BillDetail;
 import com.example.hotel.entity.Room;
 import com.example.hotel.repository.BillDetailRepository;
+import com.example.hotel.service.BillDetailAggregateService.Contribution;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Service
 public class BillingService {
 
+    // 流式导出时内存中保留的行数
+    private static final int EXPORT_ROW_WINDOW = 100;
+
     private final RoomService roomService;
     private final AirConditionerService acService;
     private final BillDetailRepository billDetailRepository;
+    private final BillDetailAggregateService aggregateService;
+    // 每个房间最近一次生成的账单
+    private final Map<Integer, CachedBill> billCache = new ConcurrentHashMap<>();
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     @Autowired
     public BillingService(RoomService roomService, AirConditionerService acService, 
-                         BillDetailRepository billDetailRepository) {
+                         BillDetailRepository billDetailRepository,
+                         BillDetailAggregateService aggregateService) {
         this.roomService = roomService;
         this.acService = acService;
         this.billDetailRepository = billDetailRepository;
+        this.aggregateService = aggregateService;
     }
     // 生成账单
+    // 明细版本号未变且房费相关字段未变时直接返回缓存的账单；有新明细时只累加新增部分
     public Bill generateBill(Integer roomId) {
         Room room = roomService.getRoomById(roomId).orElse(null);
         if (room == null || room.getCheckInTime() == null) {
+            billCache.remove(roomId);
             return null;
         }
 
-        List<BillDetail> details = acService.getRoomBillDetails(roomId);
-
-        // 计算空调总费用
-        double acCost = details.stream().mapToDouble(BillDetail::getCost).sum();
-
         // 计算房费（使用 Bill 类中的 daysOfStay 字段）
         int days = room.getGuest().getStayDays()!= 0 ? room.getGuest().getStayDays(): 1; // 默认至少一天
         double roomCost = days * room.getPrice();
 
+        CachedBill cached = billCache.get(roomId);
+        List<BillDetail> details;
+        double acCost;
+        long version;
+        if (cached != null && cached.checkInTime().equals(room.getCheckInTime())) {
+            if (cached.detailVersion() == acService.getBillDetailVersion(roomId)
+                    && sameRoomCharges(cached.bill(), room, days, roomCost)) {
+                return cached.bill();
+            }
+            AirConditionerService.BillDetailSlice slice =
+                    acService.getRoomBillDetailsSince(roomId, cached.detailVersion());
+            version = slice.version();
+            if (!slice.incremental()) {
+                // 期间有乱序到达的明细，全量重算
+                details = Collections.unmodifiableList(slice.details());
+                acCost = details.stream().mapToDouble(BillDetail::getCost).sum();
+            } else if (slice.details().isEmpty()) {
+                details = cached.bill().getDetails();
+                acCost = cached.bill().getAcCost();
+            } else {
+                List<BillDetail> merged = new ArrayList<>(cached.bill().getDetails());
+                merged.addAll(slice.details());
+                details = Collections.unmodifiableList(merged);
+                acCost = cached.bill().getAcCost() + slice.details().stream().mapToDouble(BillDetail::getCost).sum();
+            }
+        } else {
+            // 新入住或首次查询，全量计算
+            AirConditionerService.BillDetailSlice slice = acService.getRoomBillDetailsSince(roomId, 0);
+            version = slice.version();
+            details = Collections.unmodifiableList(slice.details());
+            // 计算空调总费用
+            acCost = details.stream().mapToDouble(BillDetail::getCost).sum();
+        }
+
         // 创建账单
-        return Bill.builder()
+        Bill bill = Bill.builder()
                 .roomId(roomId)
                 .checkInTime(room.getCheckInTime())
                 .checkOutTime(room.getCheckOutTime())
@@ -62,68 +111,143 @@ public class BillingService {
                 .totalCost(roomCost + acCost)
                 .details(details)
                 .build();
+        billCache.put(roomId, new CachedBill(room.getCheckInTime(), version, bill));
+        return bill;
+    }
+
+    // 账单版本：入住、房费相关字段和明细版本号，任一变化时账单内容才会变化；房间未入住返回null
+    // 只读取内存中的房间和明细版本号，不生成账单
+    public String billVersionKey(Integer roomId) {
+        Room room = roomService.getRoomById(roomId).orElse(null);
+        if (room == null || room.getCheckInTime() == null) {
+            return null;
+        }
+        int days = room.getGuest().getStayDays() != 0 ? room.getGuest().getStayDays() : 1;
+        return roomId + "|" + room.getCheckInTime() + "|" + room.getCheckOutTime() + "|" + days
+                + "|" + room.getPrice() + "|" + acService.getBillDetailVersion(roomId);
+    }
+
+    // 实时计费：只读取调度器累计的内存数据，不生成账单也不访问数据库
+    // 房间不存在返回null
+    public LiveChargeView getLiveCharge(Integer roomId) {
+        Room room = roomService.getRoomById(roomId).orElse(null);
+        if (room == null) {
+            return null;
+        }
+        LiveChargeView view = acService.getLiveCharge(roomId);
+        view.setCurrentTemp(room.getCurrentTemp());
+        return view;
+    }
+
+    // 缓存的账单：入住时间 + 计算时的明细版本号
+    private record CachedBill(LocalDateTime checkInTime, long detailVersion, Bill bill) {
+    }
+
+    private boolean sameRoomCharges(Bill bill, Room room, int days, double roomCost) {
+        return Objects.equals(bill.getCheckOutTime(), room.getCheckOutTime())
+                && bill.getDaysOfStay() == days
+                && bill.getRoomCost() == roomCost;
     }
     // 导出账单到Excel
     public String exportBillToExcel(Bill bill) throws IOException {
-        // 创建Excel工作簿
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("账单");
-        // 创建表头
-        Row headerRow = sheet.createRow(0);
-        headerRow.createCell(0).setCellValue("房间号");
-        headerRow.createCell(1).setCellValue("入住时间");
-        headerRow.createCell(2).setCellValue("退房时间");
-        headerRow.createCell(3).setCellValue("入住天数");
-        headerRow.createCell(4).setCellValue("房费");
-        headerRow.createCell(5).setCellValue("空调费用");
-        headerRow.createCell(6).setCellValue("总费用");
-
-        // 填充数据
-        Row dataRow = sheet.createRow(1);
-        dataRow.createCell(0).setCellValue(bill.getRoomId());
-        dataRow.createCell(1).setCellValue(bill.getCheckInTime().format(formatter));
-        dataRow.createCell(2).setCellValue(bill.getCheckOutTime() != null ?
-                bill.getCheckOutTime().format(formatter) : "");
-        dataRow.createCell(3).setCellValue(bill.getDaysOfStay());
-        dataRow.createCell(4).setCellValue(bill.getRoomCost());
-        dataRow.createCell(5).setCellValue(bill.getAcCost());
-        dataRow.createCell(6).setCellValue(bill.getTotalCost());
-
-        // 保存文件
-        String fileName = "bill_room_" + bill.getRoomId() + ".xlsx";
-        Path path = Paths.get("bills");
-        if (!Files.exists(path)) {
-            Files.createDirectories(path);
+        String fileName = billFileName(bill.getRoomId());
+        try (OutputStream out = openBillsFile(fileName)) {
+            writeBillExcel(bill, out);
         }
-        FileOutputStream fileOut = new FileOutputStream("bills/" + fileName);
-        workbook.write(fileOut);
-        fileOut.close();
-        workbook.close();
-
         return fileName;
     }
 
     // 导出明细到Excel
     public String exportDetailsToExcel(Integer roomId) throws IOException {
-        List<BillDetail> details = acService.getRoomBillDetails(roomId);
-
-        // 创建Excel工作簿
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("明细");
-
-        // 创建表头
-        Row headerRow = sheet.createRow(0);
-        headerRow.createCell(0).setCellValue("序号");
-        headerRow.createCell(1).setCellValue("房间号");
-        headerRow.createCell(2).setCellValue("请求时间");
-        headerRow.createCell(3).setCellValue("服务开始时间");
-        headerRow.createCell(4).setCellValue("服务结束时间");
-        headerRow.createCell(5).setCellValue("服务时长(分钟)");
-        headerRow.createCell(6).setCellValue("风速");
-        headerRow.createCell(7).setCellValue("费用(元)");
-        headerRow.createCell(8).setCellValue("费率(元/度)");
-        // 填充数据
-        int rowNum = 1;
+        String fileName = detailsFileName(roomId);
+        try (OutputStream out = openBillsFile(fileName)) {
+            writeDetailsExcel(roomId, out);
+        }
+        return fileName;
+    }
+
+    /**
+     * 以流式工作簿把账单写到输出流（不落地bills目录）
+     */
+    public void writeBillExcel(Bill bill, OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = newStreamingWorkbook();
+        try {
+            Sheet sheet = workbook.createSheet("账单");
+            // 创建表头
+            Row headerRow = sheet.createRow(0);
+            headerRow.createCell(0).setCellValue("房间号");
+            headerRow.createCell(1).setCellValue("入住时间");
+            headerRow.createCell(2).setCellValue("退房时间");
+            headerRow.createCell(3).setCellValue("入住天数");
+            headerRow.createCell(4).setCellValue("房费");
+            headerRow.createCell(5).setCellValue("空调费用");
+            headerRow.createCell(6).setCellValue("总费用");
+
+            // 填充数据
+            Row dataRow = sheet.createRow(1);
+            dataRow.createCell(0).setCellValue(bill.getRoomId());
+            dataRow.createCell(1).setCellValue(bill.getCheckInTime().format(formatter));
+            dataRow.createCell(2).setCellValue(bill.getCheckOutTime() != null ?
+                    bill.getCheckOutTime().format(formatter) : "");
+            dataRow.createCell(3).setCellValue(bill.getDaysOfStay());
+            dataRow.createCell(4).setCellValue(bill.getRoomCost());
+            dataRow.createCell(5).setCellValue(bill.getAcCost());
+            dataRow.createCell(6).setCellValue(bill.getTotalCost());
+
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /**
+     * 以流式工作簿把房间明细写到输出流（不落地bills目录）
+     * 按块从明细时间线取出明细写入，内存中只保留一块明细和最近 EXPORT_ROW_WINDOW 行，明细条数再多堆占用也不变
+     */
+    public void writeDetailsExcel(Integer roomId, OutputStream out) throws IOException {
+        writeDetailsExcel(out, sheet -> {
+            int[] rowNum = {1};
+            acService.forEachRoomBillDetailChunk(roomId, chunk -> rowNum[0] = writeDetailRows(sheet, rowNum[0], chunk));
+        });
+    }
+
+    /**
+     * 把给定的明细写成Excel（已生成账单时直接复用账单中的明细）
+     */
+    public void writeDetailsExcel(List<BillDetail> details, OutputStream out) throws IOException {
+        writeDetailsExcel(out, sheet -> writeDetailRows(sheet, 1, details));
+    }
+
+    // 写表头后由 rows 填充数据行
+    private void writeDetailsExcel(OutputStream out, Consumer<Sheet> rows) throws IOException {
+        SXSSFWorkbook workbook = newStreamingWorkbook();
+        try {
+            Sheet sheet = workbook.createSheet("明细");
+
+            // 创建表头
+            Row headerRow = sheet.createRow(0);
+            headerRow.createCell(0).setCellValue("序号");
+            headerRow.createCell(1).setCellValue("房间号");
+            headerRow.createCell(2).setCellValue("请求时间");
+            headerRow.createCell(3).setCellValue("服务开始时间");
+            headerRow.createCell(4).setCellValue("服务结束时间");
+            headerRow.createCell(5).setCellValue("服务时长(分钟)");
+            headerRow.createCell(6).setCellValue("风速");
+            headerRow.createCell(7).setCellValue("费用(元)");
+            headerRow.createCell(8).setCellValue("费率(元/度)");
+            // 填充数据
+            rows.accept(sheet);
+
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    // 从 rowNum 行开始写入明细，返回下一行的行号
+    private int writeDetailRows(Sheet sheet, int rowNum, List<BillDetail> details) {
         for (BillDetail detail : details) {
             Row row = sheet.createRow(rowNum++);
             row.createCell(0).setCellValue(rowNum - 1);
@@ -136,18 +260,30 @@ public class BillingService {
             row.createCell(7).setCellValue(detail.getCost());
             row.createCell(8).setCellValue(detail.getRate());
         }
-        // 保存文件
-        String fileName = "details_room_" + roomId + ".xlsx";
+        return rowNum;
+    }
+
+    public String billFileName(Integer roomId) {
+        return "bill_room_" + roomId + ".xlsx";
+    }
+
+    public String detailsFileName(Integer roomId) {
+        return "details_room_" + roomId + ".xlsx";
+    }
+
+    // 超出行窗口的行会被压缩后换出，写完后由 dispose() 清理
+    private SXSSFWorkbook newStreamingWorkbook() {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        return workbook;
+    }
+
+    private OutputStream openBillsFile(String fileName) throws IOException {
         Path path = Paths.get("bills");
         if (!Files.exists(path)) {
             Files.createDirectories(path);
         }
-        FileOutputStream fileOut = new FileOutputStream("bills/" + fileName);
-        workbook.write(fileOut);
-        fileOut.close();
-        workbook.close();
-
-        return fileName;
+        return new FileOutputStream("bills/" + fileName);
     }
 
     /**
@@ -159,7 +295,16 @@ public class BillingService {
         if (billDetail.getCreatedAt() == null) {
             billDetail.setCreatedAt(LocalDateTime.now());
         }
-        return billDetailRepository.save(billDetail);
+        // 覆盖已有详单时先记下原来的贡献，汇总只累加差值
+        Contribution before = billDetail.getId() == null ? null
+                : billDetailRepository.findById(billDetail.getId()).map(Contribution::of).orElse(null);
+        BillDetail saved = billDetailRepository.save(billDetail);
+        if (before == null) {
+            aggregateService.onDetailsAdded(List.of(saved));
+        } else {
+            aggregateService.onDetailChanged(before, saved);
+        }
+        return saved;
     }
 
     /**
@@ -173,12 +318,28 @@ public class BillingService {
                 detail.setCreatedAt(LocalDateTime.now());
             }
         });
-        return billDetailRepository.saveAll(billDetails);
+        List<Long> existingIds = billDetails.stream().map(BillDetail::getId).filter(Objects::nonNull).toList();
+        Map<Long, Contribution> before = new HashMap<>();
+        billDetailRepository.findAllById(existingIds).forEach(d -> before.put(d.getId(), Contribution.of(d)));
+
+        List<BillDetail> saved = billDetailRepository.saveAll(billDetails);
+        List<BillDetail> added = new ArrayList<>();
+        for (BillDetail detail : saved) {
+            Contribution previous = before.get(detail.getId());
+            if (previous == null) {
+                added.add(detail);
+            } else {
+                aggregateService.onDetailChanged(previous, detail);
+            }
+        }
+        aggregateService.onDetailsAdded(added);
+        return saved;
     }
 
     /**
      * 根据账单ID获取详单列表
      */
+    @Transactional(readOnly = true)
     public List<BillDetail> getBillDetailsByBillId(Long billId) {
         return billDetailRepository.findByBillId(billId);
     }
@@ -186,6 +347,7 @@ public class BillingService {
     /**
      * 根据房间号获取详单列表
      */
+    @Transactional(readOnly = true)
     public List<BillDetail> getBillDetailsByRoomId(Integer roomId) {
         return billDetailRepository.findByRoomId(roomId);
     }
@@ -198,6 +360,7 @@ public class BillingService {
                                                 double cost, double energyConsumed) {
         BillDetail detail = billDetailRepository.findById(detailId).orElse(null);
         if (detail != null) {
+            Contribution before = Contribution.of(detail);
             detail.setServiceEndTime(endTime);
             detail.setCost(cost);
             detail.setEnergyConsumed(energyConsumed);
@@ -208,7 +371,9 @@ public class BillingService {
                 detail.setServiceDuration((int) duration.toMinutes());
             }
             
-            return billDetailRepository.save(detail);
+            BillDetail saved = billDetailRepository.save(detail);
+            aggregateService.onDetailChanged(before, saved);
+            return saved;
         }
         return null;
     }
@@ -216,6 +381,7 @@ public class BillingService {
     /**
      * 查询房间的活跃服务详单（未结束的服务）
      */
+    @Transactional(readOnly = true)
     public List<BillDetail> getActiveServicesByRoomId(Integer roomId) {
         return billDetailRepository.findActiveServicesByRoomId(roomId);
     }
@@ -223,17 +389,28 @@ public class BillingService {
     /**
      * 统计房间的总费用
      */
+    @Transactional(readOnly = true)
     public Double getTotalCostByRoomId(Integer roomId) {
-        return billDetailRepository.sumCostByRoomId(roomId);
+        return aggregateService.getRoomTotalCost(roomId);
+    }
+
+    /**
+     * 统计账单的总费用
+     */
+    @Transactional(readOnly = true)
+    public Double getTotalCostByBillId(Long billId) {
+        return aggregateService.getBillTotalCost(billId);
     }
 
     /**
      * 统计房间在指定时间范围的能耗
+     * 由小时汇总桶回答，口径与直接查询详单相同：服务开始时间在区间内且结束时间不晚于 endTime 的详单计入
      */
+    @Transactional(readOnly = true)
     public Double getEnergyConsumedByRoomAndTimeRange(Integer roomId, 
                                                      LocalDateTime startTime, 
                                                      LocalDateTime endTime) {
-        return billDetailRepository.sumEnergyConsumedByRoomAndTimeRange(roomId, startTime, endTime);
+        return aggregateService.getRoomEnergy(roomId, startTime, endTime);
     }
 
     /**
@@ -259,6 +436,8 @@ public class BillingService {
                 .createdAt(LocalDateTime.now())
                 .build();
         
-        return billDetailRepository.save(detail);
+        BillDetail saved = billDetailRepository.save(detail);
+        aggregateService.onDetailsAdded(List.of(saved));
+        return saved;
     }
 }
@@ -23,6 +23,7 @@ public class CheckInService {
             room.setOccupied(true);
             room.setGuest(guest);
             room.setCheckInTime(LocalDateTime.now());
+            roomService.roomChanged(roomId);
             return true;
         }).orElse(false);
     }
@@ -23,6 +23,7 @@ public class CheckOutService {
             room.setOccupied(false);
             room.setCheckOutTime(LocalDateTime.now());
             room.setGuest(null);
+            roomService.roomChanged(roomId);
             return true;
         }).orElse(false);
     }
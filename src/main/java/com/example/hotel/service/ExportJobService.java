@@ -0,0 +1,267 @@
+package com.example.hotel.service;
+
+import com.example.hotel.dto.ExportJob;
+import com.example.hotel.entity.Bill;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 异步导出服务
+ * 导出任务在独立的有界线程池上生成Excel，不占用Tomcat请求线程；
+ * 生成结果按账单版本（入住、房费字段和明细版本号）落盘到导出目录，账单未变化的重复请求不生成账单直接命中缓存，
+ * 下载时由文件通道直接发送，文件内容不进入堆内存
+ */
+@Service
+public class ExportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportJobService.class);
+
+    // 已结束任务的保留时间
+    private static final long JOB_RETENTION_MINUTES = 30;
+
+    private final BillingService billingService;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    // 正在生成的内容，同一内容只生成一次
+    private final Map<String, ExportJob> inFlight = new ConcurrentHashMap<>();
+    // 内容摘要 -> 导出文件，按访问顺序淘汰，淘汰时删除文件
+    private final Map<String, Path> cache;
+    private final Path spoolDir;
+
+    public ExportJobService(BillingService billingService,
+                            @Value("${hotel.billing.export.threads:2}") int threads,
+                            @Value("${hotel.billing.export.queue-capacity:50}") int queueCapacity,
+                            @Value("${hotel.billing.export.cache-max-entries:256}") int cacheMaxEntries,
+                            @Value("${hotel.billing.export.spool-dir:${java.io.tmpdir}/hotel-exports}") String spoolDir,
+                            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads)
+            throws IOException {
+        this.billingService = billingService;
+        this.spoolDir = Paths.get(spoolDir);
+        Files.createDirectories(this.spoolDir);
+        // 缓存索引只在内存中，上次运行留下的文件无法再命中，启动时清理
+        try (Stream<Path> leftovers = Files.list(this.spoolDir)) {
+            leftovers.forEach(ExportJobService::deleteQuietly);
+        }
+        // 虚拟线程模式下工作线程改为虚拟线程，并发数和排队上限仍由线程池控制（导出占用内存，需要限流）
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("export-", 1).factory()
+                : Thread.ofPlatform().name("export-", 1).daemon(true).factory();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory);
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Path> eldest) {
+                if (size() > cacheMaxEntries) {
+                    deleteQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * 创建导出任务
+     * 房间未入住返回空；导出线程池已满时抛出 RejectedExecutionException
+     */
+    public Optional<ExportJob> submit(Integer roomId, ExportJob.Type type) {
+        // 缓存键只读取内存中的版本信息，命中时不生成账单
+        String contentKey = contentKey(type, roomId);
+        if (contentKey == null) {
+            return Optional.empty();
+        }
+
+        ExportJob job = new ExportJob();
+        job.setJobId(UUID.randomUUID().toString());
+        job.setRoomId(roomId);
+        job.setType(type);
+        job.setFileName(type == ExportJob.Type.BILL
+                ? billingService.billFileName(roomId) : billingService.detailsFileName(roomId));
+        job.setDownloadUrl("/api/billing/export-jobs/" + job.getJobId() + "/file");
+        job.setCreatedAt(LocalDateTime.now());
+        job.setContentKey(contentKey);
+
+        // 账单未变化，直接复用缓存结果
+        if (cache.containsKey(contentKey)) {
+            job.setCacheHit(true);
+            job.setStatus(ExportJob.Status.DONE);
+            job.setFinishedAt(job.getCreatedAt());
+            jobs.put(job.getJobId(), job);
+            return Optional.of(job);
+        }
+
+        // 相同内容已在生成中，返回进行中的任务
+        job.setStatus(ExportJob.Status.PENDING);
+        ExportJob running = inFlight.putIfAbsent(contentKey, job);
+        if (running != null) {
+            return Optional.of(running);
+        }
+
+        // 未命中时才生成账单（内存中组装，版本号先于账单读取，账单内容不会旧于缓存键）
+        Bill bill = billingService.generateBill(roomId);
+        if (bill == null) {
+            inFlight.remove(contentKey, job);
+            return Optional.empty();
+        }
+        jobs.put(job.getJobId(), job);
+        try {
+            executor.execute(() -> run(job, bill));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            inFlight.remove(contentKey, job);
+            throw e;
+        }
+        return Optional.of(job);
+    }
+
+    /**
+     * 查询任务状态
+     */
+    public Optional<ExportJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * 获取已完成任务的导出文件，任务未完成时返回空
+     * 已完成任务的结果被容量淘汰时按房间当前账单重新生成并返回空，任务回到进行中，完成后可以再次下载
+     */
+    public Optional<Path> getResult(ExportJob job) {
+        if (job.getStatus() != ExportJob.Status.DONE) {
+            return Optional.empty();
+        }
+        Path file = cache.get(job.getContentKey());
+        if (file != null && Files.exists(file)) {
+            return Optional.of(file);
+        }
+        return regenerate(job);
+    }
+
+    // 重新生成已被淘汰的结果；房间已退房时任务失败，导出线程池已满时保持完成状态，下次下载再重试
+    private synchronized Optional<Path> regenerate(ExportJob job) {
+        if (job.getStatus() != ExportJob.Status.DONE) {
+            return Optional.empty();
+        }
+        String contentKey = contentKey(job.getType(), job.getRoomId());
+        Path cached = contentKey != null ? cache.get(contentKey) : null;
+        if (cached != null && Files.exists(cached)) {
+            job.setContentKey(contentKey);
+            return Optional.of(cached);
+        }
+        Bill bill = contentKey != null ? billingService.generateBill(job.getRoomId()) : null;
+        if (bill == null) {
+            job.setError("房间已退房，导出结果已过期");
+            job.setStatus(ExportJob.Status.FAILED);
+            return Optional.empty();
+        }
+        String evictedKey = job.getContentKey();
+        job.setContentKey(contentKey);
+        job.setCacheHit(false);
+        job.setStatus(ExportJob.Status.PENDING);
+        try {
+            executor.execute(() -> run(job, bill));
+        } catch (RejectedExecutionException e) {
+            logger.warn("导出队列已满，任务{}的结果暂不重新生成", job.getJobId());
+            job.setContentKey(evictedKey);
+            job.setStatus(ExportJob.Status.DONE);
+        }
+        return Optional.empty();
+    }
+
+    // 在导出线程上生成Excel
+    private void run(ExportJob job, Bill bill) {
+        job.setStatus(ExportJob.Status.RUNNING);
+        Path temp = null;
+        try {
+            // 先写临时文件再改名，下载方不会读到写了一半的文件
+            temp = Files.createTempFile(spoolDir, job.getContentKey(), ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                if (job.getType() == ExportJob.Type.BILL) {
+                    billingService.writeBillExcel(bill, out);
+                } else {
+                    billingService.writeDetailsExcel(bill.getDetails(), out);
+                }
+            }
+            Path file = spoolDir.resolve(job.getContentKey() + ".xlsx");
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            cache.put(job.getContentKey(), file);
+            job.setStatus(ExportJob.Status.DONE);
+        } catch (Exception e) {
+            if (temp != null) {
+                deleteQuietly(temp);
+            }
+            logger.error("导出任务失败，任务: {}，房间: {}", job.getJobId(), job.getRoomId(), e);
+            job.setError(e.getMessage());
+            job.setStatus(ExportJob.Status.FAILED);
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+            inFlight.remove(job.getContentKey(), job);
+        }
+    }
+
+    // 缓存键：导出类型 + 账单版本的摘要（用作文件名），房间未入住返回null
+    private String contentKey(ExportJob.Type type, Integer roomId) {
+        String version = billingService.billVersionKey(roomId);
+        if (version == null) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest((type + "|" + version).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 清理过期的已结束任务（缓存的文件内容按容量淘汰，不在这里清理）
+     */
+    @Scheduled(fixedDelay = 10 * 60 * 1000)
+    public void evictFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(JOB_RETENTION_MINUTES);
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("删除导出文件失败: {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
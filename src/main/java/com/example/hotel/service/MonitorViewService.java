@@ -0,0 +1,163 @@
+package com.example.hotel.service;
+
+import com.example.hotel.dto.AirConditionerView;
+import com.example.hotel.dto.QueueEntryView;
+import com.example.hotel.dto.QueueStatusView;
+import com.example.hotel.dto.RoomAssignmentView;
+import com.example.hotel.dto.RoomPanelView;
+import com.example.hotel.entity.AirConditionerRequest;
+import com.example.hotel.entity.Bill;
+import com.example.hotel.entity.Room;
+import com.example.hotel.repository.AirConditionerRequestRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 监控读模型服务
+ * 为空调状态、房间分配和调度队列接口组装轻量读模型，不序列化完整实体
+ */
+@Service
+public class MonitorViewService {
+
+    private final AirConditionerService acService;
+    private final AirConditionerSchedulerService schedulerService;
+    private final RoomService roomService;
+    private final AirConditionerRequestRepository requestRepository;
+    private final BillingService billingService;
+
+    // 等待队列排序：优先级高的在前，优先级相同时请求早的在前
+    private static final Comparator<QueueEntryView> WAITING_ORDER =
+            Comparator.comparingInt(QueueEntryView::getPriority).reversed()
+                    .thenComparing(QueueEntryView::getRequestTime,
+                            Comparator.nullsLast(Comparator.naturalOrder()));
+
+    public MonitorViewService(AirConditionerService acService,
+                              AirConditionerSchedulerService schedulerService,
+                              RoomService roomService,
+                              AirConditionerRequestRepository requestRepository,
+                              BillingService billingService) {
+        this.acService = acService;
+        this.schedulerService = schedulerService;
+        this.roomService = roomService;
+        this.requestRepository = requestRepository;
+        this.billingService = billingService;
+    }
+
+    // 本次服务时长按分钟展示，ETag 中带上当前分钟，分钟变化后缓存失效
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60_000;
+    }
+
+    // 空调状态的弱ETag：空调/请求版本 + 调度周期 + 当前分钟
+    public String airConditionersEtag() {
+        return "W/\"ac-" + acService.getStateVersion() + "-" + schedulerService.getTickVersion()
+                + "-" + currentMinute() + "\"";
+    }
+
+    // 房间分配的弱ETag：房间总版本号
+    public String roomAssignmentEtag() {
+        return "W/\"rooms-" + roomService.getRoomsVersion() + "\"";
+    }
+
+    // 调度队列状态的弱ETag：队列条目来自请求表，时长来自调度周期计数，空调状态同上
+    // 快照时间不参与比较，命中时客户端沿用上次的快照时间
+    public String queueStatusEtag() {
+        return "W/\"queue-" + acService.getStateVersion() + "-" + schedulerService.getTickVersion()
+                + "-" + currentMinute() + "\"";
+    }
+
+    // 所有空调状态
+    public List<AirConditionerView> getAirConditionerViews() {
+        LocalDateTime now = LocalDateTime.now();
+        return acService.getAllAirConditioners().stream()
+                .map(ac -> AirConditionerView.from(ac, now))
+                .toList();
+    }
+
+    // 所有房间的空调分配情况
+    public List<RoomAssignmentView> getRoomAssignmentViews() {
+        return acService.getAllRoomsWithAcAssignment().stream()
+                .map(RoomAssignmentView::from)
+                .toList();
+    }
+
+    // 房间控制面板状态，房间不存在返回null
+    // 只在房间版本号变化后组装，一次面板刷新最多查询一次活跃请求
+    public RoomPanelView getRoomPanel(Integer roomId, long version) {
+        if (roomService.getRoomById(roomId).isEmpty()) {
+            return null;
+        }
+        return getRoomPanel(roomId, version, acService.getRoomRequest(roomId));
+    }
+
+    // 房间控制面板状态，活跃请求由调用方查询（没有活跃请求时为null），房间不存在返回null
+    public RoomPanelView getRoomPanel(Integer roomId, long version, AirConditionerRequest request) {
+        Room room = roomService.getRoomById(roomId).orElse(null);
+        if (room == null) {
+            return null;
+        }
+        RoomPanelView view = new RoomPanelView();
+        view.setRoomId(roomId);
+        view.setVersion(version);
+        view.setOccupied(room.isOccupied());
+        view.setCurrentTemp(room.getCurrentTemp());
+        view.setAssignedAcId(room.getAssignedAcId());
+
+        if (request == null) {
+            view.setStatus("关机");
+        } else {
+            view.setStatus(request.getAssignedAcId() != null ? "服务中" : "等待中");
+            view.setMode(request.getMode());
+            view.setFanSpeed(request.getFanSpeed());
+            view.setTargetTemp(request.getTargetTemp());
+        }
+        view.setServiceCost(acService.getLiveCharge(roomId).getCost());
+        if (room.isOccupied()) {
+            Bill bill = billingService.generateBill(roomId);
+            if (bill != null) {
+                view.setAcCost(bill.getAcCost());
+            }
+        }
+        return view;
+    }
+
+    // 调度队列状态（只读事务，启用读写分离时走副本）
+    @Transactional(readOnly = true)
+    public QueueStatusView getQueueStatus() {
+        return getQueueStatus(requestRepository.findActiveQueueEntries());
+    }
+
+    // 按调用方查询到的活跃请求条目组装调度队列状态，条目按请求时间升序
+    public QueueStatusView getQueueStatus(List<QueueEntryView> activeEntries) {
+        // 分类为服务队列和等待队列
+        List<QueueEntryView> serviceQueue = new ArrayList<>();
+        List<QueueEntryView> waitingQueue = new ArrayList<>();
+        for (QueueEntryView entry : activeEntries) {
+            if (entry.isServing()) {
+                entry.setStatus("服务中");
+                entry.setServiceTime(schedulerService.getServiceTime(entry.getRoomId()));
+                serviceQueue.add(entry);
+            } else {
+                entry.setStatus("等待中");
+                entry.setWaitingTime(schedulerService.getWaitingTime(entry.getRoomId()));
+                waitingQueue.add(entry);
+            }
+        }
+        waitingQueue.sort(WAITING_ORDER);
+
+        return new QueueStatusView(
+                serviceQueue,
+                waitingQueue,
+                getAirConditionerViews(),
+                activeEntries.size(),
+                serviceQueue.size(),
+                waitingQueue.size(),
+                LocalDateTime.now()
+        );
+    }
+}
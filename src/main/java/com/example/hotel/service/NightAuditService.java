@@ -0,0 +1,230 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.Bill;
+import com.example.hotel.entity.Room;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 夜审批量导出
+ * 在有界线程池上并行生成所有入住房间的账单和明细表，按完成顺序写入同一个ZIP。
+ * 每次夜审有自己的编号和进度，并发执行的夜审互不覆盖；写出失败（如客户端断开）时取消尚未完成的房间任务
+ */
+@Service
+public class NightAuditService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NightAuditService.class);
+
+    // 保留进度的夜审次数
+    private static final int MAX_RUNS = 16;
+
+    private final RoomService roomService;
+    private final BillingService billingService;
+    private final int threads;
+    private final ExecutorService executor;
+
+    private final AtomicLong runIds = new AtomicLong();
+    // 最近几次夜审的进度，按编号；只在持有自身锁时读写
+    private final Map<Long, Progress> runs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Progress> eldest) {
+            return size() > MAX_RUNS;
+        }
+    };
+    private volatile Progress lastRun;
+
+    public NightAuditService(RoomService roomService, BillingService billingService,
+                             @Value("${hotel.billing.night-audit.threads:0}") int threads) {
+        this.roomService = roomService;
+        this.billingService = billingService;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "night-audit-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 夜审进度
+     */
+    @Data
+    public static class Progress {
+        private final long runId;
+        private final LocalDateTime startTime;
+        private final int totalRooms;
+        private final AtomicInteger completedRooms = new AtomicInteger();
+        private final AtomicInteger failedRooms = new AtomicInteger();
+        private volatile LocalDateTime endTime;
+        // 因写出失败或中断提前结束
+        private volatile boolean aborted;
+
+        public boolean isFinished() {
+            return endTime != null;
+        }
+
+        // 每秒处理的房间数
+        public double getRoomsPerSecond() {
+            LocalDateTime end = endTime != null ? endTime : LocalDateTime.now();
+            long millis = Math.max(1, Duration.between(startTime, end).toMillis());
+            return completedRooms.get() * 1000.0 / millis;
+        }
+    }
+
+    // 一个房间的导出结果
+    private record RoomExport(Integer roomId, byte[] bill, byte[] details) {
+    }
+
+    /**
+     * 获取最近开始的一次夜审的进度，未执行过返回null
+     */
+    public Progress getProgress() {
+        return lastRun;
+    }
+
+    /**
+     * 获取指定编号的夜审进度，尚未开始或已不再保留时返回null
+     */
+    public Progress getProgress(long runId) {
+        synchronized (runs) {
+            return runs.get(runId);
+        }
+    }
+
+    /**
+     * 分配夜审编号，在开始写出响应前交给客户端用于查询进度
+     */
+    public long nextRunId() {
+        return runIds.incrementAndGet();
+    }
+
+    /**
+     * 执行夜审，把所有入住房间的账单和明细写入ZIP输出流
+     */
+    public void exportAll(OutputStream out) throws IOException {
+        exportAll(nextRunId(), out);
+    }
+
+    /**
+     * 以指定编号执行夜审
+     */
+    public void exportAll(long runId, OutputStream out) throws IOException {
+        List<Integer> roomIds = roomService.getAllRooms().stream()
+                .filter(Room::isOccupied)
+                .map(Room::getRoomId)
+                .sorted()
+                .toList();
+
+        Progress progress = new Progress(runId, LocalDateTime.now(), roomIds.size());
+        synchronized (runs) {
+            runs.put(runId, progress);
+        }
+        lastRun = progress;
+        logger.info("夜审 {} 开始，入住房间数: {}，线程数: {}", runId, roomIds.size(), threads);
+
+        CompletionService<RoomExport> completionService = new ExecutorCompletionService<>(executor);
+        // 已提交未取出的任务，提前结束时取消
+        Set<Future<RoomExport>> pending = new HashSet<>();
+        // 限制在途任务数，避免已生成未写出的工作簿堆积在内存中
+        int window = threads * 2;
+        int submitted = 0;
+        boolean finished = false;
+
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            while (submitted < roomIds.size() || !pending.isEmpty()) {
+                while (submitted < roomIds.size() && pending.size() < window) {
+                    Integer roomId = roomIds.get(submitted++);
+                    pending.add(completionService.submit(() -> exportRoom(roomId)));
+                }
+
+                RoomExport export = take(completionService, pending);
+                if (export == null) {
+                    progress.getFailedRooms().incrementAndGet();
+                    continue;
+                }
+                writeEntry(zip, billingService.billFileName(export.roomId()), export.bill());
+                writeEntry(zip, billingService.detailsFileName(export.roomId()), export.details());
+                progress.getCompletedRooms().incrementAndGet();
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                // 客户端断开或写ZIP失败，剩余房间不再生成
+                pending.forEach(future -> future.cancel(true));
+                progress.setAborted(true);
+            }
+            progress.setEndTime(LocalDateTime.now());
+            logger.info("夜审 {} {}，完成: {}，失败: {}，取消: {}，吞吐: {} 房间/秒", runId,
+                    finished ? "结束" : "中止",
+                    progress.getCompletedRooms().get(), progress.getFailedRooms().get(),
+                    finished ? 0 : pending.size() + roomIds.size() - submitted,
+                    String.format("%.1f", progress.getRoomsPerSecond()));
+        }
+    }
+
+    // 生成单个房间的账单和明细工作簿
+    private RoomExport exportRoom(Integer roomId) throws IOException {
+        Bill bill = billingService.generateBill(roomId);
+        if (bill == null) {
+            return null;
+        }
+        ByteArrayOutputStream billOut = new ByteArrayOutputStream();
+        billingService.writeBillExcel(bill, billOut);
+        ByteArrayOutputStream detailsOut = new ByteArrayOutputStream();
+        billingService.writeDetailsExcel(bill.getDetails(), detailsOut);
+        return new RoomExport(roomId, billOut.toByteArray(), detailsOut.toByteArray());
+    }
+
+    // 取出一个完成的任务，单个房间失败不影响其他房间
+    private RoomExport take(CompletionService<RoomExport> completionService,
+                            Set<Future<RoomExport>> pending) throws IOException {
+        try {
+            Future<RoomExport> done = completionService.take();
+            pending.remove(done);
+            return done.get();
+        } catch (ExecutionException e) {
+            logger.error("夜审房间导出失败", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("夜审被中断", e);
+        }
+    }
+
+    private void writeEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
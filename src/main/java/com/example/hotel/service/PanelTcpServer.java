@@ -0,0 +1,422 @@
+package com.example.hotel.service;
+
+import com.example.hotel.dto.RoomPanelView;
+import com.example.hotel.entity.AirConditioner;
+import com.example.hotel.util.PanelProtocol;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 房间面板 TCP 接入（hotel.panel.tcp.enabled=true 时启动）
+ * 面板保持一个长连接，使用 PanelProtocol 定义的定长二进制帧收发开启、调整、关闭和状态查询，
+ * 不再为每次按键建立 HTTP 请求、解析请求头和 JSON。
+ * 所有连接由一个选择器线程读写：指令与 HTTP 接口一样经过限流后交给指令分发器按房间排队执行，
+ * 状态查询在房间版本号上等待；结果放入连接的发送队列后唤醒选择器写出。面板数量增加只增加连接，不增加线程。
+ * 只发不收的连接发送队列会持续增长，排队字节数超过上限时断开
+ */
+@Service
+@ConditionalOnProperty(prefix = "hotel.panel.tcp", name = "enabled", havingValue = "true")
+public class PanelTcpServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PanelTcpServer.class);
+
+    private final AirConditionerService acService;
+    private final AcCommandDispatcher commandDispatcher;
+    private final AcRateLimiter rateLimiter;
+    private final RoomService roomService;
+    private final RoomChangeTracker changeTracker;
+    private final MonitorViewService monitorViewService;
+
+    private final String host;
+    private final int port;
+    private final int maxConnections;
+    private final int maxInFlight;
+    private final int maxQueuedBytes;
+
+    private final Map<SocketChannel, Connection> connections = new ConcurrentHashMap<>();
+    // 有数据待写出的连接，由选择器线程注册写事件
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final Counter frames;
+    private final Counter protocolErrors;
+    private final Counter overflows;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    public PanelTcpServer(AirConditionerService acService,
+                          AcCommandDispatcher commandDispatcher,
+                          AcRateLimiter rateLimiter,
+                          RoomService roomService,
+                          RoomChangeTracker changeTracker,
+                          MonitorViewService monitorViewService,
+                          MeterRegistry meterRegistry,
+                          @Value("${hotel.panel.tcp.host:0.0.0.0}") String host,
+                          @Value("${hotel.panel.tcp.port:9090}") int port,
+                          @Value("${hotel.panel.tcp.max-connections:10000}") int maxConnections,
+                          @Value("${hotel.panel.tcp.max-in-flight:16}") int maxInFlight,
+                          @Value("${hotel.panel.tcp.max-queued-bytes:65536}") int maxQueuedBytes) {
+        this.acService = acService;
+        this.commandDispatcher = commandDispatcher;
+        this.rateLimiter = rateLimiter;
+        this.roomService = roomService;
+        this.changeTracker = changeTracker;
+        this.monitorViewService = monitorViewService;
+        this.host = host;
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.maxInFlight = maxInFlight;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.frames = Counter.builder("hotel.panel.tcp.frames")
+                .description("面板TCP接入收到的请求帧数")
+                .register(meterRegistry);
+        this.protocolErrors = Counter.builder("hotel.panel.tcp.protocol-errors")
+                .description("因帧格式错误被关闭的面板连接数")
+                .register(meterRegistry);
+        this.overflows = Counter.builder("hotel.panel.tcp.overflows")
+                .description("因发送队列积压超过上限被关闭的面板连接数")
+                .register(meterRegistry);
+        Gauge.builder("hotel.panel.tcp.connections", connections, Map::size)
+                .description("当前面板TCP连接数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(host, port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = Thread.ofPlatform().name("panel-tcp").daemon(true).start(this::selectLoop);
+        logger.info("面板TCP接入已启动，端口 {}", getLocalPort());
+    }
+
+    /**
+     * 实际监听的端口（配置为0时由系统分配）
+     */
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        selectorThread.join(5000);
+        connections.values().forEach(this::close);
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            logger.warn("关闭面板TCP接入失败", e);
+        }
+    }
+
+    private void selectLoop() {
+        while (running) {
+            try {
+                // 选择器线程上直接产生的响应（如参数错误）不会唤醒选择器，必须在进入等待前登记
+                registerPendingWrites();
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                logger.error("面板TCP选择器循环异常", e);
+            }
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(connection);
+            }
+        } catch (IOException e) {
+            // 面板断电、断网都会走到这里，不记录堆栈
+            logger.debug("面板连接 {} 断开: {}", connection.client, e.getMessage());
+            close(connection);
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            if (connections.size() >= maxConnections) {
+                channel.close();
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel,
+                    ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress());
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.put(channel, connection);
+        } catch (IOException e) {
+            logger.warn("接受面板连接失败", e);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        if (connection.channel.read(in) < 0) {
+            close(connection);
+            return;
+        }
+        in.flip();
+        // 处理帧时连接可能因发送队列积压被关闭，之后的帧不再处理
+        while (!connection.closed && in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < PanelProtocol.HEADER_BYTES - 4 || length > PanelProtocol.MAX_FRAME_LENGTH) {
+                // 长度不合法说明帧边界已经错乱，无法再恢复，只能断开
+                protocolErrors.increment();
+                close(connection);
+                return;
+            }
+            if (in.remaining() < 4 + length) {
+                break;
+            }
+            int frameEnd = in.position() + 4 + length;
+            in.getInt();
+            byte type = in.get();
+            int requestId = in.getInt();
+            ByteBuffer payload = in.slice(in.position(), frameEnd - in.position());
+            in.position(frameEnd);
+            frames.increment();
+            handleFrame(connection, type, requestId, payload);
+        }
+        in.compact();
+    }
+
+    private void handleFrame(Connection connection, byte type, int requestId, ByteBuffer payload) {
+        int expected = switch (type) {
+            case PanelProtocol.START, PanelProtocol.ADJUST -> PanelProtocol.COMMAND_PAYLOAD_BYTES;
+            case PanelProtocol.CANCEL -> PanelProtocol.CANCEL_PAYLOAD_BYTES;
+            case PanelProtocol.STATUS -> PanelProtocol.STATUS_PAYLOAD_BYTES;
+            default -> -1;
+        };
+        if (payload.remaining() != expected) {
+            reply(connection, PanelProtocol.response(type, requestId, PanelProtocol.BAD_REQUEST, 0));
+            return;
+        }
+        Integer roomId = payload.getInt();
+        if (roomService.getRoomById(roomId).isEmpty()) {
+            reply(connection, PanelProtocol.response(type, requestId, PanelProtocol.NOT_FOUND, 0));
+            return;
+        }
+        // 在途请求（含等待中的状态查询）过多时直接拒绝，避免单个连接占满指令队列
+        if (connection.inFlight.get() >= maxInFlight) {
+            reply(connection, PanelProtocol.response(type, requestId, PanelProtocol.BUSY, 0));
+            return;
+        }
+        if (type != PanelProtocol.STATUS && rateLimiter.tryAcquire(connection.client, roomId) > 0) {
+            reply(connection, PanelProtocol.response(type, requestId, PanelProtocol.RATE_LIMITED, 0));
+            return;
+        }
+
+        CompletableFuture<ByteBuffer> result;
+        try {
+            result = switch (type) {
+                case PanelProtocol.START -> start(roomId, requestId, payload);
+                case PanelProtocol.ADJUST -> adjust(roomId, requestId, payload);
+                case PanelProtocol.CANCEL -> commandDispatcher.submit(roomId, () -> acService.cancelRequest(roomId))
+                        .thenApply(success -> PanelProtocol.response(type, requestId,
+                                success ? PanelProtocol.OK : PanelProtocol.FAILED, 0));
+                default -> status(roomId, requestId, payload);
+            };
+        } catch (IllegalArgumentException e) {
+            reply(connection, PanelProtocol.response(type, requestId, PanelProtocol.BAD_REQUEST, 0));
+            return;
+        } catch (RejectedExecutionException e) {
+            reply(connection, PanelProtocol.response(type, requestId, PanelProtocol.BUSY, 0));
+            return;
+        }
+
+        connection.inFlight.incrementAndGet();
+        result.whenComplete((response, error) -> {
+            connection.inFlight.decrementAndGet();
+            if (error != null) {
+                logger.warn("面板请求处理失败，房间 {}", roomId, error);
+                response = PanelProtocol.response(type, requestId, PanelProtocol.ERROR, 0);
+            }
+            reply(connection, response);
+        });
+    }
+
+    // 开启空调：未指定的参数使用与 HTTP 接口相同的默认值（制冷模式，中风，25度）
+    private CompletableFuture<ByteBuffer> start(Integer roomId, int requestId, ByteBuffer payload) {
+        AirConditioner.Mode mode = PanelProtocol.decodeMode(payload.get());
+        AirConditioner.FanSpeed fanSpeed = PanelProtocol.decodeFanSpeed(payload.get());
+        Double targetTemp = PanelProtocol.decodeTemp(payload.getShort());
+        AirConditioner.Mode startMode = mode != null ? mode : AirConditioner.Mode.COOLING;
+        AirConditioner.FanSpeed startFanSpeed = fanSpeed != null ? fanSpeed : AirConditioner.FanSpeed.MEDIUM;
+        Double startTarget = targetTemp != null ? targetTemp : 25.0;
+        return commandDispatcher.submit(roomId,
+                        () -> acService.createRequest(roomId, startMode, startFanSpeed, startTarget))
+                .thenApply(assignedAcId -> {
+                    if (assignedAcId == null) {
+                        return PanelProtocol.response(PanelProtocol.START, requestId, PanelProtocol.FAILED, 0);
+                    }
+                    return PanelProtocol.response(PanelProtocol.START, requestId, PanelProtocol.OK, 2)
+                            .putShort(assignedAcId.shortValue());
+                });
+    }
+
+    // 调整空调：与 HTTP 接口共用合并窗口，同一房间的连续调整合并执行
+    private CompletableFuture<ByteBuffer> adjust(Integer roomId, int requestId, ByteBuffer payload) {
+        AcCommandDispatcher.AdjustSettings settings = new AcCommandDispatcher.AdjustSettings(
+                PanelProtocol.decodeMode(payload.get()),
+                PanelProtocol.decodeFanSpeed(payload.get()),
+                PanelProtocol.decodeTemp(payload.getShort()));
+        if (settings.mode() == null && settings.fanSpeed() == null && settings.targetTemp() == null) {
+            throw new IllegalArgumentException("至少需要提供一个参数");
+        }
+        return commandDispatcher.submitAdjust(roomId, settings, merged -> acService.adjustActiveRequest(roomId, merged))
+                .thenApply(result -> PanelProtocol.response(PanelProtocol.ADJUST, requestId,
+                        result == AcCommandDispatcher.AdjustResult.APPLIED ? PanelProtocol.OK : PanelProtocol.FAILED, 0));
+    }
+
+    // 状态查询：since 小于0时立即返回，否则等待房间版本号超过 since 或超时；组装在通知线程池上进行
+    private CompletableFuture<ByteBuffer> status(Integer roomId, int requestId, ByteBuffer payload) {
+        long since = payload.getLong();
+        long timeout = Math.max(0, Math.min(payload.getInt(), RoomChangeTracker.MAX_WAIT_MILLIS));
+        return changeTracker.awaitChange(roomId, since, since < 0 ? 0 : timeout)
+                .thenApply(version -> {
+                    RoomPanelView view = monitorViewService.getRoomPanel(roomId, version);
+                    if (view == null) {
+                        return PanelProtocol.response(PanelProtocol.STATUS, requestId, PanelProtocol.NOT_FOUND, 0);
+                    }
+                    ByteBuffer response = PanelProtocol.response(PanelProtocol.STATUS, requestId, PanelProtocol.OK,
+                            PanelProtocol.STATUS_VIEW_BYTES);
+                    PanelProtocol.writeStatus(response, view);
+                    return response;
+                });
+    }
+
+    /**
+     * 把写好的响应帧（尚未 flip）放入连接的发送队列；可在任意线程调用，实际写出由选择器线程完成
+     */
+    private void reply(Connection connection, ByteBuffer response) {
+        response.flip();
+        if (connection.closed) {
+            return;
+        }
+        // 对端不读取时响应只会越积越多，超过上限直接断开，面板重连后重新查询状态
+        if (connection.queuedBytes.addAndGet(response.remaining()) > maxQueuedBytes) {
+            overflows.increment();
+            logger.debug("面板连接 {} 发送队列积压超过 {} 字节，断开", connection.client, maxQueuedBytes);
+            close(connection);
+            return;
+        }
+        connection.out.add(response);
+        pendingWrites.add(connection);
+        if (Thread.currentThread() != selectorThread) {
+            selector.wakeup();
+        }
+    }
+
+    private void registerPendingWrites() {
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            if (connection.key.isValid()) {
+                connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = connection.out.peek()) != null) {
+            connection.channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                // 内核发送缓冲区已满，等下一次可写事件
+                return;
+            }
+            connection.out.poll();
+            connection.queuedBytes.addAndGet(-buffer.limit());
+        }
+        // 检查之后新加入的响应会再次登记到 pendingWrites，不会丢失
+        connection.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void close(Connection connection) {
+        connection.closed = true;
+        connections.remove(connection.channel);
+        connection.out.clear();
+        if (connection.key != null) {
+            connection.key.cancel();
+        }
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            logger.debug("关闭面板连接失败: {}", e.getMessage());
+        }
+    }
+
+    // 单个面板连接的状态；读缓冲只由选择器线程使用，发送队列可由任意线程加入
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final String client;
+        private final ByteBuffer in = ByteBuffer.allocate(4 * (4 + PanelProtocol.MAX_FRAME_LENGTH));
+        private final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // 发送队列中尚未写出的字节数
+        private final AtomicInteger queuedBytes = new AtomicInteger();
+        private SelectionKey key;
+        private volatile boolean closed;
+
+        private Connection(SocketChannel channel, String client) {
+            this.channel = channel;
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.hotel.service;
+
+import com.example.hotel.dto.QueueStatusDiff;
+import com.example.hotel.dto.QueueStatusView;
+import com.example.hotel.event.AirConditionerEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 调度队列状态推送（SSE）
+ * 空调事件只把状态标记为已变化；推送周期内有订阅者且状态已变化时才查询一次快照，
+ * 与上一版本比较后把差异序列化一次、放入每个订阅者的发送队列。查询次数取决于状态变化频率，与打开的监控页面数量无关。
+ * 每个订阅者由一个虚拟线程按顺序写出自己的队列，慢连接只阻塞自己；积压过多或写出长时间不返回的连接被断开。
+ * 新连接先收到完整快照；断线重连时按 Last-Event-ID 从最近的差异中补发，补不上时重新发送快照。
+ * 事件ID为“启动纪元-版本号”，版本号在每次启动后从1开始，重连带来的ID属于上一次启动时一律重新发送快照
+ */
+@Service
+public class QueueStatusBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueueStatusBroadcaster.class);
+
+    // 保留最近的差异条数，用于断线续传
+    private static final int REPLAY_CAPACITY = 64;
+    // 单个订阅者排队未写出的事件上限，超过时断开，浏览器重连后从快照重新开始
+    private static final int MAX_QUEUED_EVENTS = REPLAY_CAPACITY;
+    // 一次写出超过该时长仍未返回视为连接停滞
+    private static final long STALL_MILLIS = 10_000;
+    // 连接超时后浏览器会带着 Last-Event-ID 自动重连
+    private static final long EMITTER_TIMEOUT_MS = 30 * 60 * 1000L;
+
+    private final MonitorViewService monitorViewService;
+    private final ObjectMapper objectMapper;
+    private final long heartbeatMillis;
+    // 本次启动的纪元，作为事件ID的前缀
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Counter dropped;
+    // 每个订阅者同一时刻最多一个写出任务
+    private final ExecutorService sender = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("queue-push-", 1).factory());
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+
+    // 以下状态只在持有 lock 时读写；锁内只比较快照、序列化和入队，不查询数据库也不写网络
+    // current 只由推送线程更新，推送线程在锁外读取它
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile QueueStatusView current;
+    private long version;
+    private String snapshotJson;
+    private final Deque<Event> replay = new ArrayDeque<>();
+    private long lastSentAt = System.currentTimeMillis();
+
+    // name 为空表示心跳注释
+    private record Event(long version, String name, String json) {
+    }
+
+    private static final Event HEARTBEAT = new Event(0, null, null);
+
+    public QueueStatusBroadcaster(MonitorViewService monitorViewService, ObjectMapper objectMapper,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${hotel.monitor.push.heartbeat-ms:15000}") long heartbeatMillis) {
+        this.monitorViewService = monitorViewService;
+        this.objectMapper = objectMapper;
+        this.heartbeatMillis = heartbeatMillis;
+        Gauge.builder("hotel.monitor.push.subscribers", subscribers, List::size)
+                .description("队列监控推送的订阅连接数")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("hotel.monitor.push.dropped")
+                .description("因积压或写出停滞被断开的推送连接数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 空调状态变化（请求、分配、释放、调整、调度周期）
+     */
+    @EventListener
+    public void onAirConditionerEvent(AirConditionerEvent event) {
+        dirty.set(true);
+    }
+
+    /**
+     * 订阅推送，lastEventId 为浏览器重连时带上的最后一个事件ID
+     * 已有快照时立即补发；还没有快照时由下一个推送周期查询后补发
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = newEmitter();
+        Subscriber subscriber = new Subscriber(emitter, lastEventId);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        lock.lock();
+        try {
+            if (current != null) {
+                subscriber.catchUp();
+            }
+            subscribers.add(subscriber);
+        } finally {
+            lock.unlock();
+        }
+        subscriber.flush();
+        return emitter;
+    }
+
+    // 创建连接的 SseEmitter（测试中替换为记录写出内容的实现）
+    SseEmitter newEmitter() {
+        return new SseEmitter(EMITTER_TIMEOUT_MS);
+    }
+
+    /**
+     * 推送周期：状态有变化时推送差异，长时间无变化时发送心跳以清理断开的连接
+     */
+    @Scheduled(fixedDelayString = "${hotel.monitor.push.interval-ms:500}")
+    public void push() {
+        // 没有订阅者时不查询，变化标记保留到下一个订阅者连接时处理
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        // 只有推送线程查询，查询在锁外进行，不阻塞新连接的订阅
+        QueueStatusView next = dirty.getAndSet(false) || current == null ? monitorViewService.getQueueStatus() : null;
+
+        lock.lock();
+        try {
+            Event event = next != null ? refresh(next) : null;
+            boolean heartbeat = event == null && System.currentTimeMillis() - lastSentAt >= heartbeatMillis;
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.caughtUp) {
+                    subscriber.catchUp();
+                } else if (event != null) {
+                    subscriber.offer(event);
+                } else if (heartbeat) {
+                    subscriber.offer(HEARTBEAT);
+                }
+            }
+            if (event != null || heartbeat) {
+                lastSentAt = System.currentTimeMillis();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        long now = System.currentTimeMillis();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.stalled(now)) {
+                drop(subscriber, "推送积压或写出停滞");
+            } else {
+                subscriber.flush();
+            }
+        }
+    }
+
+    // 应用新查询到的快照，有差异时生成新版本并返回差异事件
+    private Event refresh(QueueStatusView next) {
+        if (current == null) {
+            current = next;
+            version++;
+            return null;
+        }
+        QueueStatusDiff diff = QueueStatusDiff.between(version + 1, current, next);
+        current = next;
+        if (diff == null) {
+            return null;
+        }
+        version++;
+        snapshotJson = null;
+        Event event = new Event(version, "diff", toJson(diff));
+        replay.addLast(event);
+        if (replay.size() > REPLAY_CAPACITY) {
+            replay.removeFirst();
+        }
+        return event;
+    }
+
+    // 续传需要补发的事件：能从保留的差异中接上时补发差异，否则发送当前快照
+    private List<Event> eventsSince(String lastEventId) {
+        long last = parseEventId(lastEventId);
+        if (last == version) {
+            return List.of();
+        }
+        if (last > 0 && last < version && !replay.isEmpty() && replay.peekFirst().version() <= last + 1) {
+            List<Event> missed = new ArrayList<>();
+            for (Event event : replay) {
+                if (event.version() > last) {
+                    missed.add(event);
+                }
+            }
+            return missed;
+        }
+        if (snapshotJson == null) {
+            snapshotJson = toJson(QueueStatusDiff.full(version, current));
+        }
+        return List.of(new Event(version, "snapshot", snapshotJson));
+    }
+
+    // 事件ID中的版本号；ID格式不对或属于其他启动纪元时返回-1
+    private long parseEventId(String lastEventId) {
+        if (lastEventId == null) {
+            return -1;
+        }
+        String id = lastEventId.trim();
+        int separator = id.lastIndexOf('-');
+        if (separator <= 0 || !id.substring(0, separator).equals(epoch)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(id.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String eventId(long version) {
+        return epoch + "-" + version;
+    }
+
+    private void drop(Subscriber subscriber, String reason) {
+        if (subscribers.remove(subscriber)) {
+            dropped.increment();
+            logger.debug("队列监控推送连接已断开: {}", reason);
+            subscriber.emitter.complete();
+        }
+    }
+
+    private String toJson(QueueStatusDiff diff) {
+        try {
+            return objectMapper.writeValueAsString(diff);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 单个订阅者：事件在锁内入队，由写出任务在锁外按顺序写出
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final String lastEventId;
+        // 已补发过快照或续传差异，只在持有 lock 时读写
+        private boolean caughtUp;
+        private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        // 当前一次写出的开始时间，0 表示没有在写
+        private volatile long writeStartedAt;
+
+        Subscriber(SseEmitter emitter, String lastEventId) {
+            this.emitter = emitter;
+            this.lastEventId = lastEventId;
+        }
+
+        // 补发连接建立前错过的事件（调用方持有 lock）
+        void catchUp() {
+            caughtUp = true;
+            eventsSince(lastEventId).forEach(this::offer);
+        }
+
+        void offer(Event event) {
+            queue.add(event);
+            queued.incrementAndGet();
+        }
+
+        boolean stalled(long now) {
+            long started = writeStartedAt;
+            return queued.get() > MAX_QUEUED_EVENTS || (started != 0 && now - started > STALL_MILLIS);
+        }
+
+        // 启动写出任务；已有任务在写时由它继续写完
+        void flush() {
+            if (!queue.isEmpty() && sending.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    sending.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            Event event;
+            while ((event = queue.poll()) != null) {
+                queued.decrementAndGet();
+                writeStartedAt = System.currentTimeMillis();
+                try {
+                    send(event);
+                } catch (IOException | IllegalStateException e) {
+                    // 连接已断开或已被完成
+                    writeStartedAt = 0;
+                    subscribers.remove(this);
+                    logger.debug("队列监控推送连接已断开: {}", e.getMessage());
+                    emitter.completeWithError(e);
+                    return;
+                }
+                writeStartedAt = 0;
+            }
+            sending.set(false);
+            // 释放标记后再检查一次，避免与刚入队的事件互相错过
+            flush();
+        }
+
+        private void send(Event event) throws IOException {
+            if (event.name() == null) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+                return;
+            }
+            emitter.send(SseEmitter.event()
+                    .id(eventId(event.version()))
+                    .name(event.name())
+                    .data(event.json()));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+        sender.shutdownNow();
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.hotel.service;
+
+import com.example.hotel.event.AirConditionerEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 房间版本号
+ * 房间的空调请求、空调分配、温度或费用发生变化时递增该房间的版本号，并唤醒等待该房间变化的长轮询。
+ * 房间控制面板带着已知版本号等待，只有版本号前进时才返回，面板数量不再决定查询量
+ */
+@Service
+public class RoomChangeTracker {
+
+    /**
+     * 长轮询最长等待时间，HTTP 接口和面板 TCP 接入共用；低于Servlet异步请求的默认超时
+     */
+    public static final long MAX_WAIT_MILLIS = 25_000;
+
+    // 单个房间的版本号和等待者，读写都在该对象的锁内
+    private static final class RoomVersion {
+        private long version;
+        private final List<CompletableFuture<Long>> waiters = new ArrayList<>();
+    }
+
+    // 等待者被唤醒后在这里组装响应，不占用改变房间状态的调度线程或请求线程
+    private static final int NOTIFY_THREADS = 4;
+
+    private final Map<Integer, RoomVersion> rooms = new ConcurrentHashMap<>();
+    // 全部房间的总版本号，任一房间变化都会递增
+    private final AtomicLong globalVersion = new AtomicLong();
+    private final ExecutorService notifyExecutor;
+
+    public RoomChangeTracker() {
+        AtomicInteger counter = new AtomicInteger();
+        this.notifyExecutor = Executors.newFixedThreadPool(NOTIFY_THREADS, r -> {
+            Thread t = new Thread(r, "room-change-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 房间当前版本号
+     */
+    public long version(Integer roomId) {
+        RoomVersion room = rooms.computeIfAbsent(roomId, id -> new RoomVersion());
+        synchronized (room) {
+            return room.version;
+        }
+    }
+
+    /**
+     * 所有房间的总版本号
+     */
+    public long globalVersion() {
+        return globalVersion.get();
+    }
+
+    /**
+     * 房间状态已变化：递增版本号并唤醒等待者
+     */
+    public void bump(Integer roomId) {
+        if (roomId == null) {
+            return;
+        }
+        globalVersion.incrementAndGet();
+        RoomVersion room = rooms.computeIfAbsent(roomId, id -> new RoomVersion());
+        long version;
+        List<CompletableFuture<Long>> woken;
+        synchronized (room) {
+            version = ++room.version;
+            woken = new ArrayList<>(room.waiters);
+            room.waiters.clear();
+        }
+        // 在锁外完成，回调里组装响应不会阻塞其他房间的变更
+        woken.forEach(waiter -> waiter.complete(version));
+    }
+
+    /**
+     * 等待房间版本号超过 since，超时后以 since 完成
+     * 版本号已超过 since，或 since 比当前版本号还大（服务重启过）时立即完成；
+     * 返回的 future 的后续操作在通知线程池上执行
+     */
+    public CompletableFuture<Long> awaitChange(Integer roomId, long since, long timeoutMillis) {
+        RoomVersion room = rooms.computeIfAbsent(roomId, id -> new RoomVersion());
+        CompletableFuture<Long> waiter = new CompletableFuture<>();
+        synchronized (room) {
+            if (room.version != since) {
+                long current = room.version;
+                return CompletableFuture.supplyAsync(() -> current, notifyExecutor);
+            }
+            room.waiters.add(waiter);
+        }
+        waiter.completeOnTimeout(since, timeoutMillis, TimeUnit.MILLISECONDS);
+        waiter.whenComplete((version, error) -> {
+            synchronized (room) {
+                room.waiters.remove(waiter);
+            }
+        });
+        return waiter.thenApplyAsync(Function.identity(), notifyExecutor);
+    }
+
+    /**
+     * 空调请求、分配、释放和调整都会改变房间面板展示的内容
+     */
+    @EventListener
+    public void onAirConditionerEvent(AirConditionerEvent event) {
+        bump(event.getRoomId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        notifyExecutor.shutdownNow();
+    }
+}
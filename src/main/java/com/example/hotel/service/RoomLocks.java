@@ -0,0 +1,32 @@
+package com.example.hotel.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按房间划分的可重入锁
+ * 锁内有数据库读写和调度等阻塞操作，使用 ReentrantLock 而不是 synchronized：
+ * 虚拟线程在 synchronized 块内阻塞会固定（pin）载体线程，在 ReentrantLock 内阻塞时可以让出载体线程
+ */
+final class RoomLocks {
+
+    private final Map<Integer, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * 获取并持有房间锁，调用方须在 finally 中 unlock
+     */
+    ReentrantLock lock(Integer roomId) {
+        ReentrantLock lock = locks.computeIfAbsent(roomId, id -> new ReentrantLock());
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * 房间锁空闲时获取并持有，被占用时返回null，不等待
+     */
+    ReentrantLock tryLock(Integer roomId) {
+        ReentrantLock lock = locks.computeIfAbsent(roomId, id -> new ReentrantLock());
+        return lock.tryLock() ? lock : null;
+    }
+}
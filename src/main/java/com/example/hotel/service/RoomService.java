@@ -2,6 +2,7 @@ package com.example.hotel.service;
 
 import com.example.hotel.entity.Room;
 import com.example.hotel.repository.RoomRepository;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
 
@@ -14,11 +15,13 @@ import java.util.Optional;
 @Service
 public class RoomService {
     private final RoomRepository roomRepository;
+    private final RoomChangeTracker changeTracker;
     // 保留内存缓存以提高性能
     private final Map<Integer, Room> rooms = new HashMap<>();
     
-    public RoomService(RoomRepository roomRepository) {
+    public RoomService(RoomRepository roomRepository, RoomChangeTracker changeTracker) {
         this.roomRepository = roomRepository;
+        this.changeTracker = changeTracker;
     }
     
     // 初始化房间数据
@@ -68,8 +71,20 @@ public class RoomService {
         if (room != null) {
             room.setCurrentTemp(temperature);
             rooms.put(roomId, room);
+            changeTracker.bump(roomId);
         }
     }
+    
+    // 所有房间的总版本号，任一房间变化都会递增
+    public long getRoomsVersion() {
+        return changeTracker.globalVersion();
+    }
+    
+    // 缓存中的房间对象被直接修改后（如入住、退房）通知版本号变化
+    public void roomChanged(Integer roomId) {
+        changeTracker.bump(roomId);
+    }
+    
     // 获取所有空闲房间的 roomId
     public List<Integer> getAvailableRoomIds() {
         List<Integer> availableRoomIds = new ArrayList<>();
@@ -86,13 +101,50 @@ public class RoomService {
         return room != null && !room.isOccupied();
     }
     
-    // 保存房间信息
+    // 保存房间信息，其他实例同时修改过该房间时乐观锁冲突交给调用方处理
     public void saveRoom(Room room) {
         if (room != null && room.getRoomId() != null) {
             // 保存到数据库
             Room savedRoom = roomRepository.save(room);
-            // 更新内存缓存
-            rooms.put(savedRoom.getRoomId(), savedRoom);
+            cacheSaved(savedRoom, room);
         }
     }
+    
+    // 更新房间分配的空调，acId 为 null 表示清空
+    // 其他实例同时修改过该房间时，以数据库中的最新状态为准，只重新写入分配的空调，不覆盖对方修改的字段
+    public void updateAssignedAc(Integer roomId, Integer acId) {
+        Room room = rooms.get(roomId);
+        if (room == null) {
+            return;
+        }
+        Integer previousAcId = room.getAssignedAcId();
+        room.setAssignedAcId(acId);
+        Room savedRoom;
+        try {
+            try {
+                savedRoom = roomRepository.save(room);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                Room latest = roomRepository.findById(roomId).orElseThrow(() -> e);
+                latest.setAssignedAcId(acId);
+                // 再次冲突时交给调用方处理
+                savedRoom = roomRepository.save(latest);
+                // 温度由本实例模拟，定时检查点单独写入，缓存中保留本实例的温度
+                savedRoom.setCurrentTemp(room.getCurrentTemp());
+            }
+        } catch (RuntimeException e) {
+            // 没有写入数据库，缓存恢复为原来分配的空调
+            room.setAssignedAcId(previousAcId);
+            throw e;
+        }
+        cacheSaved(savedRoom, room);
+    }
+    
+    // 保存后替换缓存对象并通知版本号变化
+    private void cacheSaved(Room savedRoom, Room cached) {
+        // 客人信息不落库，保存后保留在缓存对象上
+        savedRoom.setGuest(cached.getGuest());
+        // 更新内存缓存
+        rooms.put(savedRoom.getRoomId(), savedRoom);
+        changeTracker.bump(savedRoom.getRoomId());
+    }
 } 
\ No newline at end of file
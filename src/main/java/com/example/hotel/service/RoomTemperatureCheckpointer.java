@@ -0,0 +1,122 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.Room;
+import com.example.hotel.repository.RoomRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 房间温度检查点
+ * 温度变化（调度器回温、空调送风）只改内存中的房间对象，这里定期把
+ * 自上次检查点以来变化超过阈值的房间温度用一条批量UPDATE写回数据库
+ */
+@Service
+public class RoomTemperatureCheckpointer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoomTemperatureCheckpointer.class);
+
+    private final RoomService roomService;
+    private final RoomRepository roomRepository;
+    private final double epsilon;
+    private final Timer checkpointTimer;
+    private final DistributionSummary checkpointSize;
+
+    // 每个房间最近一次写入数据库的温度
+    private final Map<Integer, Double> checkpointed = new ConcurrentHashMap<>();
+    // 定时检查点与停机补写互斥；锁内有批量UPDATE，使用 ReentrantLock 以免固定虚拟线程的载体线程
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public RoomTemperatureCheckpointer(RoomService roomService, RoomRepository roomRepository,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${hotel.room.temp-checkpoint.epsilon:0.05}") double epsilon) {
+        this.roomService = roomService;
+        this.roomRepository = roomRepository;
+        this.epsilon = epsilon;
+        this.checkpointTimer = Timer.builder("hotel.room.temp.checkpoint.duration")
+                .description("房间温度检查点耗时")
+                .register(meterRegistry);
+        this.checkpointSize = DistributionSummary.builder("hotel.room.temp.checkpoint.rooms")
+                .description("每次检查点写入的房间数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 启动时以缓存中的温度（即数据库中的温度）作为基线
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initBaseline() {
+        for (Room room : roomService.getAllRooms()) {
+            checkpointed.putIfAbsent(room.getRoomId(), room.getCurrentTemp());
+        }
+    }
+
+    /**
+     * 执行一次检查点，返回写入的房间数
+     */
+    @Scheduled(fixedDelayString = "${hotel.room.temp-checkpoint.interval-ms:60000}",
+               initialDelayString = "${hotel.room.temp-checkpoint.interval-ms:60000}")
+    public int checkpoint() {
+        lock.lock();
+        try {
+            return doCheckpoint();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int doCheckpoint() {
+        long start = System.nanoTime();
+
+        // 只挑出变化超过阈值的房间
+        Map<Integer, Double> dirty = new HashMap<>();
+        for (Room room : roomService.getAllRooms()) {
+            double temp = room.getCurrentTemp();
+            Double last = checkpointed.get(room.getRoomId());
+            if (last == null || Math.abs(temp - last) > epsilon) {
+                dirty.put(room.getRoomId(), temp);
+            }
+        }
+
+        if (!dirty.isEmpty()) {
+            try {
+                roomRepository.batchUpdateCurrentTemp(dirty);
+                checkpointed.putAll(dirty);
+            } catch (Exception e) {
+                // 本次失败的房间保持脏状态，下一次检查点重试
+                logger.error("房间温度检查点写入失败，房间数: {}", dirty.size(), e);
+                return 0;
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        checkpointTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        checkpointSize.record(dirty.size());
+        if (!dirty.isEmpty()) {
+            logger.debug("房间温度检查点完成，写入房间数: {}，耗时: {}ms", dirty.size(), elapsed / 1_000_000);
+        }
+        return dirty.size();
+    }
+
+    /**
+     * 停机前补写一次，避免丢失最后一个周期的温度变化
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        checkpoint();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.hotel.service;
+
+import com.example.hotel.util.EncodedSnapshot;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 热点只读接口的编码快照缓存
+ * 每个视图只保留当前版本（ETag）对应的字节，版本变化后由第一个读取者重新组装并序列化，
+ * 同一版本的其余读取者直接复用字节，状态不变时监控页面的并发刷新不再产生序列化开销
+ */
+@Service
+public class SnapshotCache {
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    public SnapshotCache(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 获取视图 view 在版本 etag 下的编码快照，缓存的版本不同时调用 builder 重新组装
+     * etag 须在组装前取得：组装期间状态又变化时，缓存内容只会比版本号新，下次读取会因版本号变化而重建
+     */
+    public EncodedSnapshot get(String view, String etag, Supplier<?> builder) {
+        return slots.computeIfAbsent(view, Slot::new).get(etag, builder);
+    }
+
+    /**
+     * 视图 view 已缓存的版本为 etag 时返回该快照，否则返回null，不触发重建
+     * 组装需要异步查询的调用方先用它判断，未命中时查询后再调用 get
+     */
+    public EncodedSnapshot getIfCurrent(String view, String etag) {
+        Slot slot = slots.get(view);
+        EncodedSnapshot snapshot = slot != null ? slot.current : null;
+        return snapshot != null && snapshot.getEtag().equals(etag) ? snapshot : null;
+    }
+
+    // 单个视图的缓存槽，同一视图的重建串行进行，避免版本变化瞬间多个读取者重复序列化
+    // 重建时会查询数据库，用 ReentrantLock 串行化，虚拟线程等待时不会固定载体线程
+    private final class Slot {
+        private final Counter encodes;
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile EncodedSnapshot current;
+        // 已开始的重建次数，以及 current 是第几次重建的结果（后者只在持有 lock 时读写）
+        private volatile long buildsStarted;
+        private long currentBuild;
+
+        Slot(String view) {
+            this.encodes = Counter.builder("hotel.monitor.snapshot.encodes")
+                    .description("只读快照的序列化次数")
+                    .tag("view", view)
+                    .register(meterRegistry);
+        }
+
+        EncodedSnapshot get(String etag, Supplier<?> builder) {
+            EncodedSnapshot snapshot = current;
+            if (snapshot != null && snapshot.getEtag().equals(etag)) {
+                return snapshot;
+            }
+            // 状态频繁变化时等锁的读取者各自的ETag都不同；等待期间开始的重建晚于本次读取ETag，
+            // 内容不会比本次请求旧，直接复用，避免排队的读取者逐个重建
+            long seen = buildsStarted;
+            lock.lock();
+            try {
+                snapshot = current;
+                if (snapshot != null && (snapshot.getEtag().equals(etag) || currentBuild > seen)) {
+                    return snapshot;
+                }
+                long build = ++buildsStarted;
+                snapshot = new EncodedSnapshot(etag, toJson(builder.get()));
+                current = snapshot;
+                currentBuild = build;
+                encodes.increment();
+                return snapshot;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private byte[] toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.hotel.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 分时电价
+ * 峰/谷时段和节假日的费率在启动时编译成一天内按分钟排序的区间表，并预先算好每个区间起点的
+ * 累计费率积分（费率 × 分钟）。任意时间段的费率积分 = 终点累计值 - 起点累计值，
+ * 跨天部分按整天积分和节假日个数直接相乘，查询复杂度 O(log n)，与时段长度无关
+ */
+@Service
+public class TariffService {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    // 一天内的区间表：第 i 个区间从 segmentStart[i] 分钟开始，费率为 segmentRate[i]
+    private final int[] segmentStart;
+    private final double[] segmentRate;
+    // 当天 0 点到第 i 个区间起点的费率积分
+    private final double[] segmentPrefix;
+    // 普通日整天的费率积分
+    private final double dayIntegral;
+
+    // 节假日（epochDay，升序），节假日全天按节假日费率计费
+    private final long[] holidays;
+    private final double holidayRate;
+
+    public TariffService(@Value("${hotel.tariff.default-rate:1.0}") double defaultRate,
+                         @Value("${hotel.tariff.peak-rate:1.0}") double peakRate,
+                         @Value("${hotel.tariff.peak-periods:}") String peakPeriods,
+                         @Value("${hotel.tariff.off-peak-rate:1.0}") double offPeakRate,
+                         @Value("${hotel.tariff.off-peak-periods:}") String offPeakPeriods,
+                         @Value("${hotel.tariff.holiday-rate:1.0}") double holidayRate,
+                         @Value("${hotel.tariff.holidays:}") String holidays) {
+        // 先按分钟展开，后配置的时段覆盖先配置的时段，再压缩成区间
+        double[] minuteRates = new double[MINUTES_PER_DAY];
+        Arrays.fill(minuteRates, defaultRate);
+        applyPeriods(minuteRates, offPeakPeriods, offPeakRate);
+        applyPeriods(minuteRates, peakPeriods, peakRate);
+
+        List<Integer> starts = new ArrayList<>();
+        for (int m = 0; m < MINUTES_PER_DAY; m++) {
+            if (m == 0 || minuteRates[m] != minuteRates[m - 1]) {
+                starts.add(m);
+            }
+        }
+        this.segmentStart = starts.stream().mapToInt(Integer::intValue).toArray();
+        this.segmentRate = new double[segmentStart.length];
+        this.segmentPrefix = new double[segmentStart.length];
+        double sum = 0;
+        for (int i = 0; i < segmentStart.length; i++) {
+            int end = i + 1 < segmentStart.length ? segmentStart[i + 1] : MINUTES_PER_DAY;
+            segmentRate[i] = minuteRates[segmentStart[i]];
+            segmentPrefix[i] = sum;
+            sum += segmentRate[i] * (end - segmentStart[i]);
+        }
+        this.dayIntegral = sum;
+
+        this.holidayRate = holidayRate;
+        this.holidays = Arrays.stream(holidays.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .mapToLong(s -> LocalDate.parse(s).toEpochDay())
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    /**
+     * 某一时刻的费率(元/度)
+     */
+    public double rateAt(LocalDateTime time) {
+        if (isHoliday(time.toLocalDate().toEpochDay())) {
+            return holidayRate;
+        }
+        return segmentRate[segmentOf(minuteOfDay(time))];
+    }
+
+    /**
+     * 时间段内的平均费率，时段为空时返回起点费率
+     */
+    public double averageRate(LocalDateTime from, LocalDateTime to) {
+        double minutes = (toSeconds(to) - toSeconds(from)) / 60.0;
+        if (minutes <= 0) {
+            return rateAt(from);
+        }
+        return integral(from, to) / minutes;
+    }
+
+    /**
+     * 时间段内匀速消耗 energy 度电的费用
+     */
+    public double cost(LocalDateTime from, LocalDateTime to, double energy) {
+        return energy * averageRate(from, to);
+    }
+
+    /**
+     * 时间段内的费率积分（费率 × 分钟）
+     */
+    public double integral(LocalDateTime from, LocalDateTime to) {
+        return cumulative(to) - cumulative(from);
+    }
+
+    // 从 1970-01-01 0 点到 time 的费率积分
+    private double cumulative(LocalDateTime time) {
+        long day = time.toLocalDate().toEpochDay();
+        int holidaysBefore = lowerBound(holidays, day);
+        double fullDays = day * dayIntegral + holidaysBefore * (holidayRate * MINUTES_PER_DAY - dayIntegral);
+
+        double minute = minuteOfDay(time);
+        if (isHoliday(day)) {
+            return fullDays + holidayRate * minute;
+        }
+        int i = segmentOf(minute);
+        return fullDays + segmentPrefix[i] + segmentRate[i] * (minute - segmentStart[i]);
+    }
+
+    // 最后一个起点 <= minute 的区间
+    private int segmentOf(double minute) {
+        int lo = 0;
+        int hi = segmentStart.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segmentStart[mid] <= minute) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private boolean isHoliday(long day) {
+        return Arrays.binarySearch(holidays, day) >= 0;
+    }
+
+    // 第一个 >= value 的位置，即小于 value 的元素个数
+    private static int lowerBound(long[] sorted, long value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static double minuteOfDay(LocalDateTime time) {
+        return time.toLocalTime().toSecondOfDay() / 60.0 + time.getNano() / 60_000_000_000.0;
+    }
+
+    private static double toSeconds(LocalDateTime time) {
+        return time.toLocalDate().toEpochDay() * 86400.0 + time.toLocalTime().toSecondOfDay()
+                + time.getNano() / 1_000_000_000.0;
+    }
+
+    // 时段格式 HH:mm-HH:mm，多个时段用逗号分隔；结束早于开始表示跨午夜
+    private static void applyPeriods(double[] minuteRates, String periods, double rate) {
+        for (String period : periods.split(",")) {
+            period = period.trim();
+            if (period.isEmpty()) {
+                continue;
+            }
+            String[] bounds = period.split("-");
+            if (bounds.length != 2) {
+                throw new IllegalArgumentException("无效的电价时段: " + period);
+            }
+            int start = LocalTime.parse(bounds[0].trim()).toSecondOfDay() / 60;
+            int end = LocalTime.parse(bounds[1].trim()).toSecondOfDay() / 60;
+            if (end <= start) {
+                end += MINUTES_PER_DAY;
+            }
+            for (int m = start; m < end; m++) {
+                minuteRates[m % MINUTES_PER_DAY] = rate;
+            }
+        }
+    }
+}
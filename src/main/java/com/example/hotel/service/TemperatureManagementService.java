@@ -1,10 +1,12 @@
 package com.example.hotel.service;
 
 import com.example.hotel.entity.Room;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 温度管理服务
@@ -20,25 +22,23 @@ public class TemperatureManagementService {
     private final Map<Integer, Future<?>> roomRecoveryTasks = new ConcurrentHashMap<>();
     
     // 回温线程状态锁
-    private final Map<Integer, Object> roomTemperatureLocks = new ConcurrentHashMap<>();
+    private final RoomLocks roomLocks = new RoomLocks();
     
-    public TemperatureManagementService(RoomService roomService) {
+    public TemperatureManagementService(RoomService roomService,
+                                        @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
         this.roomService = roomService;
         
-        // 初始化线程池
-        this.temperatureRecoveryExecutor = new ThreadPoolExecutor(
-            2, 5, 60, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>(10),
-            new ThreadPoolExecutor.CallerRunsPolicy()
-        );
-        
-        // 初始化房间锁
-        initializeRoomLocks();
-    }
-    
-    private void initializeRoomLocks() {
-        roomService.getAllRooms().forEach(room -> 
-            roomTemperatureLocks.put(room.getRoomId(), new Object()));
+        // 初始化线程池：虚拟线程模式下每个回温任务一个虚拟线程
+        if (virtualThreads) {
+            this.temperatureRecoveryExecutor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("temp-recovery-", 1).factory());
+        } else {
+            this.temperatureRecoveryExecutor = new ThreadPoolExecutor(
+                2, 5, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(10),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+            );
+        }
     }
     
     /**
@@ -57,7 +57,8 @@ public class TemperatureManagementService {
             return;
         }
         
-        synchronized (roomTemperatureLocks.getOrDefault(roomId, new Object())) {
+        ReentrantLock lock = roomLocks.lock(roomId);
+        try {
             // 取消已存在的回温任务
             cancelRoomTemperatureRecovery(roomId);
             
@@ -67,6 +68,8 @@ public class TemperatureManagementService {
             });
             
             roomRecoveryTasks.put(roomId, task);
+        } finally {
+            lock.unlock();
         }
     }
     
@@ -74,11 +77,14 @@ public class TemperatureManagementService {
      * 停止房间回温过程
      */
     public void cancelRoomTemperatureRecovery(Integer roomId) {
-        synchronized (roomTemperatureLocks.getOrDefault(roomId, new Object())) {
+        ReentrantLock lock = roomLocks.lock(roomId);
+        try {
             Future<?> task = roomRecoveryTasks.remove(roomId);
             if (task != null && !task.isDone()) {
                 task.cancel(true);
             }
+        } finally {
+            lock.unlock();
         }
     }
     
@@ -93,7 +99,8 @@ public class TemperatureManagementService {
                     break;
                 }
                 
-                synchronized (roomTemperatureLocks.getOrDefault(roomId, new Object())) {
+                ReentrantLock lock = roomLocks.lock(roomId);
+                try {
                     // 检查是否仍需要回温
                     if (room.getAssignedAcId() != null || 
                         Math.abs(room.getCurrentTemp() - room.getInitialTemp()) < 0.1) {
@@ -121,6 +128,8 @@ public class TemperatureManagementService {
                     if (Math.abs(newTemp - targetTemp) < 0.1) {
                         break; // 回温完成
                     }
+                } finally {
+                    lock.unlock();
                 }
                 
                 // 等待10秒（系统中10秒等于1分钟）
@@ -0,0 +1,70 @@
+package com.example.hotel.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 编码好的只读快照：同一版本的JSON字节和gzip字节只生成一次，之后每次读取直接写出
+ */
+public final class EncodedSnapshot {
+
+    // 小于该长度的响应压缩收益不明显，不生成gzip版本
+    private static final int GZIP_MIN_BYTES = 2048;
+
+    private final String etag;
+    private final byte[] json;
+    private final byte[] gzip;
+
+    public EncodedSnapshot(String etag, byte[] json) {
+        this.etag = etag;
+        this.json = json;
+        this.gzip = json.length >= GZIP_MIN_BYTES ? gzip(json) : null;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * 构造响应，客户端接受gzip且有压缩版本时返回压缩字节
+     */
+    public ResponseEntity<byte[]> toResponse(String acceptEncoding) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip != null && acceptsGzip(acceptEncoding)) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzip);
+        }
+        return builder.body(json);
+    }
+
+    // Accept-Encoding 中出现 gzip 且未声明 q=0
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
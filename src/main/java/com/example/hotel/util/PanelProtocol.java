@@ -0,0 +1,187 @@
+package com.example.hotel.util;
+
+import com.example.hotel.dto.RoomPanelView;
+import com.example.hotel.entity.AirConditioner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 房间面板 TCP 二进制协议，服务端和压测模拟器共用
+ * 每帧：长度(int，不含长度字段本身) + 类型(byte) + 请求ID(int) + 负载，整数均为大端。
+ * 面板可以在一个连接上连续发送多个请求，响应带回原请求ID，不保证按发送顺序返回。
+ * <pre>
+ * 请求                负载
+ * START  0x01        roomId:int mode:byte fan:byte target:short
+ * ADJUST 0x02        roomId:int mode:byte fan:byte target:short
+ * CANCEL 0x03        roomId:int
+ * STATUS 0x04        roomId:int since:long timeoutMillis:int（since 小于0时立即返回当前状态）
+ * 响应类型为请求类型 | 0x80，负载第一个字节为结果码；
+ * START 成功时后跟 assignedAcId:short（0 表示在等待队列中），STATUS 成功时后跟面板状态（见 writeStatus）
+ * </pre>
+ * mode：0 不指定，1 制冷，2 制热；fan：0 不指定，1 高，2 中，3 低；温度以0.1度为单位，NO_TEMP 表示不指定
+ */
+public final class PanelProtocol {
+
+    public static final byte START = 0x01;
+    public static final byte ADJUST = 0x02;
+    public static final byte CANCEL = 0x03;
+    public static final byte STATUS = 0x04;
+    public static final byte RESPONSE = (byte) 0x80;
+
+    // 结果码
+    public static final byte OK = 0;
+    public static final byte FAILED = 1;        // 业务失败（如没有活跃请求时调整）
+    public static final byte BAD_REQUEST = 2;
+    public static final byte NOT_FOUND = 3;     // 房间不存在
+    public static final byte BUSY = 4;          // 房间指令排队已满或连接在途请求过多
+    public static final byte RATE_LIMITED = 5;
+    public static final byte ERROR = 6;
+
+    public static final short NO_TEMP = Short.MIN_VALUE;
+    // 帧头：长度 + 类型 + 请求ID
+    public static final int HEADER_BYTES = 4 + 1 + 4;
+    // 长度字段允许的最大值，请求帧都远小于此，超过即视为协议错误
+    public static final int MAX_FRAME_LENGTH = 64;
+    public static final int COMMAND_PAYLOAD_BYTES = 4 + 1 + 1 + 2;
+    public static final int CANCEL_PAYLOAD_BYTES = 4;
+    public static final int STATUS_PAYLOAD_BYTES = 4 + 8 + 4;
+    public static final int STATUS_VIEW_BYTES = 8 + 1 + 1 + 2 + 2 + 1 + 1 + 2 + 4 + 4;
+
+    private static final String[] STATES = {"关机", "等待中", "服务中"};
+
+    private PanelProtocol() {
+    }
+
+    /**
+     * 分配一个响应帧并写好帧头和结果码，调用方写入其余负载（共 extraBytes 字节）后 flip
+     */
+    public static ByteBuffer response(byte type, int requestId, byte result, int extraBytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 1 + extraBytes);
+        buffer.putInt(HEADER_BYTES - 4 + 1 + extraBytes)
+                .put((byte) (type | RESPONSE))
+                .putInt(requestId)
+                .put(result);
+        return buffer;
+    }
+
+    public static ByteBuffer command(byte type, int requestId, int roomId,
+                                     AirConditioner.Mode mode, AirConditioner.FanSpeed fanSpeed, Double targetTemp) {
+        return request(type, requestId, COMMAND_PAYLOAD_BYTES)
+                .putInt(roomId)
+                .put(encodeMode(mode))
+                .put(encodeFanSpeed(fanSpeed))
+                .putShort(encodeTemp(targetTemp))
+                .flip();
+    }
+
+    public static ByteBuffer cancel(int requestId, int roomId) {
+        return request(CANCEL, requestId, CANCEL_PAYLOAD_BYTES).putInt(roomId).flip();
+    }
+
+    public static ByteBuffer status(int requestId, int roomId, long since, int timeoutMillis) {
+        return request(STATUS, requestId, STATUS_PAYLOAD_BYTES)
+                .putInt(roomId)
+                .putLong(since)
+                .putInt(timeoutMillis)
+                .flip();
+    }
+
+    private static ByteBuffer request(byte type, int requestId, int payloadBytes) {
+        return ByteBuffer.allocate(HEADER_BYTES + payloadBytes)
+                .putInt(HEADER_BYTES - 4 + payloadBytes)
+                .put(type)
+                .putInt(requestId);
+    }
+
+    /**
+     * 写入面板状态（STATUS_VIEW_BYTES 字节），费用以分为单位
+     */
+    public static void writeStatus(ByteBuffer buffer, RoomPanelView view) {
+        buffer.putLong(view.getVersion())
+                .put((byte) (view.isOccupied() ? 1 : 0))
+                .put(encodeState(view.getStatus()))
+                .putShort(encodeTemp(view.getCurrentTemp()))
+                .putShort((short) (view.getAssignedAcId() == null ? 0 : view.getAssignedAcId()))
+                .put(encodeMode(view.getMode()))
+                .put(encodeFanSpeed(view.getFanSpeed()))
+                .putShort(encodeTemp(view.getTargetTemp()))
+                .putInt((int) Math.round(view.getServiceCost() * 100))
+                .putInt((int) Math.round(view.getAcCost() * 100));
+    }
+
+    public static RoomPanelView readStatus(ByteBuffer buffer, int roomId) {
+        RoomPanelView view = new RoomPanelView();
+        view.setRoomId(roomId);
+        view.setVersion(buffer.getLong());
+        view.setOccupied(buffer.get() != 0);
+        int state = buffer.get();
+        view.setStatus(state >= 0 && state < STATES.length ? STATES[state] : null);
+        Double currentTemp = decodeTemp(buffer.getShort());
+        view.setCurrentTemp(currentTemp == null ? 0 : currentTemp);
+        int acId = buffer.getShort();
+        view.setAssignedAcId(acId == 0 ? null : acId);
+        view.setMode(decodeMode(buffer.get()));
+        view.setFanSpeed(decodeFanSpeed(buffer.get()));
+        view.setTargetTemp(decodeTemp(buffer.getShort()));
+        view.setServiceCost(buffer.getInt() / 100.0);
+        view.setAcCost(buffer.getInt() / 100.0);
+        return view;
+    }
+
+    public static byte encodeMode(AirConditioner.Mode mode) {
+        return (byte) (mode == null ? 0 : mode.ordinal() + 1);
+    }
+
+    /**
+     * 未知取值抛出 IllegalArgumentException
+     */
+    public static AirConditioner.Mode decodeMode(byte value) {
+        if (value == 0) {
+            return null;
+        }
+        AirConditioner.Mode[] modes = AirConditioner.Mode.values();
+        if (value < 0 || value > modes.length) {
+            throw new IllegalArgumentException("未知的模式: " + value);
+        }
+        return modes[value - 1];
+    }
+
+    public static byte encodeFanSpeed(AirConditioner.FanSpeed fanSpeed) {
+        return (byte) (fanSpeed == null ? 0 : fanSpeed.ordinal() + 1);
+    }
+
+    /**
+     * 未知取值抛出 IllegalArgumentException
+     */
+    public static AirConditioner.FanSpeed decodeFanSpeed(byte value) {
+        if (value == 0) {
+            return null;
+        }
+        AirConditioner.FanSpeed[] speeds = AirConditioner.FanSpeed.values();
+        if (value < 0 || value > speeds.length) {
+            throw new IllegalArgumentException("未知的风速: " + value);
+        }
+        return speeds[value - 1];
+    }
+
+    public static short encodeTemp(Double temp) {
+        if (temp == null) {
+            return NO_TEMP;
+        }
+        long tenths = Math.round(temp * 10);
+        return (short) Math.max(NO_TEMP + 1, Math.min(Short.MAX_VALUE, tenths));
+    }
+
+    public static Double decodeTemp(short tenths) {
+        return tenths == NO_TEMP ? null : tenths / 10.0;
+    }
+
+    private static byte encodeState(String status) {
+        for (int i = 0; i < STATES.length; i++) {
+            if (STATES[i].equals(status)) {
+                return (byte) i;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.hotel.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶
+ * 按 GCRA（通用信元速率算法）实现：只保存一个"理论到达时间"，每取一个令牌用 CAS 把它推后一个补充间隔。
+ * 与容量为 burst、每秒补充 ratePerSecond 个令牌的令牌桶等价，不需要定时补充，也不需要加锁。
+ * 时间由调用方传入（System.nanoTime()），便于测试
+ */
+public final class TokenBucket {
+
+    // 补充一个令牌所需的时间
+    private final long intervalNanos;
+    // 桶满时理论到达时间最多可以领先当前时间的量，即 burst 个令牌
+    private final long capacityNanos;
+    private final AtomicLong theoreticalArrival;
+
+    public TokenBucket(int burst, double ratePerSecond, long nowNanos) {
+        if (burst < 1 || ratePerSecond <= 0) {
+            throw new IllegalArgumentException("burst 必须不小于1，ratePerSecond 必须大于0");
+        }
+        this.intervalNanos = Math.max(1, Math.round(1_000_000_000L / ratePerSecond));
+        this.capacityNanos = intervalNanos * burst;
+        // 新建的桶是满的
+        this.theoreticalArrival = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * 尝试取一个令牌：成功返回0，失败返回还需等待的纳秒数（失败时不消耗令牌）
+     */
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long tat = theoreticalArrival.get();
+            // nanoTime 只能比较差值
+            long next = (tat - nowNanos > 0 ? tat : nowNanos) + intervalNanos;
+            long wait = next - nowNanos - capacityNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 桶已补满（一段时间没有请求），可以回收
+     */
+    public boolean isIdle(long nowNanos) {
+        return theoreticalArrival.get() - nowNanos <= 0;
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.hotel.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 房间面板与监控页扇出压测（手动运行，不属于单元测试）
+ * 模拟三类客户端同时访问一个正在运行的服务：
+ * <ul>
+ *   <li>面板：长轮询 /api/rooms/{id}/changes，每次返回后带上新版本号继续等待</li>
+ *   <li>监控页：每秒带 If-None-Match 请求一次 /api/ac/queue/status</li>
+ *   <li>指令：按固定速率随机开启、调整、关闭房间空调</li>
+ * </ul>
+ * 用于比较 Servlet 栈（MVC 节点，默认端口8080）与事件循环（hotel-reactive 的 WebFlux + R2DBC 节点，默认端口8081）：
+ * --base 可以用逗号分隔多个地址，依次对每个地址跑同样的负载，各自输出一张统计表。
+ * 两个节点各自带调度器，同时运行时必须连接不同的库，否则会互相改写调度状态；也可以先后启动同一个库上的两个节点分别压测。
+ * 可以把 MVC 节点的 server.tomcat.threads.max 调小，观察长轮询占满线程池后监控页和指令延迟的变化。
+ * logback-spring.xml 默认输出 SQL 调试日志，压测时应换用只输出 WARN 的日志配置，否则日志文件的写锁会成为瓶颈。
+ * 指令全部来自同一来源地址，会受到 hotel.ac.rate-limit 限流（返回429），比较调度吞吐时应关闭限流或调大限额。
+ * <p>
+ * 运行：mvn test-compile 后
+ * java -cp target/test-classes com.example.hotel.benchmark.PanelFanoutBenchmark
+ *      --base=http://localhost:8080,http://localhost:8081 --panels=2000 --monitors=200 --commands=50 --seconds=60
+ */
+public class PanelFanoutBenchmark {
+
+    private static final Pattern VERSION = Pattern.compile("\"version\"\\s*:\\s*(\\d+)");
+    private static final Pattern ROOM_ID = Pattern.compile("\"roomId\"\\s*:\\s*(\\d+)");
+
+    private final String base;
+    private final HttpClient client;
+    private final Map<String, Stats> stats = new HashMap<>();
+    private long deadline;
+
+    private PanelFanoutBenchmark(String base) {
+        this.base = base;
+        this.client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (String name : List.of("panel", "monitor", "command")) {
+            stats.put(name, new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "true");
+        }
+        String bases = options.getOrDefault("base", "http://localhost:8080");
+        int panels = Integer.parseInt(options.getOrDefault("panels", "500"));
+        int monitors = Integer.parseInt(options.getOrDefault("monitors", "50"));
+        int commandsPerSecond = Integer.parseInt(options.getOrDefault("commands", "20"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+
+        // 多个目标依次压测，互不重叠
+        for (String base : bases.split(",")) {
+            if (!base.isBlank()) {
+                new PanelFanoutBenchmark(base.trim()).run(panels, monitors, commandsPerSecond, seconds);
+            }
+        }
+    }
+
+    private void run(int panels, int monitors, int commandsPerSecond, int seconds) throws Exception {
+        int[] rooms = fetchRoomIds();
+        System.out.printf("目标 %s，房间 %d 个，面板 %d，监控页 %d，指令 %d 条/秒，持续 %d 秒%n",
+                base, rooms.length, panels, monitors, commandsPerSecond, seconds);
+        deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < panels; i++) {
+                int roomId = rooms[i % rooms.length];
+                clients.submit(() -> panelLoop(roomId));
+            }
+            for (int i = 0; i < monitors; i++) {
+                clients.submit(this::monitorLoop);
+            }
+            if (commandsPerSecond > 0) {
+                clients.submit(() -> commandLoop(rooms, commandsPerSecond, clients));
+            }
+            // 压测期间指令循环还会继续提交任务，到时间后再关闭（关闭会等待在途请求完成）
+            pause(Duration.ofSeconds(seconds).toMillis());
+        }
+
+        System.out.printf("%-8s %10s %8s %10s %10s %10s %10s %10s%n",
+                "类型", "请求数", "错误", "请求/秒", "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)");
+        for (String name : List.of("panel", "monitor", "command")) {
+            stats.get(name).print(name, seconds);
+        }
+    }
+
+    // 面板长轮询：记录的是从发出请求到收到变化（或等待超时）的时间
+    private void panelLoop(int roomId) {
+        long since = 0;
+        while (running()) {
+            String uri = base + "/api/rooms/" + roomId + "/changes?since=" + since + "&timeout=20000";
+            HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(uri)).GET(), "panel");
+            if (response != null && response.statusCode() == 200) {
+                Matcher m = VERSION.matcher(response.body());
+                if (m.find()) {
+                    since = Long.parseLong(m.group(1));
+                }
+            } else {
+                pause(1000);
+            }
+        }
+    }
+
+    // 监控页轮询：带上次的ETag，状态未变化时服务端返回304
+    private void monitorLoop() {
+        String etag = null;
+        pause(ThreadLocalRandom.current().nextInt(1000));
+        while (running()) {
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + "/api/ac/queue/status")).GET();
+            if (etag != null) {
+                request.header("If-None-Match", etag);
+            }
+            HttpResponse<String> response = send(request, "monitor");
+            if (response != null) {
+                etag = response.headers().firstValue("ETag").orElse(etag);
+            }
+            pause(1000);
+        }
+    }
+
+    // 按固定速率发出指令，每条指令一个虚拟线程，指令变慢时不会拖慢发出速率
+    private void commandLoop(int[] rooms, int perSecond, ExecutorService clients) {
+        long intervalNanos = 1_000_000_000L / perSecond;
+        long next = System.nanoTime();
+        while (running()) {
+            int roomId = rooms[ThreadLocalRandom.current().nextInt(rooms.length)];
+            String path = switch (ThreadLocalRandom.current().nextInt(3)) {
+                case 0 -> "/api/ac/room/" + roomId + "/start";
+                case 1 -> "/api/ac/room/" + roomId + "/adjust?targetTemp=" + (20 + ThreadLocalRandom.current().nextInt(6));
+                default -> "/api/ac/room/" + roomId + "/cancel";
+            };
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path));
+            if (path.contains("/adjust")) {
+                request.PUT(HttpRequest.BodyPublishers.noBody());
+            } else {
+                request.POST(HttpRequest.BodyPublishers.noBody());
+            }
+            clients.submit(() -> send(request, "command"));
+            next += intervalNanos;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                pause(sleep / 1_000_000);
+            }
+        }
+    }
+
+    // 发送请求并记录耗时；4xx 属于业务结果（如没有活跃请求时调整），只有连接失败、限流（429）和5xx计为错误
+    private HttpResponse<String> send(HttpRequest.Builder request, String type) {
+        Stats s = stats.get(type);
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request.timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            s.record(System.nanoTime() - start, response.statusCode() >= 500 || response.statusCode() == 429
+                    ? "HTTP " + response.statusCode() : null);
+            return response;
+        } catch (Exception e) {
+            s.record(System.nanoTime() - start, e.getClass().getSimpleName());
+            return null;
+        }
+    }
+
+    private int[] fetchRoomIds() throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(base + "/api/rooms")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        List<Integer> ids = new ArrayList<>();
+        Matcher m = ROOM_ID.matcher(response.body());
+        while (m.find()) {
+            ids.add(Integer.parseInt(m.group(1)));
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("没有可用的房间: " + response.statusCode());
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private boolean running() {
+        return System.nanoTime() < deadline;
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 单类请求的统计，耗时以微秒保存
+    private static final class Stats {
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger errors = new AtomicInteger();
+        private final Map<String, AtomicInteger> errorKinds = new ConcurrentHashMap<>();
+
+        // error 为错误类型（状态码或异常名），成功时为null
+        void record(long nanos, String error) {
+            latencies.add(nanos / 1000);
+            if (error != null) {
+                errors.incrementAndGet();
+                errorKinds.computeIfAbsent(error, k -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+
+        void print(String name, int seconds) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            System.out.printf("%-8s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    name, sorted.length, errors.get(), sorted.length / (double) seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1000.0);
+            if (!errorKinds.isEmpty()) {
+                System.out.println("         错误: " + errorKinds);
+            }
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1000.0;
+        }
+    }
+}
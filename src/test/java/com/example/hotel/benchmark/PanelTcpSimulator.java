@@ -0,0 +1,304 @@
+package com.example.hotel.benchmark;
+
+import com.example.hotel.dto.RoomPanelView;
+import com.example.hotel.entity.AirConditioner;
+import com.example.hotel.util.PanelProtocol;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 房间面板 TCP 接入压测（手动运行，不属于单元测试）
+ * 以 hotel.panel.tcp.enabled=true 启动服务后运行，模拟大量面板各自保持一个长连接：
+ * <ul>
+ *   <li>面板：在连接上循环发送状态查询，带上一次的版本号等待房间变化</li>
+ *   <li>指令：按固定速率随机挑一个面板，在它的连接上发送开启、调整或关闭</li>
+ * </ul>
+ * 服务端只用一个选择器线程服务全部连接，可与 PanelFanoutBenchmark 的 HTTP 长轮询对比线程数、内存和延迟。
+ * 指令全部来自同一来源地址，会受到 hotel.ac.rate-limit 限流，比较调度吞吐时应关闭限流或调大限额。
+ * <p>
+ * 运行：mvn test-compile 后
+ * java -cp target/test-classes:target/classes com.example.hotel.benchmark.PanelTcpSimulator
+ *      --host=localhost --port=9090 --rooms=1-5 --panels=5000 --commands=50 --seconds=60
+ */
+public class PanelTcpSimulator {
+
+    private final InetSocketAddress address;
+    private final long deadline;
+    private final Map<String, Stats> stats = new HashMap<>();
+    private final List<Panel> panels = new ArrayList<>();
+
+    private PanelTcpSimulator(InetSocketAddress address, int seconds) {
+        this.address = address;
+        this.deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        for (String name : List.of("status", "command")) {
+            stats.put(name, new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "true");
+        }
+        String host = options.getOrDefault("host", "localhost");
+        int port = Integer.parseInt(options.getOrDefault("port", "9090"));
+        String[] range = options.getOrDefault("rooms", "1-5").split("-", 2);
+        int firstRoom = Integer.parseInt(range[0]);
+        int lastRoom = Integer.parseInt(range.length > 1 ? range[1] : range[0]);
+        int panelCount = Integer.parseInt(options.getOrDefault("panels", "1000"));
+        int commandsPerSecond = Integer.parseInt(options.getOrDefault("commands", "20"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+
+        new PanelTcpSimulator(new InetSocketAddress(host, port), seconds)
+                .run(firstRoom, lastRoom, panelCount, commandsPerSecond, seconds);
+    }
+
+    private void run(int firstRoom, int lastRoom, int panelCount, int commandsPerSecond, int seconds) throws Exception {
+        int roomCount = lastRoom - firstRoom + 1;
+        System.out.printf("目标 %s，房间 %d-%d，面板 %d，指令 %d 条/秒，持续 %d 秒%n",
+                address, firstRoom, lastRoom, panelCount, commandsPerSecond, seconds);
+
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < panelCount; i++) {
+            panels.add(new Panel(firstRoom + i % roomCount));
+        }
+        System.out.printf("建立 %d 个连接用时 %d ms%n", panelCount,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart));
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Panel panel : panels) {
+                clients.submit(panel::readLoop);
+                clients.submit(panel::statusLoop);
+            }
+            if (commandsPerSecond > 0) {
+                clients.submit(() -> commandLoop(commandsPerSecond));
+            }
+            pause(Duration.ofSeconds(seconds).toMillis());
+            // 关闭连接让阻塞在读取上的线程退出
+            panels.forEach(Panel::close);
+        }
+
+        System.out.printf("%-8s %10s %8s %10s %10s %10s %10s %10s%n",
+                "类型", "请求数", "错误", "请求/秒", "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)");
+        for (String name : List.of("status", "command")) {
+            stats.get(name).print(name, seconds);
+        }
+    }
+
+    // 按固定速率发出指令，不等待上一条完成
+    private void commandLoop(int perSecond) {
+        long intervalNanos = 1_000_000_000L / perSecond;
+        long next = System.nanoTime();
+        while (running()) {
+            Panel panel = panels.get(ThreadLocalRandom.current().nextInt(panels.size()));
+            panel.command(ThreadLocalRandom.current().nextInt(3));
+            next += intervalNanos;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                pause(sleep / 1_000_000);
+            }
+        }
+    }
+
+    private boolean running() {
+        return System.nanoTime() < deadline;
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String resultName(byte result) {
+        return switch (result) {
+            case PanelProtocol.FAILED -> "FAILED";
+            case PanelProtocol.BAD_REQUEST -> "BAD_REQUEST";
+            case PanelProtocol.NOT_FOUND -> "NOT_FOUND";
+            case PanelProtocol.BUSY -> "BUSY";
+            case PanelProtocol.RATE_LIMITED -> "RATE_LIMITED";
+            default -> "ERROR";
+        };
+    }
+
+    // 一个面板连接：读线程按请求ID把响应交给等待的请求，发送加锁保证帧不交错
+    private final class Panel {
+        private final int roomId;
+        private final SocketChannel channel;
+        private final Map<Integer, CompletableFuture<ByteBuffer>> waiting = new ConcurrentHashMap<>();
+        private final AtomicInteger nextRequestId = new AtomicInteger();
+
+        private Panel(int roomId) throws IOException {
+            this.roomId = roomId;
+            this.channel = SocketChannel.open(address);
+        }
+
+        // 状态长轮询：记录的是从发出请求到收到变化（或等待超时）的时间
+        void statusLoop() {
+            long since = -1;
+            while (running()) {
+                int requestId = nextRequestId.incrementAndGet();
+                ByteBuffer response = send(requestId, PanelProtocol.status(requestId, roomId, since, 20_000), "status");
+                if (response != null && response.get() == PanelProtocol.OK) {
+                    RoomPanelView view = PanelProtocol.readStatus(response, roomId);
+                    since = view.getVersion();
+                } else {
+                    pause(1000);
+                }
+            }
+        }
+
+        // 业务失败（如没有活跃请求时调整）不计为错误，忙、限流和服务端异常计为错误
+        void command(int kind) {
+            int requestId = nextRequestId.incrementAndGet();
+            ByteBuffer request = switch (kind) {
+                case 0 -> PanelProtocol.command(PanelProtocol.START, requestId, roomId, null, null, null);
+                case 1 -> PanelProtocol.command(PanelProtocol.ADJUST, requestId, roomId,
+                        null, AirConditioner.FanSpeed.values()[ThreadLocalRandom.current().nextInt(3)],
+                        20.0 + ThreadLocalRandom.current().nextInt(6));
+                default -> PanelProtocol.cancel(requestId, roomId);
+            };
+            long start = System.nanoTime();
+            CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+            waiting.put(requestId, response);
+            try {
+                write(request);
+            } catch (IOException e) {
+                waiting.remove(requestId);
+                stats.get("command").record(System.nanoTime() - start, e.getClass().getSimpleName());
+                return;
+            }
+            response.orTimeout(30, TimeUnit.SECONDS).whenComplete((buffer, error) -> {
+                String kindOfError = null;
+                if (error != null) {
+                    waiting.remove(requestId);
+                    if (!running()) {
+                        return;
+                    }
+                    kindOfError = error.getClass().getSimpleName();
+                } else {
+                    byte result = buffer.get();
+                    if (result != PanelProtocol.OK && result != PanelProtocol.FAILED) {
+                        kindOfError = resultName(result);
+                    }
+                }
+                stats.get("command").record(System.nanoTime() - start, kindOfError);
+            });
+        }
+
+        private ByteBuffer send(int requestId, ByteBuffer request, String type) {
+            Stats s = stats.get(type);
+            long start = System.nanoTime();
+            CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+            waiting.put(requestId, response);
+            try {
+                write(request);
+                ByteBuffer buffer = response.get(30, TimeUnit.SECONDS);
+                byte result = buffer.get(buffer.position());
+                s.record(System.nanoTime() - start, result == PanelProtocol.OK ? null : resultName(result));
+                return buffer;
+            } catch (Exception e) {
+                waiting.remove(requestId);
+                // 压测结束时关闭连接，正在等待的状态查询会失败，不计入统计
+                if (running()) {
+                    s.record(System.nanoTime() - start, e.getClass().getSimpleName());
+                }
+                return null;
+            }
+        }
+
+        private void write(ByteBuffer request) throws IOException {
+            synchronized (channel) {
+                while (request.hasRemaining()) {
+                    channel.write(request);
+                }
+            }
+        }
+
+        // 读出每个响应帧，返回的缓冲区位置在结果码上
+        void readLoop() {
+            try {
+                DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+                while (true) {
+                    int length = in.readInt();
+                    byte[] frame = new byte[length];
+                    in.readFully(frame);
+                    ByteBuffer buffer = ByteBuffer.wrap(frame);
+                    buffer.get();
+                    CompletableFuture<ByteBuffer> response = waiting.remove(buffer.getInt());
+                    if (response != null) {
+                        response.complete(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                IOException closed = new IOException("连接已断开", e);
+                waiting.values().forEach(response -> response.completeExceptionally(closed));
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 压测结束，忽略
+            }
+        }
+    }
+
+    // 单类请求的统计，耗时以微秒保存
+    private static final class Stats {
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger errors = new AtomicInteger();
+        private final Map<String, AtomicInteger> errorKinds = new ConcurrentHashMap<>();
+
+        // error 为错误类型（结果码或异常名），成功时为null
+        void record(long nanos, String error) {
+            latencies.add(nanos / 1000);
+            if (error != null) {
+                errors.incrementAndGet();
+                errorKinds.computeIfAbsent(error, k -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+
+        void print(String name, int seconds) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            System.out.printf("%-8s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    name, sorted.length, errors.get(), sorted.length / (double) seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted.length == 0 ? 0.0 : sorted[sorted.length - 1] / 1000.0);
+            if (!errorKinds.isEmpty()) {
+                System.out.println("         错误: " + errorKinds);
+            }
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)] / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.hotel.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 读写分离路由测试：主库和副本各用一个内嵌H2数据库
+ */
+class ReplicaRoutingDataSourceTests {
+
+    private EmbeddedDatabase primary;
+    private EmbeddedDatabase replica;
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnlyTx;
+    private TransactionTemplate readWriteTx;
+
+    @BeforeEach
+    void setUp() {
+        primary = embedded("primary");
+        replica = embedded("replica");
+        new JdbcTemplate(replica).execute("CREATE TABLE heartbeat (lag_seconds INT)");
+        new JdbcTemplate(replica).update("INSERT INTO heartbeat VALUES (0)");
+
+        routingDataSource = new ReplicaRoutingDataSource();
+        routingDataSource.setTargetDataSources(Map.of(
+                ReplicaRoutingDataSource.Route.PRIMARY, primary,
+                ReplicaRoutingDataSource.Route.REPLICA, replica));
+        routingDataSource.setDefaultTargetDataSource(primary);
+        routingDataSource.afterPropertiesSet();
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        DataSourceTransactionManager txManager = new DataSourceTransactionManager(dataSource);
+        readOnlyTx = new TransactionTemplate(txManager);
+        readOnlyTx.setReadOnly(true);
+        readWriteTx = new TransactionTemplate(txManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        primary.shutdown();
+        replica.shutdown();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplica() {
+        assertEquals("replica", readOnlyTx.execute(status -> whoAmI()));
+    }
+
+    @Test
+    void readWriteTransactionsAndNonTransactionalCallsGoToPrimary() {
+        assertEquals("primary", readWriteTx.execute(status -> whoAmI()));
+        assertEquals("primary", whoAmI());
+    }
+
+    @Test
+    void laggingReplicaFallsBackToPrimary() {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, routingDataSource,
+                "SELECT lag_seconds FROM heartbeat", 5);
+
+        monitor.checkLag();
+        assertTrue(routingDataSource.isReplicaAvailable());
+
+        new JdbcTemplate(replica).update("UPDATE heartbeat SET lag_seconds = 30");
+        monitor.checkLag();
+        assertFalse(routingDataSource.isReplicaAvailable());
+        assertEquals(30, monitor.getLastLagSeconds());
+        assertEquals("primary", readOnlyTx.execute(status -> whoAmI()));
+
+        new JdbcTemplate(replica).update("UPDATE heartbeat SET lag_seconds = 1");
+        monitor.checkLag();
+        assertEquals("replica", readOnlyTx.execute(status -> whoAmI()));
+    }
+
+    @Test
+    void unreachableReplicaFallsBackToPrimary() {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, routingDataSource,
+                "SELECT lag_seconds FROM missing_table", 5);
+
+        monitor.checkLag();
+        assertFalse(routingDataSource.isReplicaAvailable());
+        assertEquals("primary", readOnlyTx.execute(status -> whoAmI()));
+    }
+
+    private String whoAmI() {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private static EmbeddedDatabase embedded(String name) {
+        EmbeddedDatabase db = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(name)
+                .generateUniqueName(true)
+                .build();
+        JdbcTemplate template = new JdbcTemplate(db);
+        template.execute("CREATE TABLE node (name VARCHAR(20))");
+        template.update("INSERT INTO node VALUES (?)", name);
+        return db;
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.hotel.dto;
+
+import com.example.hotel.entity.AirConditioner;
+import com.example.hotel.entity.AirConditionerRequest;
+import com.example.hotel.entity.Guest;
+import com.example.hotel.entity.Room;
+import com.example.hotel.repository.AirConditionerRequestRepository;
+import com.example.hotel.service.AirConditionerSchedulerService;
+import com.example.hotel.service.AirConditionerService;
+import com.example.hotel.service.BillingService;
+import com.example.hotel.service.MonitorViewService;
+import com.example.hotel.service.RoomService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 监控接口读模型基准：对比实体序列化路径与 MonitorViewService 读模型路径每次调用的响应字节数和内存分配量
+ * 两条路径从同一组桩服务取数据，只比较对象组装和JSON序列化，不包含数据库访问
+ */
+class MonitorViewBenchmarkTests {
+
+    private static final int ROOMS = 600;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 500;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    // 桩服务不记录调用，避免调用记录本身计入内存分配
+    private final AirConditionerService acService = stub(AirConditionerService.class);
+    private final AirConditionerSchedulerService schedulerService = stub(AirConditionerSchedulerService.class);
+    private final AirConditionerRequestRepository requestRepository = stub(AirConditionerRequestRepository.class);
+    private final MonitorViewService monitorViewService = new MonitorViewService(acService, schedulerService,
+            stub(RoomService.class), requestRepository, stub(BillingService.class));
+
+    private List<AirConditioner> airConditioners;
+    private List<Room> rooms;
+    private List<AirConditionerRequest> activeRequests;
+
+    @BeforeEach
+    void setUp() {
+        LocalDateTime now = LocalDateTime.now();
+        airConditioners = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            airConditioners.add(AirConditioner.builder()
+                    .acId(i).on(true).servingRoomId(i)
+                    .mode(AirConditioner.Mode.COOLING).fanSpeed(AirConditioner.FanSpeed.MEDIUM)
+                    .targetTemp(25.0).currentTemp(28.0)
+                    .requestTime(now).serviceStartTime(now.minusMinutes(3)).serviceEndTime(now)
+                    .serviceDuration(0).cost(0.0).priority(2).serviceTime(0).version(1L)
+                    .build());
+        }
+        rooms = new ArrayList<>();
+        activeRequests = new ArrayList<>();
+        for (int i = 1; i <= ROOMS; i++) {
+            rooms.add(Room.builder()
+                    .roomId(i).price(100).initialTemp(30).currentTemp(28).occupied(true)
+                    .checkInTime(now.minusDays(1)).assignedAcId(i <= 3 ? i : null).version(3L)
+                    .guest(Guest.builder().id("11010119900101" + i).name("guest" + i)
+                            .phone("1380000" + i).stayDays(2).build())
+                    .build());
+            if (i % 4 == 0 || i <= 3) {
+                activeRequests.add(AirConditionerRequest.builder()
+                        .id((long) i).roomId(i)
+                        .mode(AirConditioner.Mode.COOLING).fanSpeed(AirConditioner.FanSpeed.MEDIUM)
+                        .targetTemp(25.0).currentRoomTemp(28.0).requestTime(now)
+                        .assignedAcId(i <= 3 ? i : null).priority(2).active(true).version(1L)
+                        .build());
+            }
+        }
+
+        when(acService.getAllAirConditioners()).thenReturn(airConditioners);
+        when(acService.getAllRoomsWithAcAssignment()).thenReturn(rooms);
+        when(acService.getAllActiveRequests()).thenReturn(activeRequests);
+        when(schedulerService.getServiceTime(anyInt())).thenReturn(0);
+        when(schedulerService.getWaitingTime(anyInt())).thenReturn(0);
+        // 与仓库中的构造表达式查询一样，每次查询返回新的条目
+        when(requestRepository.findActiveQueueEntries()).thenAnswer(inv -> activeRequests.stream()
+                .map(r -> new QueueEntryView(r.getRoomId(), r.getMode(), r.getFanSpeed(), r.getTargetTemp(),
+                        r.getCurrentRoomTemp(), r.getPriority(), r.getRequestTime(), r.getAssignedAcId()))
+                .toList());
+    }
+
+    @Test
+    void airConditionerViewsAreCheaperThanEntities() throws Exception {
+        assertEquals(3, monitorViewService.getAirConditionerViews().size());
+        compare("/api/ac/all", 0, acService::getAllAirConditioners, monitorViewService::getAirConditionerViews);
+    }
+
+    @Test
+    void roomAssignmentViewsAreCheaperThanEntities() throws Exception {
+        assertEquals(ROOMS, monitorViewService.getRoomAssignmentViews().size());
+        compare("/api/ac/rooms/assignment", 0,
+                () -> roomsResponse(acService.getAllRoomsWithAcAssignment()),
+                () -> roomsResponse(monitorViewService.getRoomAssignmentViews()));
+    }
+
+    @Test
+    void queueStatusViewAllocatesLessThanMapPath() throws Exception {
+        QueueStatusView status = monitorViewService.getQueueStatus();
+        assertEquals(3, status.getServiceCount());
+        assertEquals(activeRequests.size() - 3, status.getWaitingCount());
+        // 两边都带当前时间的快照时间戳，Jackson 省略末尾为0的纳秒位，字节数相差最多9位小数
+        compare("/api/ac/queue/status", 9, this::entityQueueStatus, monitorViewService::getQueueStatus);
+    }
+
+    // 读模型的响应不大于实体响应（byteSlack 为时间戳等不固定内容允许的差值），内存分配少于实体路径
+    private void compare(String endpoint, int byteSlack, Supplier<Object> entityPath, Supplier<Object> viewPath)
+            throws Exception {
+        Result entity = measure(entityPath);
+        Result view = measure(viewPath);
+        String numbers = String.format("%s entity: %d bytes/call %d alloc/call | view: %d bytes/call %d alloc/call",
+                endpoint, entity.bytes, entity.allocated, view.bytes, view.allocated);
+        assertTrue(view.bytes > 0 && view.bytes <= entity.bytes + byteSlack, numbers);
+        assertTrue(view.allocated < entity.allocated, numbers);
+    }
+
+    private Result measure(Supplier<Object> path) throws Exception {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        int bytes = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            bytes = objectMapper.writeValueAsBytes(path.get()).length;
+        }
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            bytes = objectMapper.writeValueAsBytes(path.get()).length;
+        }
+        long allocated = (threadBean.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+        return new Result(bytes, allocated);
+    }
+
+    private record Result(int bytes, long allocated) {
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+
+    private static Map<String, Object> roomsResponse(List<?> rooms) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("rooms", rooms);
+        result.put("total", rooms.size());
+        return result;
+    }
+
+    // 原有路径：逐个请求实体组装HashMap
+    private Map<String, Object> entityQueueStatus() {
+        List<AirConditionerRequest> requests = acService.getAllActiveRequests();
+        List<Map<String, Object>> serviceQueue = new ArrayList<>();
+        List<Map<String, Object>> waitingQueue = new ArrayList<>();
+        for (AirConditionerRequest request : requests) {
+            Map<String, Object> info = new HashMap<>();
+            info.put("roomId", request.getRoomId());
+            info.put("mode", request.getMode());
+            info.put("fanSpeed", request.getFanSpeed());
+            info.put("targetTemp", request.getTargetTemp());
+            info.put("currentRoomTemp", request.getCurrentRoomTemp());
+            info.put("priority", request.getPriority());
+            info.put("requestTime", request.getRequestTime());
+            if (request.getAssignedAcId() != null) {
+                info.put("assignedAcId", request.getAssignedAcId());
+                info.put("status", "服务中");
+                info.put("serviceTime", schedulerService.getServiceTime(request.getRoomId()));
+                serviceQueue.add(info);
+            } else {
+                info.put("status", "等待中");
+                info.put("waitingTime", schedulerService.getWaitingTime(request.getRoomId()));
+                waitingQueue.add(info);
+            }
+        }
+        List<Map<String, Object>> acs = new ArrayList<>();
+        for (AirConditioner ac : acService.getAllAirConditioners()) {
+            Map<String, Object> info = new HashMap<>();
+            info.put("acId", ac.getAcId());
+            info.put("isOn", ac.getOn() != null && ac.getOn());
+            info.put("servingRoomId", ac.getServingRoomId());
+            info.put("mode", ac.getMode());
+            info.put("fanSpeed", ac.getFanSpeed());
+            info.put("targetTemp", ac.getTargetTemp());
+            info.put("currentTemp", ac.getCurrentTemp());
+            info.put("serviceTime", Duration.between(ac.getServiceStartTime(), LocalDateTime.now()).toMinutes());
+            acs.add(info);
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("serviceQueue", serviceQueue);
+        response.put("waitingQueue", waitingQueue);
+        response.put("airConditioners", acs);
+        response.put("totalRequests", requests.size());
+        response.put("serviceCount", serviceQueue.size());
+        response.put("waitingCount", waitingQueue.size());
+        response.put("timestamp", LocalDateTime.now());
+        return response;
+    }
+}
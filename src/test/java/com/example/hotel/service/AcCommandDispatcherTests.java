@@ -0,0 +1,95 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.AirConditioner;
+import com.example.hotel.service.AcCommandDispatcher.AdjustResult;
+import com.example.hotel.service.AcCommandDispatcher.AdjustSettings;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 空调指令分发测试：合并窗口内的连续调整只执行一次并共享结果，窗口内的开关机指令不越过待合并的调整
+ */
+class AcCommandDispatcherTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AcCommandDispatcher dispatcher = new AcCommandDispatcher(registry, 2, 32, 200, false);
+
+    @AfterEach
+    void shutdown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void burstOfAdjustsRunsOnceWithMergedSettings() throws Exception {
+        List<AdjustSettings> executed = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<AdjustResult>> replies = new ArrayList<>();
+        AdjustSettings[] clicks = {
+                new AdjustSettings(null, AirConditioner.FanSpeed.HIGH, null),
+                new AdjustSettings(null, null, 24.0),
+                new AdjustSettings(null, AirConditioner.FanSpeed.LOW, null),
+                new AdjustSettings(null, null, 23.0),
+        };
+        for (AdjustSettings click : clicks) {
+            replies.add(dispatcher.submitAdjust(1, click, merged -> {
+                executed.add(merged);
+                return AdjustResult.APPLIED;
+            }));
+        }
+
+        CompletableFuture<AdjustResult> first = replies.get(0);
+        for (CompletableFuture<AdjustResult> reply : replies) {
+            assertSame(first, reply);
+            assertEquals(AdjustResult.APPLIED, reply.get(2, TimeUnit.SECONDS));
+        }
+        assertEquals(List.of(new AdjustSettings(null, AirConditioner.FanSpeed.LOW, 23.0)), executed);
+        assertEquals(3, registry.counter("hotel.ac.command.coalesced").count());
+    }
+
+    @Test
+    void commandInsideWindowRunsAfterPendingAdjust() throws Exception {
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<AdjustResult> adjust = dispatcher.submitAdjust(1,
+                new AdjustSettings(null, AirConditioner.FanSpeed.HIGH, null), merged -> {
+                    order.add("adjust");
+                    return AdjustResult.APPLIED;
+                });
+        CompletableFuture<String> cancel = dispatcher.submit(1, () -> {
+            order.add("cancel");
+            return "cancel";
+        });
+        // 关机之后的调整开启新的合并窗口，不会合并到关机之前的调整中
+        CompletableFuture<AdjustResult> late = dispatcher.submitAdjust(1,
+                new AdjustSettings(null, AirConditioner.FanSpeed.LOW, null), merged -> {
+                    order.add("late " + merged.fanSpeed());
+                    return AdjustResult.NO_ACTIVE_REQUEST;
+                });
+
+        // 关机无需等待窗口到期
+        assertEquals("cancel", cancel.get(150, TimeUnit.MILLISECONDS));
+        assertEquals(AdjustResult.APPLIED, adjust.get(2, TimeUnit.SECONDS));
+        assertEquals(AdjustResult.NO_ACTIVE_REQUEST, late.get(2, TimeUnit.SECONDS));
+        assertEquals(List.of("adjust", "cancel", "late LOW"), order);
+    }
+
+    @Test
+    void modeSwitchDropsEarlierTarget() {
+        AdjustSettings merged = new AdjustSettings(null, null, 27.0)
+                .mergedWith(new AdjustSettings(AirConditioner.Mode.HEATING, null, null));
+        assertEquals(AirConditioner.Mode.HEATING, merged.mode());
+        assertNull(merged.targetTemp());
+
+        merged = merged.mergedWith(new AdjustSettings(null, null, 22.0));
+        assertEquals(new AdjustSettings(AirConditioner.Mode.HEATING, null, 22.0), merged);
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.hotel.service;
+
+import com.example.hotel.dto.BulkAcCommand;
+import com.example.hotel.dto.BulkAcCommandResult;
+import com.example.hotel.dto.LiveChargeView;
+import com.example.hotel.entity.AirConditioner;
+import com.example.hotel.entity.AirConditionerRequest;
+import com.example.hotel.entity.BillDetail;
+import com.example.hotel.entity.Room;
+import com.example.hotel.event.AirConditionerEvent;
+import com.example.hotel.repository.AirConditionerRepository;
+import com.example.hotel.repository.AirConditionerRequestRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 空调服务测试：批量指令的写入回滚时整批失败，写入提交后调度失败时指令仍按已生效返回；
+ * 服务期间调整风速时结束按旧风速累计的详单，之后的能耗和费用累计到新详单；回温不在调用方线程上执行
+ */
+class AirConditionerServiceTests {
+
+    private final Map<Integer, Room> rooms = Map.of(
+            1, Room.builder().roomId(1).initialTemp(30.0).currentTemp(30.0).occupied(true)
+                    .checkInTime(LocalDateTime.now().minusHours(1)).build(),
+            2, Room.builder().roomId(2).initialTemp(30.0).currentTemp(30.0).occupied(true).build(),
+            3, Room.builder().roomId(3).initialTemp(30.0).currentTemp(30.0).occupied(true).build());
+
+    private final RoomService roomService = mock(RoomService.class);
+    private final AirConditionerRequestRepository requestRepository = mock(AirConditionerRequestRepository.class);
+    private final AirConditionerSchedulerService schedulerService = mock(AirConditionerSchedulerService.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final AirConditionerRepository airConditionerRepository = mock(AirConditionerRepository.class);
+    private final TariffService tariffService = mock(TariffService.class);
+    private AirConditionerService service;
+
+    @BeforeEach
+    void setUp() {
+        when(roomService.getRoomById(anyInt())).thenAnswer(inv -> Optional.ofNullable(rooms.get(inv.<Integer>getArgument(0))));
+        // 房间2有活跃请求，房间1和房间3没有
+        when(requestRepository.findByRoomIdInAndActiveTrue(any())).thenAnswer(inv -> List.of(
+                AirConditionerRequest.builder().id(20L).roomId(2).mode(AirConditioner.Mode.COOLING)
+                        .fanSpeed(AirConditioner.FanSpeed.MEDIUM).targetTemp(25.0).priority(2)
+                        .requestTime(LocalDateTime.now()).active(true).build()));
+        service = new AirConditionerService(roomService, requestRepository, airConditionerRepository,
+                schedulerService, tariffService, eventPublisher, false);
+    }
+
+    @Test
+    void bulkWriteRollbackFailsEveryAcceptedCommand() {
+        when(schedulerService.applyBulkChanges(any())).thenAnswer(inv -> inv.<Supplier<?>>getArgument(0).get());
+        when(requestRepository.saveAll(anyList())).thenThrow(new DataAccessResourceFailureException("连接断开"));
+
+        BulkAcCommandResult result = service.applyBulkCommands(commands());
+
+        assertEquals(0, result.getSucceeded());
+        assertEquals(4, result.getFailed());
+        for (BulkAcCommandResult.RoomResult roomResult : result.getResults().subList(0, 2)) {
+            assertFalse(roomResult.isSuccess());
+            assertNull(roomResult.getAssignedAcId());
+            assertTrue(roomResult.getMessage().startsWith("批量执行失败"), roomResult.getMessage());
+        }
+        // 写入前已判定失败的指令保留原因
+        assertEquals("房间没有活跃的空调请求，请先开启空调", result.getResults().get(2).getMessage());
+        assertEquals("房间不存在", result.getResults().get(3).getMessage());
+        verify(eventPublisher, never()).publishEvent(any(AirConditionerEvent.class));
+    }
+
+    @Test
+    void schedulingFailureAfterCommitKeepsCommittedCommands() {
+        when(schedulerService.applyBulkChanges(any())).thenAnswer(inv -> {
+            inv.<Supplier<?>>getArgument(0).get();
+            throw new IllegalStateException("调度失败");
+        });
+        when(requestRepository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+
+        BulkAcCommandResult result = service.applyBulkCommands(commands());
+
+        assertEquals(2, result.getSucceeded());
+        BulkAcCommandResult.RoomResult started = result.getResults().get(0);
+        assertTrue(started.isSuccess());
+        assertEquals(0, started.getAssignedAcId());
+        assertEquals("空调已开启", started.getMessage());
+        BulkAcCommandResult.RoomResult cancelled = result.getResults().get(1);
+        assertTrue(cancelled.isSuccess());
+        assertNull(cancelled.getAssignedAcId());
+        assertEquals("空调已关闭", cancelled.getMessage());
+        assertFalse(result.getResults().get(2).isSuccess());
+        // 关机和开机的事件都已发布
+        verify(eventPublisher, times(2)).publishEvent(any(AirConditionerEvent.class));
+    }
+
+    @Test
+    void fanSpeedChangeClosesDetailAndAccruesToNewOne() {
+        when(tariffService.rateAt(any())).thenReturn(2.0);
+        AirConditionerRequest request = AirConditionerRequest.builder().id(10L).roomId(1)
+                .mode(AirConditioner.Mode.COOLING).fanSpeed(AirConditioner.FanSpeed.MEDIUM).targetTemp(25.0)
+                .priority(AirConditioner.FanSpeed.MEDIUM.getPriority()).currentRoomTemp(30.0)
+                .requestTime(LocalDateTime.now()).active(true).build();
+        when(requestRepository.findByRoomIdAndActiveTrue(1)).thenReturn(Optional.of(request));
+        when(requestRepository.save(any(AirConditionerRequest.class))).thenAnswer(inv -> inv.getArgument(0));
+        // 空调1空闲，抢占成功后数据库中为房间1服务
+        AirConditioner free = AirConditioner.builder().acId(1).version(0L).build();
+        AirConditioner serving = AirConditioner.builder().acId(1).version(1L).servingRoomId(1)
+                .serviceStartTime(LocalDateTime.now()).build();
+        when(airConditionerRepository.findById(1)).thenReturn(Optional.of(free), Optional.of(serving));
+        when(airConditionerRepository.claimAirConditioner(eq(1), eq(0L), eq(1), any(), any(), any(), any(), any(),
+                any(), anyInt())).thenReturn(1);
+        when(airConditionerRepository.releaseAirConditioner(eq(1), eq(1), any(), anyInt(), anyDouble())).thenReturn(1);
+
+        assertTrue(service.assignAirConditioner(1, 1));
+        service.accrueUsage(1, 30.0, 29.0);
+        assertTrue(service.adjustAirConditionerSettings(1, null, AirConditioner.FanSpeed.HIGH, null));
+        service.accrueUsage(1, 29.0, 28.0);
+        service.accrueUsage(1, 28.0, 27.5);
+
+        // 实时计费只包含按新风速累计的部分
+        LiveChargeView live = service.getLiveCharge(1);
+        assertEquals(AirConditioner.FanSpeed.HIGH, live.getFanSpeed());
+        assertEquals(2, live.getServiceMinutes());
+        assertEquals(1.5, live.getEnergyConsumed(), 1e-9);
+        assertEquals(3.0, live.getCost(), 1e-9);
+        List<BillDetail> details = service.getRoomBillDetails(1);
+        assertEquals(1, details.size());
+        assertEquals(AirConditioner.FanSpeed.MEDIUM, details.get(0).getFanSpeed());
+        assertEquals(1.0, details.get(0).getEnergyConsumed(), 1e-9);
+        assertEquals(2.0, details.get(0).getCost(), 1e-9);
+
+        // 释放时结束新详单，空调记录本次服务两条详单的总费用
+        assertTrue(service.releaseAirConditioner(service.getAirConditioner(1), 1));
+        details = service.getRoomBillDetails(1);
+        assertEquals(2, details.size());
+        assertEquals(AirConditioner.FanSpeed.HIGH, details.get(1).getFanSpeed());
+        assertEquals(1.5, details.get(1).getEnergyConsumed(), 1e-9);
+        assertEquals(3.0, details.get(1).getCost(), 1e-9);
+        verify(airConditionerRepository).releaseAirConditioner(eq(1), eq(1), any(), anyInt(), eq(5.0));
+    }
+
+    @Test
+    void recoveryNeverRunsOnTheCallingThread() {
+        // 远多于回温线程数的房间同时开始回温：启动只登记周期任务，调用方（可能持有调度锁）立即返回
+        when(roomService.getRoomById(anyInt())).thenAnswer(inv -> Optional.of(Room.builder()
+                .roomId(inv.<Integer>getArgument(0)).initialTemp(30.0).currentTemp(25.0).occupied(true).build()));
+        long start = System.nanoTime();
+        for (int roomId = 100; roomId < 400; roomId++) {
+            service.startRoomTemperatureRecovery(roomId);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        service.destroy();
+
+        assertTrue(elapsedMillis < 2000, "启动300个房间的回温用时 " + elapsedMillis + "ms");
+        verify(roomService, never()).updateRoomTemperature(anyInt(), anyDouble());
+    }
+
+    // 房间1开机、房间2关机、房间3没有活跃请求却调整、房间99不存在
+    private static List<BulkAcCommand> commands() {
+        return List.of(
+                new BulkAcCommand(1, BulkAcCommand.Action.START, AirConditioner.Mode.COOLING,
+                        AirConditioner.FanSpeed.HIGH, 24.0),
+                new BulkAcCommand(2, BulkAcCommand.Action.CANCEL, null, null, null),
+                new BulkAcCommand(3, BulkAcCommand.Action.ADJUST, null, AirConditioner.FanSpeed.LOW, null),
+                new BulkAcCommand(99, BulkAcCommand.Action.START, null, null, null));
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.BillDetail;
+import com.example.hotel.entity.RoomCostSummary;
+import com.example.hotel.repository.BillDetailRepository;
+import com.example.hotel.repository.RoomCostSummaryRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 详单汇总测试：首条详单插入汇总行、后续详单累加、详单修改按差值累加，并发写入同一房间的首条详单不丢失；
+ * 时间范围能耗走小时桶和直接扫描详单的结果一致
+ * 使用 MySQL 兼容模式的 H2，汇总的 upsert 依赖 ON DUPLICATE KEY UPDATE；每次调用各自提交事务
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:aggregate;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(BillDetailAggregateService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BillDetailAggregateServiceTests {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 10, 0);
+
+    @Autowired
+    private BillDetailAggregateService aggregateService;
+
+    @Autowired
+    private RoomCostSummaryRepository roomSummaryRepository;
+
+    @Autowired
+    private BillDetailRepository billDetailRepository;
+
+    @Test
+    void firstDetailInsertsSummaryAndLaterDetailsIncrement() {
+        aggregateService.onDetailsAdded(List.of(detail(1, 10L, 2.0, 1.0, T0.plusMinutes(5))));
+        assertEquals(2.0, aggregateService.getRoomTotalCost(1), 1e-9);
+        assertEquals(2.0, aggregateService.getBillTotalCost(10L), 1e-9);
+        assertEquals(1.0, aggregateService.getRoomEnergy(1, T0, T0.plusHours(1)), 1e-9);
+
+        aggregateService.onDetailsAdded(List.of(
+                detail(1, 10L, 3.0, 1.5, T0.plusMinutes(20)),
+                detail(1, 10L, 4.0, 2.0, T0.plusHours(1).plusMinutes(5))));
+        assertEquals(9.0, aggregateService.getRoomTotalCost(1), 1e-9);
+        assertEquals(9.0, aggregateService.getBillTotalCost(10L), 1e-9);
+        assertEquals(4.5, aggregateService.getRoomEnergy(1, T0, T0.plusHours(2)), 1e-9);
+        assertEquals(3, roomSummaryRepository.findById(1).map(RoomCostSummary::getDetailCount).orElse(0L));
+
+        // 修改已有详单只累加差值，条数不变
+        BillDetail changed = detail(1, 10L, 3.0, 1.5, T0.plusMinutes(20));
+        BillDetailAggregateService.Contribution before = BillDetailAggregateService.Contribution.of(changed);
+        changed.setCost(5.0);
+        changed.setEnergyConsumed(2.5);
+        aggregateService.onDetailChanged(before, changed);
+        assertEquals(11.0, aggregateService.getRoomTotalCost(1), 1e-9);
+        assertEquals(5.5, aggregateService.getRoomEnergy(1, T0, T0.plusHours(2)), 1e-9);
+        assertEquals(3, roomSummaryRepository.findById(1).map(RoomCostSummary::getDetailCount).orElse(0L));
+    }
+
+    @Test
+    void concurrentFirstDetailsForSameRoomAreAllCounted() throws Exception {
+        int writers = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(writers)) {
+            for (int i = 0; i < writers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    aggregateService.onDetailsAdded(List.of(detail(2, 20L, 1.0, 0.5, T0.plusMinutes(30))));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+
+        assertEquals(writers, aggregateService.getRoomTotalCost(2), 1e-9);
+        assertEquals(writers, aggregateService.getBillTotalCost(20L), 1e-9);
+        assertEquals(writers * 0.5, aggregateService.getRoomEnergy(2, T0, T0.plusHours(1)), 1e-9);
+        assertEquals(writers, roomSummaryRepository.findById(2).map(RoomCostSummary::getDetailCount).orElse(0L));
+    }
+
+    @Test
+    void detailsEndingAfterRangeAreExcludedFromWholeHourBuckets() {
+        List<BillDetail> details = billDetailRepository.saveAll(List.of(
+                detail(3, 30L, 1.0, 1.0, T0.plusMinutes(10), 20),
+                // 在最后一个整小时桶内开始，但在查询区间结束后才结束
+                detail(3, 30L, 2.0, 2.0, T0.plusHours(1).plusMinutes(50), 40),
+                // 跨越多个小时的长服务
+                detail(3, 30L, 4.0, 4.0, T0.plusMinutes(30), 150),
+                // 尾部零头内开始、区间结束后结束
+                detail(3, 30L, 8.0, 8.0, T0.plusHours(2).plusMinutes(10), 30)));
+        aggregateService.onDetailsAdded(details);
+
+        LocalDateTime end = T0.plusHours(2).plusMinutes(20);
+        assertEquals(1.0, aggregateService.getRoomEnergy(3, T0, end), 1e-9);
+        assertEquals(billDetailRepository.sumEnergyConsumedByRoomAndTimeRange(3, T0, end),
+                aggregateService.getRoomEnergy(3, T0, end), 1e-9);
+        // 不足一小时的区间同样排除
+        assertEquals(0.0, aggregateService.getRoomEnergy(3, T0.plusHours(1).plusMinutes(30), end), 1e-9);
+        // 区间覆盖全部结束时间时全部计入
+        assertEquals(15.0, aggregateService.getRoomEnergy(3, T0, T0.plusHours(4)), 1e-9);
+    }
+
+    // 已结束的详单，服务持续5分钟
+    private static BillDetail detail(Integer roomId, Long billId, double cost, double energy, LocalDateTime start) {
+        return detail(roomId, billId, cost, energy, start, 5);
+    }
+
+    private static BillDetail detail(Integer roomId, Long billId, double cost, double energy, LocalDateTime start,
+                                     int minutes) {
+        return BillDetail.builder()
+                .roomId(roomId)
+                .billId(billId)
+                .requestTime(start)
+                .serviceStartTime(start)
+                .serviceEndTime(start.plusMinutes(minutes))
+                .cost(cost)
+                .energyConsumed(energy)
+                .build();
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.hotel.service;
+
+import com.example.hotel.controller.BillDetailController;
+import com.example.hotel.dto.BillDetailImportResult;
+import com.example.hotel.entity.BillDetail;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 详单流式导入测试：每个分块在独立事务中批量插入并计入汇总，失败的分块连同汇总一起回滚且不影响其他分块；
+ * 请求体中途截断时已提交的分块保留，totalRows 为续传位置；分块大小限制在1到10000之间；
+ * 接口在请求体无法解析且没有任何分块提交时返回400，部分提交时返回200
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:billimport;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(BillDetailAggregateService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class BillDetailImportServiceTests {
+
+    // 汇总写入时对这个房间抛出异常，模拟分块中途写入失败
+    private static final int FAILING_ROOM = 99;
+
+    @Autowired
+    private BillDetailAggregateService aggregateService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private BillDetailImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM bill_detail");
+        jdbcTemplate.update("DELETE FROM room_cost_summary");
+        jdbcTemplate.update("DELETE FROM bill_cost_summary");
+        jdbcTemplate.update("DELETE FROM energy_hourly_rollup");
+
+        BillDetailAggregateService failingAggregate = mock(BillDetailAggregateService.class);
+        doAnswer(inv -> {
+            List<BillDetail> chunk = inv.getArgument(0);
+            aggregateService.onDetailsAdded(chunk);
+            if (chunk.stream().anyMatch(detail -> detail.getRoomId() == FAILING_ROOM)) {
+                throw new IllegalStateException("汇总写入失败");
+            }
+            return null;
+        }).when(failingAggregate).onDetailsAdded(anyList());
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        importService = new BillDetailImportService(objectMapper, jdbcTemplate, transactionManager,
+                failingAggregate, 1000);
+    }
+
+    @Test
+    void failingChunkRollsBackAloneAndLaterChunksStillCommit() {
+        // 分块大小2：房间1两行（提交）、房间99两行（回滚）、房间2一行（提交）
+        String body = array(row(1, 2.0), row(1, 3.0), row(FAILING_ROOM, 5.0), row(FAILING_ROOM, 7.0), row(2, 4.0));
+
+        BillDetailImportResult result = importService.importDetails(stream(body), 2);
+
+        assertNull(result.getError());
+        assertEquals(5, result.getTotalRows());
+        assertEquals(3, result.getCommittedRows());
+        assertEquals(2, result.getFailedRows());
+        assertEquals(3, result.getChunks().size());
+        assertTrue(result.getChunks().get(0).isCommitted());
+        assertFalse(result.getChunks().get(1).isCommitted());
+        assertEquals(2, result.getChunks().get(1).getFirstRow());
+        assertNotNull(result.getChunks().get(1).getError());
+        assertTrue(result.getChunks().get(2).isCommitted());
+
+        // 失败分块的详单和汇总都已回滚
+        assertEquals(2, countDetails(1));
+        assertEquals(0, countDetails(FAILING_ROOM));
+        assertEquals(1, countDetails(2));
+        assertEquals(5.0, aggregateService.getRoomTotalCost(1), 1e-9);
+        assertEquals(0.0, aggregateService.getRoomTotalCost(FAILING_ROOM), 1e-9);
+        assertEquals(4.0, aggregateService.getRoomTotalCost(2), 1e-9);
+    }
+
+    @Test
+    void truncatedBodyKeepsCommittedChunksAndReportsResumePoint() {
+        // 两个完整分块之后是一个已解析但未满的分块和一个截断的对象
+        String body = "[" + String.join(",", row(3, 1.0), row(3, 1.0), row(3, 1.0), row(3, 1.0), row(3, 1.0))
+                + ",{\"roomId\":3,\"cost\":";
+
+        BillDetailImportResult result = importService.importDetails(stream(body), 2);
+
+        assertNotNull(result.getError());
+        // 未满一块的第5行不写入，续传从第5行（下标4）开始
+        assertEquals(4, result.getTotalRows());
+        assertEquals(4, result.getCommittedRows());
+        assertEquals(0, result.getFailedRows());
+        assertEquals(4, countDetails(3));
+        assertEquals(4.0, aggregateService.getRoomTotalCost(3), 1e-9);
+    }
+
+    @Test
+    void chunkSizeIsClamped() {
+        String body = array(row(4, 1.0), row(4, 1.0));
+
+        assertEquals(1, importService.importDetails(stream(body), 0).getChunkSize());
+        assertEquals(10_000, importService.importDetails(stream(body), 50_000).getChunkSize());
+        BillDetailImportResult defaults = importService.importDetails(stream(body), null);
+        assertEquals(1000, defaults.getChunkSize());
+        assertEquals(6, countDetails(4));
+        assertEquals(6.0, aggregateService.getRoomTotalCost(4), 1e-9);
+    }
+
+    @Test
+    void controllerAnswers400OnlyWhenNothingWasCommitted() throws Exception {
+        BillDetailController controller = new BillDetailController(mock(BillingService.class), importService);
+
+        assertEquals(HttpStatus.BAD_REQUEST,
+                controller.importBillDetails(request("{\"roomId\":5}"), 2).getStatusCode());
+        assertEquals(HttpStatus.OK,
+                controller.importBillDetails(request("[" + row(5, 1.0) + "," + row(5, 1.0) + ",{"), 2).getStatusCode());
+        assertEquals(2, countDetails(5));
+    }
+
+    private static MockHttpServletRequest request(String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/bill-details/batch/stream");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private int countDetails(int roomId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM bill_detail WHERE room_id = ?", Integer.class, roomId);
+    }
+
+    private static String array(String... rows) {
+        return IntStream.range(0, rows.length).mapToObj(i -> rows[i]).collect(Collectors.joining(",", "[", "]"));
+    }
+
+    // 已结束的详单，服务持续5分钟
+    private static String row(int roomId, double cost) {
+        return "{\"billId\":" + roomId + ",\"roomId\":" + roomId + ",\"acId\":1,"
+                + "\"requestTime\":\"2025-01-01T10:00:00\",\"serviceStartTime\":\"2025-01-01T10:00:00\","
+                + "\"serviceEndTime\":\"2025-01-01T10:05:00\",\"serviceDuration\":5,\"fanSpeed\":\"MEDIUM\","
+                + "\"mode\":\"COOLING\",\"targetTemp\":25.0,\"energyConsumed\":" + cost / 2 + ",\"cost\":" + cost
+                + ",\"rate\":1.0}";
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
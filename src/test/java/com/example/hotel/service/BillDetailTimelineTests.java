@@ -0,0 +1,158 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.AirConditioner;
+import com.example.hotel.entity.BillDetail;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 明细时间线测试：范围查询、按块遍历、增量查询、乱序到达、列式编码和并发读写
+ */
+class BillDetailTimelineTests {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Test
+    void rangeQueryReturnsDetailsInsideWindowAcrossChunks() {
+        BillDetailTimeline timeline = new BillDetailTimeline(1);
+        for (int i = 0; i < 1000; i++) {
+            timeline.append(detail(i));
+        }
+
+        List<BillDetail> window = timeline.slice(0, T0.plusMinutes(250), T0.plusMinutes(520)).details();
+        assertEquals(271, window.size());
+        assertEquals(T0.plusMinutes(250), window.get(0).getRequestTime());
+        assertEquals(T0.plusMinutes(520), window.get(window.size() - 1).getRequestTime());
+        assertEquals(1000, timeline.version());
+    }
+
+    @Test
+    void forEachChunkVisitsWindowOneChunkAtATime() {
+        BillDetailTimeline timeline = new BillDetailTimeline(1);
+        for (int i = 0; i < 1000; i++) {
+            timeline.append(detail(i));
+        }
+
+        List<List<BillDetail>> chunks = new ArrayList<>();
+        timeline.forEachChunk(T0.plusMinutes(250), T0.plusMinutes(520), chunks::add);
+        // 窗口跨越第1、2块和第3块开头：[250,256)、[256,512)、[512,520]
+        assertEquals(List.of(6, 256, 9), chunks.stream().map(List::size).toList());
+        assertEquals(timeline.slice(0, T0.plusMinutes(250), T0.plusMinutes(520)).details(),
+                chunks.stream().flatMap(List::stream).toList());
+    }
+
+    @Test
+    void sliceSinceVersionReturnsOnlyNewDetails() {
+        BillDetailTimeline timeline = new BillDetailTimeline(1);
+        for (int i = 0; i < 300; i++) {
+            timeline.append(detail(i));
+        }
+        long version = timeline.version();
+        timeline.append(detail(300));
+        timeline.append(detail(301));
+
+        AirConditionerService.BillDetailSlice slice = timeline.slice(version, T0, T0.plusDays(1));
+        assertTrue(slice.incremental());
+        assertEquals(2, slice.details().size());
+        assertEquals(302, slice.version());
+    }
+
+    @Test
+    void outOfOrderDetailIsInsertedInPlaceAndForcesFullSlice() {
+        BillDetailTimeline timeline = new BillDetailTimeline(1);
+        for (int i = 0; i < 600; i += 2) {
+            timeline.append(detail(i));
+        }
+        long version = timeline.version();
+        timeline.append(detail(101));
+
+        AirConditionerService.BillDetailSlice slice = timeline.slice(version, T0, T0.plusDays(1));
+        assertFalse(slice.incremental());
+        List<BillDetail> all = slice.details();
+        assertEquals(301, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertFalse(all.get(i).getRequestTime().isBefore(all.get(i - 1).getRequestTime()));
+        }
+        assertEquals(1, timeline.slice(0, T0.plusMinutes(101), T0.plusMinutes(101)).details().size());
+    }
+
+    @Test
+    void encodedDetailRoundTripsAtSecondPrecision() {
+        BillDetailTimeline timeline = new BillDetailTimeline(7);
+        LocalDateTime request = LocalDateTime.of(2025, 6, 1, 10, 15, 30, 123_000_000);
+        timeline.append(BillDetail.builder()
+                .roomId(7).requestTime(request)
+                .serviceStartTime(request.plusSeconds(5)).serviceEndTime(null)
+                .serviceDuration(12)
+                .fanSpeed(AirConditioner.FanSpeed.HIGH).mode(AirConditioner.Mode.HEATING)
+                .acId(2).targetTemp(22.0).tempChange(3.5).energyConsumed(3.5)
+                .cost(3.5).rate(1.0)
+                .build());
+
+        BillDetail detail = timeline.slice(0, request.withNano(0), request).details().get(0);
+        assertEquals(7, detail.getRoomId());
+        assertEquals(request.withNano(0), detail.getRequestTime());
+        assertEquals(request.plusSeconds(5).withNano(0), detail.getServiceStartTime());
+        assertNull(detail.getServiceEndTime());
+        assertEquals(12, detail.getServiceDuration());
+        assertEquals(AirConditioner.FanSpeed.HIGH, detail.getFanSpeed());
+        assertEquals(AirConditioner.Mode.HEATING, detail.getMode());
+        assertEquals(3.5, detail.getCost());
+        assertEquals(1.0, detail.getRate());
+        assertEquals(2, detail.getAcId());
+        assertEquals(22.0, detail.getTargetTemp());
+        assertEquals(3.5, detail.getEnergyConsumed());
+    }
+
+    @Test
+    void detailsWithoutRequestTimeAreIgnored() {
+        BillDetailTimeline timeline = new BillDetailTimeline(1);
+        timeline.append(BillDetail.builder().roomId(1).build());
+        assertEquals(0, timeline.version());
+    }
+
+    @Test
+    void readersNeverSeeConcurrentModification() throws Exception {
+        BillDetailTimeline timeline = new BillDetailTimeline(1);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    List<BillDetail> all = timeline.slice(0, T0, T0.plusDays(30)).details();
+                    for (int i = 1; i < all.size(); i++) {
+                        if (all.get(i).getRequestTime().isBefore(all.get(i - 1).getRequestTime())) {
+                            throw new AssertionError("明细未按请求时间排序");
+                        }
+                    }
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 20_000; i++) {
+            timeline.append(detail(i));
+        }
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(20_000, timeline.version());
+    }
+
+    private static BillDetail detail(int minute) {
+        return BillDetail.builder().roomId(1).requestTime(T0.plusMinutes(minute)).cost(1.0).build();
+    }
+}
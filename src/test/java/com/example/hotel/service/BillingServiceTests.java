@@ -0,0 +1,132 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.Bill;
+import com.example.hotel.entity.BillDetail;
+import com.example.hotel.entity.Guest;
+import com.example.hotel.entity.Room;
+import com.example.hotel.repository.BillDetailRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 账单生成测试：明细版本未变时返回缓存的账单；新明细追加到缓存账单上只累加新增部分；
+ * 期间有乱序到达的明细时按全量明细重算；退房后再次入住不复用上一次入住的缓存
+ */
+class BillingServiceTests {
+
+    private static final int ROOM = 1;
+    private static final LocalDateTime CHECK_IN = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    private final RoomService roomService = mock(RoomService.class);
+    private final AirConditionerService acService = mock(AirConditionerService.class);
+    private final BillingService billingService = new BillingService(roomService, acService,
+            mock(BillDetailRepository.class), mock(BillDetailAggregateService.class));
+    private Room room;
+
+    @BeforeEach
+    void setUp() {
+        room = checkedIn(CHECK_IN);
+        when(roomService.getRoomById(ROOM)).thenAnswer(inv -> Optional.of(room));
+    }
+
+    @Test
+    void newDetailsAreAppendedToCachedBill() {
+        BillDetail first = detail(2.0, 0);
+        slice(0, 1, List.of(first), true);
+        Bill initial = billingService.generateBill(ROOM);
+        assertEquals(2.0, initial.getAcCost(), 1e-9);
+        assertEquals(202.0, initial.getTotalCost(), 1e-9);
+
+        // 版本未变，直接返回缓存
+        assertSame(initial, billingService.generateBill(ROOM));
+
+        BillDetail second = detail(3.0, 10);
+        slice(1, 2, List.of(second), true);
+        Bill appended = billingService.generateBill(ROOM);
+
+        assertEquals(List.of(first, second), appended.getDetails());
+        assertEquals(5.0, appended.getAcCost(), 1e-9);
+        assertEquals(205.0, appended.getTotalCost(), 1e-9);
+        verify(acService, times(1)).getRoomBillDetailsSince(ROOM, 0);
+        verify(acService, times(1)).getRoomBillDetailsSince(ROOM, 1);
+    }
+
+    @Test
+    void outOfOrderDetailRecomputesFullCost() {
+        BillDetail first = detail(2.0, 0);
+        BillDetail third = detail(4.0, 20);
+        slice(0, 2, List.of(first, third), true);
+        assertEquals(6.0, billingService.generateBill(ROOM).getAcCost(), 1e-9);
+
+        // 较早开始的明细晚到，片段退化为全量明细
+        BillDetail late = detail(3.0, 10);
+        slice(2, 3, List.of(first, late, third), false);
+        Bill bill = billingService.generateBill(ROOM);
+
+        assertEquals(List.of(first, late, third), bill.getDetails());
+        assertEquals(9.0, bill.getAcCost(), 1e-9);
+        assertEquals(209.0, bill.getTotalCost(), 1e-9);
+    }
+
+    @Test
+    void newCheckInDoesNotReuseCacheOfPreviousStay() {
+        slice(0, 2, List.of(detail(2.0, 0), detail(3.0, 10)), true);
+        assertEquals(5.0, billingService.generateBill(ROOM).getAcCost(), 1e-9);
+
+        // 退房：不生成账单并清除缓存
+        room = Room.builder().roomId(ROOM).price(100.0).build();
+        assertNull(billingService.generateBill(ROOM));
+
+        // 新客人入住，明细版本号恰好与上一次入住缓存的版本相同
+        room = checkedIn(CHECK_IN.plusDays(3));
+        BillDetail fresh = detail(1.0, 0);
+        slice(0, 2, List.of(fresh), true);
+        Bill bill = billingService.generateBill(ROOM);
+
+        assertEquals(CHECK_IN.plusDays(3), bill.getCheckInTime());
+        assertEquals(List.of(fresh), bill.getDetails());
+        assertEquals(1.0, bill.getAcCost(), 1e-9);
+        verify(acService, times(2)).getRoomBillDetailsSince(ROOM, 0);
+        verify(acService, never()).getRoomBillDetailsSince(ROOM, 2);
+    }
+
+    // fromVersion 之后的明细片段，同时把当前明细版本号设为 version
+    private void slice(long fromVersion, long version, List<BillDetail> details, boolean incremental) {
+        when(acService.getBillDetailVersion(ROOM)).thenReturn(version);
+        when(acService.getRoomBillDetailsSince(ROOM, fromVersion))
+                .thenReturn(new AirConditionerService.BillDetailSlice(version, details, incremental));
+    }
+
+    private static Room checkedIn(LocalDateTime checkInTime) {
+        return Room.builder()
+                .roomId(ROOM)
+                .price(100.0)
+                .occupied(true)
+                .checkInTime(checkInTime)
+                .guest(Guest.builder().id("110101199001011234").name("张三").stayDays(2).build())
+                .build();
+    }
+
+    private static BillDetail detail(double cost, int startMinute) {
+        LocalDateTime start = CHECK_IN.plusMinutes(startMinute);
+        return BillDetail.builder()
+                .roomId(ROOM)
+                .serviceStartTime(start)
+                .serviceEndTime(start.plusMinutes(5))
+                .cost(cost)
+                .build();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.hotel.service;
+
+import com.example.hotel.dto.ExportJob;
+import com.example.hotel.entity.Bill;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 异步导出测试：账单版本未变化的重复请求不生成账单直接命中缓存；结果被淘汰后下载时重新生成
+ */
+class ExportJobServiceTests {
+
+    @TempDir
+    Path spoolDir;
+
+    private final BillingService billingService = mock(BillingService.class);
+    private ExportJobService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(billingService.billVersionKey(1)).thenReturn("1|v1");
+        when(billingService.billVersionKey(2)).thenReturn("2|v1");
+        when(billingService.detailsFileName(anyInt())).thenReturn("details.xlsx");
+        when(billingService.generateBill(anyInt())).thenAnswer(inv -> Bill.builder()
+                .roomId(inv.getArgument(0)).checkInTime(LocalDateTime.now()).details(List.of()).build());
+        doAnswer(inv -> {
+            inv.<OutputStream>getArgument(1).write(new byte[]{1, 2, 3});
+            return null;
+        }).when(billingService).writeDetailsExcel(anyList(), any(OutputStream.class));
+        // 结果缓存只保留一个文件
+        service = new ExportJobService(billingService, 1, 10, 1, spoolDir.toString(), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void unchangedBillHitsCacheWithoutGeneratingIt() throws Exception {
+        ExportJob first = service.submit(1, ExportJob.Type.DETAILS).orElseThrow();
+        awaitDone(first);
+        ExportJob second = service.submit(1, ExportJob.Type.DETAILS).orElseThrow();
+
+        assertTrue(second.isCacheHit());
+        assertEquals(ExportJob.Status.DONE, second.getStatus());
+        assertEquals(first.getContentKey(), second.getContentKey());
+        verify(billingService, times(1)).generateBill(1);
+
+        // 明细版本变化后重新生成
+        when(billingService.billVersionKey(1)).thenReturn("1|v2");
+        ExportJob third = service.submit(1, ExportJob.Type.DETAILS).orElseThrow();
+        assertFalse(third.isCacheHit());
+        assertNotEquals(first.getContentKey(), third.getContentKey());
+        awaitDone(third);
+        verify(billingService, times(2)).generateBill(1);
+    }
+
+    @Test
+    void evictedResultIsRegeneratedOnDownload() throws Exception {
+        ExportJob first = service.submit(1, ExportJob.Type.DETAILS).orElseThrow();
+        awaitDone(first);
+        // 另一个房间的结果挤出房间1的文件
+        awaitDone(service.submit(2, ExportJob.Type.DETAILS).orElseThrow());
+
+        assertEquals(Optional.empty(), service.getResult(first));
+        awaitDone(first);
+        Path file = service.getResult(first).orElseThrow();
+        assertTrue(Files.exists(file));
+        verify(billingService, times(2)).generateBill(1);
+
+        // 房间已退房时任务失败，不再返回409
+        awaitDone(service.submit(2, ExportJob.Type.DETAILS).orElseThrow());
+        when(billingService.billVersionKey(1)).thenReturn(null);
+        assertEquals(Optional.empty(), service.getResult(first));
+        assertEquals(ExportJob.Status.FAILED, first.getStatus());
+    }
+
+    private static void awaitDone(ExportJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (job.getStatus() != ExportJob.Status.DONE && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(ExportJob.Status.DONE, job.getStatus(), String.valueOf(job.getError()));
+    }
+}
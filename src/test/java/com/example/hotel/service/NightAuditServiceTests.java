@@ -0,0 +1,160 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.Bill;
+import com.example.hotel.entity.Room;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 夜审测试：写出ZIP失败时取消尚未完成的房间任务，正在生成的任务被中断，排队的任务不再执行；
+ * 并发执行的夜审各自记录进度
+ */
+class NightAuditServiceTests {
+
+    private static final int ROOMS = 20;
+
+    private final RoomService roomService = mock(RoomService.class);
+    private final BillingService billingService = mock(BillingService.class);
+    private NightAuditService service;
+
+    @BeforeEach
+    void setUp() {
+        when(roomService.getAllRooms()).thenReturn(IntStream.rangeClosed(1, ROOMS)
+                .mapToObj(id -> Room.builder().roomId(id).occupied(true).build())
+                .toList());
+        when(billingService.billFileName(anyInt())).thenAnswer(inv -> "bill_" + inv.getArgument(0) + ".xlsx");
+        when(billingService.detailsFileName(anyInt())).thenAnswer(inv -> "details_" + inv.getArgument(0) + ".xlsx");
+        // 两个线程，在途窗口为4个房间
+        service = new NightAuditService(roomService, billingService, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void failedWriteCancelsOutstandingRooms() throws Exception {
+        AtomicInteger generated = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        when(billingService.generateBill(anyInt())).thenAnswer(inv -> {
+            // 第一个房间在第二个房间开始生成后完成，其余房间一直生成到被取消
+            if (generated.incrementAndGet() == 1) {
+                secondStarted.await();
+                return bill(inv.getArgument(0));
+            }
+            secondStarted.countDown();
+            try {
+                never.await();
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                throw e;
+            }
+            return bill(inv.getArgument(0));
+        });
+
+        long runId = service.nextRunId();
+        assertThrows(IOException.class, () -> service.exportAll(runId, new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("客户端已断开");
+            }
+        }));
+
+        NightAuditService.Progress progress = service.getProgress(runId);
+        assertTrue(progress.isAborted());
+        assertTrue(progress.isFinished());
+        // 已开始生成的房间全部被中断，排队中的房间不再执行
+        long deadline = System.currentTimeMillis() + 5000;
+        while (interrupted.get() < generated.get() - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(200);
+        assertEquals(generated.get() - 1, interrupted.get());
+        assertTrue(generated.get() <= 3, "生成的房间数: " + generated.get());
+    }
+
+    @Test
+    void concurrentRunsKeepSeparateProgress() throws Exception {
+        when(billingService.generateBill(anyInt())).thenAnswer(inv -> bill(inv.getArgument(0)));
+        CountDownLatch release = new CountDownLatch(1);
+        long blockedRun = service.nextRunId();
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            // 第一次夜审的输出阻塞，第二次夜审在此期间完成
+            Future<?> blocked = client.submit(() -> {
+                service.exportAll(blockedRun, new BlockingOutputStream(release));
+                return null;
+            });
+            while (service.getProgress(blockedRun) == null) {
+                Thread.sleep(5);
+            }
+            long secondRun = service.nextRunId();
+            service.exportAll(secondRun, new ByteArrayOutputStream());
+
+            NightAuditService.Progress first = service.getProgress(blockedRun);
+            NightAuditService.Progress second = service.getProgress(secondRun);
+            assertNotEquals(blockedRun, secondRun);
+            assertFalse(first.isFinished());
+            assertTrue(second.isFinished());
+            assertEquals(ROOMS, second.getCompletedRooms().get());
+            assertSame(second, service.getProgress());
+
+            release.countDown();
+            blocked.get(5, TimeUnit.SECONDS);
+            assertTrue(first.isFinished());
+            assertFalse(first.isAborted());
+            assertEquals(ROOMS, first.getCompletedRooms().get());
+        } finally {
+            client.shutdownNow();
+        }
+    }
+
+    private static Bill bill(Integer roomId) {
+        return Bill.builder().roomId(roomId).details(List.of()).build();
+    }
+
+    // 第一次写入阻塞到 release 打开
+    private static final class BlockingOutputStream extends OutputStream {
+        private final CountDownLatch release;
+
+        private BlockingOutputStream(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+}
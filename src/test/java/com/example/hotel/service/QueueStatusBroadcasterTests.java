@@ -0,0 +1,215 @@
+package com.example.hotel.service;
+
+import com.example.hotel.dto.QueueStatusView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 队列状态推送测试：新连接收到快照、之后收到差异；重连时从保留的差异续传，
+ * ID属于其他启动纪元或没有快照时重新发送快照；积压过多的连接被断开
+ */
+class QueueStatusBroadcasterTests {
+
+    private static final Pattern ID = Pattern.compile("id:(\\S+)");
+    private static final Pattern NAME = Pattern.compile("event:(\\S+)");
+
+    private final MonitorViewService monitorViewService = mock(MonitorViewService.class);
+    private final AtomicInteger requests = new AtomicInteger(1);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // 下一个连接使用的 emitter
+    private final Queue<RecordingEmitter> emitters = new ArrayDeque<>();
+    private QueueStatusBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        // 每次查询返回当前的活跃请求数
+        when(monitorViewService.getQueueStatus()).thenAnswer(inv -> new QueueStatusView(List.of(), List.of(),
+                List.of(), requests.get(), 0, requests.get(), LocalDateTime.now()));
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        broadcaster = new QueueStatusBroadcaster(monitorViewService, objectMapper, meterRegistry, 60_000) {
+            @Override
+            SseEmitter newEmitter() {
+                return emitters.remove();
+            }
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        broadcaster.shutdown();
+    }
+
+    @Test
+    void subscriberBeforeFirstSnapshotIsCaughtUpByPush() throws Exception {
+        RecordingEmitter emitter = subscribe(null);
+        assertEquals(List.of(), emitter.events());
+
+        broadcaster.push();
+        change();
+
+        List<String> events = emitter.awaitEvents(2);
+        assertEquals("snapshot", name(events.get(0)));
+        assertEquals("diff", name(events.get(1)));
+        assertEquals(version(id(events.get(0))) + 1, version(id(events.get(1))));
+    }
+
+    @Test
+    void reconnectReplaysMissedDiffsFromTheSameEpoch() throws Exception {
+        RecordingEmitter first = subscribe(null);
+        broadcaster.push();
+        String lastSeen = id(first.awaitEvents(1).get(0));
+
+        change();
+        change();
+        RecordingEmitter reconnected = subscribe(lastSeen);
+
+        List<String> events = reconnected.awaitEvents(2);
+        assertEquals("diff", name(events.get(0)));
+        assertEquals("diff", name(events.get(1)));
+        assertEquals(version(lastSeen) + 1, version(id(events.get(0))));
+        assertEquals(version(lastSeen) + 2, version(id(events.get(1))));
+    }
+
+    @Test
+    void idFromAnotherEpochGetsSnapshot() throws Exception {
+        RecordingEmitter first = subscribe(null);
+        broadcaster.push();
+        change();
+        change();
+        String current = id(first.awaitEvents(3).get(2));
+
+        // 上一次启动的ID：版本号小于当前版本，但差异不属于本次启动
+        RecordingEmitter stale = subscribe("0-1");
+        List<String> events = stale.awaitEvents(1);
+        assertEquals("snapshot", name(events.get(0)));
+        assertEquals(current, id(events.get(0)));
+        // 没有纪元前缀的旧格式ID同样重新发送快照
+        assertEquals("snapshot", name(subscribe("1").awaitEvents(1).get(0)));
+        // 已是最新版本时不重发
+        RecordingEmitter upToDate = subscribe(current);
+        broadcaster.push();
+        assertEquals(List.of(), upToDate.events());
+    }
+
+    @Test
+    void backloggedSubscriberIsDropped() throws Exception {
+        RecordingEmitter blocked = new RecordingEmitter(new CountDownLatch(1));
+        emitters.add(blocked);
+        broadcaster.subscribe(null);
+        broadcaster.push();
+        blocked.awaitWriteStarted();
+
+        // 第一个事件写出阻塞，之后的差异全部排队，超过上限时断开
+        for (int i = 0; i < 70; i++) {
+            change();
+        }
+
+        assertTrue(blocked.completed, "积压的连接应被断开");
+        assertEquals(1.0, meterRegistry.get("hotel.monitor.push.dropped").counter().count());
+        assertEquals(0.0, meterRegistry.get("hotel.monitor.push.subscribers").gauge().value());
+        blocked.release.countDown();
+    }
+
+    private RecordingEmitter subscribe(String lastEventId) {
+        RecordingEmitter emitter = new RecordingEmitter(null);
+        emitters.add(emitter);
+        broadcaster.subscribe(lastEventId);
+        return emitter;
+    }
+
+    // 状态变化一次并推送
+    private void change() {
+        requests.incrementAndGet();
+        broadcaster.onAirConditionerEvent(null);
+        broadcaster.push();
+    }
+
+    private static String id(String event) {
+        Matcher m = ID.matcher(event);
+        assertTrue(m.find(), event);
+        return m.group(1);
+    }
+
+    private static long version(String id) {
+        return Long.parseLong(id.substring(id.lastIndexOf('-') + 1));
+    }
+
+    private static String name(String event) {
+        Matcher m = NAME.matcher(event);
+        assertTrue(m.find(), event);
+        return m.group(1);
+    }
+
+    // 记录写出的事件文本；release 不为空时第一次写出阻塞到 release 打开
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch release;
+        private final CountDownLatch writeStarted = new CountDownLatch(1);
+        private volatile boolean completed;
+
+        RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            writeStarted.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            StringBuilder text = new StringBuilder();
+            builder.build().forEach(part -> text.append(part.getData()));
+            events.add(text.toString());
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+            super.complete();
+        }
+
+        List<String> events() {
+            return List.copyOf(events);
+        }
+
+        List<String> awaitEvents(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (events.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, events.size(), events.toString());
+            return events();
+        }
+
+        void awaitWriteStarted() throws InterruptedException {
+            assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
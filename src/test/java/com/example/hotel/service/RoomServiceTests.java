@@ -0,0 +1,108 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.Room;
+import com.example.hotel.repository.RoomRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 房间保存测试：其他实例修改过房间后，更新分配的空调只重新写入该字段，不覆盖对方的修改；整行保存的冲突交给调用方；
+ * 重试仍然冲突时缓存中的房间保持原来分配的空调
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:rooms;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({RoomService.class, RoomChangeTracker.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RoomServiceTests {
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private RoomChangeTracker changeTracker;
+
+    @Test
+    void assignmentAfterConcurrentCheckInKeepsOtherInstanceChanges() {
+        LocalDateTime checkIn = LocalDateTime.of(2025, 1, 1, 14, 0);
+        simulateOtherInstanceCheckIn(1, checkIn);
+        roomService.updateRoomTemperature(1, 26.5);
+
+        roomService.updateAssignedAc(1, 7);
+
+        Room stored = roomRepository.findById(1).orElseThrow();
+        assertEquals(7, stored.getAssignedAcId());
+        assertTrue(stored.isOccupied());
+        assertEquals(checkIn, stored.getCheckInTime());
+        Room cached = roomService.getRoomById(1).orElseThrow();
+        assertEquals(7, cached.getAssignedAcId());
+        assertTrue(cached.isOccupied());
+        assertEquals(stored.getVersion(), cached.getVersion());
+        // 缓存保留本实例模拟的温度
+        assertEquals(26.5, cached.getCurrentTemp(), 1e-9);
+
+        roomService.updateAssignedAc(1, null);
+        assertNull(roomRepository.findById(1).orElseThrow().getAssignedAcId());
+    }
+
+    @Test
+    void saveRoomWithStaleVersionPropagatesConflict() {
+        simulateOtherInstanceCheckIn(2, LocalDateTime.of(2025, 1, 1, 15, 0));
+        Room stale = roomService.getRoomById(2).orElseThrow();
+        stale.setOccupied(false);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> roomService.saveRoom(stale));
+        assertTrue(roomRepository.findById(2).orElseThrow().isOccupied());
+    }
+
+    @Test
+    void failedRetryKeepsCachedAssignment() {
+        RoomRepository conflicting = mock(RoomRepository.class);
+        when(conflicting.count()).thenReturn(1L);
+        when(conflicting.findAll()).thenReturn(List.of(Room.builder().roomId(1).assignedAcId(3).version(0L).build()));
+        RoomService service = new RoomService(conflicting, changeTracker);
+        service.initializeRooms();
+        // 每次保存都冲突，包括按最新状态重试的那一次
+        when(conflicting.save(any())).thenThrow(new ObjectOptimisticLockingFailureException(Room.class, 1));
+        when(conflicting.findById(1)).thenReturn(Optional.of(Room.builder().roomId(1).assignedAcId(3).version(2L).build()));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> service.updateAssignedAc(1, 7));
+        assertEquals(3, service.getRoomById(1).orElseThrow().getAssignedAcId());
+    }
+
+    // 绕过本实例的缓存直接修改数据库中的房间，版本号随之递增
+    private void simulateOtherInstanceCheckIn(Integer roomId, LocalDateTime checkIn) {
+        Room other = roomRepository.findById(roomId).orElseThrow();
+        other.setOccupied(true);
+        other.setCheckInTime(checkIn);
+        roomRepository.save(other);
+    }
+}
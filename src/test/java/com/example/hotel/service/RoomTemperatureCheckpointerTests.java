@@ -0,0 +1,124 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.Room;
+import com.example.hotel.repository.RoomRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 房间温度检查点测试：只有变化超过阈值的房间被写回，批量UPDATE跨500行分块时每一行都写到对应房间，
+ * 其他房间和乐观锁版本号保持不变；未写回的小幅变化继续累积，超过阈值后在下一次检查点写入
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:roomtemp;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RoomTemperatureCheckpointerTests {
+
+    // 超过单条语句的500行上限，分成3块
+    private static final int ROOMS = 1200;
+    private static final double EPSILON = 0.05;
+    private static final double BASE_TEMP = 25.0;
+
+    @Autowired
+    private RoomRepository roomRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 模拟调度器在内存中修改的房间对象
+    private final List<Room> rooms = new ArrayList<>();
+    private RoomTemperatureCheckpointer checkpointer;
+
+    @BeforeEach
+    void setUp() {
+        roomRepository.deleteAllInBatch();
+        rooms.clear();
+        for (int id = 1; id <= ROOMS; id++) {
+            rooms.add(Room.builder().roomId(id).price(100.0).initialTemp(BASE_TEMP).currentTemp(BASE_TEMP).build());
+        }
+        roomRepository.saveAll(rooms);
+
+        RoomService roomService = mock(RoomService.class);
+        when(roomService.getAllRooms()).thenReturn(rooms);
+        checkpointer = new RoomTemperatureCheckpointer(roomService, roomRepository, new SimpleMeterRegistry(), EPSILON);
+        checkpointer.initBaseline();
+    }
+
+    @Test
+    void batchUpdateWritesEveryRowAcrossChunks() {
+        Map<Integer, Double> temperatures = new HashMap<>();
+        for (int id = 1; id <= ROOMS; id++) {
+            temperatures.put(id, 18.0 + id / 100.0);
+        }
+
+        assertEquals(ROOMS, roomRepository.batchUpdateCurrentTemp(temperatures));
+
+        Map<Integer, Double> stored = storedTemperatures();
+        temperatures.forEach((id, temp) -> assertEquals(temp, stored.get(id), 1e-9, "房间" + id));
+        // 只改温度列，版本号不递增
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM room WHERE version <> 0", Integer.class));
+    }
+
+    @Test
+    void checkpointWritesOnlyRoomsChangedBeyondEpsilon() {
+        // 超过阈值的房间分布在三个分块里
+        Set<Integer> changed = Set.of(1, 499, 500, 501, 999, 1000, 1001, 1200);
+        Set<Integer> small = Set.of(2, 502, 1199);
+        for (Room room : rooms) {
+            if (changed.contains(room.getRoomId())) {
+                room.setCurrentTemp(BASE_TEMP - 1 - room.getRoomId() / 1000.0);
+            } else if (small.contains(room.getRoomId())) {
+                room.setCurrentTemp(BASE_TEMP + EPSILON / 2);
+            }
+        }
+
+        assertEquals(changed.size(), checkpointer.checkpoint());
+
+        Map<Integer, Double> stored = storedTemperatures();
+        for (Room room : rooms) {
+            double expected = changed.contains(room.getRoomId()) ? room.getCurrentTemp() : BASE_TEMP;
+            assertEquals(expected, stored.get(room.getRoomId()), 1e-9, "房间" + room.getRoomId());
+        }
+
+        // 没有新的变化时不写入
+        assertEquals(0, checkpointer.checkpoint());
+
+        // 小幅变化累积超过阈值后写入，基线是上次写入的温度而不是上次检查点时的内存温度
+        rooms.get(1).setCurrentTemp(BASE_TEMP + EPSILON * 1.5);
+        assertEquals(1, checkpointer.checkpoint());
+        assertEquals(BASE_TEMP + EPSILON * 1.5, storedTemperatures().get(2), 1e-9);
+        assertEquals(BASE_TEMP, storedTemperatures().get(502), 1e-9);
+    }
+
+    private Map<Integer, Double> storedTemperatures() {
+        Map<Integer, Double> stored = new HashMap<>();
+        jdbcTemplate.query("SELECT room_id, current_temp FROM room",
+                rs -> { stored.put(rs.getInt(1), rs.getDouble(2)); });
+        return stored;
+    }
+}
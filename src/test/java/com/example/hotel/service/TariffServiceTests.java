@@ -0,0 +1,76 @@
+package com.example.hotel.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分时电价测试：区间表查询与逐分钟累加结果一致，跨午夜时段和节假日，长时段查询耗时
+ */
+class TariffServiceTests {
+
+    // 峰 1.5（08:00-12:00、18:00-22:00），谷 0.5（23:00-07:00），其余 1.0，国庆节假日 0.8
+    private final TariffService tariff = new TariffService(1.0,
+            1.5, "08:00-12:00,18:00-22:00",
+            0.5, "23:00-07:00",
+            0.8, "2025-10-01,2025-10-02");
+
+    @Test
+    void rateAtFollowsPeriods() {
+        assertEquals(0.5, tariff.rateAt(LocalDateTime.of(2025, 9, 1, 23, 30)));
+        assertEquals(0.5, tariff.rateAt(LocalDateTime.of(2025, 9, 1, 6, 59)));
+        assertEquals(1.0, tariff.rateAt(LocalDateTime.of(2025, 9, 1, 7, 0)));
+        assertEquals(1.5, tariff.rateAt(LocalDateTime.of(2025, 9, 1, 8, 0)));
+        assertEquals(1.0, tariff.rateAt(LocalDateTime.of(2025, 9, 1, 12, 0)));
+        assertEquals(0.8, tariff.rateAt(LocalDateTime.of(2025, 10, 1, 9, 0)));
+    }
+
+    @Test
+    void integralMatchesMinuteByMinuteSum() {
+        LocalDateTime[][] ranges = {
+                {LocalDateTime.of(2025, 9, 1, 7, 30), LocalDateTime.of(2025, 9, 1, 8, 30)},
+                {LocalDateTime.of(2025, 9, 1, 22, 15), LocalDateTime.of(2025, 9, 2, 9, 45)},
+                {LocalDateTime.of(2025, 9, 28, 10, 0), LocalDateTime.of(2025, 10, 5, 10, 0)},
+                {LocalDateTime.of(2025, 10, 2, 23, 0), LocalDateTime.of(2025, 10, 3, 1, 0)},
+        };
+        for (LocalDateTime[] range : ranges) {
+            double expected = 0;
+            for (LocalDateTime t = range[0]; t.isBefore(range[1]); t = t.plusMinutes(1)) {
+                expected += tariff.rateAt(t);
+            }
+            assertEquals(expected, tariff.integral(range[0], range[1]), 1e-6, range[0] + " ~ " + range[1]);
+        }
+    }
+
+    @Test
+    void partialMinutesAreProrated() {
+        LocalDateTime from = LocalDateTime.of(2025, 9, 1, 7, 59, 30);
+        LocalDateTime to = LocalDateTime.of(2025, 9, 1, 8, 0, 30);
+        assertEquals(0.5 * 1.0 + 0.5 * 1.5, tariff.integral(from, to), 1e-9);
+        assertEquals(1.25, tariff.averageRate(from, to), 1e-9);
+        assertEquals(2.5, tariff.cost(from, to, 2.0), 1e-9);
+    }
+
+    @Test
+    void emptyIntervalUsesRateAtStart() {
+        LocalDateTime t = LocalDateTime.of(2025, 9, 1, 9, 0);
+        assertEquals(1.5, tariff.averageRate(t, t));
+    }
+
+    @Test
+    void fourteenDayStayIsPricedInConstantTime() {
+        LocalDateTime checkIn = LocalDateTime.of(2025, 9, 25, 14, 0);
+        LocalDateTime checkOut = checkIn.plusDays(14);
+        double sum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            sum += tariff.averageRate(checkIn.plusMinutes(i % 60), checkOut);
+        }
+        long perCallNanos = (System.nanoTime() - start) / 10_000;
+        assertTrue(sum > 0);
+        assertTrue(perCallNanos < 1_000_000, "每次查询耗时 " + perCallNanos + "ns");
+    }
+}
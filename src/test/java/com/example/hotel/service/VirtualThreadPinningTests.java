@@ -0,0 +1,138 @@
+package com.example.hotel.service;
+
+import com.example.hotel.entity.AirConditioner;
+import com.example.hotel.entity.AirConditionerRequest;
+import com.example.hotel.entity.Room;
+import com.example.hotel.repository.AirConditionerRepository;
+import com.example.hotel.repository.AirConditionerRequestRepository;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 虚拟线程固定检测：在虚拟线程上并发开关空调，房间锁内的数据库调用阻塞时不应固定载体线程
+ * 通过 JFR 的 jdk.VirtualThreadPinned 事件检测，不使用 -Djdk.tracePinnedThreads（JDK 21 中打印堆栈时可能挂起）
+ */
+class VirtualThreadPinningTests {
+
+    private static final int ROOMS = 4;
+    // 模拟一次JDBC调用的耗时
+    private static final long JDBC_MILLIS = 2;
+
+    private final Object monitor = new Object();
+    // 每个固定事件的调用栈，方法以 类名.方法名 表示
+    private final List<String> pinnedStacks = new CopyOnWriteArrayList<>();
+    private RecordingStream recording;
+
+    @BeforeEach
+    void startRecording() {
+        recording = new RecordingStream();
+        recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+        recording.onEvent("jdk.VirtualThreadPinned", event -> pinnedStacks.add(event.getStackTrace() == null ? ""
+                : event.getStackTrace().getFrames().stream()
+                        .map(RecordedFrame::getMethod)
+                        .map(method -> method.getType().getName() + "." + method.getName())
+                        .reduce("", (a, b) -> a + b + "\n")));
+        recording.startAsync();
+    }
+
+    @AfterEach
+    void stopRecording() {
+        recording.close();
+    }
+
+    @Test
+    void detectorReportsSynchronizedBlocking() throws Exception {
+        // 对照：在 synchronized 内休眠必然固定载体线程，确认检测手段有效
+        Thread.ofVirtual().start(() -> {
+            synchronized (monitor) {
+                sleepQuietly(JDBC_MILLIS);
+            }
+        }).join();
+        List<String> pinned = pinnedStacks();
+        assertTrue(pinned.stream().anyMatch(stack -> stack.contains("VirtualThreadPinningTests")), pinned.toString());
+    }
+
+    @Test
+    void airConditionerRequestsDoNotPin() throws Exception {
+        AirConditionerService service = newService();
+
+        List<Future<?>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 200; i++) {
+                int roomId = i % ROOMS + 1;
+                boolean start = (i / ROOMS) % 2 == 0;
+                results.add(executor.submit(() -> start
+                        ? service.createRequest(roomId, AirConditioner.Mode.COOLING, AirConditioner.FanSpeed.HIGH, 24.0)
+                        : service.cancelRequest(roomId)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+        assertEquals(List.of(), pinnedStacks());
+    }
+
+    // 停止录制，等待已产生的事件全部交给回调
+    private List<String> pinnedStacks() {
+        recording.stop();
+        return List.copyOf(pinnedStacks);
+    }
+
+    // 仓库和调度器用内存实现代替，每次读写休眠一小段时间模拟阻塞的JDBC调用
+    private AirConditionerService newService() {
+        RoomService roomService = mock(RoomService.class);
+        when(roomService.getRoomById(anyInt())).thenAnswer(inv -> Optional.of(Room.builder()
+                .roomId(inv.getArgument(0)).initialTemp(26.0).currentTemp(26.0).occupied(true).build()));
+
+        Map<Integer, AirConditionerRequest> active = new ConcurrentHashMap<>();
+        AirConditionerRequestRepository requestRepository = mock(AirConditionerRequestRepository.class);
+        when(requestRepository.findByRoomIdAndActiveTrue(anyInt())).thenAnswer(inv -> {
+            sleepQuietly(JDBC_MILLIS);
+            return Optional.ofNullable(active.get((Integer) inv.getArgument(0)));
+        });
+        when(requestRepository.save(any(AirConditionerRequest.class))).thenAnswer(inv -> {
+            sleepQuietly(JDBC_MILLIS);
+            AirConditionerRequest request = inv.getArgument(0);
+            if (request.isActive()) {
+                active.put(request.getRoomId(), request);
+            } else {
+                active.remove(request.getRoomId(), request);
+            }
+            return request;
+        });
+
+        return new AirConditionerService(roomService, requestRepository, mock(AirConditionerRepository.class),
+                mock(AirConditionerSchedulerService.class), mock(TariffService.class),
+                mock(ApplicationEventPublisher.class), true);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.hotel.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 编码快照测试：按 Accept-Encoding 选择压缩版本，小响应不压缩
+ */
+class EncodedSnapshotTests {
+
+    private static final byte[] LARGE = ("[" + "{\"roomId\":1,\"occupied\":false},".repeat(200) + "{}]")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void gzipServedOnlyWhenAccepted() throws IOException {
+        EncodedSnapshot snapshot = new EncodedSnapshot("W/\"v1\"", LARGE);
+
+        ResponseEntity<byte[]> plain = snapshot.toResponse(null);
+        assertNull(plain.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertSame(LARGE, plain.getBody());
+
+        ResponseEntity<byte[]> gzip = snapshot.toResponse("br, gzip;q=0.8");
+        assertEquals("gzip", gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, gzip.getHeaders().getFirst(HttpHeaders.VARY));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip.getBody()))) {
+            assertArrayEquals(LARGE, in.readAllBytes());
+        }
+        // 同一版本的压缩字节只生成一次
+        assertSame(gzip.getBody(), snapshot.toResponse("gzip").getBody());
+
+        assertNull(snapshot.toResponse("gzip;q=0").getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertNull(snapshot.toResponse("identity").getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    void smallBodyIsNotCompressed() {
+        byte[] small = "{\"total\":0}".getBytes(StandardCharsets.UTF_8);
+        ResponseEntity<byte[]> response = new EncodedSnapshot("W/\"v1\"", small).toResponse("gzip");
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertSame(small, response.getBody());
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.hotel.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 文件下载测试：单段范围、无效范围忽略、不可满足范围、If-Range 不一致时返回完整文件、If-None-Match 命中时返回304
+ */
+class FileDownloadWriterTests {
+
+    private static final String CONTENT = "0123456789";
+    private static final String ETAG = "abc123";
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.writeString(dir.resolve("bill.xlsx"), CONTENT, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void rangeReturnsPartialContent() throws Exception {
+        MockHttpServletResponse response = download(request("bytes=2-5", null, null));
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("2345", response.getContentAsString());
+
+        response = download(request("bytes=-3", null, null));
+        assertEquals(206, response.getStatus());
+        assertEquals("789", response.getContentAsString());
+
+        // 结束位置超出文件长度时截到文件末尾
+        response = download(request("bytes=8-100", null, null));
+        assertEquals("bytes 8-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("89", response.getContentAsString());
+    }
+
+    @Test
+    void invalidRangeIsIgnored() throws Exception {
+        for (String range : new String[]{"bytes=5-3", "bytes=0-1,4-5", "items=0-1", "bytes=a-b"}) {
+            MockHttpServletResponse response = download(request(range, null, null));
+
+            assertEquals(200, response.getStatus(), range);
+            assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE), range);
+            assertEquals(CONTENT, response.getContentAsString(), range);
+        }
+    }
+
+    @Test
+    void unsatisfiableRangeReturns416() throws Exception {
+        for (String range : new String[]{"bytes=10-12", "bytes=-0"}) {
+            MockHttpServletResponse response = download(request(range, null, null));
+
+            assertEquals(416, response.getStatus(), range);
+            assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE), range);
+            assertEquals(0, response.getContentAsByteArray().length, range);
+        }
+    }
+
+    @Test
+    void ifRangeMismatchReturnsFullFile() throws Exception {
+        MockHttpServletResponse response = download(request("bytes=2-5", "\"stale\"", null));
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+
+        response = download(request("bytes=2-5", "\"" + ETAG + "\"", null));
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    void ifNoneMatchReturnsNotModified() throws Exception {
+        for (String ifNoneMatch : new String[]{"\"" + ETAG + "\"", "\"other\", W/\"" + ETAG + "\"", "*"}) {
+            MockHttpServletResponse response = download(request("bytes=2-5", null, ifNoneMatch));
+
+            assertEquals(304, response.getStatus(), ifNoneMatch);
+            assertEquals("\"" + ETAG + "\"", response.getHeader(HttpHeaders.ETAG));
+            assertEquals(0, response.getContentAsByteArray().length, ifNoneMatch);
+        }
+
+        MockHttpServletResponse response = download(request(null, null, "\"other\""));
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    private static MockHttpServletRequest request(String range, String ifRange, String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/billing/export-jobs/1/file");
+        if (range != null) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        if (ifRange != null) {
+            request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return request;
+    }
+
+    private MockHttpServletResponse download(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FileDownloadWriter.write(request, response, file, ETAG, "bill.xlsx",
+                "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        return response;
+    }
+}
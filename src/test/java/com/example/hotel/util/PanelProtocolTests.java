@@ -0,0 +1,69 @@
+package com.example.hotel.util;
+
+import com.example.hotel.dto.RoomPanelView;
+import com.example.hotel.entity.AirConditioner;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 面板二进制协议测试：请求帧布局、面板状态编解码和非法取值
+ */
+class PanelProtocolTests {
+
+    @Test
+    void commandFrameLayout() {
+        ByteBuffer frame = PanelProtocol.command(PanelProtocol.ADJUST, 7, 3,
+                AirConditioner.Mode.HEATING, null, 23.5);
+
+        assertEquals(PanelProtocol.HEADER_BYTES + PanelProtocol.COMMAND_PAYLOAD_BYTES, frame.remaining());
+        assertEquals(frame.remaining() - 4, frame.getInt());
+        assertEquals(PanelProtocol.ADJUST, frame.get());
+        assertEquals(7, frame.getInt());
+        assertEquals(3, frame.getInt());
+        assertEquals(AirConditioner.Mode.HEATING, PanelProtocol.decodeMode(frame.get()));
+        assertNull(PanelProtocol.decodeFanSpeed(frame.get()));
+        assertEquals(23.5, PanelProtocol.decodeTemp(frame.getShort()));
+    }
+
+    @Test
+    void statusRoundTrip() {
+        RoomPanelView view = new RoomPanelView();
+        view.setVersion(42);
+        view.setOccupied(true);
+        view.setStatus("服务中");
+        view.setCurrentTemp(27.3);
+        view.setAssignedAcId(2);
+        view.setMode(AirConditioner.Mode.COOLING);
+        view.setFanSpeed(AirConditioner.FanSpeed.LOW);
+        view.setTargetTemp(22.0);
+        view.setServiceCost(1.23);
+        view.setAcCost(45.6);
+
+        ByteBuffer response = PanelProtocol.response(PanelProtocol.STATUS, 9, PanelProtocol.OK,
+                PanelProtocol.STATUS_VIEW_BYTES);
+        PanelProtocol.writeStatus(response, view);
+        response.flip();
+
+        assertEquals(response.remaining() - 4, response.getInt());
+        assertEquals((byte) (PanelProtocol.STATUS | PanelProtocol.RESPONSE), response.get());
+        assertEquals(9, response.getInt());
+        assertEquals(PanelProtocol.OK, response.get());
+        RoomPanelView decoded = PanelProtocol.readStatus(response, 5);
+        assertEquals(0, response.remaining());
+
+        view.setRoomId(5);
+        assertEquals(view, decoded);
+    }
+
+    @Test
+    void rejectsUnknownValues() {
+        assertThrows(IllegalArgumentException.class, () -> PanelProtocol.decodeMode((byte) 3));
+        assertThrows(IllegalArgumentException.class, () -> PanelProtocol.decodeFanSpeed((byte) -1));
+        assertNull(PanelProtocol.decodeTemp(PanelProtocol.encodeTemp(null)));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.hotel.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 令牌桶测试：突发容量、补充速率和等待时间，并发获取不超发
+ */
+class TokenBucketTests {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void burstThenRefill() {
+        long t0 = 1_000 * SECOND;
+        TokenBucket bucket = new TokenBucket(3, 2.0, t0);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(t0));
+        }
+        // 每秒补充2个令牌，下一个令牌在0.5秒后可用
+        assertEquals(SECOND / 2, bucket.tryAcquire(t0));
+        assertEquals(SECOND / 4, bucket.tryAcquire(t0 + SECOND / 4));
+        assertEquals(0, bucket.tryAcquire(t0 + SECOND / 2));
+        assertTrue(bucket.tryAcquire(t0 + SECOND / 2) > 0);
+
+        // 空闲足够久后桶补满，容量不超过 burst
+        assertFalse(bucket.isIdle(t0 + SECOND));
+        assertTrue(bucket.isIdle(t0 + 10 * SECOND));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryAcquire(t0 + 10 * SECOND));
+        }
+        assertTrue(bucket.tryAcquire(t0 + 10 * SECOND) > 0);
+    }
+
+    @Test
+    void worksAcrossNegativeNanoTime() {
+        long t0 = -5 * SECOND;
+        TokenBucket bucket = new TokenBucket(1, 1.0, t0);
+        assertEquals(0, bucket.tryAcquire(t0));
+        assertEquals(SECOND, bucket.tryAcquire(t0));
+        assertEquals(0, bucket.tryAcquire(t0 + SECOND));
+    }
+
+    @Test
+    void concurrentAcquireNeverExceedsBurst() throws InterruptedException {
+        long now = System.nanoTime();
+        TokenBucket bucket = new TokenBucket(100, 1.0, now);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1_000; i++) {
+                    if (bucket.tryAcquire(now) == 0) {
+                        granted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(100, granted.get());
+    }
+}